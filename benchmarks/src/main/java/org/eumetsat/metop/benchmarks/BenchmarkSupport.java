@@ -0,0 +1,60 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Manages the temporary directories holding the synthetic products written
+ * by the {@link org.eumetsat.metop.eps.EpsProductGenerator} for the benchmarks.
+ */
+public class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Creates an empty temporary directory for the synthetic products.
+     *
+     * @return the directory
+     * @throws IOException if the directory could not be created
+     */
+    public static File createTempDir() throws IOException {
+        final File dir = File.createTempFile("metop-benchmark", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create directory: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes a directory created by {@link #createTempDir()} together with
+     * all products written into it.
+     *
+     * @param dir the directory
+     */
+    public static void deleteTempDir(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.benchmarks;
+
+import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.eps.EpsXml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures opening EPS products and parsing the EPS format descriptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EpsFormatBenchmark {
+
+    @Param({"eps_iasil1c_6.6.xml", "eps_amsual1b_6.4.xml", "eps_mhsl1b_6.5.xml"})
+    public String formatName;
+
+    private File dir;
+    private File iasiFile;
+    private URI formatUri;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkSupport.createTempDir();
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+        generator.setMdrCount(4);
+        iasiFile = generator.write(dir);
+        formatUri = EpsFormats.class.getResource(formatName).toURI();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public int openFile() throws Exception {
+        final EpsFile epsFile = EpsFormats.getInstance().openFile(iasiFile);
+        try {
+            return epsFile.getMdrCount();
+        } finally {
+            epsFile.close();
+        }
+    }
+
+    @Benchmark
+    public Object parseEpsXml() throws Exception {
+        return new EpsXml(formatUri).getFormat();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.benchmarks;
+
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.iasi.IasiFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading brightness temperatures and spectra from an IASI product.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IasiFileBenchmark {
+
+    @Param({"23", "92"})
+    public int mdrCount;
+
+    @Param({"0", "4000"})
+    public int channelId;
+
+    private File dir;
+    private IasiFile iasiFile;
+    private int ifovId;
+    private float[] wavenumbers;
+    private float[] radiances;
+    private float[] mdrRadiances;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkSupport.createTempDir();
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+        generator.setMdrCount(mdrCount);
+        final File file = generator.write(dir);
+        iasiFile = (IasiFile) EpsFormats.getInstance().openFile(file);
+        ifovId = (mdrCount / 2) * 120 + 61;
+        wavenumbers = new float[8700];
+        radiances = new float[8700];
+        mdrRadiances = new float[120 * 8700];
+    }
+
+    @TearDown
+    public void tearDown() {
+        iasiFile.close();
+        BenchmarkSupport.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public double[][][] readAllBts() throws Exception {
+        return iasiFile.readAllBts(channelId);
+    }
+
+    @Benchmark
+    public double[][] readSpectrum() throws Exception {
+        return iasiFile.readSpectrum(ifovId);
+    }
+
+    @Benchmark
+    public float[] readSpectrumIntoArrays() throws Exception {
+        iasiFile.readSpectrum(ifovId, wavenumbers, radiances);
+        return radiances;
+    }
+
+    @Benchmark
+    public float[] readMdrSpectra() throws Exception {
+        iasiFile.readSpectra((mdrCount / 2) * 120, 120, mdrRadiances, 8700);
+        return mdrRadiances;
+    }
+}
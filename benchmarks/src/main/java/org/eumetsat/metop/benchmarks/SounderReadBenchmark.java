@@ -0,0 +1,99 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.benchmarks;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.eps.EpsReader;
+import org.eumetsat.metop.eps.EpsReaderPlugIn;
+import org.eumetsat.metop.sounder.SounderFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the band data of AMSU-A and MHS products.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SounderReadBenchmark {
+
+    @Param({"AMSU", "MHS"})
+    public String instrument;
+
+    /**
+     * The product length in minutes, 100 minutes is about a full orbit.
+     */
+    @Param({"3", "100"})
+    public int minutes;
+
+    private File dir;
+    private EpsReader reader;
+    private SounderFile sounderFile;
+    private Band[] bands;
+    private ProductData[] buffers;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkSupport.createTempDir();
+        final EpsProductGenerator generator;
+        if ("AMSU".equals(instrument)) {
+            generator = new EpsProductGenerator(EpsProductGenerator.ProductType.AMSUA_L1B);
+        } else {
+            generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        }
+        generator.setOrbitLength(minutes);
+        final File file = generator.write(dir);
+        reader = (EpsReader) new EpsReaderPlugIn().createReaderInstance();
+        final Product product = reader.readProductNodes(file, null);
+        sounderFile = (SounderFile) reader.getEpsFile();
+        bands = product.getBands();
+        buffers = new ProductData[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            buffers[i] = bands[i].createCompatibleProductData(product.getSceneRasterWidth() * product.getSceneRasterHeight());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        reader.close();
+        BenchmarkSupport.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public ProductData[] readData() throws Exception {
+        for (int i = 0; i < bands.length; i++) {
+            final Band band = bands[i];
+            sounderFile.readBandData(0, 0, band.getSceneRasterWidth(), band.getSceneRasterHeight(), band,
+                                     buffers[i], ProgressMonitor.NULL);
+        }
+        return buffers;
+    }
+}
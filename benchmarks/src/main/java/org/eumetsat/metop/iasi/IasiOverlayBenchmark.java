@@ -0,0 +1,75 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import org.esa.beam.framework.datamodel.Product;
+import org.eumetsat.metop.benchmarks.BenchmarkSupport;
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.sounder.FootprintStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of the IASI IFOV footprints, until the background
+ * worker has completed all MDRs. The file is opened for concurrent access, like
+ * in VISAT. The benchmark lives in the package of {@link IasiOverlay} because
+ * the footprints are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IasiOverlayBenchmark {
+
+    @Param({"23", "92"})
+    public int mdrCount;
+
+    private File dir;
+    private IasiFile iasiFile;
+    private Product avhrrProduct;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkSupport.createTempDir();
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+        generator.setMdrCount(mdrCount);
+        iasiFile = (IasiFile) EpsFormats.getInstance().openFile(generator.write(dir), true);
+        avhrrProduct = generator.createAvhrrProduct();
+    }
+
+    @TearDown
+    public void tearDown() {
+        iasiFile.close();
+        avhrrProduct.dispose();
+        BenchmarkSupport.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public FootprintStore createFootprints() throws Exception {
+        return new IasiOverlay(iasiFile, avhrrProduct).waitForIfovFootprints();
+    }
+}
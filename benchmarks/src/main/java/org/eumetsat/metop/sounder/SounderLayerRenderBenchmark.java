@@ -0,0 +1,152 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import com.bc.ceres.glayer.support.DefaultStyle;
+import com.bc.ceres.grender.Rendering;
+import com.bc.ceres.grender.Viewport;
+import com.bc.ceres.grender.support.DefaultViewport;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.ui.product.ProductSceneView;
+import org.eumetsat.metop.amsu.AmsuFile;
+import org.eumetsat.metop.amsu.AmsuSounderLayer;
+import org.eumetsat.metop.amsu.AmsuSounderOverlay;
+import org.eumetsat.metop.benchmarks.BenchmarkSupport;
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.mhs.MhsFile;
+import org.eumetsat.metop.mhs.MhsSounderLayer;
+import org.eumetsat.metop.mhs.MhsSounderOverlay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering an AMSU-A or MHS layer onto an offscreen image. The
+ * benchmark lives in the package of {@link SounderLayer} because the IFOV
+ * footprints of an overlay are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SounderLayerRenderBenchmark {
+
+    private static final int VIEW_SIZE = 2048;
+
+    @Param({"AMSU", "MHS"})
+    public String instrument;
+
+    /**
+     * The product length in minutes, 100 minutes is about a full orbit.
+     */
+    @Param({"3", "100"})
+    public int minutes;
+
+    @Param({"false", "true"})
+    public boolean antialias;
+
+    /**
+     * If {@code true} the cached footprint tiles are discarded before each
+     * rendering, otherwise the rendering is served from the tile cache.
+     */
+    @Param({"true", "false"})
+    public boolean coldTiles;
+
+    private File dir;
+    private SounderFile sounderFile;
+    private Product avhrrProduct;
+    private SounderLayer layer;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private Rendering rendering;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkSupport.createTempDir();
+        final EpsProductGenerator generator;
+        if ("AMSU".equals(instrument)) {
+            generator = new EpsProductGenerator(EpsProductGenerator.ProductType.AMSUA_L1B);
+        } else {
+            generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        }
+        generator.setOrbitLength(minutes);
+        sounderFile = (SounderFile) EpsFormats.getInstance().openFile(generator.write(dir));
+        avhrrProduct = generator.createAvhrrProduct();
+
+        final AbstractSounderOverlay overlay;
+        if ("AMSU".equals(instrument)) {
+            final AmsuSounderOverlay amsuOverlay = new AmsuSounderOverlay((AmsuFile) sounderFile, avhrrProduct);
+            layer = new AmsuSounderLayer(amsuOverlay);
+            overlay = amsuOverlay;
+        } else {
+            final MhsSounderOverlay mhsOverlay = new MhsSounderOverlay((MhsFile) sounderFile, avhrrProduct);
+            layer = new MhsSounderLayer(mhsOverlay);
+            overlay = mhsOverlay;
+        }
+        // the IFOVs are loaded asynchronously on first access
+        overlay.waitForFootprints();
+
+        final DefaultStyle style = new DefaultStyle();
+        style.setProperty(ProductSceneView.PROPERTY_KEY_GRAPHICS_ANTIALIASING, antialias);
+        layer.setStyle(style);
+
+        image = new BufferedImage(VIEW_SIZE, VIEW_SIZE, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+        graphics.setClip(0, 0, VIEW_SIZE, VIEW_SIZE);
+        final Viewport viewport = new DefaultViewport();
+        rendering = new Rendering() {
+            @Override
+            public Graphics2D getGraphics() {
+                return graphics;
+            }
+
+            @Override
+            public Viewport getViewport() {
+                return viewport;
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+        layer.dispose();
+        sounderFile.close();
+        avhrrProduct.dispose();
+        BenchmarkSupport.deleteTempDir(dir);
+    }
+
+    @Benchmark
+    public BufferedImage renderLayer() {
+        if (coldTiles) {
+            layer.regenerate();
+        }
+        layer.renderLayer(rendering);
+        return image;
+    }
+}
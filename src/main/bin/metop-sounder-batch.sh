@@ -0,0 +1,22 @@
+#!/bin/sh
+#
+# Runs the Metop Sounder Tools batch processor without a GUI.
+# Call without arguments for the list of options.
+
+if [ -z "$BEAM4_HOME" ]; then
+    BEAM4_HOME=`dirname "$0"`/..
+fi
+
+if [ -x "$BEAM4_HOME/jre/bin/java" ]; then
+    JAVA="$BEAM4_HOME/jre/bin/java"
+else
+    JAVA=java
+fi
+
+exec "$JAVA" \
+    -Xmx1024M \
+    -Djava.awt.headless=true \
+    -Dceres.context=beam \
+    "-Dbeam.mainClass=org.eumetsat.metop.batch.SounderBatchProcessor" \
+    "-Dbeam.home=$BEAM4_HOME" \
+    -jar "$BEAM4_HOME/bin/ceres-launcher.jar" "$@"
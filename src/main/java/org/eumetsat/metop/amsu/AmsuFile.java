@@ -22,6 +22,7 @@ import com.bc.ceres.glayer.Layer;
 import org.esa.beam.framework.dataio.ProductReader;
 import org.esa.beam.framework.datamodel.Product;
 import org.eumetsat.metop.sounder.AvhrrOverlay;
+import org.eumetsat.metop.sounder.BandInfo;
 import org.eumetsat.metop.sounder.SounderFile;
 
 import java.io.File;
@@ -35,7 +36,11 @@ public class AmsuFile extends SounderFile {
     public static final String PRODUCT_TYPE = "AMSU-A";
 
     public AmsuFile(File file, DataFormat format) throws IOException {
-        super(file, format);
+        this(file, format, false);
+    }
+
+    public AmsuFile(File file, DataFormat format, boolean concurrentAccess) throws IOException {
+        super(file, format, concurrentAccess);
     }
     
     @Override
@@ -48,6 +53,16 @@ public class AmsuFile extends SounderFile {
         return product;
     }
     
+    @Override
+    public BandInfo[] getBandInfos() {
+        return AmsuBandInfo.values();
+    }
+
+    @Override
+    public int getProductWidth() {
+        return PRODUCT_WIDTH;
+    }
+
     @Override
     public boolean hasOverlayFor(Product avhrrProduct) {
         // TODO check for date
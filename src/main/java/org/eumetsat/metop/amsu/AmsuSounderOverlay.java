@@ -17,13 +17,10 @@
 package org.eumetsat.metop.amsu;
 
 import org.esa.beam.framework.datamodel.*;
-import org.eumetsat.metop.eps.EpsFile;
 import org.eumetsat.metop.sounder.AbstractSounderOverlay;
-import org.eumetsat.metop.sounder.Ifov;
+import org.eumetsat.metop.sounder.FootprintStore;
 import org.eumetsat.metop.sounder.SounderShapeScaleComputer;
 
-import java.awt.Shape;
-import java.awt.geom.Ellipse2D;
 import java.io.IOException;
 
 
@@ -31,76 +28,34 @@ public class AmsuSounderOverlay extends AbstractSounderOverlay {
 
     private static final float ifovSize = 47.63f;
 
+    private double[] shapeScale;
+
     public AmsuSounderOverlay(AmsuFile amsufile, Product avhrrProduct) {
-        super(amsufile, avhrrProduct);
+        super(amsufile, avhrrProduct, AmsuFile.PRODUCT_WIDTH, AmsuBandInfo.LAT, AmsuBandInfo.LON);
     }
 
     @Override
-    protected Ifov[] readIfovs() throws IOException {
-        EpsFile amsufile = getEpsFile();
-        final int height = amsufile.getMdrCount();
+    protected void readFootprints(int firstMdr, int mdrCount, FootprintStore footprints) throws IOException {
         final int width = AmsuFile.PRODUCT_WIDTH;
-        final double scalingFactor = AmsuBandInfo.LAT.getScaleFactor();
-        ProductData latitudes = amsufile.readData(AmsuBandInfo.LAT, height, width);
-        ProductData longitudes = amsufile.readData(AmsuBandInfo.LON, height, width);
-        GeoCoding geoCoding = getAvhrrProduct().getGeoCoding();
-        Ifov[] allIfovs = new Ifov[width * height];
-
-        SounderShapeScaleComputer scaleComputer = new SounderShapeScaleComputer(amsufile,
-                                                                                width,
-                                                                                AmsuBandInfo.LAT,
-                                                                                AmsuBandInfo.LON,
-                                                                                AmsuBandInfo.VZA
-        );
-        double[] shapeScale = scaleComputer.getIfovShapeScale();
+        if (shapeScale == null) {
+            SounderShapeScaleComputer scaleComputer = new SounderShapeScaleComputer(getEpsFile(),
+                                                                                    width,
+                                                                                    AmsuBandInfo.LAT,
+                                                                                    AmsuBandInfo.LON,
+                                                                                    AmsuBandInfo.VZA
+            );
+            shapeScale = scaleComputer.getIfovShapeScale();
+        }
+        final float[] xs = new float[width * mdrCount];
+        final float[] ys = new float[width * mdrCount];
+        readLocations(firstMdr, mdrCount, xs, ys);
         int index = 0;
-        GeoPos amsuGeoPos = new GeoPos();
-        PixelPos avhrrPixelPos = new PixelPos();
-        for (int y = 0; y < height; y++) {
+        for (int y = 0; y < mdrCount; y++) {
             for (int x = 0; x < width; x++) {
-                amsuGeoPos.lat = (float) (latitudes.getElemIntAt(index) * scalingFactor);
-                amsuGeoPos.lon = (float) (longitudes.getElemIntAt(index) * scalingFactor);
-                geoCoding.getPixelPos(amsuGeoPos, avhrrPixelPos);
                 final float yScale = (float) shapeScale[x];
-                Shape shape = new Ellipse2D.Float(avhrrPixelPos.x - 0.5f * ifovSize,
-                                                  avhrrPixelPos.y - 0.5f * ifovSize * yScale,
-                                                  ifovSize, ifovSize * yScale);
-                allIfovs[index] = new AmsuIfov(x, y, shape);
+                footprints.set(firstMdr * width + index, xs[index], ys[index], ifovSize, ifovSize * yScale, false);
                 index++;
             }
         }
-        return allIfovs;
-    }
-
-    private static class AmsuIfov implements Ifov {
-        private final int y;
-        private final int x;
-        private final Shape shape;
-
-        private AmsuIfov(int x, int y, Shape shape) {
-            this.y = y;
-            this.x = x;
-            this.shape = shape;
-        }
-
-        @Override
-        public final int getMdrIndex() {
-            return y;
-        }
-
-        @Override
-        public final int getIfovIndex() {
-            return y * AmsuFile.PRODUCT_WIDTH + x;
-        }
-
-        @Override
-        public final int getIfovInMdrIndex() {
-            return x;
-        }
-
-        @Override
-        public final Shape getShape() {
-            return shape;
-        }
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.batch;
+
+import com.bc.ceres.core.ProgressMonitor;
+
+import org.esa.beam.framework.dataio.ProductIO;
+import org.esa.beam.framework.dataio.ProductReader;
+import org.esa.beam.framework.datamodel.Product;
+import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.eps.EpsReaderPlugIn;
+import org.eumetsat.metop.sounder.SounderFile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts all bands of an AMSU or MHS product to a BEAM-DIMAP product.
+ */
+class BandExportJob implements BatchJob {
+
+    @Override
+    public String getName() {
+        return "bands";
+    }
+
+    @Override
+    public boolean isApplicable(EpsFile epsFile) {
+        return epsFile instanceof SounderFile;
+    }
+
+    @Override
+    public File process(File file, EpsFile epsFile, File outputDir) throws IOException {
+        // the band rasters are read through a reader of its own, which opens the file again
+        final ProductReader reader = new EpsReaderPlugIn().createReaderInstance();
+        final Product product = reader.readProductNodes(file, null);
+        try {
+            final File outputFile = new File(outputDir, SounderBatchProcessor.getBaseName(file) + ".dim");
+            ProductIO.writeProduct(product, outputFile, ProductIO.DEFAULT_FORMAT_NAME, false, ProgressMonitor.NULL);
+            return outputFile;
+        } finally {
+            product.dispose();
+        }
+    }
+}
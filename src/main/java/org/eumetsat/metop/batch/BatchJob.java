@@ -0,0 +1,53 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.batch;
+
+import org.eumetsat.metop.eps.EpsFile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A job run by the {@link SounderBatchProcessor} for each product.
+ * Jobs are shared by all worker threads and must be stateless.
+ */
+public interface BatchJob {
+
+    /**
+     * @return the name used for selecting the job on the command line
+     */
+    String getName();
+
+    /**
+     * @param epsFile the product
+     *
+     * @return {@code true} if the job can process the product
+     */
+    boolean isApplicable(EpsFile epsFile);
+
+    /**
+     * Processes a product.
+     *
+     * @param file      the product file
+     * @param epsFile   the product, opened from the product file
+     * @param outputDir the output directory
+     *
+     * @return the output file written
+     * @throws IOException if an I/O error occurs
+     */
+    File process(File file, EpsFile epsFile, File outputDir) throws IOException;
+}
@@ -0,0 +1,159 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.batch;
+
+import com.bc.ceres.core.ProgressMonitor;
+
+import org.esa.beam.framework.dataio.ProductIO;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.iasi.IasiFile;
+import org.eumetsat.metop.sounder.BandInfo;
+import org.eumetsat.metop.sounder.SounderFile;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes brightness temperature maps to a BEAM-DIMAP product, with one
+ * row per MDR and one column per IFOV. For AMSU and MHS products all
+ * channels are converted, for IASI products only the selected channels.
+ * Channels are numbered from 1.
+ */
+class BrightnessTemperatureJob implements BatchJob {
+
+    private final int[] iasiChannels;
+
+    /**
+     * @param iasiChannels the IASI channels to convert
+     */
+    BrightnessTemperatureJob(int[] iasiChannels) {
+        this.iasiChannels = iasiChannels;
+    }
+
+    @Override
+    public String getName() {
+        return "bt";
+    }
+
+    @Override
+    public boolean isApplicable(EpsFile epsFile) {
+        return epsFile instanceof SounderFile || epsFile instanceof IasiFile && iasiChannels.length > 0;
+    }
+
+    @Override
+    public File process(File file, EpsFile epsFile, File outputDir) throws IOException {
+        final Product product;
+        if (epsFile instanceof IasiFile) {
+            product = createIasiProduct((IasiFile) epsFile);
+        } else {
+            product = createSounderProduct((SounderFile) epsFile);
+        }
+        try {
+            final File outputFile = new File(outputDir, SounderBatchProcessor.getBaseName(file) + "_BT.dim");
+            ProductIO.writeProduct(product, outputFile, ProductIO.DEFAULT_FORMAT_NAME, false, ProgressMonitor.NULL);
+            return outputFile;
+        } finally {
+            product.dispose();
+        }
+    }
+
+    private static Product createSounderProduct(SounderFile sounderFile) throws IOException {
+        final int width = sounderFile.getProductWidth();
+        final int height = sounderFile.getMdrCount();
+        final Product product = new Product(sounderFile.getProductName() + "_BT", "BT", width, height);
+
+        final BandInfo[] bandInfos = sounderFile.getBandInfos();
+        BandInfo latInfo = null;
+        BandInfo lonInfo = null;
+        for (int channel = 0; channel < bandInfos.length; channel++) {
+            final BandInfo bandInfo = bandInfos[channel];
+            if (bandInfo.getFrequency() > 0.0) {
+                addBand(product, "bt_" + (channel + 1), "K", sounderFile.readBrightnessTemperatures(channel));
+            } else if ("latitude".equals(bandInfo.getName())) {
+                latInfo = bandInfo;
+            } else if ("longitude".equals(bandInfo.getName())) {
+                lonInfo = bandInfo;
+            }
+        }
+        if (latInfo != null && lonInfo != null) {
+            final ProductData[] data = new ProductData[2];
+            sounderFile.readBands(new BandInfo[]{latInfo, lonInfo}, new Rectangle(width, height), data);
+            addBand(product, "latitude", "deg", scale(data[0], latInfo.getScaleFactor()));
+            addBand(product, "longitude", "deg", scale(data[1], lonInfo.getScaleFactor()));
+        }
+        return product;
+    }
+
+    private Product createIasiProduct(IasiFile iasiFile) throws IOException {
+        final double[][][][] locations = iasiFile.readGGeoSondLoc();
+        final int height = locations.length;
+        final int width = height > 0 ? locations[0].length * locations[0][0].length : 0;
+        final Product product = new Product(iasiFile.getProductName() + "_BT", "BT", width, height);
+
+        for (final int channel : iasiChannels) {
+            final double[][][] bts = iasiFile.readAllBts(channel - 1);
+            final double[] data = new double[width * height];
+            int index = 0;
+            for (final double[][] mdrBts : bts) {
+                for (final double[] efovBts : mdrBts) {
+                    for (final double bt : efovBts) {
+                        data[index++] = bt;
+                    }
+                }
+            }
+            addBand(product, "bt_" + channel, "K", data);
+        }
+
+        final double[] lat = new double[width * height];
+        final double[] lon = new double[width * height];
+        int index = 0;
+        for (final double[][][] mdrLocations : locations) {
+            for (final double[][] efovLocations : mdrLocations) {
+                for (final double[] location : efovLocations) {
+                    lon[index] = location[0];
+                    lat[index] = location[1];
+                    index++;
+                }
+            }
+        }
+        addBand(product, "latitude", "deg", lat);
+        addBand(product, "longitude", "deg", lon);
+        return product;
+    }
+
+    private static double[] scale(ProductData data, double scaleFactor) {
+        final double[] values = new double[data.getNumElems()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = data.getElemDoubleAt(i) * scaleFactor;
+        }
+        return values;
+    }
+
+    private static void addBand(Product product, String name, String unit, double[] values) {
+        final float[] data = new float[values.length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (float) values[i];
+        }
+        final Band band = product.addBand(name, ProductData.TYPE_FLOAT32);
+        band.setUnit(unit);
+        band.setRasterData(ProductData.createInstance(data));
+    }
+}
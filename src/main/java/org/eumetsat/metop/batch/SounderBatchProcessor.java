@@ -0,0 +1,381 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.batch;
+
+import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.eps.EpsFormats;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Runs batch jobs on EPS sounder products without a GUI.
+ * <p/>
+ * Products are given as files, directories (searched recursively for
+ * {@code .nat} files) or file name patterns with {@code *} and {@code ?}.
+ * Several products are processed in parallel. A failing product or job is
+ * reported and does not stop the processing of the others, but an error
+ * such as an {@link OutOfMemoryError} stops the whole run. Progress is
+ * reported per product, and throughput statistics at the end.
+ * <p/>
+ * Usage: {@code SounderBatchProcessor [-o <dir>] [-j <job,...>] [-c <channel,...>] [-t <threads>] <product>...}
+ */
+public class SounderBatchProcessor {
+
+    private static final String USAGE =
+            "Usage: metop-sounder-batch [options] <file|dir|pattern>...\n" +
+            "Options:\n" +
+            "  -o <dir>          the output directory, defaults to the current directory\n" +
+            "  -j <job,...>      the jobs to run, defaults to 'bt'\n" +
+            "                      bands    - converts all bands of AMSU and MHS products to BEAM-DIMAP\n" +
+            "                      bt       - writes brightness temperature maps to BEAM-DIMAP\n" +
+            "                      spectra  - exports IASI spectra to a columnar archive\n" +
+            "  -c <channel,...>  the IASI channels for the 'bt' job, numbered from 1\n" +
+            "  -t <threads>      the number of products processed in parallel, defaults to 2\n";
+
+    private final BatchJob[] jobs;
+    private final File outputDir;
+    private final int threadCount;
+
+    private final AtomicInteger completedCount;
+    private final AtomicInteger failedCount;
+    private final AtomicInteger skippedCount;
+    private final Map<String, JobStatistics> jobStatistics;
+    private long inputSize;
+    private int productCount;
+
+    public SounderBatchProcessor(BatchJob[] jobs, File outputDir, int threadCount) {
+        this.jobs = jobs;
+        this.outputDir = outputDir;
+        this.threadCount = threadCount;
+        completedCount = new AtomicInteger();
+        failedCount = new AtomicInteger();
+        skippedCount = new AtomicInteger();
+        jobStatistics = new LinkedHashMap<String, JobStatistics>();
+        for (final BatchJob job : jobs) {
+            jobStatistics.put(job.getName(), new JobStatistics());
+        }
+    }
+
+    /**
+     * Processes products.
+     *
+     * @param files the product files
+     *
+     * @return {@code true} if all products have been processed successfully
+     * @throws InterruptedException if interrupted while waiting for the products being processed
+     * @throws Error                if an error occurred while processing a product
+     */
+    public boolean process(List<File> files) throws InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            logError("Cannot create output directory: " + outputDir);
+            return false;
+        }
+        productCount = files.size();
+        for (final File file : files) {
+            inputSize += file.length();
+        }
+        final long t0 = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final File file : files) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    processProduct(file);
+                }
+            }));
+        }
+        executor.shutdown();
+        try {
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // processProduct catches all exceptions, so this is an error
+            executor.shutdownNow();
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        final long t1 = System.currentTimeMillis();
+
+        printStatistics(t1 - t0);
+        return failedCount.get() == 0;
+    }
+
+    private void processProduct(File file) {
+        final StringBuilder report = new StringBuilder();
+        boolean failed = false;
+        boolean skipped = true;
+        EpsFile epsFile = null;
+        try {
+            if (!EpsFormats.getInstance().canOpenFile(file)) {
+                report.append(" not an EPS product");
+            } else {
+                epsFile = EpsFormats.getInstance().openFile(file);
+                for (final BatchJob job : jobs) {
+                    if (!job.isApplicable(epsFile)) {
+                        continue;
+                    }
+                    skipped = false;
+                    final long t0 = System.currentTimeMillis();
+                    try {
+                        final File outputFile = job.process(file, epsFile, outputDir);
+                        final long millis = System.currentTimeMillis() - t0;
+                        jobStatistics.get(job.getName()).add(millis, false);
+                        report.append(String.format(" %s -> %s (%.1f s)", job.getName(), outputFile.getName(),
+                                                    millis / 1000.0));
+                    } catch (Exception e) {
+                        jobStatistics.get(job.getName()).add(System.currentTimeMillis() - t0, true);
+                        report.append(String.format(" %s FAILED: %s", job.getName(), e));
+                        failed = true;
+                    }
+                }
+                if (skipped) {
+                    report.append(" no applicable job");
+                }
+            }
+        } catch (Exception e) {
+            report.append(" FAILED: ").append(e);
+            failed = true;
+            skipped = false;
+        } finally {
+            if (epsFile != null) {
+                epsFile.close();
+            }
+        }
+
+        if (failed) {
+            failedCount.incrementAndGet();
+        } else if (skipped) {
+            skippedCount.incrementAndGet();
+        }
+        final int n = completedCount.incrementAndGet();
+        final String message = String.format("[%d/%d] %s %s:%s", n, productCount,
+                                             failed ? "FAILED" : skipped ? "SKIPPED" : "OK", file.getName(), report);
+        if (failed) {
+            logError(message);
+        } else {
+            log(message);
+        }
+    }
+
+    private void printStatistics(long millis) {
+        final double seconds = Math.max(millis, 1) / 1000.0;
+        final double megabytes = inputSize / (1024.0 * 1024.0);
+        log(String.format("Processed %d products (%d failed, %d skipped) in %.1f s",
+                          productCount, failedCount.get(), skippedCount.get(), seconds));
+        log(String.format("Throughput: %.1f MB/s, %.1f products/min (%.1f MB input)",
+                          megabytes / seconds, productCount * 60.0 / seconds, megabytes));
+        for (final Map.Entry<String, JobStatistics> entry : jobStatistics.entrySet()) {
+            final JobStatistics statistics = entry.getValue();
+            synchronized (statistics) {
+                log(String.format("  %-8s %d runs, %d failed, %.1f s total, %.1f s average",
+                                  entry.getKey(), statistics.runCount, statistics.failureCount,
+                                  statistics.millis / 1000.0,
+                                  statistics.runCount > 0 ? statistics.millis / 1000.0 / statistics.runCount : 0.0));
+            }
+        }
+    }
+
+    private static synchronized void log(String message) {
+        System.out.println(message);
+    }
+
+    private static synchronized void logError(String message) {
+        System.err.println(message);
+    }
+
+    /**
+     * Collects the product files given by files, directories and file name patterns.
+     *
+     * @param args the files, directories and patterns
+     *
+     * @return the product files, without duplicates
+     */
+    static List<File> collectFiles(String[] args) {
+        final Set<File> files = new LinkedHashSet<File>();
+        for (final String arg : args) {
+            final File file = new File(arg);
+            if (file.isDirectory()) {
+                collectFiles(file, files);
+            } else if (file.getName().indexOf('*') != -1 || file.getName().indexOf('?') != -1) {
+                final File dir = file.getParentFile() != null ? file.getParentFile() : new File(".");
+                final Pattern pattern = toPattern(file.getName());
+                final File[] matches = dir.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File pathname) {
+                        return pathname.isFile() && pattern.matcher(pathname.getName()).matches();
+                    }
+                });
+                if (matches == null || matches.length == 0) {
+                    logError("No product matches: " + arg);
+                } else {
+                    Arrays.sort(matches);
+                    files.addAll(Arrays.asList(matches));
+                }
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                logError("No such file: " + arg);
+            }
+        }
+        return new ArrayList<File>(files);
+    }
+
+    private static void collectFiles(File dir, Set<File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (final File child : children) {
+            if (child.isDirectory()) {
+                collectFiles(child, files);
+            } else if (child.getName().endsWith(".nat")) {
+                files.add(child);
+            }
+        }
+    }
+
+    static Pattern toPattern(String glob) {
+        final StringBuilder regex = new StringBuilder();
+        for (final char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    static String getBaseName(File file) {
+        final String name = file.getName();
+        final int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(0, dotIndex) : name;
+    }
+
+    static BatchJob createJob(String name, int[] iasiChannels) {
+        if ("bands".equals(name)) {
+            return new BandExportJob();
+        } else if ("bt".equals(name)) {
+            return new BrightnessTemperatureJob(iasiChannels);
+        } else if ("spectra".equals(name)) {
+            return new SpectraExportJob();
+        }
+        throw new IllegalArgumentException("Unknown job: " + name);
+    }
+
+    private static int[] parseChannels(String value) {
+        final String[] tokens = value.split(",");
+        final int[] channels = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            channels[i] = Integer.parseInt(tokens[i].trim());
+            if (channels[i] < 1) {
+                throw new IllegalArgumentException("Channels are numbered from 1: " + tokens[i]);
+            }
+        }
+        return channels;
+    }
+
+    private static class JobStatistics {
+        private int runCount;
+        private int failureCount;
+        private long millis;
+
+        synchronized void add(long millis, boolean failed) {
+            runCount++;
+            if (failed) {
+                failureCount++;
+            }
+            this.millis += millis;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        File outputDir = new File(".");
+        String jobNames = "bt";
+        int[] iasiChannels = new int[0];
+        int threadCount = 2;
+        final List<String> products = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if ("-o".equals(arg) && i + 1 < args.length) {
+                    outputDir = new File(args[++i]);
+                } else if ("-j".equals(arg) && i + 1 < args.length) {
+                    jobNames = args[++i];
+                } else if ("-c".equals(arg) && i + 1 < args.length) {
+                    iasiChannels = parseChannels(args[++i]);
+                } else if ("-t".equals(arg) && i + 1 < args.length) {
+                    threadCount = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else {
+                    products.add(arg);
+                }
+            }
+            if (products.isEmpty()) {
+                throw new IllegalArgumentException("No products given.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final List<BatchJob> jobs = new ArrayList<BatchJob>();
+        try {
+            for (final String jobName : jobNames.split(",")) {
+                jobs.add(createJob(jobName.trim(), iasiChannels));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        final List<File> files = collectFiles(products.toArray(new String[products.size()]));
+        if (files.isEmpty()) {
+            logError("No products found.");
+            System.exit(1);
+        }
+        final SounderBatchProcessor processor =
+                new SounderBatchProcessor(jobs.toArray(new BatchJob[jobs.size()]), outputDir, threadCount);
+        final boolean success = processor.process(files);
+        System.exit(success ? 0 : 1);
+    }
+}
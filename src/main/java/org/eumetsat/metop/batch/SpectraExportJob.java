@@ -0,0 +1,52 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.batch;
+
+import com.bc.ceres.core.ProgressMonitor;
+
+import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.iasi.IasiFile;
+import org.eumetsat.metop.iasi.IasiSpectraExporter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Exports the spectra of an IASI product to a columnar archive.
+ *
+ * @see IasiSpectraExporter
+ */
+class SpectraExportJob implements BatchJob {
+
+    @Override
+    public String getName() {
+        return "spectra";
+    }
+
+    @Override
+    public boolean isApplicable(EpsFile epsFile) {
+        return epsFile instanceof IasiFile;
+    }
+
+    @Override
+    public File process(File file, EpsFile epsFile, File outputDir) throws IOException {
+        final File outputFile = new File(outputDir,
+                                         SounderBatchProcessor.getBaseName(file) + IasiSpectraExporter.FILE_EXTENSION);
+        new IasiSpectraExporter((IasiFile) epsFile).export(outputFile, ProgressMonitor.NULL);
+        return outputFile;
+    }
+}
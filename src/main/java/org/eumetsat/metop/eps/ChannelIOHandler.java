@@ -0,0 +1,77 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only {@link IOHandler} which serves all reads with positional reads
+ * from a {@link FileChannel}. Unlike seeking in a {@link RandomAccessFile},
+ * positional reads do not change any shared state, so a single handler can
+ * be used by several data contexts in different threads.
+ */
+class ChannelIOHandler implements IOHandler {
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    ChannelIOHandler(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        try {
+            channel = raf.getChannel();
+            fileSize = channel.size();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        long pos = position;
+        while (buffer.hasRemaining() && pos < fileSize) {
+            final int n = channel.read(buffer, pos);
+            if (n < 0) {
+                break;
+            }
+            pos += n;
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        throw new IOException("EPS files are opened read-only.");
+    }
+
+    @Override
+    public long getMaxPosition() throws IOException {
+        return fileSize;
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+}
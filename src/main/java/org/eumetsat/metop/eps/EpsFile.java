@@ -17,8 +17,10 @@
 package org.eumetsat.metop.eps;
 
 import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.IOHandler;
 import com.bc.ceres.binio.SequenceData;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.glayer.Layer;
@@ -30,29 +32,126 @@ import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.eumetsat.metop.sounder.AvhrrOverlay;
 import org.eumetsat.metop.sounder.BandInfo;
+import org.eumetsat.metop.sounder.DirectMdrReader;
 import org.eumetsat.metop.sounder.MdrReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
+/**
+ * An EPS product file.
+ * <p/>
+ * By default, an EPS file must not be read by several threads at the same
+ * time, because all reads share a single data context. If the file is opened
+ * for concurrent access, all data contexts share one file handle which is
+ * read with positional reads only, and each thread reads through a data
+ * context of its own. The contexts are owned by the file and are disposed
+ * when the file is closed. The product name, the number of MDRs and the MDR
+ * layout are read when the file is opened and are immutable afterwards, so
+ * many threads can read different MDRs without locking.
+ * <p/>
+ * A closed file must not be used any more.
+ */
 public class EpsFile {
 
+    /**
+     * The name of the system property which enables the memory-mapped I/O backend.
+     */
+    public static final String MAPPED_IO_PROPERTY = "metop.eps.mappedIO";
+
+    private final DataFormat format;
     private final CompoundData metopData;
     private final DataContext dataContext;
-    private int mdrCount = -1;
-    private EpsRecord mphr;
+    private final MappedIOHandler mappedIOHandler;
+    private final ChannelIOHandler channelIOHandler;
+    private final IOHandler concurrentIOHandler;
+    // the data of the threads reading concurrently, guarded by threadContexts
+    private final Map<Thread, CompoundData> threadData;
+    private final List<DataContext> threadContexts;
+    private volatile boolean closed;
+    private final int mdrMemberIndex;
+    private final int mdrCount;
+    private final String productName;
+    private final MdrMapping mdrMapping;
+    private final RecordLayout mdrLayout;
     private Product product;
 
     protected EpsFile(File file, DataFormat format) throws IOException {
-        dataContext = format.createContext(file, "r");
+        this(file, format, false);
+    }
+
+    /**
+     * Opens an EPS file.
+     *
+     * @param file       the file
+     * @param format     the data format
+     * @param concurrent {@code true} if the file shall be read by several threads at the same time
+     * @throws IOException if the file cannot be read
+     */
+    protected EpsFile(File file, DataFormat format, boolean concurrent) throws IOException {
+        this.format = format;
+        if (Boolean.getBoolean(MAPPED_IO_PROPERTY)) {
+            mappedIOHandler = new MappedIOHandler(file);
+            channelIOHandler = null;
+            dataContext = format.createContext(mappedIOHandler);
+        } else if (concurrent) {
+            mappedIOHandler = null;
+            channelIOHandler = new ChannelIOHandler(file);
+            dataContext = format.createContext(channelIOHandler);
+        } else {
+            mappedIOHandler = null;
+            channelIOHandler = null;
+            dataContext = format.createContext(file, "r");
+        }
         metopData = dataContext.getData();
+        if (concurrent) {
+            concurrentIOHandler = mappedIOHandler != null ? mappedIOHandler : channelIOHandler;
+            threadContexts = new ArrayList<DataContext>();
+            // threads which have terminated are dropped
+            threadData = new WeakHashMap<Thread, CompoundData>();
+            threadData.put(Thread.currentThread(), metopData);
+        } else {
+            concurrentIOHandler = null;
+            threadContexts = null;
+            threadData = null;
+        }
+
+        try {
+            mdrMemberIndex = findMdrMemberIndex();
+            final SequenceData mdrData = getMdrData();
+            mdrCount = mdrData != null ? mdrData.getElementCount() : 0;
+            productName = new EpsRecord(getMphrData(), true).getString(0);
+            mdrLayout = createMdrLayout(mdrData);
+            mdrMapping = createMdrMapping(mdrData);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return {@code true} if the file has been opened for concurrent access and
+     *         can be read by several threads at the same time
+     */
+    public boolean isConcurrentAccess() {
+        return threadData != null;
     }
     
     public synchronized Product createProduct(ProductReader reader) throws IOException {
@@ -89,20 +188,43 @@ public class EpsFile {
     }
     
     public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
         dataContext.dispose();
+        if (threadContexts != null) {
+            synchronized (threadContexts) {
+                for (DataContext context : threadContexts) {
+                    context.dispose();
+                }
+                threadContexts.clear();
+                threadData.clear();
+            }
+        }
+        if (channelIOHandler != null) {
+            try {
+                channelIOHandler.close();
+            } catch (IOException ignored) {
+                // ignore
+            }
+        }
+        if (mappedIOHandler != null) {
+            try {
+                mappedIOHandler.close();
+            } catch (IOException ignored) {
+                // ignore
+            }
+        }
     }
     
-    public synchronized String getProductName() throws IOException {
-        if (mphr == null) {
-            mphr = new EpsRecord(getMphrData(), true);
-        }
-        return mphr.getString(0);
+    public String getProductName() throws IOException {
+        return productName;
     }
     
-    public synchronized int getMdrCount() throws IOException {
-        if (mdrCount == -1) {
-            mdrCount = getMdrData().getElementCount();
-        }
+    public int getMdrCount() throws IOException {
         return mdrCount;
     }
     
@@ -123,13 +245,73 @@ public class EpsFile {
     }
 
     public void readData(MdrReader reader, int x, int y, int width, int height, ProductData buffer, ProgressMonitor pm) throws IOException {
-        int bufferIndex = 0;
+        readData(new MdrReader[]{reader}, x, y, width, height, new ProductData[]{buffer}, pm);
+    }
+
+    /**
+     * Reads the data of several readers in a single pass over the MDRs.
+     * Each MDR is visited only once and handed to all readers.
+     *
+     * @param readers the MDR readers
+     * @param x       the x-offset of the region
+     * @param y       the index of the first MDR
+     * @param width   the width of the region
+     * @param height  the number of MDRs
+     * @param buffers the target buffers, one for each reader
+     * @param pm      the progress monitor
+     * @throws IOException if an I/O error occurs
+     */
+    public void readData(MdrReader[] readers, int x, int y, int width, int height, ProductData[] buffers, ProgressMonitor pm) throws IOException {
+        readData(readers, x, y, width, height, buffers, pm, MdrWorkerPool.getExecutor(), MdrWorkerPool.getThreadCount());
+    }
+
+    /**
+     * Reads the data of several readers in a single pass over the MDRs. Memory-mapped
+     * MDRs are decoded concurrently by an executor.
+     *
+     * @param readers     the MDR readers
+     * @param x           the x-offset of the region
+     * @param y           the index of the first MDR
+     * @param width       the width of the region
+     * @param height      the number of MDRs
+     * @param buffers     the target buffers, one for each reader
+     * @param pm          the progress monitor
+     * @param executor    the executor decoding chunks of MDRs
+     * @param threadCount the number of threads of the executor; if 1, all
+     *                    MDRs are decoded by the calling thread
+     * @throws IOException if an I/O error occurs, or if reading has been cancelled
+     */
+    void readData(MdrReader[] readers, int x, int y, int width, int height, ProductData[] buffers, ProgressMonitor pm,
+                  ExecutorService executor, int threadCount) throws IOException {
+        final MdrMapping mapping = getMdrMapping();
+        final RecordLayout layout = getMdrLayout();
+        final DirectMdrReader[] directReaders = getDirectReaders(readers);
+        if (mapping != null && layout != null && directReaders != null) {
+            if (threadCount > 1 && height > 1) {
+                readDataConcurrently(directReaders, x, y, width, height, buffers, mapping, layout, pm,
+                                     executor, threadCount);
+            } else {
+                pm.beginTask("reading...", height);
+                try {
+                    for (int yi = y; yi < y + height; yi++) {
+                        readRows(directReaders, x, yi, width, 1, buffers, (yi - y) * width, mapping, layout);
+                        pm.worked(1);
+                    }
+                } finally {
+                    pm.done();
+                }
+            }
+            return;
+        }
+        final int[] bufferIndexes = new int[readers.length];
         SequenceData mdrData = getMdrData();
         pm.beginTask("reading...", height);
         try {
             for (int yi = y; yi < y + height; yi++) {
                 CompoundData mdr = mdrData.getCompound(yi).getCompound(1);
-                bufferIndex = reader.read(x, width, buffer, bufferIndex, mdr);
+                for (int i = 0; i < readers.length; i++) {
+                    bufferIndexes[i] = readers[i].read(x, width, buffers[i], bufferIndexes[i], mdr);
+                }
                 pm.worked(1);
             }
         } finally {
@@ -137,6 +319,97 @@ public class EpsFile {
         }
     }
 
+    private static DirectMdrReader[] getDirectReaders(MdrReader[] readers) {
+        final DirectMdrReader[] directReaders = new DirectMdrReader[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            if (!(readers[i] instanceof DirectMdrReader)) {
+                return null;
+            }
+            directReaders[i] = (DirectMdrReader) readers[i];
+        }
+        return directReaders;
+    }
+
+    // the mapped MDRs are only read with absolute gets, so disjoint row ranges can be decoded concurrently
+    private void readDataConcurrently(final DirectMdrReader[] readers, final int x, int y, final int width, int height,
+                                      final ProductData[] buffers, final MdrMapping mapping, final RecordLayout layout,
+                                      ProgressMonitor pm, ExecutorService executor, int threadCount) throws IOException {
+        final int chunkHeight = Math.max(1, height / (4 * threadCount));
+        final CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+        final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        // chunks which have not started yet are skipped once reading is aborted
+        final AtomicBoolean aborted = new AtomicBoolean();
+        for (int chunkY = y; chunkY < y + height; chunkY += chunkHeight) {
+            final int rowY = chunkY;
+            final int rowCount = Math.min(chunkHeight, y + height - chunkY);
+            final int bufferIndex = (chunkY - y) * width;
+            futures.add(completionService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    if (aborted.get()) {
+                        return 0;
+                    }
+                    readRows(readers, x, rowY, width, rowCount, buffers, bufferIndex, mapping, layout);
+                    return rowCount;
+                }
+            }));
+        }
+        pm.beginTask("reading...", height);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                if (pm.isCanceled()) {
+                    throw new IOException("Reading has been cancelled.");
+                }
+                pm.worked(completionService.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading has been interrupted.");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException(e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        } finally {
+            aborted.set(true);
+            awaitAll(futures);
+            pm.done();
+        }
+    }
+
+    // no chunk may write into the buffers after reading has returned
+    private static void awaitAll(List<Future<Integer>> futures) {
+        boolean interrupted = false;
+        for (Future<Integer> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // already reported or superseded by the first failure
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void readRows(DirectMdrReader[] readers, int x, int y, int width, int height, ProductData[] buffers,
+                                 int bufferIndex, MdrMapping mapping, RecordLayout layout) {
+        for (int yi = y; yi < y + height; yi++) {
+            final ByteBuffer mdr = mapping.getBuffer(yi);
+            final int bodyPosition = mapping.getBodyPosition(yi);
+            int nextBufferIndex = bufferIndex;
+            for (int i = 0; i < readers.length; i++) {
+                nextBufferIndex = readers[i].read(x, width, buffers[i], bufferIndex, mdr, bodyPosition, layout);
+            }
+            bufferIndex = nextBufferIndex;
+        }
+    }
+
     
     protected void addMetaData(Product product) throws IOException {
         MetadataElement metadataRoot = product.getMetadataRoot();
@@ -146,16 +419,43 @@ public class EpsFile {
         }
     }
     
+    /**
+     * Returns the data of the whole file. If concurrent access is enabled, the
+     * data returned belongs to the calling thread and must not be passed to
+     * other threads.
+     *
+     * @return the data
+     * @throws IllegalStateException if the file has been closed
+     */
     public CompoundData getMetopData() {
-        return metopData;
+        if (closed) {
+            throw new IllegalStateException("The EPS file has been closed.");
+        }
+        if (threadData == null) {
+            return metopData;
+        }
+        synchronized (threadContexts) {
+            if (closed) {
+                throw new IllegalStateException("The EPS file has been closed.");
+            }
+            final Thread thread = Thread.currentThread();
+            CompoundData data = threadData.get(thread);
+            if (data == null) {
+                final DataContext context = format.createContext(concurrentIOHandler);
+                threadContexts.add(context);
+                data = context.getData();
+                threadData.put(thread, data);
+            }
+            return data;
+        }
     }
  
     public CompoundData getMphrData() throws IOException {
-        return metopData.getCompound(0).getCompound(0).getCompound(1);
+        return getMetopData().getCompound(0).getCompound(0).getCompound(1);
     }
     
     public CompoundData getAuxDataRecord(String name) throws IOException {
-        CompoundData body = metopData.getSequence(2).getCompound(0);
+        CompoundData body = getMetopData().getSequence(2).getCompound(0);
         int numBodyElems = body.getMemberCount();
         for (int i = 0; i < numBodyElems; i++) {
             CompoundData compound = body.getSequence(i).getCompound(0);
@@ -168,21 +468,73 @@ public class EpsFile {
     }
     
     public SequenceData getMdrData() throws IOException {
-        CompoundData body = metopData.getSequence(2).getCompound(0);
+        if (mdrMemberIndex == -1) {
+            return null;
+        }
+        return getMetopData().getSequence(2).getCompound(0).getSequence(mdrMemberIndex);
+    }
+
+    /**
+     * Returns the memory mapping of the measurement data records. MDRs can
+     * only be accessed directly when the memory-mapped I/O backend is enabled
+     * by means of the {@link #MAPPED_IO_PROPERTY} system property.
+     *
+     * @return the MDR mapping or {@code null} if direct access is not available
+     * @throws IOException if an I/O error occurs
+     */
+    public MdrMapping getMdrMapping() throws IOException {
+        return mdrMapping;
+    }
+
+    private MdrMapping createMdrMapping(SequenceData mdrData) throws IOException {
+        if (mappedIOHandler == null || mdrData == null || mdrData.getElementCount() == 0) {
+            return null;
+        }
+        final CompoundData iprData = getMetopData().getSequence(1).getCompound(mdrMemberIndex).getCompound(1);
+        final long recordOffset = new InternalPointerRecord(iprData).getRecordOffset();
+        final int recordSize = mdrData.getSequenceType().getElementType().getSize();
+        final int headerSize = mdrData.getCompound(0).getCompound(0).getCompoundType().getSize();
+        return new MdrMapping(mappedIOHandler.getChannel(), recordOffset, recordSize, headerSize,
+                              mdrData.getElementCount());
+    }
+
+    /**
+     * Returns the byte layout of the measurement data records.
+     *
+     * @return the MDR layout or {@code null} if the MDRs are not of fixed size
+     * @throws IOException if an I/O error occurs
+     */
+    public RecordLayout getMdrLayout() throws IOException {
+        return mdrLayout;
+    }
+
+    private RecordLayout createMdrLayout(SequenceData mdrData) {
+        if (mdrData == null) {
+            return null;
+        }
+        final CompoundType recordType = (CompoundType) mdrData.getSequenceType().getElementType();
+        final RecordLayout layout = EpsFormats.getInstance().getRecordLayout(format, recordType.getName());
+        return layout != null && layout.isFixedSize() ? layout : null;
+    }
+
+    // the members of the body are in the same order as the internal pointer records
+    private int findMdrMemberIndex() throws IOException {
+        CompoundData body = getMetopData().getSequence(2).getCompound(0);
         int numBodyElems = body.getMemberCount();
         for (int i = 0; i < numBodyElems; i++) {
             SequenceData sequence = body.getSequence(i);
             String recordType = sequence.getSequenceType().getName();
             if (recordType.startsWith("mdr")) {
-                return sequence;
+                return i;
             }
         }
-        return null;
+        return -1;
     }
     
     public List<MetadataElement> getMetaData() throws IOException {
         List<MetadataElement> metaDataList = new ArrayList<MetadataElement>(20);
         
+        CompoundData metopData = getMetopData();
         CompoundData header = metopData.getCompound(0);
         final int headerCount = header.getMemberCount();
         for (int i = 0; i < headerCount; i++) {
@@ -223,6 +575,13 @@ public class EpsFile {
         return value / Math.pow(10.0, scaleFactor);
     }
     
+    public static double readVInt4(ByteBuffer buffer, int position) {
+        final byte scaleFactor = buffer.get(position);
+        final int value = buffer.getInt(position + 1);
+
+        return value / Math.pow(10.0, scaleFactor);
+    }
+    
     public static ProductData.UTC readShortCdsTime(CompoundData data) throws IOException {
         final int day = data.getUShort(0);
         final long millis = data.getUInt(1);
@@ -0,0 +1,391 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.CompoundMember;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+import org.esa.beam.util.Debug;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.bc.ceres.binio.TypeBuilder.COMPOUND;
+import static com.bc.ceres.binio.TypeBuilder.MEMBER;
+import static com.bc.ceres.binio.TypeBuilder.SEQUENCE;
+
+/**
+ * Caches the formats compiled from the EPS format descriptions on disk, so
+ * that the XML is parsed only once and not at every start of the JVM.
+ * <p/>
+ * A compiled format contains the record types with their member metadata
+ * and the format parameters, in a compact binary form. It is stored in the
+ * directory given by the system property {@link #CACHE_DIR_PROPERTY} and is
+ * keyed by the SHA-1 hash of the XML resource, so a changed format
+ * description is compiled again. If the cache directory cannot be written,
+ * the formats are parsed from the XML.
+ */
+public class EpsFormatCache {
+
+    /**
+     * The name of the system property which sets the cache directory.
+     */
+    public static final String CACHE_DIR_PROPERTY = "metop.eps.formatCacheDir";
+
+    // must be incremented whenever the encoding or the parsing of the XML changes
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x45505346; // "EPSF"
+
+    private static final int TAG_REFERENCE = 0;
+    private static final int TAG_SIMPLE = 1;
+    private static final int TAG_SEQUENCE = 2;
+    private static final int TAG_COMPOUND = 3;
+
+    private static final SimpleType[] SIMPLE_TYPES = {
+            SimpleType.BYTE, SimpleType.UBYTE, SimpleType.SHORT, SimpleType.USHORT, SimpleType.INT,
+            SimpleType.UINT, SimpleType.LONG, SimpleType.ULONG, SimpleType.FLOAT, SimpleType.DOUBLE,
+    };
+
+    private final File cacheDir;
+
+    public EpsFormatCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return the cache directory given by the system property {@link #CACHE_DIR_PROPERTY},
+     *         by default {@code .beam/metop/formats} in the user's home directory
+     */
+    public static File getDefaultCacheDir() {
+        final String path = System.getProperty(CACHE_DIR_PROPERTY);
+        if (path != null) {
+            return new File(path);
+        }
+        return new File(getCacheRootDir(), "formats");
+    }
+
+    /**
+     * @return the directory holding all on-disk caches, {@code .beam/metop} in the user's home directory
+     */
+    public static File getCacheRootDir() {
+        return new File(System.getProperty("user.home"), ".beam" + File.separator + "metop");
+    }
+
+    /**
+     * Returns the format described by an XML resource. The compiled format is
+     * read from the cache, or compiled and put into the cache if not cached yet.
+     *
+     * @param epsXmlName the name of the XML resource, relative to this class
+     *
+     * @return the format description
+     * @throws Exception if the format cannot be created
+     */
+    public EpsXml getEpsXml(String epsXmlName) throws Exception {
+        final URL resource = EpsFormatCache.class.getResource(epsXmlName);
+        if (resource == null) {
+            throw new IOException("No such resource: " + epsXmlName);
+        }
+        final File cacheFile = new File(cacheDir, getCacheFileName(epsXmlName, readBytes(resource)));
+        if (cacheFile.isFile()) {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+                try {
+                    return read(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // a damaged cache file is replaced
+                Debug.trace(e);
+            }
+        }
+
+        final EpsXml epsXml = new EpsXml(resource.toURI());
+        try {
+            write(epsXml, cacheFile);
+        } catch (IOException e) {
+            Debug.trace(e);
+        }
+        return epsXml;
+    }
+
+    private static String getCacheFileName(String epsXmlName, byte[] bytes) {
+        final String baseName = epsXmlName.endsWith(".xml")
+                                ? epsXmlName.substring(0, epsXmlName.length() - 4) : epsXmlName;
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            final StringBuilder hash = new StringBuilder(2 * digest.length);
+            for (final byte b : digest) {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return baseName + "-" + hash + ".bin";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readBytes(URL resource) throws IOException {
+        final InputStream in = resource.openStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(128 * 1024);
+            final byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void write(EpsXml epsXml, File cacheFile) throws IOException {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + cacheDir);
+        }
+        // written to a temporary file first, so that concurrent JVMs never read a partial file
+        final File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheDir);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                write(epsXml, out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(cacheFile) && !cacheFile.isFile()) {
+                throw new IOException("Cannot write cache file: " + cacheFile);
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Writes a format in compiled form.
+     *
+     * @param epsXml the format description
+     * @param out    the output
+     *
+     * @throws IOException if an I/O error occurs or the format contains types which cannot be compiled
+     */
+    static void write(EpsXml epsXml, DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(epsXml.getProductName());
+        out.writeUTF(epsXml.getFormatDescription());
+
+        final Map<String, String> parameters = epsXml.getParameters();
+        out.writeInt(parameters.size());
+        for (final Map.Entry<String, String> entry : parameters.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+
+        final List<String> recordTypeNames = epsXml.getRecordTypeNames();
+        final Map<Type, Integer> typeIndexes = new IdentityHashMap<Type, Integer>();
+        out.writeInt(recordTypeNames.size());
+        for (final String recordTypeName : recordTypeNames) {
+            out.writeUTF(recordTypeName);
+            writeType(epsXml.getFormat().getTypeDef(recordTypeName), out, typeIndexes);
+        }
+    }
+
+    /**
+     * Reads a format in compiled form.
+     *
+     * @param in the input
+     *
+     * @return the format description
+     * @throws IOException if an I/O error occurs or the input is not a compiled format of this version
+     */
+    static EpsXml read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a compiled format of version " + VERSION);
+        }
+        final String productName = in.readUTF();
+        final String formatDescription = in.readUTF();
+
+        final int parameterCount = in.readInt();
+        final Map<String, String> parameters = new HashMap<String, String>(parameterCount * 2);
+        for (int i = 0; i < parameterCount; i++) {
+            parameters.put(in.readUTF(), in.readUTF());
+        }
+
+        final int recordTypeCount = in.readInt();
+        final List<String> recordTypeNames = new ArrayList<String>(recordTypeCount);
+        final List<Type> recordTypes = new ArrayList<Type>(recordTypeCount);
+        final List<Type> types = new ArrayList<Type>(256);
+        for (int i = 0; i < recordTypeCount; i++) {
+            recordTypeNames.add(in.readUTF());
+            recordTypes.add(readType(in, types));
+        }
+        return new EpsXml(productName, formatDescription, parameters, recordTypeNames, recordTypes);
+    }
+
+    // types are numbered in the order they are written, a type used more than once is written only once
+
+    private static void writeType(Type type, DataOutput out, Map<Type, Integer> typeIndexes) throws IOException {
+        final Integer index = typeIndexes.get(type);
+        if (index != null) {
+            out.writeByte(TAG_REFERENCE);
+            out.writeInt(index);
+            return;
+        }
+        typeIndexes.put(type, typeIndexes.size());
+        if (type.isSimpleType()) {
+            out.writeByte(TAG_SIMPLE);
+            out.writeByte(getSimpleTypeIndex(type));
+        } else if (type.isSequenceType()) {
+            final SequenceType sequenceType = (SequenceType) type;
+            out.writeByte(TAG_SEQUENCE);
+            out.writeInt(sequenceType.getElementCount());
+            writeType(sequenceType.getElementType(), out, typeIndexes);
+        } else if (type.isCompoundType()) {
+            final CompoundType compoundType = (CompoundType) type;
+            out.writeByte(TAG_COMPOUND);
+            out.writeUTF(compoundType.getName());
+            out.writeInt(compoundType.getMemberCount());
+            for (int i = 0; i < compoundType.getMemberCount(); i++) {
+                final CompoundMember member = compoundType.getMember(i);
+                out.writeUTF(member.getName());
+                writeType(member.getType(), out, typeIndexes);
+                writeMetaData(member.getMetadata(), out);
+            }
+        } else {
+            throw new IOException("Unsupported type: " + type.getName());
+        }
+    }
+
+    private static Type readType(DataInput in, List<Type> types) throws IOException {
+        final int tag = in.readByte();
+        if (tag == TAG_REFERENCE) {
+            final int index = in.readInt();
+            if (index < 0 || index >= types.size() || types.get(index) == null) {
+                throw new IOException("Invalid type reference: " + index);
+            }
+            return types.get(index);
+        }
+        final int index = types.size();
+        types.add(null);
+        final Type type;
+        if (tag == TAG_SIMPLE) {
+            final int simpleTypeIndex = in.readByte();
+            if (simpleTypeIndex < 0 || simpleTypeIndex >= SIMPLE_TYPES.length) {
+                throw new IOException("Invalid simple type: " + simpleTypeIndex);
+            }
+            type = SIMPLE_TYPES[simpleTypeIndex];
+        } else if (tag == TAG_SEQUENCE) {
+            final int elementCount = in.readInt();
+            type = SEQUENCE(readType(in, types), elementCount);
+        } else if (tag == TAG_COMPOUND) {
+            final String name = in.readUTF();
+            final CompoundMember[] members = new CompoundMember[in.readInt()];
+            for (int i = 0; i < members.length; i++) {
+                final String memberName = in.readUTF();
+                members[i] = MEMBER(memberName, readType(in, types));
+                members[i].setMetadata(readMetaData(in));
+            }
+            type = COMPOUND(name, members);
+        } else {
+            throw new IOException("Invalid type tag: " + tag);
+        }
+        types.set(index, type);
+        return type;
+    }
+
+    private static int getSimpleTypeIndex(Type type) throws IOException {
+        for (int i = 0; i < SIMPLE_TYPES.length; i++) {
+            if (SIMPLE_TYPES[i] == type) {
+                return i;
+            }
+        }
+        throw new IOException("Unsupported simple type: " + type.getName());
+    }
+
+    private static void writeMetaData(Object metadata, DataOutput out) throws IOException {
+        if (!(metadata instanceof EpsMetaData)) {
+            out.writeBoolean(false);
+            return;
+        }
+        final EpsMetaData metaData = (EpsMetaData) metadata;
+        out.writeBoolean(true);
+        writeString(metaData.getType(), out);
+        writeString(metaData.getDescription(), out);
+        writeString(metaData.getUnits(), out);
+        writeString(metaData.getScalingFactor(), out);
+        final Map<String, String> items = metaData.getItems();
+        out.writeInt(items != null ? items.size() : -1);
+        if (items != null) {
+            for (final Map.Entry<String, String> entry : items.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+    }
+
+    private static EpsMetaData readMetaData(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final EpsMetaData metaData = new EpsMetaData();
+        metaData.setType(readString(in));
+        metaData.setDescription(readString(in));
+        metaData.setUnits(readString(in));
+        metaData.setScalingFactor(readString(in));
+        final int itemCount = in.readInt();
+        if (itemCount >= 0) {
+            final Map<String, String> items = new LinkedHashMap<String, String>(itemCount * 2);
+            for (int i = 0; i < itemCount; i++) {
+                items.put(in.readUTF(), in.readUTF());
+            }
+            metaData.setItems(items);
+        }
+        return metaData;
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -18,11 +18,10 @@ package org.eumetsat.metop.eps;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.binio.DataFormat;
 import com.bc.ceres.core.Assert;
 
@@ -85,37 +84,38 @@ public class EpsFormats {
     }
     
     private interface EpsFileFactory {
-        EpsFile create(File file, DataFormat dataFormat) throws IOException;
+        EpsFile create(File file, DataFormat dataFormat, boolean concurrentAccess) throws IOException;
     }
     
     private class IasiFileFactory implements EpsFileFactory {
-        public EpsFile create(File file, DataFormat dataFormat) throws IOException {
-            return new IasiFile(file, dataFormat);
+        public EpsFile create(File file, DataFormat dataFormat, boolean concurrentAccess) throws IOException {
+            return new IasiFile(file, dataFormat, concurrentAccess);
         }
     }
 
     private class MhsFileFactory implements EpsFileFactory {
-        public EpsFile create(File file, DataFormat dataFormat) throws IOException {
-            return new MhsFile(file, dataFormat);
+        public EpsFile create(File file, DataFormat dataFormat, boolean concurrentAccess) throws IOException {
+            return new MhsFile(file, dataFormat, concurrentAccess);
         }
     }
 
     private class AmsuFileFactory implements EpsFileFactory {
-        public EpsFile create(File file, DataFormat dataFormat) throws IOException {
-            return new AmsuFile(file, dataFormat);
+        public EpsFile create(File file, DataFormat dataFormat, boolean concurrentAccess) throws IOException {
+            return new AmsuFile(file, dataFormat, concurrentAccess);
         }
     }
     
     private class DefaultFileFactory implements EpsFileFactory {
-        public EpsFile create(File file, DataFormat dataFormat) throws IOException {
-            return new EpsFile(file, dataFormat);
+        public EpsFile create(File file, DataFormat dataFormat, boolean concurrentAccess) throws IOException {
+            return new EpsFile(file, dataFormat, concurrentAccess);
         }
     }
     
     private final Map<FormatDescriptor, String> formatDescriptors; 
     private final Map<FormatDescriptor, EpsFileFactory> fileFactories; 
     private final Map<String, DataFormat> formats; 
-    private DataFormat mphrFormat; 
+    private final Map<DataFormat, Map<String, RecordLayout>> recordLayouts;
+    private final EpsFormatCache formatCache;
     private static final EpsFormats INSTANCE = new EpsFormats();
     
     private EpsFormats() {
@@ -123,6 +123,8 @@ public class EpsFormats {
         formatDescriptors = new HashMap<FormatDescriptor, String>(16);
         fileFactories = new HashMap<FormatDescriptor, EpsFileFactory>(16);
         formats = new HashMap<String, DataFormat>(42);
+        recordLayouts = new HashMap<DataFormat, Map<String, RecordLayout>>(16);
+        formatCache = new EpsFormatCache(EpsFormatCache.getDefaultCacheDir());
         
         EpsFileFactory defaultFileFactory = new DefaultFileFactory();
         
@@ -170,7 +172,7 @@ public class EpsFormats {
         return INSTANCE;
     }
     
-    private DataFormat getDataFormat(FormatDescriptor descriptor) {
+    private synchronized DataFormat getDataFormat(FormatDescriptor descriptor) {
         String epsXmlName = formatDescriptors.get(descriptor);
         if (formats.containsKey(epsXmlName)) {
             return formats.get(epsXmlName);
@@ -180,11 +182,45 @@ public class EpsFormats {
         return dataFormat;
     }
     
-    private synchronized DataFormat getMPHRformat() {
-        if (mphrFormat == null) {
-            mphrFormat = createFormat("mphr.xml");
+    /**
+     * Returns the data format for products of the given type and format version.
+     *
+     * @param instrument      the instrument ID, e.g. {@code IASI}
+     * @param processingLevel the processing level, e.g. {@code 1C}
+     * @param majorVersion    the major format version
+     * @param minorVersion    the minor format version
+     *
+     * @return the data format or {@code null} if the format is not supported
+     */
+    synchronized DataFormat getDataFormat(String instrument, String processingLevel, int majorVersion, int minorVersion) {
+        FormatDescriptor descriptor = new FormatDescriptor(instrument, processingLevel, majorVersion, minorVersion);
+        if (!isSupported(descriptor)) {
+            return null;
         }
-        return mphrFormat;
+        return getDataFormat(descriptor);
+    }
+    
+    /**
+     * Returns the byte layout of a record type defined in the given format.
+     * The layout is compiled only once for each format.
+     *
+     * @param dataFormat the data format
+     * @param typeName   the name of the record type, e.g. {@code mdr:iasi:2}
+     *
+     * @return the record layout or {@code null} if the format does not define the type
+     */
+    public synchronized RecordLayout getRecordLayout(DataFormat dataFormat, String typeName) {
+        Map<String, RecordLayout> layoutMap = recordLayouts.get(dataFormat);
+        if (layoutMap == null) {
+            layoutMap = new HashMap<String, RecordLayout>(8);
+            recordLayouts.put(dataFormat, layoutMap);
+        }
+        RecordLayout layout = layoutMap.get(typeName);
+        if (layout == null && dataFormat.isTypeDef(typeName)) {
+            layout = RecordLayout.create((CompoundType) dataFormat.getTypeDef(typeName));
+            layoutMap.put(typeName, layout);
+        }
+        return layout;
     }
     
     private boolean isSupported(FormatDescriptor descriptor) {
@@ -192,37 +228,56 @@ public class EpsFormats {
     }
     
     public EpsFile openFile(File file) throws IOException {
+        return openFile(file, false);
+    }
+
+    /**
+     * Opens an EPS product file.
+     *
+     * @param file             the file
+     * @param concurrentAccess {@code true} if the file shall be read by several threads at the same time
+     *
+     * @return the EPS file or {@code null} if the product type is not supported
+     * @throws IOException if the file is not an EPS product or cannot be read
+     * @see EpsFile#isConcurrentAccess()
+     */
+    public EpsFile openFile(File file, boolean concurrentAccess) throws IOException {
         FormatDescriptor formatDescriptor = readFormatDescriptor(file);
-        DataFormat dataFormat = getDataFormat(formatDescriptor);
+        if (formatDescriptor == null) {
+            throw new IOException("Not an EPS product: " + file);
+        }
         EpsFileFactory epsFileFactory = fileFactories.get(formatDescriptor);
         if (epsFileFactory != null) {
-            return epsFileFactory.create(file, dataFormat);
+            DataFormat dataFormat = getDataFormat(formatDescriptor);
+            return epsFileFactory.create(file, dataFormat, concurrentAccess);
         }
         return null;
     }
     
     public boolean canOpenFile(File file) throws IOException {
         FormatDescriptor formatDescriptor = readFormatDescriptor(file);
-        return isSupported(formatDescriptor);
+        return formatDescriptor != null && isSupported(formatDescriptor);
     }
     
+    /**
+     * Reads the format descriptor from the main product header. Only the
+     * MPHR is read, see {@link MphrSniffer}.
+     *
+     * @return the format descriptor or {@code null} if the file is not an EPS product
+     */
     private static FormatDescriptor readFormatDescriptor(File file) throws IOException {
-        DataFormat mphrFormat = EpsFormats.getInstance().getMPHRformat();
-        EpsFile epsFile = new EpsFile(file, mphrFormat);
-        CompoundData epsData = epsFile.getMetopData();
-        EpsRecord mphrRecord = new EpsRecord(epsData.getCompound(1), true);
-        String instrumentId = mphrRecord.getString(mphrRecord.getMemberIndex("INSTRUMENT_ID"));
-        String processingLevel = mphrRecord.getString(mphrRecord.getMemberIndex("PROCESSING_LEVEL"));
-        int majorVersion = mphrRecord.getInt(mphrRecord.getMemberIndex("FORMAT_MAJOR_VERSION"));
-        int minorVersion = mphrRecord.getInt(mphrRecord.getMemberIndex("FORMAT_MINOR_VERSION"));
-        return new EpsFormats.FormatDescriptor(instrumentId, processingLevel, majorVersion, minorVersion);
+        MphrSniffer.Header header = MphrSniffer.getInstance().sniff(file);
+        if (header == null) {
+            return null;
+        }
+        return new EpsFormats.FormatDescriptor(header.getInstrumentId(), header.getProcessingLevel(),
+                                               header.getFormatMajorVersion(), header.getFormatMinorVersion());
     }
     
     private DataFormat createFormat(String epsXmlName) {
-        URL resource = EpsFormats.class.getResource(epsXmlName);
         EpsXml epsXml;
         try {
-            epsXml = new EpsXml(resource.toURI());
+            epsXml = formatCache.getEpsXml(epsXmlName);
         } catch (Exception e) {
             throw new IllegalArgumentException("Problems creating format for " + epsXmlName, e);
         }
@@ -0,0 +1,646 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataFormat;
+import org.esa.beam.framework.datamodel.MetadataAttribute;
+import org.esa.beam.framework.datamodel.MetadataElement;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGeoCoding;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes synthetic EPS products for load and regression testing.
+ * <p/>
+ * The record layouts are taken from the same EPS format descriptions which
+ * are used for reading products, so the generated files are read by exactly
+ * the same code as real products. A product consists of the MPHR, the
+ * internal pointer records, the IASI scale factor GIADR (IASI only) and the
+ * MDRs.
+ * <p/>
+ * All products start at 2009-01-01 00:00:00 UTC and share a simple geometry:
+ * the latitude decreases linearly from 75 to -75 degrees over the duration of
+ * the product and the longitude spans -25 to 25 degrees across track.
+ * {@link #createAvhrrProduct()} creates an AVHRR product with a matching
+ * geo-coding, so that overlays can be created for the sounder products.
+ * <p/>
+ * The radiances are pseudo-random, but deterministic: the same product type,
+ * MDR count and seed always yield the same file. MDRs are written one after
+ * another through a single reusable buffer, so that products of production
+ * size (about 2 GB for a full IASI orbit) are written at disk speed.
+ */
+public class EpsProductGenerator {
+
+    /**
+     * The product types which can be generated.
+     */
+    public enum ProductType {
+        IASI_L1C("IASI", "1C", InstrumentGroup.IASI, 8000),
+        AMSUA_L1B("AMSA", "1B", InstrumentGroup.AMSUA, 8000),
+        MHS_L1B("MHSx", "1B", InstrumentGroup.MHS, 8000 / 3);
+
+        private final String instrumentId;
+        private final String processingLevel;
+        private final InstrumentGroup instrumentGroup;
+        private final int lineMillis;
+
+        private ProductType(String instrumentId, String processingLevel, InstrumentGroup instrumentGroup,
+                            int lineMillis) {
+            this.instrumentId = instrumentId;
+            this.processingLevel = processingLevel;
+            this.instrumentGroup = instrumentGroup;
+            this.lineMillis = lineMillis;
+        }
+
+        /**
+         * Returns the time between two MDRs.
+         *
+         * @return the time (ms)
+         */
+        public int getLineMillis() {
+            return lineMillis;
+        }
+    }
+
+    public static final int AVHRR_WIDTH = 2048;
+    public static final int AVHRR_LINES_PER_SECOND = 6;
+
+    private static final int START_DAY = 3288; // 2009-01-01
+    private static final String START_TIME = "20090101000000Z";
+    private static final int GRH_SIZE = 20;
+    private static final int IPR_SIZE = GRH_SIZE + 7;
+    private static final int MDR_SUBCLASS = 2;
+
+    private static final int IASI_SNOT = 30;
+    private static final int IASI_PN = 4;
+    private static final int IASI_SS = 8700;
+    private static final int IASI_NSFIRST = 2581;
+    private static final int IASI_NSLAST = 11041;
+    private static final int IASI_DWN = 25;
+    private static final int IASI_GIADR_SUBCLASS = 1;
+    private static final int[][] IASI_BANDS = {{2581, 5921, 7}, {5922, 9121, 8}, {9122, 11041, 9}};
+
+    private static final int AMSU_WIDTH = 30;
+    private static final int MHS_WIDTH = 90;
+    private static final double[] AMSU_FREQUENCIES = {
+            23.8, 31.4, 50.3, 52.8, 53.59, 54.4, 54.94, 55.5,
+            57.290344, 57.290344, 57.290344, 57.290344, 57.290344, 57.290344, 89.0
+    };
+    private static final double[] MHS_FREQUENCIES = {89.0, 157.0, 183.311, 183.311, 190.311};
+
+    private static final double MIN_SCENE_TEMPERATURE = 200.0;
+    private static final double MAX_SCENE_TEMPERATURE = 280.0;
+    private static final double IASI_REFERENCE_TEMPERATURE = 250.0;
+
+    private final ProductType productType;
+    private final DataFormat format;
+    private int mdrCount;
+    private long seed;
+
+    public EpsProductGenerator(ProductType productType) {
+        this.productType = productType;
+        format = EpsFormats.getInstance().getDataFormat(productType.instrumentId, productType.processingLevel, 10, 0);
+        mdrCount = 1;
+    }
+
+    public ProductType getProductType() {
+        return productType;
+    }
+
+    public int getMdrCount() {
+        return mdrCount;
+    }
+
+    public void setMdrCount(int mdrCount) {
+        if (mdrCount < 1) {
+            throw new IllegalArgumentException("mdrCount < 1");
+        }
+        this.mdrCount = mdrCount;
+    }
+
+    /**
+     * Sets the number of MDRs from the length of the orbit segment covered by
+     * the product. A full orbit takes about 100 minutes.
+     *
+     * @param minutes the orbit length (min)
+     */
+    public void setOrbitLength(double minutes) {
+        setMdrCount(Math.max(1, (int) Math.round(minutes * 60000.0 / productType.lineMillis)));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the time covered by the product.
+     *
+     * @return the duration (ms)
+     */
+    public long getDuration() {
+        return (long) mdrCount * productType.lineMillis;
+    }
+
+    public String getProductName() {
+        return productType.instrumentId + "_xxx_" + productType.processingLevel + "_M02_" + START_TIME + "_"
+               + formatTime(getDuration()) + "_N_O_SYNTH";
+    }
+
+    /**
+     * Returns the size of the product file.
+     *
+     * @return the size (bytes)
+     */
+    public long getFileSize() {
+        final RecordLayout[] auxLayouts = getAuxLayouts();
+        long size = GRH_SIZE + getMphrType().getSize() + (auxLayouts.length + 1) * (long) IPR_SIZE;
+        for (RecordLayout layout : auxLayouts) {
+            size += GRH_SIZE + layout.getSize();
+        }
+        return size + (long) mdrCount * (GRH_SIZE + getMdrLayout().getSize());
+    }
+
+    /**
+     * Writes the product into a directory. The file is named by the product name.
+     *
+     * @param dir the target directory
+     *
+     * @return the product file
+     * @throws IOException if an I/O error occurs
+     */
+    public File write(File dir) throws IOException {
+        final File file = new File(dir, getProductName() + ".nat");
+        writeFile(file);
+        return file;
+    }
+
+    /**
+     * Writes the product into the given file.
+     *
+     * @param file the target file
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeFile(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            final RecordLayout[] auxLayouts = getAuxLayouts();
+            final RecordLayout mdrLayout = getMdrLayout();
+
+            writeRecord(channel, createMphr(auxLayouts.length));
+
+            long offset = GRH_SIZE + getMphrType().getSize() + (auxLayouts.length + 1) * (long) IPR_SIZE;
+            for (RecordLayout layout : auxLayouts) {
+                writeRecord(channel, createIpr(RecordClass.GIADR, IASI_GIADR_SUBCLASS, offset));
+                offset += GRH_SIZE + layout.getSize();
+            }
+            writeRecord(channel, createIpr(RecordClass.MDR, MDR_SUBCLASS, offset));
+
+            if (productType == ProductType.IASI_L1C) {
+                writeRecord(channel, createIasiScaleFactors(auxLayouts[0]));
+            }
+
+            final ByteBuffer mdr = ByteBuffer.allocateDirect(GRH_SIZE + mdrLayout.getSize());
+            final MdrWriter mdrWriter = createMdrWriter(mdrLayout);
+            for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+                final long lineStart = (long) mdrIndex * productType.lineMillis;
+                putGrh(mdr, RecordClass.MDR, MDR_SUBCLASS, mdrLayout.getSize(), lineStart,
+                       lineStart + productType.lineMillis);
+                mdrWriter.write(mdr, mdrIndex, lineStart, new XorShiftRandom(seed, mdrIndex));
+                writeRecord(channel, mdr);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates an AVHRR product covering the same time as the generated product,
+     * geo-coded consistently with it.
+     *
+     * @return the AVHRR product
+     */
+    public Product createAvhrrProduct() {
+        final long duration = getDuration();
+        final int height = (int) (duration * AVHRR_LINES_PER_SECOND / 1000);
+        final Product product = new Product("AVHR_xxx_1B_M02_" + START_TIME + "_" + formatTime(duration) + "_N_O_SYNTH",
+                                            "AVHRR_3_L1B", AVHRR_WIDTH, height);
+        product.setStartTime(createUtc(0));
+        product.setEndTime(createUtc(duration));
+
+        final float latTop = (float) latitude(0);
+        final float latBottom = (float) latitude(duration);
+        final float lonLeft = (float) longitude(0.5);
+        final float lonRight = (float) longitude(AVHRR_WIDTH - 0.5);
+        final TiePointGrid latGrid = new TiePointGrid("latitude", 2, 2, 0.5f, 0.5f, AVHRR_WIDTH - 1, height - 1,
+                                                      new float[]{latTop, latTop, latBottom, latBottom});
+        final TiePointGrid lonGrid = new TiePointGrid("longitude", 2, 2, 0.5f, 0.5f, AVHRR_WIDTH - 1, height - 1,
+                                                      new float[]{lonLeft, lonRight, lonLeft, lonRight});
+        product.addTiePointGrid(latGrid);
+        product.addTiePointGrid(lonGrid);
+        product.setGeoCoding(new TiePointGeoCoding(latGrid, lonGrid));
+
+        final MetadataElement readerInfo = new MetadataElement("READER_INFO");
+        readerInfo.addAttribute(new MetadataAttribute("TRIM_LEFT", ProductData.createInstance(new int[]{0}), true));
+        product.getMetadataRoot().addElement(readerInfo);
+        return product;
+    }
+
+    private CompoundType getMphrType() {
+        return (CompoundType) format.getTypeDef("mphr");
+    }
+
+    private RecordLayout[] getAuxLayouts() {
+        if (productType == ProductType.IASI_L1C) {
+            return new RecordLayout[]{getLayout(RecordClass.GIADR, IASI_GIADR_SUBCLASS)};
+        }
+        return new RecordLayout[0];
+    }
+
+    private RecordLayout getMdrLayout() {
+        return getLayout(RecordClass.MDR, MDR_SUBCLASS);
+    }
+
+    private RecordLayout getLayout(RecordClass recordClass, int subclass) {
+        final String typeName = EpsBasisTypes.buildTypeName(recordClass, productType.instrumentGroup, subclass);
+        return EpsFormats.getInstance().getRecordLayout(format, typeName);
+    }
+
+    private MdrWriter createMdrWriter(RecordLayout layout) {
+        switch (productType) {
+            case IASI_L1C:
+                return new IasiMdrWriter(layout);
+            case AMSUA_L1B:
+                return new MicrowaveMdrWriter(layout, AMSU_WIDTH, "SCENE_RADIANCE", AMSU_FREQUENCIES);
+            default:
+                return new MicrowaveMdrWriter(layout, MHS_WIDTH, "SCENE_RADIANCES", MHS_FREQUENCIES);
+        }
+    }
+
+    private ByteBuffer createMphr(int giadrCount) {
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("PRODUCT_NAME", getProductName());
+        values.put("INSTRUMENT_ID", productType.instrumentId);
+        values.put("PROCESSING_LEVEL", productType.processingLevel);
+        values.put("SPACECRAFT_ID", "M02");
+        values.put("FORMAT_MAJOR_VERSION", "10");
+        values.put("FORMAT_MINOR_VERSION", "0");
+        values.put("SENSING_START", START_TIME);
+        values.put("SENSING_END", formatTime(getDuration()));
+        values.put("ACTUAL_PRODUCT_SIZE", String.valueOf(getFileSize()));
+        values.put("TOTAL_RECORDS", String.valueOf(1 + (giadrCount + 1) + giadrCount + mdrCount));
+        values.put("TOTAL_MPHR", "1");
+        values.put("TOTAL_IPR", String.valueOf(giadrCount + 1));
+        values.put("TOTAL_GIADR", String.valueOf(giadrCount));
+        values.put("TOTAL_MDR", String.valueOf(mdrCount));
+        values.put("DURATION_OF_PRODUCT", String.valueOf(getDuration()));
+        values.put("MILLISECONDS_OF_DATA_PRESENT", String.valueOf(getDuration()));
+
+        final CompoundType mphrType = getMphrType();
+        final ByteBuffer mphr = ByteBuffer.allocate(GRH_SIZE + mphrType.getSize());
+        putGrh(mphr, RecordClass.MPHR, 0, mphrType.getSize(), 0, getDuration());
+        mphr.position(GRH_SIZE);
+        for (int i = 0; i < mphrType.getMemberCount(); i++) {
+            final String name = mphrType.getMemberName(i);
+            final CompoundType fieldType = (CompoundType) mphrType.getMemberType(i);
+            final int length = fieldType.getMemberType(1).getSize();
+            final EpsMetaData metaData = (EpsMetaData) mphrType.getMember(i).getMetadata();
+            final String type = metaData.getType();
+            String value = values.get(name);
+            if (value == null) {
+                value = getDefaultValue(metaData);
+            }
+            putAscii(mphr, name, 30);
+            putAscii(mphr, "= ", 2);
+            if (type.equals("integer") || type.equals("uinteger")) {
+                // numbers are right-aligned
+                for (int j = value.length(); j < length; j++) {
+                    mphr.put((byte) ' ');
+                }
+                putAscii(mphr, value, Math.min(length, value.length()));
+            } else {
+                putAscii(mphr, value, length);
+            }
+            mphr.put((byte) '\n');
+        }
+        return mphr;
+    }
+
+    private ByteBuffer createIpr(RecordClass targetClass, int targetSubclass, long targetOffset) {
+        final ByteBuffer ipr = ByteBuffer.allocate(IPR_SIZE);
+        putGrh(ipr, RecordClass.IPR, 0, IPR_SIZE - GRH_SIZE, 0, getDuration());
+        ipr.put(GRH_SIZE, (byte) targetClass.getValue());
+        ipr.put(GRH_SIZE + 1, (byte) productType.instrumentGroup.getValue());
+        ipr.put(GRH_SIZE + 2, (byte) targetSubclass);
+        ipr.putInt(GRH_SIZE + 3, (int) targetOffset);
+        return ipr;
+    }
+
+    private ByteBuffer createIasiScaleFactors(RecordLayout layout) {
+        final ByteBuffer giadr = ByteBuffer.allocate(GRH_SIZE + layout.getSize());
+        putGrh(giadr, RecordClass.GIADR, IASI_GIADR_SUBCLASS, layout.getSize(), 0, getDuration());
+        giadr.putShort(GRH_SIZE + layout.getField("IDefScaleSondNbScale").getOffset(), (short) IASI_BANDS.length);
+        final RecordLayout.Field nsfirst = layout.getField("IDefScaleSondNsfirst");
+        final RecordLayout.Field nslast = layout.getField("IDefScaleSondNslast");
+        final RecordLayout.Field scaleFactor = layout.getField("IDefScaleSondScaleFactor");
+        for (int i = 0; i < IASI_BANDS.length; i++) {
+            giadr.putShort(GRH_SIZE + nsfirst.getOffset(i), (short) IASI_BANDS[i][0]);
+            giadr.putShort(GRH_SIZE + nslast.getOffset(i), (short) IASI_BANDS[i][1]);
+            giadr.putShort(GRH_SIZE + scaleFactor.getOffset(i), (short) IASI_BANDS[i][2]);
+        }
+        return giadr;
+    }
+
+    private void putGrh(ByteBuffer record, RecordClass recordClass, int subclass, int bodySize, long start, long end) {
+        record.put(0, (byte) recordClass.getValue());
+        record.put(1, (byte) (recordClass == RecordClass.MDR || recordClass == RecordClass.GIADR
+                              ? productType.instrumentGroup.getValue() : InstrumentGroup.GENERIC.getValue()));
+        record.put(2, (byte) subclass);
+        record.put(3, (byte) 1);
+        record.putInt(4, GRH_SIZE + bodySize);
+        putShortCdsTime(record, 8, start);
+        putShortCdsTime(record, 14, end);
+    }
+
+    private double latitude(double millis) {
+        return 75.0 - 150.0 * millis / getDuration();
+    }
+
+    private static double longitude(double avhrrColumn) {
+        return -25.0 + 50.0 * avhrrColumn / AVHRR_WIDTH;
+    }
+
+    private static double viewZenith(double avhrrColumn) {
+        return 48.3 * Math.abs(avhrrColumn / AVHRR_WIDTH * 2.0 - 1.0);
+    }
+
+    private static double radianceAtWavenumber(double k, double t) {
+        return 1.1910427584934558E-16 * k * k * k / (Math.exp(1.4387751601679205E-02 * k / t) - 1.0);
+    }
+
+    private static double radianceAtFrequency(double f, double t) {
+        return 4.9183999150233067E-14 * f * f * f * f * f / (Math.exp(4.7992373449498874E-02 * f / t) - 1.0);
+    }
+
+    private static void writeRecord(FileChannel channel, ByteBuffer record) throws IOException {
+        record.clear();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    private static void putVInt4(ByteBuffer buffer, int position, int value) {
+        buffer.put(position, (byte) 0);
+        buffer.putInt(position + 1, value);
+    }
+
+    private static void putShortCdsTime(ByteBuffer buffer, int position, long millis) {
+        buffer.putShort(position, (short) (START_DAY + millis / 86400000L));
+        buffer.putInt(position + 2, (int) (millis % 86400000L));
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.put(i < value.length() ? (byte) value.charAt(i) : (byte) ' ');
+        }
+    }
+
+    private static String getDefaultValue(EpsMetaData metaData) {
+        final String type = metaData.getType();
+        if (type.equals("enumerated")) {
+            return new TreeMap<String, String>(metaData.getItems()).firstKey();
+        } else if (type.equals("time")) {
+            return START_TIME;
+        } else if (type.equals("longtime")) {
+            return "20090101000000000Z";
+        } else if (type.equals("integer") || type.equals("uinteger")) {
+            return "0";
+        } else if (type.equals("boolean")) {
+            return "F";
+        }
+        return "x";
+    }
+
+    private static ProductData.UTC createUtc(long millis) {
+        final long seconds = millis / 1000;
+        return new ProductData.UTC(START_DAY + (int) (seconds / 86400), (int) (seconds % 86400),
+                                   (int) (millis % 1000) * 1000);
+    }
+
+    private static String formatTime(long millis) {
+        final long seconds = millis / 1000;
+        return String.format("200901%02d%02d%02d%02dZ", 1 + seconds / 86400, (seconds / 3600) % 24,
+                             (seconds / 60) % 60, seconds % 60);
+    }
+
+    private interface MdrWriter {
+
+        /**
+         * Fills the body of an MDR. Every call must set the same fields, because
+         * the buffer is reused for all MDRs.
+         */
+        void write(ByteBuffer mdr, int mdrIndex, long lineStart, XorShiftRandom random);
+    }
+
+    private class IasiMdrWriter implements MdrWriter {
+
+        private final RecordLayout.Field dwn;
+        private final RecordLayout.Field nsfirst;
+        private final RecordLayout.Field nslast;
+        private final RecordLayout.Field dat;
+        private final RecordLayout.Field loc;
+        private final RecordLayout.Field geoLoc;
+        private final RecordLayout.Field geoAngles;
+        private final RecordLayout.Field spect;
+        private final float[] referenceCounts;
+
+        private IasiMdrWriter(RecordLayout layout) {
+            dwn = layout.getField("IDefSpectDWn1b");
+            nsfirst = layout.getField("IDefNsfirst1b");
+            nslast = layout.getField("IDefNslast1b");
+            dat = layout.getField("GEPSDatIasi");
+            loc = layout.getField("GEPSLocIasiAvhrr_IASI");
+            geoLoc = layout.getField("GGeoSondLoc");
+            geoAngles = layout.getField("GGeoSondAnglesMETOP");
+            spect = layout.getField("GS1cSpect");
+            referenceCounts = createReferenceCounts();
+        }
+
+        @Override
+        public void write(ByteBuffer mdr, int mdrIndex, long lineStart, XorShiftRandom random) {
+            putVInt4(mdr, GRH_SIZE + dwn.getOffset(), IASI_DWN);
+            mdr.putInt(GRH_SIZE + nsfirst.getOffset(), IASI_NSFIRST);
+            mdr.putInt(GRH_SIZE + nslast.getOffset(), IASI_NSLAST);
+
+            final int efovWidth = AVHRR_WIDTH / IASI_SNOT;
+            for (int efov = 0; efov < IASI_SNOT; efov++) {
+                putShortCdsTime(mdr, GRH_SIZE + dat.getOffset(efov), lineStart + efov * (productType.lineMillis / 37));
+                for (int ifov = 0; ifov < IASI_PN; ifov++) {
+                    // IFOV 0 is north-west, 1 south-west, 2 south-east and 3 north-east of the EFOV centre
+                    final int dx = ifov < 2 ? -9 : 9;
+                    final int dy = ifov == 0 || ifov == 3 ? -9 : 9;
+                    final double column = (efov + 0.5) * efovWidth + dx;
+                    final double lineOffsetMillis = (24 + dy) * 1000.0 / AVHRR_LINES_PER_SECOND;
+                    putVInt4(mdr, GRH_SIZE + loc.getOffset(efov, ifov, 0), (int) Math.round(lineOffsetMillis));
+                    putVInt4(mdr, GRH_SIZE + loc.getOffset(efov, ifov, 1), (int) Math.round(column));
+
+                    final double lat = latitude(lineStart + lineOffsetMillis);
+                    mdr.putInt(GRH_SIZE + geoLoc.getOffset(efov, ifov, 0), (int) Math.round(longitude(column) * 1.0E6));
+                    mdr.putInt(GRH_SIZE + geoLoc.getOffset(efov, ifov, 1), (int) Math.round(lat * 1.0E6));
+                    mdr.putInt(GRH_SIZE + geoAngles.getOffset(efov, ifov, 0),
+                               (int) Math.round(viewZenith(column) * 1.0E6));
+
+                    // a scene-dependent factor for the whole spectrum and a little noise for each channel
+                    final float sceneFactor = 0.6f + 0.6f * random.nextFloat();
+                    int position = GRH_SIZE + spect.getOffset(efov, ifov, 0);
+                    for (int channel = 0; channel < IASI_SS; channel++) {
+                        final int count = (int) (referenceCounts[channel] * sceneFactor) + random.nextNoise();
+                        mdr.putShort(position, (short) Math.max(0, Math.min(Short.MAX_VALUE, count)));
+                        position += 2;
+                    }
+                }
+            }
+        }
+
+        private float[] createReferenceCounts() {
+            final float[] counts = new float[IASI_SS];
+            for (int channel = 0; channel < IASI_SS; channel++) {
+                final int channelNumber = IASI_NSFIRST + channel;
+                for (int[] band : IASI_BANDS) {
+                    if (channelNumber >= band[0] && channelNumber <= band[1]) {
+                        final double wavenumber = IASI_DWN * (channelNumber - 1.0);
+                        final double radiance = radianceAtWavenumber(wavenumber, IASI_REFERENCE_TEMPERATURE);
+                        counts[channel] = (float) (radiance * Math.pow(10.0, band[2]));
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+
+    private class MicrowaveMdrWriter implements MdrWriter {
+
+        private final int width;
+        private final double[] frequencies;
+        private final RecordLayout.Field radiance;
+        private final RecordLayout.Field location;
+        private final RecordLayout.Field angles;
+
+        private MicrowaveMdrWriter(RecordLayout layout, int width, String radianceName, double[] frequencies) {
+            this.width = width;
+            this.frequencies = frequencies;
+            radiance = layout.getField(radianceName);
+            location = layout.getField("EARTH_LOCATION");
+            angles = layout.getField("ANGULAR_RELATION");
+        }
+
+        @Override
+        public void write(ByteBuffer mdr, int mdrIndex, long lineStart, XorShiftRandom random) {
+            final double lat = latitude(lineStart + productType.lineMillis / 2);
+            for (int x = 0; x < width; x++) {
+                final double column = (x + 0.5) * AVHRR_WIDTH / width;
+                final double temperature = MIN_SCENE_TEMPERATURE
+                                           + (MAX_SCENE_TEMPERATURE - MIN_SCENE_TEMPERATURE) * random.nextFloat();
+                for (int channel = 0; channel < frequencies.length; channel++) {
+                    final double r = radianceAtFrequency(frequencies[channel], temperature);
+                    mdr.putInt(GRH_SIZE + radiance.getOffset(x, channel), (int) Math.round(r * 1.0E8));
+                }
+                mdr.putInt(GRH_SIZE + location.getOffset(x, 0), (int) Math.round(lat * 1.0E4));
+                mdr.putInt(GRH_SIZE + location.getOffset(x, 1), (int) Math.round(longitude(column) * 1.0E4));
+                mdr.putShort(GRH_SIZE + angles.getOffset(x, 1), (short) Math.round(viewZenith(column) * 1.0E2));
+            }
+        }
+    }
+
+    /**
+     * A fast xorshift generator. Each MDR has its own generator, derived from
+     * the seed and the MDR index, so that the content of an MDR does not depend
+     * on the MDRs written before.
+     */
+    private static class XorShiftRandom {
+
+        private long state;
+
+        private XorShiftRandom(long seed, int mdrIndex) {
+            // scramble the seed with the SplitMix64 finalizer
+            long z = seed + (mdrIndex + 1) * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            state = z ^ (z >>> 31);
+            if (state == 0) {
+                state = 0x9E3779B97F4A7C15L;
+            }
+        }
+
+        private long next() {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            return state;
+        }
+
+        float nextFloat() {
+            return (next() >>> 40) / (float) (1 << 24);
+        }
+
+        int nextNoise() {
+            return (int) (next() >>> 60) - 8;
+        }
+    }
+
+    /**
+     * Writes a synthetic product.
+     * <p/>
+     * Usage: {@code EpsProductGenerator <IASI_L1C|AMSUA_L1B|MHS_L1B> <orbit length (min)> <dir> [<seed>]}
+     *
+     * @param args the command line arguments
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: EpsProductGenerator <IASI_L1C|AMSUA_L1B|MHS_L1B> <orbit length (min)> <dir> [<seed>]");
+            System.exit(1);
+        }
+        final EpsProductGenerator generator = new EpsProductGenerator(ProductType.valueOf(args[0]));
+        generator.setOrbitLength(Double.parseDouble(args[1]));
+        if (args.length > 3) {
+            generator.setSeed(Long.parseLong(args[3]));
+        }
+        final long t0 = System.currentTimeMillis();
+        final File file = generator.write(new File(args[2]));
+        final long t1 = System.currentTimeMillis();
+        System.out.println("Wrote " + file + " (" + file.length() + " bytes) in " + (t1 - t0) + " ms");
+    }
+}
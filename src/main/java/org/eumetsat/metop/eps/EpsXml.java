@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,14 +43,45 @@ import static com.bc.ceres.binio.TypeBuilder.*;
 public class EpsXml {
     private final Map<String, String> parameterMap;
     private final DataFormat format;
+    private final List<String> recordTypeNames;
     private String formatDescription = "";
     private String productName;
 
     public EpsXml(URI uri) throws IOException, DataConversionException {
         parameterMap = new HashMap<String, String>(42);
+        recordTypeNames = new ArrayList<String>(16);
         format = new DataFormat();
         format.setBasisFormat(EpsBasisTypes.getInstance().getFormat());
         parseDocument(uri);
+        buildProductType();
+    }
+
+    /**
+     * Creates the format from the parts of an already parsed format description.
+     *
+     * @param productName       the product name, e.g. {@code IASI-1C}
+     * @param formatDescription the format description
+     * @param parameterMap      the format parameters
+     * @param recordTypeNames   the names of the record types, in document order
+     * @param recordTypes       the record types
+     *
+     * @see EpsFormatCache
+     */
+    EpsXml(String productName, String formatDescription, Map<String, String> parameterMap,
+           List<String> recordTypeNames, List<Type> recordTypes) {
+        this.productName = productName;
+        this.formatDescription = formatDescription;
+        this.parameterMap = new HashMap<String, String>(parameterMap);
+        this.recordTypeNames = new ArrayList<String>(recordTypeNames);
+        format = new DataFormat();
+        format.setBasisFormat(EpsBasisTypes.getInstance().getFormat());
+        for (int i = 0; i < recordTypeNames.size(); i++) {
+            format.addTypeDef(recordTypeNames.get(i), recordTypes.get(i));
+        }
+        buildProductType();
+    }
+
+    private void buildProductType() {
         EpsTypeBuilder epsTypeBuilder = new EpsTypeBuilder("EPS-METOP-Format", format);
         if (productName.equals("MPHR")) {
             format.setType(epsTypeBuilder.buildMPHR());
@@ -70,6 +102,21 @@ public class EpsXml {
         return parameterMap.get(name);
     }
 
+    String getProductName() {
+        return productName;
+    }
+
+    Map<String, String> getParameters() {
+        return Collections.unmodifiableMap(parameterMap);
+    }
+
+    /**
+     * @return the names of the record types defined by the format description, in document order
+     */
+    List<String> getRecordTypeNames() {
+        return Collections.unmodifiableList(recordTypeNames);
+    }
+
     private void parseDocument(URI uri) throws IOException, DataConversionException {
         SAXBuilder builder = new SAXBuilder();
         Document document;
@@ -115,6 +162,7 @@ public class EpsXml {
             if (recordClass.isAscii()) {
                 recordType = parseAsciiRecord(record);
                 format.addTypeDef(recordClass.toString(), recordType);
+                recordTypeNames.add(recordClass.toString());
             } else {
                 recordType = parseBinaryRecord(record);
                 InstrumentGroup instrumentGroup = InstrumentGroup.GENERIC;
@@ -125,6 +173,7 @@ public class EpsXml {
                 int subclass = record.getAttribute("subclass").getIntValue();
                 String recordTypeName = EpsBasisTypes.buildTypeName(recordClass, instrumentGroup, subclass);
                 format.addTypeDef(recordTypeName, recordType);
+                recordTypeNames.add(recordTypeName);
             }
         }
     }
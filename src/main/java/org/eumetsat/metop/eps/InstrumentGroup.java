@@ -47,6 +47,10 @@ public enum InstrumentGroup {
         return intToEnum.get(index);
     }
     
+    public int getValue() {
+        return value;
+    }
+    
     @Override
     public String toString() {
         return super.toString().toLowerCase();
@@ -0,0 +1,105 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only {@link IOHandler} which serves all reads from memory-mapped
+ * windows of a file instead of seeking in a {@link RandomAccessFile}.
+ * <p/>
+ * A single {@link MappedByteBuffer} cannot address more than 2 GB, so larger
+ * files are mapped in several consecutive windows.
+ */
+class MappedIOHandler implements IOHandler {
+
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long windowSize;
+    private final MappedByteBuffer[] windows;
+
+    MappedIOHandler(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    /**
+     * @param file       the file
+     * @param windowSize the size of the windows in bytes, at most 2 GB
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedIOHandler(File file, long windowSize) throws IOException {
+        this.windowSize = windowSize;
+        raf = new RandomAccessFile(file, "r");
+        try {
+            channel = raf.getChannel();
+            fileSize = channel.size();
+            final int windowCount = (int) ((fileSize + windowSize - 1) / windowSize);
+            windows = new MappedByteBuffer[windowCount];
+            for (int i = 0; i < windowCount; i++) {
+                final long start = i * windowSize;
+                final long size = Math.min(windowSize, fileSize - start);
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        int offset = 0;
+        long pos = position;
+        while (offset < data.length && pos < fileSize) {
+            final ByteBuffer window = windows[(int) (pos / windowSize)].duplicate();
+            window.position((int) (pos % windowSize));
+            final int n = Math.min(data.length - offset, window.remaining());
+            window.get(data, offset, n);
+            offset += n;
+            pos += n;
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        throw new IOException("Memory-mapped EPS files are read-only.");
+    }
+
+    @Override
+    public long getMaxPosition() throws IOException {
+        return fileSize;
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides direct access to the fixed-size measurement data records (MDRs)
+ * of an EPS file through memory-mapped buffers.
+ * <p/>
+ * The MDR section is mapped in windows holding a whole number of records,
+ * so that no record ever spans two buffers. The buffers returned are shared
+ * and must only be accessed with absolute {@code get} methods.
+ */
+public class MdrMapping {
+
+    private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private final long firstRecordOffset;
+    private final int recordSize;
+    private final int recordCount;
+    private final int headerSize;
+    private final int recordsPerWindow;
+    private final ByteBuffer[] windows;
+
+    MdrMapping(FileChannel channel, long firstRecordOffset, int recordSize, int headerSize, int recordCount) throws IOException {
+        this(channel, firstRecordOffset, recordSize, headerSize, recordCount, MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * @param channel           the file channel
+     * @param firstRecordOffset the file offset of the first MDR
+     * @param recordSize        the size of an MDR including the generic record header
+     * @param headerSize        the size of the generic record header
+     * @param recordCount       the number of MDRs
+     * @param maxWindowSize     the maximum size of a window in bytes, at most 2 GB
+     * @throws IOException if the MDRs cannot be mapped
+     */
+    MdrMapping(FileChannel channel, long firstRecordOffset, int recordSize, int headerSize, int recordCount,
+               long maxWindowSize) throws IOException {
+        this.firstRecordOffset = firstRecordOffset;
+        this.recordSize = recordSize;
+        this.recordCount = recordCount;
+        this.headerSize = headerSize;
+        recordsPerWindow = (int) Math.max(1, maxWindowSize / recordSize);
+        final int windowCount = (recordCount + recordsPerWindow - 1) / recordsPerWindow;
+        windows = new ByteBuffer[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            final int firstRecord = i * recordsPerWindow;
+            final int records = Math.min(recordsPerWindow, recordCount - firstRecord);
+            final long start = firstRecordOffset + (long) firstRecord * recordSize;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) records * recordSize);
+        }
+    }
+
+    /**
+     * @return the file offset of the first MDR
+     */
+    long getFirstRecordOffset() {
+        return firstRecordOffset;
+    }
+
+    /**
+     * @return the size of the generic record header
+     */
+    int getHeaderSize() {
+        return headerSize;
+    }
+
+    /**
+     * @return the number of MDRs in a window, all windows but the last are full
+     */
+    int getRecordsPerWindow() {
+        return recordsPerWindow;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Returns the buffer containing the MDR with the given index.
+     *
+     * @param mdrIndex the MDR index
+     *
+     * @return the buffer, must not be modified
+     */
+    public ByteBuffer getBuffer(int mdrIndex) {
+        return windows[mdrIndex / recordsPerWindow];
+    }
+
+    /**
+     * Returns the position of the MDR body (i.e. the first byte after the
+     * generic record header) within the buffer returned by {@link #getBuffer(int)}.
+     *
+     * @param mdrIndex the MDR index
+     *
+     * @return the position of the MDR body
+     */
+    public int getBodyPosition(int mdrIndex) {
+        return (mdrIndex % recordsPerWindow) * recordSize + headerSize;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared pool of worker threads used for decoding MDRs concurrently.
+ * <p/>
+ * The number of threads is given by the system property {@link #THREAD_COUNT_PROPERTY}
+ * and defaults to the number of available processors. It is fixed when the pool
+ * is first used. All threads are daemon threads, so the pool never has to be
+ * shut down explicitly.
+ */
+public class MdrWorkerPool {
+
+    /**
+     * The name of the system property which sets the number of worker threads.
+     */
+    public static final String THREAD_COUNT_PROPERTY = "metop.eps.workerThreads";
+
+    private static ExecutorService executor;
+    private static int threadCount;
+
+    private MdrWorkerPool() {
+    }
+
+    /**
+     * @return the number of threads of the pool
+     */
+    public static synchronized int getThreadCount() {
+        if (threadCount == 0) {
+            threadCount = Math.max(1, Integer.getInteger(THREAD_COUNT_PROPERTY,
+                                                         Runtime.getRuntime().availableProcessors()));
+        }
+        return threadCount;
+    }
+
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(getThreadCount(), new WorkerThreadFactory());
+        }
+        return executor;
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "mdr-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Reads the few main product header (MPHR) fields needed for identifying
+ * an EPS product, without building an {@link EpsFile}.
+ * <p/>
+ * The MPHR is read with a single positioned read and its ASCII lines are
+ * parsed directly. The headers are cached by file path, the cached header
+ * of a file is used as long as the size and the modification time of the
+ * file are unchanged. The number of cached headers is given by the system
+ * property {@link #CACHE_SIZE_PROPERTY}.
+ */
+public final class MphrSniffer {
+
+    /**
+     * The name of the system property which sets the number of cached headers.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "metop.eps.mphrCacheSize";
+
+    /**
+     * The size of the MPHR including its generic record header.
+     */
+    static final int MPHR_SIZE = 3307;
+    private static final int GRH_SIZE = 20;
+
+    private static final Header NO_HEADER = new Header(null, null, null, 0, 0, null, null, 0);
+    private static MphrSniffer instance;
+
+    private final int cacheSize;
+    private final Map<String, CacheEntry> entries;
+    private long hitCount;
+    private long missCount;
+
+    MphrSniffer(int cacheSize) {
+        this.cacheSize = cacheSize;
+        entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    }
+
+    public static synchronized MphrSniffer getInstance() {
+        if (instance == null) {
+            instance = new MphrSniffer(Math.max(0, Integer.getInteger(CACHE_SIZE_PROPERTY, 4096)));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the header of a product.
+     *
+     * @param file the product file
+     *
+     * @return the header, or {@code null} if the file is not an EPS product
+     * @throws IOException if an I/O error occurs
+     */
+    public Header sniff(File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        synchronized (this) {
+            final CacheEntry entry = entries.get(path);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                hitCount++;
+                return entry.header != NO_HEADER ? entry.header : null;
+            }
+            missCount++;
+        }
+        final Header header = readHeader(file);
+        synchronized (this) {
+            if (cacheSize > 0) {
+                entries.put(path, new CacheEntry(size, lastModified, header != null ? header : NO_HEADER));
+                if (entries.size() > cacheSize) {
+                    entries.remove(entries.keySet().iterator().next());
+                }
+            }
+        }
+        return header;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getCachedHeaderCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static Header readHeader(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MPHR_SIZE, channel.size()));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return parseHeader(buffer.array(), buffer.position());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Parses the header fields from the MPHR.
+     *
+     * @param bytes  the MPHR bytes, starting with the generic record header
+     * @param length the number of bytes
+     *
+     * @return the header, or {@code null} if the bytes are not an MPHR
+     */
+    static Header parseHeader(byte[] bytes, int length) {
+        if (length <= GRH_SIZE || bytes[0] != RecordClass.MPHR.getValue()) {
+            return null;
+        }
+        String instrumentId = null;
+        String processingLevel = null;
+        String spacecraftId = null;
+        String majorVersion = null;
+        String minorVersion = null;
+        String sensingStart = null;
+        String sensingEnd = null;
+        String orbitStart = null;
+
+        int lineStart = GRH_SIZE;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int separator = lineStart;
+            while (separator < lineEnd && bytes[separator] != '=') {
+                separator++;
+            }
+            if (separator < lineEnd) {
+                final String name = new String(bytes, lineStart, separator - lineStart).trim();
+                final String value = new String(bytes, separator + 1, lineEnd - separator - 1).trim();
+                if ("INSTRUMENT_ID".equals(name)) {
+                    instrumentId = value;
+                } else if ("PROCESSING_LEVEL".equals(name)) {
+                    processingLevel = value;
+                } else if ("SPACECRAFT_ID".equals(name)) {
+                    spacecraftId = value;
+                } else if ("SENSING_START".equals(name)) {
+                    sensingStart = value;
+                } else if ("SENSING_END".equals(name)) {
+                    sensingEnd = value;
+                } else if ("FORMAT_MAJOR_VERSION".equals(name)) {
+                    majorVersion = value;
+                } else if ("FORMAT_MINOR_VERSION".equals(name)) {
+                    minorVersion = value;
+                } else if ("ORBIT_START".equals(name)) {
+                    orbitStart = value;
+                    // the last field needed
+                    break;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (instrumentId == null || processingLevel == null || majorVersion == null || minorVersion == null) {
+            return null;
+        }
+        try {
+            return new Header(instrumentId, processingLevel, spacecraftId,
+                              Integer.parseInt(majorVersion), Integer.parseInt(minorVersion),
+                              parseTime(sensingStart), parseTime(sensingEnd),
+                              orbitStart != null ? Integer.parseInt(orbitStart) : 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Date parseTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        final DateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return dateFormat.parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The identifying fields of an MPHR.
+     */
+    public static final class Header {
+        private final String instrumentId;
+        private final String processingLevel;
+        private final String spacecraftId;
+        private final int formatMajorVersion;
+        private final int formatMinorVersion;
+        private final Date sensingStart;
+        private final Date sensingEnd;
+        private final int orbit;
+
+        Header(String instrumentId, String processingLevel, String spacecraftId,
+               int formatMajorVersion, int formatMinorVersion, Date sensingStart, Date sensingEnd, int orbit) {
+            this.instrumentId = instrumentId;
+            this.processingLevel = processingLevel;
+            this.spacecraftId = spacecraftId;
+            this.formatMajorVersion = formatMajorVersion;
+            this.formatMinorVersion = formatMinorVersion;
+            this.sensingStart = sensingStart;
+            this.sensingEnd = sensingEnd;
+            this.orbit = orbit;
+        }
+
+        /**
+         * @return the instrument ID, e.g. {@code IASI}
+         */
+        public String getInstrumentId() {
+            return instrumentId;
+        }
+
+        /**
+         * @return the processing level, e.g. {@code 1C}
+         */
+        public String getProcessingLevel() {
+            return processingLevel;
+        }
+
+        /**
+         * @return the spacecraft ID, e.g. {@code M02}, or {@code null} if not given
+         */
+        public String getSpacecraftId() {
+            return spacecraftId;
+        }
+
+        public int getFormatMajorVersion() {
+            return formatMajorVersion;
+        }
+
+        public int getFormatMinorVersion() {
+            return formatMinorVersion;
+        }
+
+        /**
+         * @return the sensing start time, or {@code null} if not given
+         */
+        public Date getSensingStart() {
+            return sensingStart != null ? new Date(sensingStart.getTime()) : null;
+        }
+
+        /**
+         * @return the sensing end time, or {@code null} if not given
+         */
+        public Date getSensingEnd() {
+            return sensingEnd != null ? new Date(sensingEnd.getTime()) : null;
+        }
+
+        /**
+         * @return the start orbit number, or 0 if not given
+         */
+        public int getOrbit() {
+            return orbit;
+        }
+
+        @Override
+        public String toString() {
+            return instrumentId + "-" + processingLevel + "_" + formatMajorVersion + "." + formatMinorVersion;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final long size;
+        private final long lastModified;
+        private final Header header;
+
+        private CacheEntry(long size, long lastModified, Header header) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.header = header;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import org.esa.beam.util.Debug;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A catalogue of the EPS products in a data directory, used for finding the
+ * sounder granules which match an AVHRR scene.
+ * <p/>
+ * For each {@code .nat} file the catalogue records the instrument, the
+ * spacecraft, the orbit and the sensing time range, read from the MPHR by
+ * the {@link MphrSniffer}. The catalogue is kept in the index file
+ * {@link #INDEX_FILE_NAME} in the data directory and is updated
+ * incrementally: only files which are new or have changed since the last
+ * update are read. Files which are not EPS products are recorded as well, so
+ * they are not read again either. The directory is checked for changes before
+ * each query.
+ * If the index file cannot be written, the catalogue is kept in memory only.
+ */
+public class ProductCatalogue {
+
+    /**
+     * The name of the index file.
+     */
+    public static final String INDEX_FILE_NAME = ".metop-catalogue";
+
+    private static final String INDEX_HEADER = "# METOP product catalogue 1";
+    private static final Map<File, ProductCatalogue> catalogues = new HashMap<File, ProductCatalogue>();
+
+    private static final Comparator<Granule> START_COMPARATOR = new Comparator<Granule>() {
+        @Override
+        public int compare(Granule g1, Granule g2) {
+            return g1.sensingStart < g2.sensingStart ? -1 : g1.sensingStart > g2.sensingStart ? 1 : 0;
+        }
+    };
+
+    private final File dir;
+    private final File indexFile;
+    private final Map<String, Granule> granules;
+    // the size and the modification time of the files which are not EPS products
+    private final Map<String, long[]> rejectedFiles;
+    private final Map<String, InstrumentIndex> instrumentIndexes;
+    private boolean loaded;
+    private long dirLastModified;
+
+    ProductCatalogue(File dir) {
+        this.dir = dir;
+        indexFile = new File(dir, INDEX_FILE_NAME);
+        granules = new HashMap<String, Granule>();
+        rejectedFiles = new HashMap<String, long[]>();
+        instrumentIndexes = new HashMap<String, InstrumentIndex>();
+    }
+
+    /**
+     * Returns the catalogue of a data directory.
+     *
+     * @param dir the data directory
+     *
+     * @return the catalogue
+     */
+    public static synchronized ProductCatalogue getCatalogue(File dir) {
+        final File key = dir.getAbsoluteFile();
+        ProductCatalogue catalogue = catalogues.get(key);
+        if (catalogue == null) {
+            catalogue = new ProductCatalogue(key);
+            catalogues.put(key, catalogue);
+        }
+        return catalogue;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Updates the catalogue if the data directory has changed since the last update.
+     *
+     * @throws IOException if the data directory cannot be listed
+     */
+    public synchronized void update() throws IOException {
+        long lastModified = dir.lastModified();
+        if (loaded && lastModified == dirLastModified) {
+            return;
+        }
+        if (!loaded) {
+            readIndex();
+            loaded = true;
+        }
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(".nat") && file.isFile();
+            }
+        });
+        if (files == null) {
+            throw new IOException("Cannot list directory: " + dir);
+        }
+
+        boolean changed = false;
+        final Map<String, Granule> updatedGranules = new HashMap<String, Granule>(files.length * 2);
+        final Map<String, long[]> updatedRejectedFiles = new HashMap<String, long[]>();
+        for (final File file : files) {
+            final String name = file.getName();
+            final long size = file.length();
+            final long fileLastModified = file.lastModified();
+            Granule granule = granules.get(name);
+            if (granule != null && granule.size == size && granule.lastModified == fileLastModified) {
+                updatedGranules.put(name, granule);
+                continue;
+            }
+            final long[] rejected = rejectedFiles.get(name);
+            if (rejected != null && rejected[0] == size && rejected[1] == fileLastModified) {
+                updatedRejectedFiles.put(name, rejected);
+                continue;
+            }
+            granule = readGranule(file);
+            if (granule != null) {
+                updatedGranules.put(name, granule);
+            } else {
+                updatedRejectedFiles.put(name, new long[]{size, fileLastModified});
+            }
+            changed = true;
+        }
+        if (changed || updatedGranules.size() != granules.size()
+            || updatedRejectedFiles.size() != rejectedFiles.size()) {
+            granules.clear();
+            granules.putAll(updatedGranules);
+            rejectedFiles.clear();
+            rejectedFiles.putAll(updatedRejectedFiles);
+            buildInstrumentIndexes();
+            writeIndex();
+            // writing the index modifies the directory
+            lastModified = dir.lastModified();
+        }
+        dirLastModified = lastModified;
+    }
+
+    /**
+     * Finds the granules of an instrument whose sensing time range overlaps a given time range.
+     *
+     * @param instrumentId the instrument ID, e.g. {@code IASI}, {@code AMSA} or {@code MHSx}
+     * @param spacecraftId the spacecraft ID, e.g. {@code M02}, or {@code null} for any spacecraft
+     * @param start        the start of the time range (ms since 1970)
+     * @param end          the end of the time range (ms since 1970)
+     *
+     * @return the granules, ordered by sensing start time
+     * @throws IOException if the catalogue cannot be updated
+     */
+    public synchronized List<Granule> findGranules(String instrumentId, String spacecraftId, long start, long end)
+            throws IOException {
+        update();
+        final List<Granule> result = new ArrayList<Granule>();
+        final InstrumentIndex index = instrumentIndexes.get(instrumentId);
+        if (index == null) {
+            return result;
+        }
+        // granules starting after the end of the range cannot overlap it, and
+        // granules starting before start - maxDuration end before the range
+        final int upper = index.upperBound(end);
+        int lower = upper;
+        while (lower > 0 && index.granules[lower - 1].sensingStart >= start - index.maxDuration) {
+            lower--;
+        }
+        for (int i = lower; i < upper; i++) {
+            final Granule granule = index.granules[i];
+            if (granule.sensingEnd >= start && (spacecraftId == null || spacecraftId.equals(granule.spacecraftId))) {
+                result.add(granule);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the granule of an instrument which overlaps a given time range most.
+     *
+     * @param instrumentId the instrument ID, e.g. {@code IASI}, {@code AMSA} or {@code MHSx}
+     * @param spacecraftId the spacecraft ID, e.g. {@code M02}, or {@code null} for any spacecraft
+     * @param start        the start of the time range (ms since 1970)
+     * @param end          the end of the time range (ms since 1970)
+     *
+     * @return the granule, or {@code null} if no granule overlaps the time range
+     * @throws IOException if the catalogue cannot be updated
+     */
+    public Granule findBestGranule(String instrumentId, String spacecraftId, long start, long end)
+            throws IOException {
+        Granule bestGranule = null;
+        long bestOverlap = -1;
+        for (final Granule granule : findGranules(instrumentId, spacecraftId, start, end)) {
+            final long overlap = Math.min(end, granule.sensingEnd) - Math.max(start, granule.sensingStart);
+            if (overlap > bestOverlap) {
+                bestOverlap = overlap;
+                bestGranule = granule;
+            }
+        }
+        return bestGranule;
+    }
+
+    /**
+     * @return the number of granules in the catalogue
+     */
+    public synchronized int getGranuleCount() {
+        return granules.size();
+    }
+
+    private Granule readGranule(File file) {
+        try {
+            final MphrSniffer.Header header = MphrSniffer.getInstance().sniff(file);
+            if (header == null || header.getSensingStart() == null || header.getSensingEnd() == null) {
+                return null;
+            }
+            return new Granule(file, file.length(), file.lastModified(), header.getInstrumentId(),
+                               header.getSpacecraftId() != null ? header.getSpacecraftId() : "",
+                               header.getOrbit(),
+                               header.getSensingStart().getTime(), header.getSensingEnd().getTime());
+        } catch (IOException e) {
+            Debug.trace(e);
+            return null;
+        }
+    }
+
+    private void buildInstrumentIndexes() {
+        final Map<String, List<Granule>> lists = new HashMap<String, List<Granule>>();
+        for (final Granule granule : granules.values()) {
+            List<Granule> list = lists.get(granule.instrumentId);
+            if (list == null) {
+                list = new ArrayList<Granule>();
+                lists.put(granule.instrumentId, list);
+            }
+            list.add(granule);
+        }
+        instrumentIndexes.clear();
+        for (final Map.Entry<String, List<Granule>> entry : lists.entrySet()) {
+            final Granule[] array = entry.getValue().toArray(new Granule[entry.getValue().size()]);
+            Arrays.sort(array, START_COMPARATOR);
+            instrumentIndexes.put(entry.getKey(), new InstrumentIndex(array));
+        }
+    }
+
+    private void readIndex() {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+            try {
+                if (!INDEX_HEADER.equals(reader.readLine())) {
+                    return;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] tokens = line.split("\t");
+                    if (tokens.length == 3) {
+                        rejectedFiles.put(tokens[0], new long[]{Long.parseLong(tokens[1]), Long.parseLong(tokens[2])});
+                        continue;
+                    }
+                    if (tokens.length != 8) {
+                        continue;
+                    }
+                    final Granule granule = new Granule(new File(dir, tokens[0]),
+                                                        Long.parseLong(tokens[1]), Long.parseLong(tokens[2]),
+                                                        tokens[3], tokens[4], Integer.parseInt(tokens[5]),
+                                                        Long.parseLong(tokens[6]), Long.parseLong(tokens[7]));
+                    granules.put(tokens[0], granule);
+                }
+            } finally {
+                reader.close();
+            }
+            buildInstrumentIndexes();
+        } catch (Exception e) {
+            // a damaged index is rebuilt from the products
+            Debug.trace(e);
+            granules.clear();
+            rejectedFiles.clear();
+        }
+    }
+
+    private void writeIndex() {
+        final File tmpFile = new File(dir, INDEX_FILE_NAME + ".tmp");
+        try {
+            final BufferedWriter writer = new BufferedWriter(new FileWriter(tmpFile));
+            try {
+                writer.write(INDEX_HEADER);
+                writer.newLine();
+                for (final Granule granule : granules.values()) {
+                    writer.write(granule.file.getName() + '\t' + granule.size + '\t' + granule.lastModified + '\t'
+                                 + granule.instrumentId + '\t' + granule.spacecraftId + '\t' + granule.orbit + '\t'
+                                 + granule.sensingStart + '\t' + granule.sensingEnd);
+                    writer.newLine();
+                }
+                for (final Map.Entry<String, long[]> entry : rejectedFiles.entrySet()) {
+                    writer.write(entry.getKey() + '\t' + entry.getValue()[0] + '\t' + entry.getValue()[1]);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+            if (indexFile.exists() && !indexFile.delete() || !tmpFile.renameTo(indexFile)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            // the directory may be read-only, the catalogue is kept in memory then
+            Debug.trace(e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * The granules of an instrument, ordered by sensing start time.
+     */
+    private static final class InstrumentIndex {
+        private final Granule[] granules;
+        private final long maxDuration;
+
+        private InstrumentIndex(Granule[] granules) {
+            this.granules = granules;
+            long maxDuration = 0;
+            for (final Granule granule : granules) {
+                maxDuration = Math.max(maxDuration, granule.sensingEnd - granule.sensingStart);
+            }
+            this.maxDuration = maxDuration;
+        }
+
+        /**
+         * @return the index of the first granule starting after the given time
+         */
+        private int upperBound(long time) {
+            int low = 0;
+            int high = granules.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (granules[mid].sensingStart <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * An EPS product recorded in the catalogue.
+     */
+    public static final class Granule {
+        private final File file;
+        private final long size;
+        private final long lastModified;
+        private final String instrumentId;
+        private final String spacecraftId;
+        private final int orbit;
+        private final long sensingStart;
+        private final long sensingEnd;
+
+        private Granule(File file, long size, long lastModified, String instrumentId, String spacecraftId,
+                        int orbit, long sensingStart, long sensingEnd) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.instrumentId = instrumentId;
+            this.spacecraftId = spacecraftId;
+            this.orbit = orbit;
+            this.sensingStart = sensingStart;
+            this.sensingEnd = sensingEnd;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getInstrumentId() {
+            return instrumentId;
+        }
+
+        public String getSpacecraftId() {
+            return spacecraftId;
+        }
+
+        public int getOrbit() {
+            return orbit;
+        }
+
+        /**
+         * @return the sensing start time (ms since 1970)
+         */
+        public long getSensingStart() {
+            return sensingStart;
+        }
+
+        /**
+         * @return the sensing end time (ms since 1970)
+         */
+        public long getSensingEnd() {
+            return sensingEnd;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName();
+        }
+    }
+}
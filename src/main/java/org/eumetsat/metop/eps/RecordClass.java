@@ -42,6 +42,10 @@ public enum RecordClass {
         return intToEnum.get(index);
     }
     
+    public int getValue() {
+        return value;
+    }
+    
     public boolean isAscii() {
         return isAscii;
     }
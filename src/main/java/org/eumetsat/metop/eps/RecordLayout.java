@@ -0,0 +1,221 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The byte layout of a fixed-size EPS record body.
+ * <p/>
+ * For each member of the record the layout holds the offset relative to the
+ * start of the record body and the byte strides of all array dimensions, so
+ * that e.g. {@code GS1cSpect[efov][ifov][channel]} can be located by stride
+ * arithmetic instead of resolving nested sequences by name.
+ */
+public class RecordLayout {
+
+    private final String name;
+    private final int size;
+    private final Map<String, Field> fieldMap;
+
+    private RecordLayout(String name, int size, Map<String, Field> fieldMap) {
+        this.name = name;
+        this.size = size;
+        this.fieldMap = fieldMap;
+    }
+
+    /**
+     * Creates the layout for a record type. Members following a member of
+     * variable size cannot be located and are omitted from the layout.
+     *
+     * @param recordType the record type
+     *
+     * @return the record layout
+     */
+    public static RecordLayout create(CompoundType recordType) {
+        final int memberCount = recordType.getMemberCount();
+        final Map<String, Field> fieldMap = new HashMap<String, Field>(memberCount * 2);
+        int offset = 0;
+        for (int i = 0; i < memberCount; i++) {
+            final Type memberType = recordType.getMemberType(i);
+            final int memberSize = memberType.getSize();
+            if (memberSize < 0) {
+                return new RecordLayout(recordType.getName(), -1, fieldMap);
+            }
+            final String memberName = recordType.getMemberName(i);
+            fieldMap.put(memberName, new Field(memberName, offset, memberType));
+            offset += memberSize;
+        }
+        return new RecordLayout(recordType.getName(), offset, fieldMap);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the size of the record body.
+     *
+     * @return the size in bytes or {@code -1} if the record is not of fixed size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isFixedSize() {
+        return size >= 0;
+    }
+
+    /**
+     * Returns the layout of the member with the given name.
+     *
+     * @param memberName the member name
+     *
+     * @return the field layout or {@code null} if the member cannot be located
+     */
+    public Field getField(String memberName) {
+        return fieldMap.get(memberName);
+    }
+
+    /**
+     * The layout of a single record member.
+     */
+    public static class Field {
+
+        private static final int BYTE = 0;
+        private static final int UBYTE = 1;
+        private static final int SHORT = 2;
+        private static final int USHORT = 3;
+        private static final int INT = 4;
+        private static final int OTHER = 5;
+
+        private final String name;
+        private final int offset;
+        private final int[] dimensions;
+        private final int[] strides;
+        private final Type elementType;
+        private final int elementKind;
+
+        private Field(String name, int offset, Type type) {
+            this.name = name;
+            this.offset = offset;
+
+            final List<Integer> dimensionList = new ArrayList<Integer>(4);
+            final List<Integer> strideList = new ArrayList<Integer>(4);
+            Type t = type;
+            while (t.isSequenceType()) {
+                final SequenceType sequenceType = (SequenceType) t;
+                t = sequenceType.getElementType();
+                dimensionList.add(sequenceType.getElementCount());
+                strideList.add(t.getSize());
+            }
+            dimensions = new int[dimensionList.size()];
+            strides = new int[strideList.size()];
+            for (int i = 0; i < dimensions.length; i++) {
+                dimensions[i] = dimensionList.get(i);
+                strides[i] = strideList.get(i);
+            }
+            elementType = t;
+            elementKind = getElementKind(t);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getOffset(int i) {
+            return offset + i * strides[0];
+        }
+
+        public int getOffset(int i, int j) {
+            return offset + i * strides[0] + j * strides[1];
+        }
+
+        public int getOffset(int i, int j, int k) {
+            return offset + i * strides[0] + j * strides[1] + k * strides[2];
+        }
+
+        public int getDimensionCount() {
+            return dimensions.length;
+        }
+
+        public int getDimension(int dim) {
+            return dimensions[dim];
+        }
+
+        public int getStride(int dim) {
+            return strides[dim];
+        }
+
+        public Type getElementType() {
+            return elementType;
+        }
+
+        /**
+         * Reads an integral element at an absolute buffer position.
+         *
+         * @param buffer   the buffer
+         * @param position the position of the element
+         *
+         * @return the element value
+         */
+        public int getInt(ByteBuffer buffer, int position) {
+            switch (elementKind) {
+                case BYTE:
+                    return buffer.get(position);
+                case UBYTE:
+                    return buffer.get(position) & 0xFF;
+                case SHORT:
+                    return buffer.getShort(position);
+                case USHORT:
+                    return buffer.getShort(position) & 0xFFFF;
+                case INT:
+                    return buffer.getInt(position);
+                default:
+                    throw new IllegalStateException("Field '" + name + "' is not of integral type.");
+            }
+        }
+
+        private static int getElementKind(Type type) {
+            if (type == SimpleType.BYTE) {
+                return BYTE;
+            } else if (type == SimpleType.UBYTE) {
+                return UBYTE;
+            } else if (type == SimpleType.SHORT) {
+                return SHORT;
+            } else if (type == SimpleType.USHORT) {
+                return USHORT;
+            } else if (type == SimpleType.INT || type == SimpleType.UINT) {
+                return INT;
+            }
+            return OTHER;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes per-channel data for a sliding window of channels in the background.
+ * <p/>
+ * After {@link #prefetch(int)} the channels within {@link #RADIUS_PROPERTY}
+ * of the given channel are computed by a single background thread, nearest
+ * channels first. Channels which leave the window are dropped, and if their
+ * computation has not started yet it is cancelled. {@link #get(int)} returns
+ * prefetched data immediately, waits for a running computation or computes
+ * the data on the calling thread, also if the channel is still queued. Computations never run concurrently, so
+ * {@link #compute(int)} may read from a product file which is not thread-safe.
+ *
+ * @param <T> the type of the channel data
+ */
+abstract class ChannelPrefetcher<T> {
+
+    /**
+     * The name of the system property which sets the number of channels
+     * prefetched on either side of the selected channel.
+     */
+    static final String RADIUS_PROPERTY = "metop.iasi.prefetchRadius";
+
+    private final int channelCount;
+    private final int radius;
+    private final Object computeLock;
+    private final Map<Integer, FutureTask<T>> tasks;
+    private final ThreadPoolExecutor executor;
+
+    protected ChannelPrefetcher(int channelCount) {
+        this.channelCount = channelCount;
+        radius = Math.max(0, Integer.getInteger(RADIUS_PROPERTY, 4));
+        computeLock = new Object();
+        tasks = new HashMap<Integer, FutureTask<T>>();
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<Runnable>(2 * radius + 1),
+                                          new PrefetchThreadFactory());
+    }
+
+    /**
+     * Computes the data of a channel.
+     *
+     * @param channel the channel
+     *
+     * @return the data
+     * @throws IOException if the data could not be computed
+     */
+    protected abstract T compute(int channel) throws IOException;
+
+    /**
+     * Returns the data of a channel.
+     *
+     * @param channel the channel
+     *
+     * @return the data
+     * @throws IOException if the data could not be computed
+     */
+    T get(int channel) throws IOException {
+        while (true) {
+            final FutureTask<T> task;
+            boolean runHere = false;
+            synchronized (this) {
+                FutureTask<T> existingTask = tasks.get(channel);
+                if (existingTask == null) {
+                    existingTask = createTask(channel);
+                    tasks.put(channel, existingTask);
+                    runHere = true;
+                } else if (executor.remove(existingTask)) {
+                    // the computation has not started, do not wait for the channels queued before
+                    runHere = true;
+                }
+                task = existingTask;
+            }
+            if (runHere) {
+                task.run();
+            }
+            try {
+                return task.get();
+            } catch (CancellationException e) {
+                // the channel has left the window while waiting, try again
+                removeTask(channel, task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while computing channel " + channel + ".");
+            } catch (ExecutionException e) {
+                removeTask(channel, task);
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves the prefetch window to the given channel.
+     *
+     * @param channel the channel in the centre of the window
+     */
+    synchronized void prefetch(int channel) {
+        final Iterator<Map.Entry<Integer, FutureTask<T>>> iterator = tasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Integer, FutureTask<T>> entry = iterator.next();
+            if (Math.abs(entry.getKey() - channel) > radius) {
+                // running computations are not interrupted, since this would close the file channel
+                entry.getValue().cancel(false);
+                executor.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+        for (int distance = 1; distance <= radius; distance++) {
+            schedule(channel + distance);
+            schedule(channel - distance);
+        }
+    }
+
+    synchronized void dispose() {
+        for (final FutureTask<T> task : tasks.values()) {
+            task.cancel(false);
+        }
+        tasks.clear();
+        // a running computation is not interrupted, since this would close the file channel
+        executor.shutdown();
+    }
+
+    private void schedule(int channel) {
+        if (channel < 0 || channel >= channelCount || tasks.containsKey(channel)) {
+            return;
+        }
+        final FutureTask<T> task = createTask(channel);
+        try {
+            executor.execute(task);
+            tasks.put(channel, task);
+        } catch (RejectedExecutionException e) {
+            // the queue is full or the prefetcher is disposed, the channel is computed on demand
+        }
+    }
+
+    private synchronized void removeTask(int channel, FutureTask<T> task) {
+        if (tasks.get(channel) == task) {
+            tasks.remove(channel);
+        }
+    }
+
+    private FutureTask<T> createTask(final int channel) {
+        return new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                synchronized (computeLock) {
+                    return compute(channel);
+                }
+            }
+        });
+    }
+
+    private static class PrefetchThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "iasi-channel-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
@@ -12,6 +12,8 @@ import org.eumetsat.metop.eps.RecordClass;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 
 class GiadrScaleFactors {
@@ -23,6 +25,8 @@ class GiadrScaleFactors {
     private short[] defScaleSondNslast;
     private short[] defScaleSondScaleFactor;
     private short defScaleIISScaleFactor;
+    // almost all MDRs of a product share the same IDefNsfirst1b
+    private final Map<Integer, double[]> scaleFactorsMap = new HashMap<Integer, double[]>();
 
     public GiadrScaleFactors(CompoundData data) throws IOException {
         GenericRecordHeader grh = new GenericRecordHeader(data.getCompound(0));
@@ -48,7 +52,24 @@ class GiadrScaleFactors {
         return data;
     }
 
-    public double[] getScaleFactors(int first) {
+    /**
+     * Returns the scale factors for a spectrum starting at the given sample number.
+     * The returned array is shared and must not be modified.
+     *
+     * @param first the number of the first sample ({@code IDefNsfirst1b})
+     *
+     * @return the scale factors
+     */
+    public synchronized double[] getScaleFactors(int first) {
+        double[] scaleFactors = scaleFactorsMap.get(first);
+        if (scaleFactors == null) {
+            scaleFactors = computeScaleFactors(first);
+            scaleFactorsMap.put(first, scaleFactors);
+        }
+        return scaleFactors;
+    }
+
+    private double[] computeScaleFactors(int first) {
         double[] scaleFactors = new double[SS];
         Arrays.fill(scaleFactors, 1);
         for (int i = 0; i < defScaleSondNbScale; i++) {
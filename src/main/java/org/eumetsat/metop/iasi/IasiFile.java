@@ -11,12 +11,18 @@ import com.bc.ceres.glayer.Layer;
 import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData.UTC;
+import org.esa.beam.util.Debug;
 import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.eps.MdrMapping;
+import org.eumetsat.metop.eps.RecordLayout;
 import org.eumetsat.metop.sounder.AvhrrOverlay;
+import org.eumetsat.metop.sounder.BrightnessTemperatureKernel;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
 
 
 public class IasiFile extends EpsFile {
@@ -31,27 +37,57 @@ public class IasiFile extends EpsFile {
     private static final int NBK = 6;
     private static final int NCL = 7;
     private static final int NIM = 28;
-    private static final int PN = 4;
+    static final int PN = 4;
     private static final int SB = 3;
     private static final int SGI = 25;
-    private static final int SNOT = 30;
-    private static final int SS = 8700;
+    static final int SNOT = 30;
+    static final int SS = 8700;
     private static final int VP = 1;
 
     public static final int IFOV_SIZE = 12;
     public static final float IFOV_DIST = 18;
     private static final double G_GEO_SOND_LOC_SCALING_FACTOR = 1.0E-6;
 
+    private final File file;
     private GiadrScaleFactors giadrScaleFactors;
     private int mdrCount;
     
-    private SequenceData mdrSequence;
+    private IasiSpectrumCache spectrumCache;
+    private boolean spectrumCacheFailed;
+    private Future<?> spectrumCacheBuild;
+    private BrightnessTemperatureKernel btKernel;
+    private double btKernelDWn1b;
+    private int btKernelNsFirst1b;
 
     public IasiFile(File file, DataFormat dataFormat) throws IOException {
-        super(file, dataFormat);
+        this(file, dataFormat, false);
+    }
+
+    public IasiFile(File file, DataFormat dataFormat, boolean concurrentAccess) throws IOException {
+        super(file, dataFormat, concurrentAccess);
+        this.file = file;
         readHeader();
     }
 
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (spectrumCacheBuild != null) {
+                spectrumCacheBuild.cancel(false);
+                spectrumCacheBuild = null;
+            }
+            if (spectrumCache != null) {
+                try {
+                    spectrumCache.close();
+                } catch (IOException e) {
+                    Debug.trace(e);
+                }
+                spectrumCache = null;
+            }
+        }
+        super.close();
+    }
+
     @Override
     public boolean hasOverlayFor(Product avhrrProduct) {
         // TODO check for date
@@ -74,7 +110,7 @@ public class IasiFile extends EpsFile {
         return new IasiLayer(iasiOverlay);
     }
     
-    static int computeIfovId(int mdrIndex, int efovIndex, int ifovIndex) {
+    public static int computeIfovId(int mdrIndex, int efovIndex, int ifovIndex) {
         return mdrIndex * SNOT * PN + efovIndex * PN + ifovIndex;
     }
 
@@ -94,13 +130,12 @@ public class IasiFile extends EpsFile {
         CompoundData giadrScaleFactorsRecord = getAuxDataRecord("giadr:iasi:1");
         giadrScaleFactors = new GiadrScaleFactors(giadrScaleFactorsRecord);
         
-        mdrSequence = getMdrData();
         mdrCount = getMdrCount();
     }
     
 
     public CompoundData getMdr(int mdrIndex) throws IOException {
-        return mdrSequence.getCompound(mdrIndex).getCompound(1);
+        return getMdrData().getCompound(mdrIndex).getCompound(1);
     }
 
     public GeoPos readGeoPos(CompoundData mdr, int efovIndex, int ifovIndex) throws IOException {
@@ -116,7 +151,7 @@ public class IasiFile extends EpsFile {
         final int efovIndex = computeEfovIndex(ifovId);
         final int ifovIndex = computeIfovIndex(ifovId);
 
-        CompoundData mdrBody = mdrSequence.getCompound(mdrIndex).getCompound(1);
+        CompoundData mdrBody = getMdrData().getCompound(mdrIndex).getCompound(1);
         SequenceData geoSondLoc = mdrBody.getSequence("GGeoSondLoc");
         SequenceData lonLatSequence = geoSondLoc.getSequence(efovIndex).getSequence(ifovIndex);
         final float lon = (float) (lonLatSequence.getInt(0) * G_GEO_SOND_LOC_SCALING_FACTOR);
@@ -181,6 +216,19 @@ public class IasiFile extends EpsFile {
         return data;
     }
 
+    /**
+     * Reads the time of the first EFOV of an MDR, which is the start time of the MDR.
+     *
+     * @param mdr the MDR
+     *
+     * @return the start time (ms)
+     * @throws IOException if an I/O error occurs
+     */
+    long readMdrStartMillis(CompoundData mdr) throws IOException {
+        final CompoundData efovData = mdr.getSequence("GEPSDatIasi").getCompound(0);
+        return EpsFile.readShortCdsTime(efovData).getAsCalendar().getTimeInMillis();
+    }
+
     boolean[][][] readGQisFlagQual() throws IOException {
         final boolean[][][] data = new boolean[mdrCount][][];
 
@@ -212,7 +260,7 @@ public class IasiFile extends EpsFile {
         final int efovIndex = computeEfovIndex(ifovId);
         final int ifovIndex = computeIfovIndex(ifovId);
 
-        CompoundData mdrBody = mdrSequence.getCompound(mdrIndex).getCompound(1);
+        CompoundData mdrBody = getMdrData().getCompound(mdrIndex).getCompound(1);
         SequenceData mdrData = mdrBody.getSequence("GQisFlagQual");
         SequenceData efovData = mdrData.getSequence(efovIndex);
         return efovData.getByte(ifovIndex) != 0;
@@ -235,44 +283,245 @@ public class IasiFile extends EpsFile {
     }
     
     public double[][][] readAllBts(int channelId) throws IOException {
+        final IasiSpectrumCache cache = getSpectrumCache();
+        if (cache != null) {
+            return readAllBts(channelId, cache);
+        }
         final double[][][] data = new double[mdrCount][][];
+        final MdrMapping mapping = getMdrMapping();
+        final RecordLayout layout = getMdrLayout();
 
         for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
-            data[mdrIndex] = readAllBts(channelId, mdrIndex);
+            if (mapping != null && layout != null) {
+                data[mdrIndex] = readAllBts(channelId, mapping.getBuffer(mdrIndex), mapping.getBodyPosition(mdrIndex), layout);
+            } else {
+                data[mdrIndex] = readAllBts(channelId, mdrIndex);
+            }
         }
         return data;
     }
     
+    private double[][][] readAllBts(int channelId, IasiSpectrumCache cache) {
+        final double[][][] data = new double[mdrCount][][];
+        final short[] samples = new short[mdrCount * SNOT * PN];
+        cache.readChannel(channelId, samples);
+
+        final double[] temperatures = new double[SNOT * PN];
+        for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+            final double iDefSpectDWn1b = cache.getIDefSpectDWn1b(mdrIndex);
+            final int iDefNsFirst1b = cache.getIDefNsfirst1b(mdrIndex);
+            final double scaleFactor = giadrScaleFactors.getScaleFactors(iDefNsFirst1b)[channelId];
+            final BrightnessTemperatureKernel kernel = getBtKernel(iDefSpectDWn1b, iDefNsFirst1b);
+            kernel.convert(channelId, samples, mdrIndex * SNOT * PN, SNOT * PN, scaleFactor, temperatures, 0);
+            data[mdrIndex] = toEfovArray(temperatures);
+        }
+        return data;
+    }
+
+    // the cache is built in the background and only used once it is complete
+    private synchronized IasiSpectrumCache getSpectrumCache() {
+        if (spectrumCache == null && !spectrumCacheFailed && IasiSpectrumCache.isEnabled()) {
+            if (spectrumCacheBuild != null && !spectrumCacheBuild.isDone()) {
+                return null;
+            }
+            try {
+                if (spectrumCacheBuild != null) {
+                    spectrumCacheBuild.get();
+                }
+                spectrumCache = IasiSpectrumCache.open(this, file);
+                if (spectrumCache == null) {
+                    if (spectrumCacheBuild == null && canReadConcurrently()) {
+                        spectrumCacheBuild = IasiSpectrumCache.buildLater(this, file);
+                    } else {
+                        spectrumCacheFailed = true;
+                    }
+                }
+            } catch (Exception e) {
+                Debug.trace(e);
+                spectrumCacheFailed = true;
+            }
+        }
+        return spectrumCache;
+    }
+
+    /**
+     * Reads the raw spectra of all IFOVs of an MDR.
+     *
+     * @param mdrIndex    the MDR index
+     * @param spectra     the target array, missing elements are created
+     * @param targetIndex the index of the first IFOV in the target array
+     * @throws IOException if an I/O error occurs
+     */
+    void readSpectra(int mdrIndex, short[][] spectra, int targetIndex) throws IOException {
+        final MdrMapping mapping = getMdrMapping();
+        final RecordLayout layout = getMdrLayout();
+        if (mapping != null && layout != null) {
+            final ByteBuffer mdr = mapping.getBuffer(mdrIndex);
+            final int bodyPosition = mapping.getBodyPosition(mdrIndex);
+            final RecordLayout.Field spectField = layout.getField("GS1cSpect");
+            for (int j = 0; j < SNOT; j++) {
+                for (int k = 0; k < PN; k++) {
+                    final short[] spectrum = getSpectrumArray(spectra, targetIndex++);
+                    final int position = bodyPosition + spectField.getOffset(j, k, 0);
+                    for (int i = 0; i < SS; i++) {
+                        spectrum[i] = mdr.getShort(position + 2 * i);
+                    }
+                }
+            }
+        } else {
+            SequenceData mdrData = getMdr(mdrIndex).getSequence("GS1cSpect");
+            for (int j = 0; j < SNOT; j++) {
+                SequenceData efovData = mdrData.getSequence(j);
+                for (int k = 0; k < PN; k++) {
+                    SequenceData ifovData = efovData.getSequence(k);
+                    final short[] spectrum = getSpectrumArray(spectra, targetIndex++);
+                    for (int i = 0; i < SS; i++) {
+                        spectrum[i] = ifovData.getShort(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the geolocation, the viewing and solar angles and the quality
+     * flags of all IFOVs of an MDR. Locations are stored as (lon, lat) pairs
+     * and angles as (zenith, azimuth) pairs, all in degrees.
+     *
+     * @param mdrIndex    the MDR index
+     * @param locations   the target array for the locations
+     * @param metopAngles the target array for the viewing angles
+     * @param sunAngles   the target array for the solar angles
+     * @param flags       the target array for the quality flags
+     * @param targetIndex the index of the first IFOV in the target arrays
+     * @throws IOException if an I/O error occurs
+     */
+    void readGeolocation(int mdrIndex, double[] locations, double[] metopAngles, double[] sunAngles,
+                         byte[] flags, int targetIndex) throws IOException {
+        final MdrMapping mapping = getMdrMapping();
+        final RecordLayout layout = getMdrLayout();
+        if (mapping != null && layout != null) {
+            final ByteBuffer mdr = mapping.getBuffer(mdrIndex);
+            final int bodyPosition = mapping.getBodyPosition(mdrIndex);
+            final RecordLayout.Field locField = layout.getField("GGeoSondLoc");
+            final RecordLayout.Field metopField = layout.getField("GGeoSondAnglesMETOP");
+            final RecordLayout.Field sunField = layout.getField("GGeoSondAnglesSUN");
+            final RecordLayout.Field flagField = layout.getField("GQisFlagQual");
+            for (int j = 0; j < SNOT; j++) {
+                for (int k = 0; k < PN; k++) {
+                    final int n = targetIndex + j * PN + k;
+                    for (int l = 0; l < 2; l++) {
+                        locations[2 * n + l] = locField.getInt(mdr, bodyPosition + locField.getOffset(j, k, l))
+                                               * G_GEO_SOND_LOC_SCALING_FACTOR;
+                        metopAngles[2 * n + l] = metopField.getInt(mdr, bodyPosition + metopField.getOffset(j, k, l))
+                                                 * G_GEO_SOND_LOC_SCALING_FACTOR;
+                        sunAngles[2 * n + l] = sunField.getInt(mdr, bodyPosition + sunField.getOffset(j, k, l))
+                                               * G_GEO_SOND_LOC_SCALING_FACTOR;
+                    }
+                    flags[n] = (byte) flagField.getInt(mdr, bodyPosition + flagField.getOffset(j, k));
+                }
+            }
+        } else {
+            final CompoundData mdr = getMdr(mdrIndex);
+            final SequenceData locData = mdr.getSequence("GGeoSondLoc");
+            final SequenceData metopData = mdr.getSequence("GGeoSondAnglesMETOP");
+            final SequenceData sunData = mdr.getSequence("GGeoSondAnglesSUN");
+            final SequenceData flagData = mdr.getSequence("GQisFlagQual");
+            for (int j = 0; j < SNOT; j++) {
+                for (int k = 0; k < PN; k++) {
+                    final int n = targetIndex + j * PN + k;
+                    final SequenceData loc = locData.getSequence(j).getSequence(k);
+                    final SequenceData metop = metopData.getSequence(j).getSequence(k);
+                    final SequenceData sun = sunData.getSequence(j).getSequence(k);
+                    for (int l = 0; l < 2; l++) {
+                        locations[2 * n + l] = loc.getInt(l) * G_GEO_SOND_LOC_SCALING_FACTOR;
+                        metopAngles[2 * n + l] = metop.getInt(l) * G_GEO_SOND_LOC_SCALING_FACTOR;
+                        sunAngles[2 * n + l] = sun.getInt(l) * G_GEO_SOND_LOC_SCALING_FACTOR;
+                    }
+                    flags[n] = flagData.getSequence(j).getByte(k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests if MDRs can be read concurrently, which is the case if the file has been opened
+     * for concurrent access or if the MDRs are memory-mapped.
+     *
+     * @return {@code true} if MDRs can be read concurrently
+     * @throws IOException if an I/O error occurs
+     */
+    boolean canReadConcurrently() throws IOException {
+        return isConcurrentAccess() || getMdrMapping() != null && getMdrLayout() != null;
+    }
+
+    double[] getScaleFactors(int iDefNsFirst1b) {
+        return giadrScaleFactors.getScaleFactors(iDefNsFirst1b);
+    }
+
+    private static short[] getSpectrumArray(short[][] spectra, int index) {
+        if (spectra[index] == null) {
+            spectra[index] = new short[SS];
+        }
+        return spectra[index];
+    }
+    
+    private double[][] readAllBts(int channelId, ByteBuffer mdr, int bodyPosition, RecordLayout layout) {
+        final double iDefSpectDWn1b = EpsFile.readVInt4(mdr, bodyPosition + layout.getField("IDefSpectDWn1b").getOffset());
+        final int iDefNsFirst1b = mdr.getInt(bodyPosition + layout.getField("IDefNsfirst1b").getOffset());
+
+        final double[] scaleFactors = giadrScaleFactors.getScaleFactors(iDefNsFirst1b);
+        final BrightnessTemperatureKernel kernel = getBtKernel(iDefSpectDWn1b, iDefNsFirst1b);
+
+        final RecordLayout.Field spectField = layout.getField("GS1cSpect");
+        final short[] samples = new short[SNOT * PN];
+        for (int j = 0; j < SNOT; j++) {
+            for (int k = 0; k < PN; k++) {
+                samples[j * PN + k] = mdr.getShort(bodyPosition + spectField.getOffset(j, k, channelId));
+            }
+        }
+        final double[] temperatures = new double[SNOT * PN];
+        kernel.convert(channelId, samples, 0, samples.length, scaleFactors[channelId], temperatures, 0);
+        return toEfovArray(temperatures);
+    }
+    
     private double[][] readAllBts(int channelId, int mdrIndex) throws IOException {
-        CompoundData mdrBody = mdrSequence.getCompound(mdrIndex).getCompound(1);
+        CompoundData mdrBody = getMdrData().getCompound(mdrIndex).getCompound(1);
         final double iDefSpectDWn1b = EpsFile.readVInt4(mdrBody.getCompound("IDefSpectDWn1b"));
         final int iDefNsFirst1b = mdrBody.getInt("IDefNsfirst1b");
-        final double[][] data = new double[SNOT][PN];
 
         final double[] scaleFactors = giadrScaleFactors.getScaleFactors(iDefNsFirst1b);
-        final double wavenumber = iDefSpectDWn1b * (iDefNsFirst1b + channelId - 1);
+        final BrightnessTemperatureKernel kernel = getBtKernel(iDefSpectDWn1b, iDefNsFirst1b);
         
         SequenceData mdrData = mdrBody.getSequence("GS1cSpect");
+        final short[] samples = new short[SNOT * PN];
         for (int j = 0; j < SNOT; j++) {
             SequenceData efovData = mdrData.getSequence(j);
             for (int k = 0; k < PN; k++) {
-                SequenceData ifovData = efovData.getSequence(k);
-                short spectrumSample = ifovData.getShort(channelId);
-                final double radiance = scaleFactors[channelId] * spectrumSample;
-                double bt = brightnessTemperature(wavenumber, radiance);
-                data[j][k] = bt;
+                samples[j * PN + k] = efovData.getSequence(k).getShort(channelId);
             }
         }
+        final double[] temperatures = new double[SNOT * PN];
+        kernel.convert(channelId, samples, 0, samples.length, scaleFactors[channelId], temperatures, 0);
+        return toEfovArray(temperatures);
+    }
+
+    private static double[][] toEfovArray(double[] temperatures) {
+        final double[][] data = new double[SNOT][PN];
+        for (int j = 0; j < SNOT; j++) {
+            System.arraycopy(temperatures, j * PN, data[j], 0, PN);
+        }
         return data;
     }
     
-    private static double brightnessTemperature(double wavenumber, double radiance) {
-        final double c1 = 1.191042722E-16;
-        final double c2 = 1.4387752E-2;
-        final double a = c2 * wavenumber;
-        final double b = c1 * wavenumber * wavenumber * wavenumber;
-
-        return a / (Math.log(1.0 + (b / radiance)));
+    // the wavenumber grid is the same for almost all MDRs, so the kernel is only rebuilt when it changes
+    private synchronized BrightnessTemperatureKernel getBtKernel(double iDefSpectDWn1b, int iDefNsFirst1b) {
+        if (btKernel == null || btKernelDWn1b != iDefSpectDWn1b || btKernelNsFirst1b != iDefNsFirst1b) {
+            btKernel = BrightnessTemperatureKernel.forWavenumbers(iDefSpectDWn1b, iDefNsFirst1b - 1, SS);
+            btKernelDWn1b = iDefSpectDWn1b;
+            btKernelNsFirst1b = iDefNsFirst1b;
+        }
+        return btKernel;
     }
 
     public double[][] readSpectrum(int ifovId) throws IOException {
@@ -280,7 +529,7 @@ public class IasiFile extends EpsFile {
         final int efovIndex = computeEfovIndex(ifovId);
         final int ifovIndex = computeIfovIndex(ifovId);
 
-        CompoundData mdrBody = mdrSequence.getCompound(mdrIndex).getCompound(1);
+        CompoundData mdrBody = getMdrData().getCompound(mdrIndex).getCompound(1);
         final double iDefSpectDWn1b = EpsFile.readVInt4(mdrBody.getCompound("IDefSpectDWn1b"));
         final int iDefNsFirst1b = mdrBody.getInt("IDefNsfirst1b");
         final int iDefNsLast1b = mdrBody.getInt("IDefNslast1b");
@@ -302,6 +551,139 @@ public class IasiFile extends EpsFile {
         return spectrum;
     }
 
+    /**
+     * Reads the spectrum of an IFOV into caller-supplied arrays. Unlike
+     * {@link #readSpectrum(int)} this method does not allocate any arrays,
+     * so it is suited for extracting large numbers of spectra.
+     *
+     * @param ifovId      the IFOV ID
+     * @param wavenumbers the target array for the wavenumbers, may be {@code null}
+     * @param radiances   the target array for the radiances
+     *
+     * @return the number of samples in the spectrum
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the arrays are too small for the spectrum
+     */
+    public int readSpectrum(int ifovId, float[] wavenumbers, float[] radiances) throws IOException {
+        if (wavenumbers != null && wavenumbers.length < radiances.length) {
+            throw new IllegalArgumentException("wavenumbers.length < radiances.length");
+        }
+        final int mdrIndex = computeMdrIndex(ifovId);
+        final int ifovIndex = ifovId - mdrIndex * SNOT * PN;
+        return readMdrSpectra(mdrIndex, ifovIndex, 1, wavenumbers, radiances, 0, radiances.length);
+    }
+
+    /**
+     * Reads the spectra of a range of IFOVs into a caller-supplied buffer. The
+     * spectrum of the IFOV {@code firstIfovId + i} starts at the index
+     * {@code i * stride} of the buffer. The range may span several MDRs.
+     *
+     * @param firstIfovId the ID of the first IFOV
+     * @param ifovCount   the number of IFOVs
+     * @param radiances   the target buffer for the radiances
+     * @param stride      the distance between the spectra in the buffer, at least
+     *                    {@link #readSpectrumSize(int) the number of samples}
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the stride is less than the number of samples,
+     *                                  or if the buffer is shorter than {@code ifovCount * stride}
+     */
+    public void readSpectra(int firstIfovId, int ifovCount, float[] radiances, int stride) throws IOException {
+        if (radiances.length < (long) ifovCount * stride) {
+            throw new IllegalArgumentException("radiances.length < ifovCount * stride");
+        }
+        final int endIfovId = firstIfovId + ifovCount;
+        int ifovId = firstIfovId;
+        int offset = 0;
+        while (ifovId < endIfovId) {
+            final int mdrIndex = computeMdrIndex(ifovId);
+            final int ifovIndex = ifovId - mdrIndex * SNOT * PN;
+            final int count = Math.min(SNOT * PN - ifovIndex, endIfovId - ifovId);
+            readMdrSpectra(mdrIndex, ifovIndex, count, null, radiances, offset, stride);
+            ifovId += count;
+            offset += count * stride;
+        }
+    }
+
+    /**
+     * Reads the number of samples in the spectra of an MDR.
+     *
+     * @param mdrIndex the MDR index
+     *
+     * @return the number of samples
+     * @throws IOException if an I/O error occurs
+     */
+    public int readSpectrumSize(int mdrIndex) throws IOException {
+        final MdrMapping mapping = getMdrMapping();
+        final RecordLayout layout = getMdrLayout();
+        if (mapping != null && layout != null) {
+            final ByteBuffer mdr = mapping.getBuffer(mdrIndex);
+            final int bodyPosition = mapping.getBodyPosition(mdrIndex);
+            return mdr.getInt(bodyPosition + layout.getField("IDefNslast1b").getOffset())
+                   - mdr.getInt(bodyPosition + layout.getField("IDefNsfirst1b").getOffset()) + 1;
+        }
+        final CompoundData mdrBody = getMdr(mdrIndex);
+        return mdrBody.getInt("IDefNslast1b") - mdrBody.getInt("IDefNsfirst1b") + 1;
+    }
+
+    private int readMdrSpectra(int mdrIndex, int ifovIndex, int ifovCount, float[] wavenumbers,
+                               float[] radiances, int offset, int stride) throws IOException {
+        final MdrMapping mapping = getMdrMapping();
+        final RecordLayout layout = getMdrLayout();
+        final double iDefSpectDWn1b;
+        final int iDefNsFirst1b;
+        final int spectrumSize;
+        if (mapping != null && layout != null) {
+            final ByteBuffer mdr = mapping.getBuffer(mdrIndex);
+            final int bodyPosition = mapping.getBodyPosition(mdrIndex);
+            iDefSpectDWn1b = EpsFile.readVInt4(mdr, bodyPosition + layout.getField("IDefSpectDWn1b").getOffset());
+            iDefNsFirst1b = mdr.getInt(bodyPosition + layout.getField("IDefNsfirst1b").getOffset());
+            final int iDefNsLast1b = mdr.getInt(bodyPosition + layout.getField("IDefNslast1b").getOffset());
+            spectrumSize = checkSpectrumSize(iDefNsFirst1b, iDefNsLast1b, stride);
+
+            final double[] scaleFactors = giadrScaleFactors.getScaleFactors(iDefNsFirst1b);
+            final RecordLayout.Field spectField = layout.getField("GS1cSpect");
+            for (int n = 0; n < ifovCount; n++) {
+                final int k = ifovIndex + n;
+                final int position = bodyPosition + spectField.getOffset(k / PN, k % PN, 0);
+                final int targetIndex = offset + n * stride;
+                for (int i = 0; i < spectrumSize; i++) {
+                    radiances[targetIndex + i] = (float) (scaleFactors[i] * mdr.getShort(position + 2 * i));
+                }
+            }
+        } else {
+            final CompoundData mdrBody = getMdr(mdrIndex);
+            iDefSpectDWn1b = EpsFile.readVInt4(mdrBody.getCompound("IDefSpectDWn1b"));
+            iDefNsFirst1b = mdrBody.getInt("IDefNsfirst1b");
+            spectrumSize = checkSpectrumSize(iDefNsFirst1b, mdrBody.getInt("IDefNslast1b"), stride);
+
+            final double[] scaleFactors = giadrScaleFactors.getScaleFactors(iDefNsFirst1b);
+            final SequenceData mdrData = mdrBody.getSequence("GS1cSpect");
+            for (int n = 0; n < ifovCount; n++) {
+                final int k = ifovIndex + n;
+                final SequenceData ifovData = mdrData.getSequence(k / PN).getSequence(k % PN);
+                final int targetIndex = offset + n * stride;
+                for (int i = 0; i < spectrumSize; i++) {
+                    radiances[targetIndex + i] = (float) (scaleFactors[i] * ifovData.getShort(i));
+                }
+            }
+        }
+        if (wavenumbers != null) {
+            for (int i = 0; i < spectrumSize; i++) {
+                wavenumbers[i] = (float) (iDefSpectDWn1b * (iDefNsFirst1b + i - 1));
+            }
+        }
+        return spectrumSize;
+    }
+
+    private static int checkSpectrumSize(int iDefNsFirst1b, int iDefNsLast1b, int stride) {
+        final int spectrumSize = iDefNsLast1b - iDefNsFirst1b + 1;
+        if (stride < spectrumSize) {
+            throw new IllegalArgumentException("Buffer too small for spectrum of size " + spectrumSize + ".");
+        }
+        return spectrumSize;
+    }
+
     public double readIDefSpectDWn1b(int mdrIndex) throws IOException {
         return EpsFile.readVInt4(getMdrData().getCompound(mdrIndex).getCompound(1).getCompound("IDefSpectDWn1b"));
     }
@@ -333,7 +715,7 @@ public class IasiFile extends EpsFile {
         final int ifovIndex = computeIfovIndex(ifovId);
         final RadianceAnalysis ra = new RadianceAnalysis();
         
-        CompoundData mdrBody = mdrSequence.getCompound(mdrIndex).getCompound(1);
+        CompoundData mdrBody = getMdrData().getCompound(mdrIndex).getCompound(1);
         SequenceData channels = mdrBody.getSequence("IDefCcsChannelId");
         for (int i = 0; i < ra.channels.length; i++) {
             ra.channels[i] = channels.getInt(i);
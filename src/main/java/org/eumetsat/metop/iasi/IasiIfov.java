@@ -11,7 +11,6 @@ public final class IasiIfov implements Ifov {
     private final float pixelY;
     private final Shape shape;
     private final boolean anomalous;
-    private volatile Efov efov;
 
     public IasiIfov(int ifovIndex, float pixelX, float pixelY, Shape shape) {
         this(ifovIndex, pixelX, pixelY, shape, false);
@@ -44,14 +43,6 @@ public final class IasiIfov implements Ifov {
         return ifovIndex;
     }
 
-    public final Efov getEfov() {
-        return efov;
-    }
-
-    final void setEfov(Efov efov) {
-        this.efov = efov;
-    }
-
     public final float getPixelX() {
         return pixelX;
     }
@@ -63,4 +54,20 @@ public final class IasiIfov implements Ifov {
     public final boolean isAnomalous() {
         return anomalous;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof IasiIfov)) {
+            return false;
+        }
+        return ifovIndex == ((IasiIfov) obj).ifovIndex;
+    }
+
+    @Override
+    public int hashCode() {
+        return ifovIndex;
+    }
 }
@@ -11,9 +11,13 @@ import org.esa.beam.framework.ui.AbstractLayerUI;
 import org.esa.beam.framework.ui.product.ProductSceneView;
 import org.esa.beam.util.Debug;
 import org.esa.beam.util.math.MathUtils;
+import org.eumetsat.metop.sounder.FootprintStore;
+import org.eumetsat.metop.sounder.FootprintTileCache;
+import org.eumetsat.metop.sounder.Ifov;
 import org.eumetsat.metop.sounder.SounderOverlayListener;
 import org.eumetsat.metop.sounder.SounderOverlay;
 import org.eumetsat.metop.sounder.SounderInfo;
+import org.eumetsat.metop.sounder.ShapeIndex;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
@@ -21,12 +25,14 @@ import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.util.BitSet;
 
 import com.bc.ceres.core.ExtensionFactory;
 import com.bc.ceres.core.ProgressMonitor;
@@ -48,6 +54,8 @@ public class IasiLayer extends Layer implements SounderInfo {
 
     private final SounderOverlayListener overlayListener;
     private final IasiOverlay iasiOverlay;
+    private final FootprintTileCache tileCache;
+    private final ChannelPrefetcher<LayerData> prefetcher;
     
     private LayerData layerData;
     private int selectedChannel;
@@ -55,6 +63,18 @@ public class IasiLayer extends Layer implements SounderInfo {
     public IasiLayer(IasiOverlay iasiOverlay) {
         this.iasiOverlay = iasiOverlay;
         
+        tileCache = new FootprintTileCache(new FootprintTileCache.TilePainter() {
+            @Override
+            public boolean paint(Graphics2D g2d, Rectangle2D modelBounds, double scale) {
+                return paintFootprints(g2d, modelBounds, scale);
+            }
+        });
+        prefetcher = new ChannelPrefetcher<LayerData>(IasiFile.SS) {
+            @Override
+            protected LayerData compute(int channel) throws IOException {
+                return createLayerData(channel);
+            }
+        };
         overlayListener = new OverlayListener();
         iasiOverlay.addListener(overlayListener);
       
@@ -67,6 +87,14 @@ public class IasiLayer extends Layer implements SounderInfo {
         computeLayerData();
     }
     
+    @Override
+    protected void disposeLayer() {
+        iasiOverlay.removeListener(overlayListener);
+        prefetcher.dispose();
+        tileCache.invalidate();
+        super.disposeLayer();
+    }
+
     @Override
     public IasiOverlay getOverlay() {
         return iasiOverlay;
@@ -108,15 +136,14 @@ public class IasiLayer extends Layer implements SounderInfo {
     }
 
     private IasiIfov getIfovForLocation(int pixelX, int pixelY) {
-        Efov[] efovs = iasiOverlay.getEfovs();
-        for (final Efov efov : efovs) {
-            for (final IasiIfov ifov : efov.getIfovs()) {
-                final boolean renderAnomalousIfovs = "true".equals(System.getProperty("iasi.renderAnomalousIfovs", "true"));
-                if (!ifov.isAnomalous() || renderAnomalousIfovs) {
-                    if (ifov.getShape().contains(pixelX + 0.5f, pixelY + 0.5f)) {
-                        return ifov;
-                    }
-                }
+        final FootprintStore footprints = iasiOverlay.getIfovFootprints();
+        final ShapeIndex shapeIndex = iasiOverlay.getIfovShapeIndex();
+        final boolean renderAnomalousIfovs = "true".equals(System.getProperty("iasi.renderAnomalousIfovs", "true"));
+        final float x = pixelX + 0.5f;
+        final float y = pixelY + 0.5f;
+        for (int i = shapeIndex.findContaining(x, y); i >= 0; i = shapeIndex.findContaining(x, y, i + 1)) {
+            if (!footprints.isAnomalous(i) || renderAnomalousIfovs) {
+                return iasiOverlay.getIfov(i);
             }
         }
         return null;
@@ -124,13 +151,16 @@ public class IasiLayer extends Layer implements SounderInfo {
 
     @Override
     public void renderLayer(Rendering rendering) {
-        Efov[] efovs = iasiOverlay.getEfovs();
-        if (efovs.length == 0) {
+        final FootprintStore footprints = iasiOverlay.getIfovFootprints();
+        if (footprints.size() == 0) {
             return;
         }
         
         final Graphics2D g2d = rendering.getGraphics();
         final Viewport vp = rendering.getViewport();
+        final Boolean antialias = (Boolean) getStyle().getProperty(ProductSceneView.PROPERTY_KEY_GRAPHICS_ANTIALIASING);
+        final boolean tiled = tileCache.render(g2d, vp, antialias.booleanValue());
+
         final AffineTransform transformSave = g2d.getTransform();
         
         final AffineTransform transform = new AffineTransform();
@@ -144,44 +174,27 @@ public class IasiLayer extends Layer implements SounderInfo {
         final Object oldAntialias = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
         final Object oldRendering = g2d.getRenderingHint(RenderingHints.KEY_RENDERING);
         try {
-            g2d.setStroke(borderStroke);
             g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
-            Boolean antialias = (Boolean) getStyle().getProperty(ProductSceneView.PROPERTY_KEY_GRAPHICS_ANTIALIASING);
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
                                  antialias.booleanValue() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
 
-            final Rectangle clip = g2d.getClipBounds();
-            Color[] colorPalette = layerData.getColorPalette();
-
             final double scale = Math.abs(vp.getModelToViewTransform().getDeterminant());
-            final boolean efovBigEnough = scale * IasiLayer.EFOV_SIZE > 10;
-            final boolean ifovBigEnough = scale * IasiLayer.IFOV_SIZE > 5;
-
-            if (efovBigEnough) {
-                for (final Efov efov : efovs) {
-                    final Rectangle2D efovBounds = efov.getShape().getBounds2D();
-
-                    boolean efovVisible = clip == null || clip.intersects(efovBounds) || clip.contains(efovBounds);
-                    if (efovVisible) {
-                        if (shouldRenderEfov(efov)) {
-                            renderEfov(g2d, efov);
-                            if (ifovBigEnough) {
-                                for (IasiIfov ifov : efov.getIfovs()) {
-                                    if (shouldRenderIfov(ifov)) {
-                                        int mdrIndex = IasiFile.computeMdrIndex(ifov.getIfovIndex());
-                                        int efovIndex = IasiFile.computeEfovIndex(ifov.getIfovIndex());
-                                        int ifovIndex = IasiFile.computeIfovIndex(ifov.getIfovIndex());
-                                        renderIfov(g2d, ifov, layerData.getColor(colorPalette, mdrIndex, efovIndex, ifovIndex));
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
+            if (!tiled) {
+                final Rectangle clip = g2d.getClipBounds();
+                paintFootprints(g2d, clip, scale);
             }
 
-            
-            
+            // the selection is not part of the tiles
+            final Ifov selectedIfov = iasiOverlay.getSelectedIfov();
+            final boolean ifovVisible = scale * IasiLayer.EFOV_SIZE > 10 && scale * IasiLayer.IFOV_SIZE > 5;
+            if (ifovVisible && selectedIfov != null) {
+                final int selectedId = selectedIfov.getIfovIndex();
+                if (footprints.isValid(selectedId) && shouldRenderIfov(footprints, selectedId)) {
+                    g2d.setStroke(borderStroke);
+                    g2d.setColor(ifovSelectedColor);
+                    g2d.draw(footprints.getShape(selectedId, new Ellipse2D.Float()));
+                }
+            }
         } finally {
             g2d.setColor(oldColor);
             g2d.setPaint(oldPaint);
@@ -191,32 +204,85 @@ public class IasiLayer extends Layer implements SounderInfo {
             g2d.setTransform(transformSave);
         }
     }
+
+    private boolean paintFootprints(Graphics2D g2d, Rectangle2D clip, double scale) {
+        final FootprintStore footprints = iasiOverlay.getIfovFootprints();
+        final LayerData layerData = this.layerData;
+        final Color[] colorPalette = layerData.getColorPalette();
+
+        final boolean efovBigEnough = scale * IasiLayer.EFOV_SIZE > 10;
+        final boolean ifovBigEnough = scale * IasiLayer.IFOV_SIZE > 5;
+        if (!efovBigEnough) {
+            return false;
+        }
+
+        // the EFOV index only covers the outline, so add the EFOVs of all intersecting IFOVs
+        final Rectangle2D region;
+        if (clip != null) {
+            final double margin = borderStroke.getLineWidth();
+            region = new Rectangle2D.Double(clip.getX() - margin, clip.getY() - margin,
+                                            clip.getWidth() + 2 * margin, clip.getHeight() + 2 * margin);
+        } else {
+            region = null;
+        }
+        final BitSet visibleEfovs = iasiOverlay.getEfovShapeIndex().findIntersecting(region);
+        final BitSet visibleIfovs = iasiOverlay.getIfovShapeIndex().findIntersecting(region);
+        for (int k = visibleIfovs.nextSetBit(0); k >= 0; k = visibleIfovs.nextSetBit(k + 1)) {
+            visibleEfovs.set(k / IasiFile.PN);
+        }
+
+        g2d.setStroke(borderStroke);
+        final GeneralPath efovShape = new GeneralPath();
+        final Ellipse2D.Float ifovShape = new Ellipse2D.Float();
+        boolean painted = false;
+        for (int i = visibleEfovs.nextSetBit(0); i >= 0; i = visibleEfovs.nextSetBit(i + 1)) {
+            final int firstIfovId = i * IasiFile.PN;
+            if (shouldRenderEfov(footprints, firstIfovId)) {
+                renderEfov(g2d, footprints, firstIfovId, efovShape);
+                painted = true;
+                if (ifovBigEnough) {
+                    for (int ifovId = firstIfovId; ifovId < firstIfovId + IasiFile.PN; ifovId++) {
+                        if (shouldRenderIfov(footprints, ifovId)) {
+                            int mdrIndex = IasiFile.computeMdrIndex(ifovId);
+                            int efovIndex = IasiFile.computeEfovIndex(ifovId);
+                            int ifovIndex = IasiFile.computeIfovIndex(ifovId);
+                            renderIfov(g2d, footprints, ifovId, ifovShape,
+                                       layerData.getColor(colorPalette, mdrIndex, efovIndex, ifovIndex));
+                        }
+                    }
+                }
+            }
+        }
+        return painted;
+    }
     
     private void computeLayerData() {
-        double[][][] allBts = null;
         try {
-            allBts = iasiOverlay.getEpsFile().readAllBts(selectedChannel);
+            layerData = prefetcher.get(selectedChannel);
         } catch (IOException e) {
             Debug.trace(e);
             return;
         }
-        final Efov[] efovs = iasiOverlay.getEfovs();
+        prefetcher.prefetch(selectedChannel);
+    }
+
+    private LayerData createLayerData(int channel) throws IOException {
+        final double[][][] allBts = iasiOverlay.getEpsFile().readAllBts(channel);
+        // not the footprints, which are still being created in the background
+        final BitSet validIfovs = iasiOverlay.getValidIfovs();
         final int numBts = allBts.length * allBts[0].length * allBts[0][0].length;
         ProductData data = ProductData.createInstance(ProductData.TYPE_FLOAT64, numBts);
-        int efovIndex = 0;
         int index = 0;
         for (int i = 0; i < allBts.length; i++) {
             for (int j = 0; j < allBts[i].length; j++) {
-                Efov efov = efovs[efovIndex];
                 for (int k = 0; k < allBts[i][j].length; k++) {
-                    if (!efov.getIfovs()[k].isAnomalous()) {
+                    if (validIfovs.get(index)) {
                         data.setElemDoubleAt(index, allBts[i][j][k]);
                     } else {
                         data.setElemDoubleAt(index, Double.NaN);
                     }
                     index++;
                 }
-                efovIndex++;
             }
         }
         final Band band = new Band("x", data.getType(), numBts, 1);
@@ -224,17 +290,17 @@ public class IasiLayer extends Layer implements SounderInfo {
         band.setSynthetic(true);
         final Stx stx = Stx.create(band, 0, ProgressMonitor.NULL);
         band.dispose();
-        layerData = new LayerData(allBts, stx);
+        return new LayerData(allBts, stx);
     }
 
-    private boolean shouldRenderEfov(Efov efov) {
+    private boolean shouldRenderEfov(FootprintStore footprints, int firstIfovId) {
         final boolean renderAnomalousIfovs = "true".equals(System.getProperty("iasi.renderAnomalousIfovs", "true"));
 
         if (renderAnomalousIfovs) {
             return true;
         }
-        for (final IasiIfov ifov : efov.getIfovs()) {
-            if (!ifov.isAnomalous()) {
+        for (int ifovId = firstIfovId; ifovId < firstIfovId + IasiFile.PN; ifovId++) {
+            if (!footprints.isAnomalous(ifovId)) {
                 return true;
             }
         }
@@ -242,36 +308,36 @@ public class IasiLayer extends Layer implements SounderInfo {
         return false;
     }
 
-    private boolean shouldRenderIfov(IasiIfov ifov) {
-        return (!ifov.isAnomalous() || "true".equals(System.getProperty("iasi.renderAnomalousIfovs", "true")));
+    private boolean shouldRenderIfov(FootprintStore footprints, int ifovId) {
+        return (!footprints.isAnomalous(ifovId) || "true".equals(System.getProperty("iasi.renderAnomalousIfovs", "true")));
     }
 
-    private void renderEfov(Graphics2D g2d, Efov efov) {
+    private void renderEfov(Graphics2D g2d, FootprintStore footprints, int firstIfovId, GeneralPath efovShape) {
+        efovShape.reset();
+        efovShape.moveTo(footprints.getCenterX(firstIfovId), footprints.getCenterY(firstIfovId));
+        for (int ifovId = firstIfovId + 1; ifovId < firstIfovId + IasiFile.PN; ifovId++) {
+            efovShape.lineTo(footprints.getCenterX(ifovId), footprints.getCenterY(ifovId));
+        }
+        efovShape.closePath();
         g2d.setColor(efovColor);
-        g2d.draw(efov.getShape());
+        g2d.draw(efovShape);
     }
 
-    private void renderIfov(Graphics2D g2d, IasiIfov ifov, Color color) {
-        final Shape ifovShape = ifov.getShape();
-        if (!ifov.isAnomalous()) {
+    private void renderIfov(Graphics2D g2d, FootprintStore footprints, int ifovId, Ellipse2D.Float ifovShape,
+                            Color color) {
+        footprints.getShape(ifovId, ifovShape);
+        if (!footprints.isAnomalous(ifovId)) {
             g2d.setPaint(color);
             g2d.fill(ifovShape);
-        }
-        
-        Color drawColor = null;
-        if (iasiOverlay.getSelectedIfov() ==ifov) {
-            drawColor = ifovSelectedColor;
-        } else if (ifov.isAnomalous()) {
-            drawColor = ifovAnomalousColor;
-        }
-        if (drawColor != null) {
-            g2d.setColor(drawColor);
+        } else {
+            g2d.setColor(ifovAnomalousColor);
             g2d.draw(ifovShape);
         }
     }    
     
     @Override
     public void regenerate() {
+        tileCache.invalidate();
         fireLayerDataChanged(getModelBounds());
     }
 
@@ -342,7 +408,14 @@ public class IasiLayer extends Layer implements SounderInfo {
 
         @Override
         public void dataChanged(SounderOverlay overlay) {
+            tileCache.invalidate();
             fireLayerDataChanged(null);
         }
+
+        @Override
+        public void regionChanged(SounderOverlay overlay, Rectangle2D bounds) {
+            tileCache.invalidate(bounds);
+            fireLayerDataChanged(bounds);
+        }
     }
 }
\ No newline at end of file
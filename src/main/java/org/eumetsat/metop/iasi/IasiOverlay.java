@@ -19,28 +19,46 @@ package org.eumetsat.metop.iasi;
 import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.util.Debug;
+import org.eumetsat.metop.eps.MdrWorkerPool;
+import org.eumetsat.metop.sounder.FootprintStore;
 import org.eumetsat.metop.sounder.Ifov;
+import org.eumetsat.metop.sounder.ShapeIndex;
 import org.eumetsat.metop.sounder.SounderOverlay;
 import org.eumetsat.metop.sounder.SounderOverlayListener;
 
-import java.awt.Shape;
-import java.awt.geom.Area;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.GeneralPath;
+import javax.swing.SwingWorker;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.bc.ceres.binio.CompoundData;
 
 
+/**
+ * The overlay of the IFOVs of an IASI product on an AVHRR product.
+ * <p/>
+ * The footprints of the IFOVs are created in the background, in batches of
+ * {@link #MDR_BATCH_SIZE} MDRs. The MDRs of a batch are processed concurrently
+ * if the IASI file has been opened for concurrent access. Listeners are
+ * notified whenever a batch has been completed, so the first MDRs can be
+ * shown while the others are still being processed.
+ */
 public class IasiOverlay implements SounderOverlay {
 
     private static final int PN = 4;
     private static final int SNOT = 30;
+    private static final int MDR_BATCH_SIZE = 32;
 
     private static final int IFOV_SIZE = 12;
     private static final float IFOV_DIST = 18;
@@ -53,12 +71,15 @@ public class IasiOverlay implements SounderOverlay {
     private final int avhrrTrimLeft;
 
     private final int mdrCount;
-    private Efov[] overlayEfovs;
+    private FootprintStore ifovFootprints;
+    private FootprintWorker footprintWorker;
+    private volatile BitSet validIfovs;
+    private ShapeIndex efovShapeIndex;
+    private ShapeIndex ifovShapeIndex;
     private final Map<SounderOverlayListener, Object> listenerMap;
     private Ifov selectedIfov;
     private double iDefSpectDWn1b;
     private double iDefNFirst1b;
-    private final EfovShapeFactory efovShapeFactory;
     private final IfovShapeFactory ifovShapeFactory;
     private final IfovPosProvider ifovPosProvider;
 
@@ -73,7 +94,6 @@ public class IasiOverlay implements SounderOverlay {
         mdrCount = iasiFile.getMdrCount();
         iDefSpectDWn1b = iasiFile.readIDefSpectDWn1b(0);
         iDefNFirst1b = iasiFile.readIDefNsfirst1b(0);
-        efovShapeFactory = new FastEfovShape();
         ifovShapeFactory = new EfovDistributionShapeFactory();
         ifovPosProvider = new AvhrrPixelPosBasedProvider();
     }
@@ -95,7 +115,7 @@ public class IasiOverlay implements SounderOverlay {
 
     @Override
     public void setSelectedIfov(Ifov ifov) {
-        if (ifov != selectedIfov) {
+        if (ifov == null ? selectedIfov != null : !ifov.equals(selectedIfov)) {
             selectedIfov = ifov;
             fireSelectionChanged();
         }
@@ -119,11 +139,111 @@ public class IasiOverlay implements SounderOverlay {
         return (iDefSpectDWn1b * (iDefNFirst1b + channel - 1)) / 100.0;
     }
 
-    synchronized Efov[] getEfovs() {
-        if (overlayEfovs == null) {
-            overlayEfovs = createEfovs();
+    /**
+     * Returns the footprints of all IFOVs, where the footprint index is the IFOV ID.
+     * The footprints of MDRs which are not in normal mode are not valid. On the
+     * first call, the footprints are created in the background and are not valid
+     * before the batch of their MDR has been completed.
+     *
+     * @return the footprints
+     */
+    synchronized FootprintStore getIfovFootprints() {
+        if (ifovFootprints == null) {
+            ifovFootprints = new FootprintStore(mdrCount * SNOT * PN);
+            createShapeIndexes(ifovFootprints);
+            footprintWorker = new FootprintWorker(ifovFootprints);
+            footprintWorker.execute();
+        }
+        return ifovFootprints;
+    }
+
+    /**
+     * Returns the footprints of all IFOVs like {@link #getIfovFootprints()}, but
+     * waits until the footprints of all MDRs have been created. Must not be
+     * called on the event dispatch thread.
+     *
+     * @return the footprints
+     * @throws IOException if waiting has been interrupted
+     */
+    FootprintStore waitForIfovFootprints() throws IOException {
+        final FootprintStore footprints;
+        final FootprintWorker worker;
+        synchronized (this) {
+            footprints = getIfovFootprints();
+            worker = footprintWorker;
+        }
+        try {
+            worker.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Creating the footprints has been interrupted.");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException(e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
         }
-        return overlayEfovs;
+        return footprints;
+    }
+
+    /**
+     * Returns the IFOVs whose samples are valid, which are the IFOVs of MDRs in
+     * normal mode which are not flagged as anomalous. Unlike the validity of
+     * the footprints, the flags are read from the file at once.
+     *
+     * @return the valid IFOVs, indexed by IFOV ID
+     * @throws IOException if an I/O error occurs
+     */
+    BitSet getValidIfovs() throws IOException {
+        BitSet ifovs = validIfovs;
+        if (ifovs == null) {
+            final byte[] modes = iasiFile.readGEPSIasiMode();
+            final boolean[][][] anomalousFlags = iasiFile.readGQisFlagQual();
+            ifovs = new BitSet(mdrCount * SNOT * PN);
+            for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+                if (modes[mdrIndex] == 0) {
+                    for (int efovIndex = 0; efovIndex < SNOT; efovIndex++) {
+                        for (int ifovIndex = 0; ifovIndex < PN; ifovIndex++) {
+                            if (!anomalousFlags[mdrIndex][efovIndex][ifovIndex]) {
+                                ifovs.set(computeIfovId(mdrIndex, efovIndex, ifovIndex));
+                            }
+                        }
+                    }
+                }
+            }
+            validIfovs = ifovs;
+        }
+        return ifovs;
+    }
+
+    /**
+     * @return the spatial index over the EFOV outlines, where the EFOV
+     *         {@code efovIndex} of MDR {@code mdrIndex} has the index
+     *         {@code mdrIndex * SNOT + efovIndex}
+     */
+    synchronized ShapeIndex getEfovShapeIndex() {
+        getIfovFootprints();
+        return efovShapeIndex;
+    }
+
+    /**
+     * @return the spatial index over the footprints returned by {@link #getIfovFootprints()}
+     */
+    synchronized ShapeIndex getIfovShapeIndex() {
+        getIfovFootprints();
+        return ifovShapeIndex;
+    }
+
+    /**
+     * Creates the IFOV for a footprint returned by {@link #getIfovFootprints()}.
+     *
+     * @param ifovId the IFOV ID
+     *
+     * @return the IFOV
+     */
+    IasiIfov getIfov(int ifovId) {
+        final FootprintStore footprints = getIfovFootprints();
+        return new IasiIfov(ifovId, footprints.getCenterX(ifovId), footprints.getCenterY(ifovId),
+                            footprints.getShape(ifovId), footprints.isAnomalous(ifovId));
     }
 
     protected void fireSelectionChanged() {
@@ -146,6 +266,16 @@ public class IasiOverlay implements SounderOverlay {
         }
     }
 
+    protected void fireRegionChanged(Rectangle2D bounds) {
+        final Set<SounderOverlayListener> listenerSet = listenerMap.keySet();
+
+        synchronized (listenerMap) {
+            for (final SounderOverlayListener listener : listenerSet) {
+                listener.regionChanged(this, bounds);
+            }
+        }
+    }
+
     static int computeIfovId(int mdrIndex, int efovIndex, int ifovIndex) {
         return mdrIndex * SNOT * PN + efovIndex * PN + ifovIndex;
     }
@@ -162,219 +292,201 @@ public class IasiOverlay implements SounderOverlay {
         return ifovId % PN;
     }
 
-    private Efov[] createEfovs() {
-        final Efov[] newEfovs = new Efov[mdrCount * SNOT];
+    private class FootprintWorker extends SwingWorker<Object, Rectangle2D> {
+
+        private final FootprintStore footprints;
+
+        private FootprintWorker(FootprintStore footprints) {
+            this.footprints = footprints;
+        }
+
+        @Override
+        protected Object doInBackground() throws Exception {
+            final boolean concurrent = iasiFile.isConcurrentAccess() && MdrWorkerPool.getThreadCount() > 1;
+            for (int firstMdr = 0; firstMdr < mdrCount; firstMdr += MDR_BATCH_SIZE) {
+                final int batchMdrCount = Math.min(MDR_BATCH_SIZE, mdrCount - firstMdr);
+                boolean failed = false;
+                try {
+                    if (concurrent) {
+                        readFootprintMdrsConcurrently(firstMdr, batchMdrCount, footprints);
+                    } else {
+                        for (int mdrIndex = firstMdr; mdrIndex < firstMdr + batchMdrCount; mdrIndex++) {
+                            readFootprintMdr(mdrIndex, footprints);
+                        }
+                    }
+                } catch (IOException e) {
+                    Debug.trace(e);
+                    failed = true;
+                }
+                createShapeIndexes(footprints);
+                final Rectangle2D bounds = footprints.getBounds(firstMdr * SNOT * PN, batchMdrCount * SNOT * PN);
+                if (bounds != null) {
+                    publish(bounds);
+                }
+                if (failed) {
+                    break;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected void process(List<Rectangle2D> chunks) {
+            for (final Rectangle2D bounds : chunks) {
+                fireRegionChanged(bounds);
+            }
+        }
 
-        for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+        @Override
+        protected void done() {
             try {
-                readEfovMdr(mdrIndex, newEfovs, mdrIndex * SNOT);
-            } catch (IOException e) {
-                return Arrays.copyOfRange(newEfovs, 0, mdrIndex * SNOT);
+                get();
+            } catch (Exception e) {
+                Debug.trace(e);
             }
         }
-        return newEfovs;
     }
 
-    private void readEfovMdr(int mdrIndex, Efov[] efovs, int dest) throws IOException {
+    private void readFootprintMdrsConcurrently(int firstMdr, int batchMdrCount, final FootprintStore footprints)
+            throws IOException {
+        final ExecutorService executor = MdrWorkerPool.getExecutor();
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(batchMdrCount);
+        try {
+            for (int i = 0; i < batchMdrCount; i++) {
+                final int mdrIndex = firstMdr + i;
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        readFootprintMdr(mdrIndex, footprints);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Creating the footprints has been interrupted.");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException(e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        } finally {
+            for (final Future<Object> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // the EFOV outline is the polygon through the centres of its IFOVs
+    private void createShapeIndexes(FootprintStore footprints) {
+        final int efovCount = mdrCount * SNOT;
+        final float[] minX = new float[efovCount];
+        final float[] minY = new float[efovCount];
+        final float[] maxX = new float[efovCount];
+        final float[] maxY = new float[efovCount];
+        for (int i = 0; i < efovCount; i++) {
+            if (footprints.isValid(i * PN)) {
+                minX[i] = Float.POSITIVE_INFINITY;
+                minY[i] = Float.POSITIVE_INFINITY;
+                maxX[i] = Float.NEGATIVE_INFINITY;
+                maxY[i] = Float.NEGATIVE_INFINITY;
+                for (int k = i * PN; k < (i + 1) * PN; k++) {
+                    minX[i] = Math.min(minX[i], footprints.getCenterX(k));
+                    minY[i] = Math.min(minY[i], footprints.getCenterY(k));
+                    maxX[i] = Math.max(maxX[i], footprints.getCenterX(k));
+                    maxY[i] = Math.max(maxY[i], footprints.getCenterY(k));
+                }
+            } else {
+                minX[i] = Float.NaN;
+            }
+        }
+        final ShapeIndex newEfovShapeIndex = new ShapeIndex(minX, minY, maxX, maxY);
+        final ShapeIndex newIfovShapeIndex = new ShapeIndex(footprints);
+        synchronized (this) {
+            efovShapeIndex = newEfovShapeIndex;
+            ifovShapeIndex = newIfovShapeIndex;
+        }
+    }
+
+    // MDRs are processed independently of each other, possibly concurrently
+    private void readFootprintMdr(int mdrIndex, FootprintStore footprints) throws IOException {
         CompoundData mdr = iasiFile.getMdr(mdrIndex);
         final byte mode = iasiFile.readMdrGEPSIasiMode(mdr);
         if (mode == 0) {
             final boolean[][] anomalousFlags = iasiFile.readGQisFlagQualMdr(mdr);
+            final long mdrStartMillis = iasiFile.readMdrStartMillis(mdr);
+            final float[] xs = new float[PN];
+            final float[] ys = new float[PN];
 
             for (int efovIndex = 0; efovIndex < SNOT; efovIndex++) {
-                PixelPos[] ifovPos = ifovPosProvider.getIvofCenter(mdr, efovIndex);
-                final Shape[] ifovShapes = ifovShapeFactory.createIfovShapes(ifovPos);
-                final IasiIfov[] ifovs = new IasiIfov[PN];
-                for (int ifovIndex = 0; ifovIndex < ifovs.length; ifovIndex++) {
-                    final int ifovId = computeIfovId(mdrIndex, efovIndex, ifovIndex);
-                    final PixelPos pos = ifovPos[ifovIndex];
-                    final Shape shape = ifovShapes[ifovIndex];
-                    final boolean anomalous = anomalousFlags[efovIndex][ifovIndex];
-
-                    ifovs[ifovIndex] = new IasiIfov(ifovId, pos.x, pos.y, shape, anomalous);
-                }
-                final Shape efovShape = efovShapeFactory.createEfovShape(ifovs, mdr, efovIndex);
-                efovs[dest + efovIndex] = new Efov(efovIndex, ifovs, efovShape);
+                ifovPosProvider.getIfovCenters(mdr, mdrStartMillis, efovIndex, xs, ys);
+                ifovShapeFactory.setIfovShapes(xs, ys, anomalousFlags[efovIndex],
+                                               footprints, computeIfovId(mdrIndex, efovIndex, 0));
             }
         }
     }
 
     private interface IfovPosProvider {
-        PixelPos[] getIvofCenter(CompoundData mdr, int efovIndex) throws IOException;
+        void getIfovCenters(CompoundData mdr, long mdrStartMillis, int efovIndex, float[] xs, float[] ys) throws IOException;
     }
     
     private class AvhrrPixelPosBasedProvider implements IfovPosProvider {
 
         @Override
-        public PixelPos[] getIvofCenter(CompoundData mdr, int efovIndex) throws IOException {
-            final long[] millis = getEpsFile().readGEPSDatIasiMdr(mdr);
-            final long mdrStartMillis = millis[0];
+        public void getIfovCenters(CompoundData mdr, long mdrStartMillis, int efovIndex, float[] xs, float[] ys) throws IOException {
             final double[][] locs = getEpsFile().readMdrGEPSLocIasiAvhrrIASI(mdr, efovIndex);
-            final PixelPos[] ifovPos = new PixelPos[PN];
             for (int ifovIndex = 0; ifovIndex < PN; ifovIndex++) {
                 final double[] loc = locs[ifovIndex];
-                ifovPos[ifovIndex] = calculateAvhrrPixelPos(mdrStartMillis, loc[1], loc[0]);
+                xs[ifovIndex] = calculateAvhrrX(loc[0]);
+                ys[ifovIndex] = calculateAvhrrY(mdrStartMillis, loc[1]);
             }
-            return ifovPos;
         }
     }
     
     private class AvhrrGeocodingBasedProvider implements IfovPosProvider {
 
         @Override
-        public PixelPos[] getIvofCenter(CompoundData mdr, int efovIndex) throws IOException {
-            final PixelPos[] ifovPos = new PixelPos[PN];
+        public void getIfovCenters(CompoundData mdr, long mdrStartMillis, int efovIndex, float[] xs, float[] ys) throws IOException {
+            final PixelPos pixelPos = new PixelPos();
             for (int ifovIndex = 0; ifovIndex < PN; ifovIndex++) {
                 final GeoPos geoPos = iasiFile.readGeoPos(mdr, efovIndex, ifovIndex);
-                ifovPos[ifovIndex] = avhrrProduct.getGeoCoding().getPixelPos(geoPos, ifovPos[ifovIndex]);
+                avhrrProduct.getGeoCoding().getPixelPos(geoPos, pixelPos);
+                xs[ifovIndex] = pixelPos.x;
+                ys[ifovIndex] = pixelPos.y;
             } 
-            return ifovPos;
         }
     }
     
     private interface IfovShapeFactory {
-        Shape[] createIfovShapes(PixelPos[] ifovPos);
+        void setIfovShapes(float[] xs, float[] ys, boolean[] anomalousFlags, FootprintStore footprints, int firstIfovId);
     }
     
     private class EfovDistributionShapeFactory implements IfovShapeFactory {
 
         @Override
-        public Shape[] createIfovShapes(PixelPos[] ifovPos) {
-            final float scaleY01 = (ifovPos[1].y - ifovPos[0].y) / IFOV_DIST;
-            final float scaleY23 = (ifovPos[2].y - ifovPos[3].y) / IFOV_DIST;
+        public void setIfovShapes(float[] xs, float[] ys, boolean[] anomalousFlags, FootprintStore footprints, int firstIfovId) {
+            final float scaleY01 = (ys[1] - ys[0]) / IFOV_DIST;
+            final float scaleY23 = (ys[2] - ys[3]) / IFOV_DIST;
 
-            final float xWest = 0.5f * (ifovPos[0].x + ifovPos[1].x);
-            final float xEast = 0.5f * (ifovPos[2].x + ifovPos[3].x);
+            final float xWest = 0.5f * (xs[0] + xs[1]);
+            final float xEast = 0.5f * (xs[2] + xs[3]);
             final float scaleX = (xEast - xWest) / IFOV_DIST;
 
-            final Shape[] ifovShapes = new Shape[PN];
             for (int i = 0; i < PN; i++) {
-                final PixelPos pos = ifovPos[i];
-                if (i < 2) {
-                    ifovShapes[i] = new Ellipse2D.Float(pos.x - 0.5f * IFOV_SIZE * scaleX,
-                                                        pos.y - 0.5f * IFOV_SIZE * scaleY01,
-                                                        IFOV_SIZE * scaleX, IFOV_SIZE * scaleY01);
-                } else {
-                    ifovShapes[i] = new Ellipse2D.Float(pos.x - 0.5f * IFOV_SIZE * scaleX,
-                                                        pos.y - 0.5f * IFOV_SIZE * scaleY23,
-                                                        IFOV_SIZE * scaleX, IFOV_SIZE * scaleY23);
-                }
+                final float scaleY = i < 2 ? scaleY01 : scaleY23;
+                footprints.set(firstIfovId + i, xs[i], ys[i], IFOV_SIZE * scaleX, IFOV_SIZE * scaleY, anomalousFlags[i]);
             }
-            return ifovShapes;
         }
     }
     
-    private interface EfovShapeFactory {
-        Shape createEfovShape(IasiIfov[] ifovs, CompoundData mdr, int efovIndex) throws IOException;
-    }
-    
-    private class FastEfovShape implements EfovShapeFactory {
-
-        @Override
-        public Shape createEfovShape(IasiIfov[] ifovs, CompoundData mdr, int efovIndex) throws IOException {
-            boolean started = false;
-            GeneralPath path = new GeneralPath();
-            for (IasiIfov ifov : ifovs) {
-                if (!started) {
-                    path.moveTo(ifov.getPixelX(), ifov.getPixelY());
-                    started = true;
-                } else {
-                    path.lineTo(ifov.getPixelX(), ifov.getPixelY());
-                }
-            }
-            path.closePath();
-            return path;
-        }
+    private float calculateAvhrrX(double locX) {
+        return (float) (locX - avhrrTrimLeft);
     }
-    
-    private class IisGridEfovShape implements EfovShapeFactory {
 
-        @Override
-        public Shape createEfovShape(IasiIfov[] ifovs, CompoundData mdr, int efovIndex) throws IOException {
-            final double[][] iisLocs =  getEpsFile().readMdrGEPSLocIasiAvhrrIIS(mdr, efovIndex);
-            final long[] millis = getEpsFile().readGEPSDatIasiMdr(mdr);
-            final long mdrStartMillis = millis[0];
-            
-            GeneralPath path = new GeneralPath();
-            final int[] start = {0, 5, 10, 15, 20, 0, 1, 2, 3, 4};
-            final int[] end = {4, 9, 14, 19, 24, 20, 21, 22, 23, 24};
-            for (int i = 0; i < start.length; i++) {
-                double[] loc = iisLocs[start[i]];
-                PixelPos pos = calculateAvhrrPixelPos(mdrStartMillis, loc[1], loc[0]);
-                path.moveTo(pos.x, pos.y);
-
-                loc = iisLocs[end[i]];
-                pos = calculateAvhrrPixelPos(mdrStartMillis, loc[1], loc[0]);
-                path.lineTo(pos.x, pos.y);
-            }
-            return path;
-        }
-    }
-    
-    private class NormanEfovShape implements EfovShapeFactory {
-
-        @Override
-        public Shape createEfovShape(IasiIfov[] ifovs, CompoundData mdr, int efovIndex) throws IOException {
-            final Area area = new Area();
-            boolean started = false;
-            GeneralPath path = new GeneralPath();
-            for (IasiIfov ifov : ifovs) {
-                if (!started) {
-                    path.moveTo(ifov.getPixelX(), ifov.getPixelY());
-                    started = true;
-                } else {
-                    path.lineTo(ifov.getPixelX(), ifov.getPixelY());
-                }
-            }
-            area.add(new Area(path));
-            for (IasiIfov ifov : ifovs) {
-                area.subtract(new Area(ifov.getShape()));
-            }
-            return area;
-        }
-    }
-    
-    private class BoundsEfovShape implements EfovShapeFactory {
-
-        @Override
-        public Shape createEfovShape(IasiIfov[] ifovs, CompoundData mdr, int efovIndex) throws IOException {
-            final Area area = new Area();
-            for (IasiIfov ifov : ifovs) {
-                area.add(new Area(ifov.getShape()));
-            }
-            return area.getBounds2D();
-        }
-    }
-    
-    private class IisEfovShape implements EfovShapeFactory {
-
-        @Override
-        public Shape createEfovShape(IasiIfov[] ifovs, CompoundData mdr, int efovIndex) throws IOException {
-            final double[][] iisLocs =  getEpsFile().readMdrGEPSLocIasiAvhrrIIS(mdr, efovIndex);
-            final long[] millis = getEpsFile().readGEPSDatIasiMdr(mdr);
-            final long mdrStartMillis = millis[0];
-            double[] loc = iisLocs[0];
-            GeneralPath path = new GeneralPath();
-            PixelPos pos = calculateAvhrrPixelPos(mdrStartMillis, loc[1], loc[0]);
-            path.moveTo(pos.x, pos.y);
-
-            final int[] pointsIndices = {4, 24, 20};
-            for (int i : pointsIndices) {
-                loc = iisLocs[i];
-                pos = calculateAvhrrPixelPos(mdrStartMillis, loc[1], loc[0]);
-                path.lineTo(pos.x, pos.y);
-            }
-            path.closePath();
-            return path;
-        }
-        
-    }
-    private PixelPos calculateAvhrrPixelPos(long mdrStartMillis, double locX, double locY) {
+    private float calculateAvhrrY(long mdrStartMillis, double locY) {
         final double u = ((mdrStartMillis - avhrrStartMillis) + locY) / (avhrrEndMillis - avhrrStartMillis);
-
-        final float avhrrX = (float) (locX - avhrrTrimLeft);
-        final float avhrrY = (float) (u * avhrrRasterHeight);
-
-        return new PixelPos(avhrrX, avhrrY);
+        return (float) (u * avhrrRasterHeight);
     }
 }
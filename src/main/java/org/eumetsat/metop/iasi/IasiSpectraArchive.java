@@ -0,0 +1,340 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the chunked, columnar IASI spectra archives written by {@link IasiSpectraExporter}.
+ * <p/>
+ * An archive holds a number of one- or two-dimensional variables. Each
+ * variable is split into rectangular chunks which are compressed
+ * separately, so reading a subset of the channels only touches the chunks
+ * holding these channels.
+ * <p/>
+ * File layout (big-endian):
+ * <pre>
+ * int     magic "ISX1"
+ * byte[]  compressed chunks
+ * index:  int attributeCount, { UTF name, UTF value }
+ *         int variableCount, { UTF name, byte type, int rank, int[rank] shape,
+ *                              int[rank] chunkShape, int chunkCount, { long offset, int length } }
+ * long    index offset
+ * int     magic "ISX1"
+ * </pre>
+ * Chunks are numbered in row-major order. Each chunk holds its elements in
+ * row-major order, with the bytes of the big-endian elements shuffled into
+ * planes (all first bytes, then all second bytes, ...) before deflating.
+ */
+public class IasiSpectraArchive {
+
+    static final int MAGIC = 0x49535831; // "ISX1"
+    static final int FOOTER_SIZE = 12;
+
+    static final byte TYPE_BYTE = 1;
+    static final byte TYPE_SHORT = 2;
+    static final byte TYPE_DOUBLE = 3;
+
+    private final RandomAccessFile raf;
+    private final Map<String, String> attributes;
+    private final Map<String, Variable> variables;
+
+    public IasiSpectraArchive(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        attributes = new LinkedHashMap<String, String>();
+        variables = new LinkedHashMap<String, Variable>();
+        try {
+            if (raf.length() < 4 + FOOTER_SIZE || raf.readInt() != MAGIC) {
+                throw new IOException("Not an IASI spectra archive: " + file);
+            }
+            raf.seek(raf.length() - FOOTER_SIZE);
+            final long indexOffset = raf.readLong();
+            if (raf.readInt() != MAGIC) {
+                throw new IOException("Incomplete IASI spectra archive: " + file);
+            }
+            final byte[] index = new byte[(int) (raf.length() - FOOTER_SIZE - indexOffset)];
+            raf.seek(indexOffset);
+            raf.readFully(index);
+            readIndex(new DataInputStream(new ByteArrayInputStream(index)));
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * @param name the attribute name
+     *
+     * @return the attribute value, or {@code null} if there is no such attribute
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public String[] getVariableNames() {
+        return variables.keySet().toArray(new String[variables.size()]);
+    }
+
+    /**
+     * @param name the variable name
+     *
+     * @return the shape of the variable
+     */
+    public int[] getShape(String name) {
+        return getVariable(name).shape.clone();
+    }
+
+    public int getChannelCount() {
+        return getVariable(IasiSpectraExporter.SPECTRA).shape[0];
+    }
+
+    public int getIfovCount() {
+        return getVariable(IasiSpectraExporter.SPECTRA).shape[1];
+    }
+
+    /**
+     * Reads the raw samples of a range of channels for all IFOVs. Radiances
+     * are obtained by multiplying the samples with the channel's scale factor.
+     *
+     * @param firstChannel the first channel
+     * @param channelCount the number of channels
+     *
+     * @return the samples, ordered by channel and IFOV
+     * @throws IOException if an I/O error occurs
+     */
+    public short[] readChannels(int firstChannel, int channelCount) throws IOException {
+        final byte[] bytes = readRows(getVariable(IasiSpectraExporter.SPECTRA), TYPE_SHORT, firstChannel, channelCount);
+        final short[] samples = new short[bytes.length / 2];
+        ByteBuffer.wrap(bytes).asShortBuffer().get(samples);
+        return samples;
+    }
+
+    /**
+     * Reads a variable of type {@code double}.
+     *
+     * @param name the variable name
+     *
+     * @return the values in row-major order
+     * @throws IOException if an I/O error occurs
+     */
+    public double[] readDoubles(String name) throws IOException {
+        final Variable variable = getVariable(name);
+        final byte[] bytes = readRows(variable, TYPE_DOUBLE, 0, variable.shape[0]);
+        final double[] values = new double[bytes.length / 8];
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Reads a variable of type {@code byte}.
+     *
+     * @param name the variable name
+     *
+     * @return the values in row-major order
+     * @throws IOException if an I/O error occurs
+     */
+    public byte[] readBytes(String name) throws IOException {
+        final Variable variable = getVariable(name);
+        return readRows(variable, TYPE_BYTE, 0, variable.shape[0]);
+    }
+
+    private Variable getVariable(String name) {
+        final Variable variable = variables.get(name);
+        if (variable == null) {
+            throw new IllegalArgumentException("No such variable: " + name);
+        }
+        return variable;
+    }
+
+    private void readIndex(DataInputStream in) throws IOException {
+        final int attributeCount = in.readInt();
+        for (int i = 0; i < attributeCount; i++) {
+            final String name = in.readUTF();
+            attributes.put(name, in.readUTF());
+        }
+        final int variableCount = in.readInt();
+        for (int i = 0; i < variableCount; i++) {
+            final String name = in.readUTF();
+            final byte type = in.readByte();
+            final int rank = in.readInt();
+            final int[] shape = new int[rank];
+            for (int k = 0; k < rank; k++) {
+                shape[k] = in.readInt();
+            }
+            final int[] chunkShape = new int[rank];
+            for (int k = 0; k < rank; k++) {
+                chunkShape[k] = in.readInt();
+            }
+            final Variable variable = new Variable(name, type, shape, chunkShape);
+            final int chunkCount = in.readInt();
+            if (chunkCount != variable.chunkOffsets.length) {
+                throw new IOException("Corrupt chunk index of variable '" + name + "'.");
+            }
+            for (int k = 0; k < chunkCount; k++) {
+                variable.chunkOffsets[k] = in.readLong();
+                variable.chunkLengths[k] = in.readInt();
+            }
+            variables.put(name, variable);
+        }
+    }
+
+    /**
+     * Reads a range of rows, i.e. of elements along the first dimension.
+     *
+     * @return the unshuffled big-endian elements in row-major order
+     */
+    private byte[] readRows(Variable variable, byte type, int firstRow, int rowCount) throws IOException {
+        if (variable.type != type) {
+            throw new IllegalArgumentException("Variable '" + variable.name + "' is not of the requested type.");
+        }
+        if (firstRow < 0 || rowCount < 0 || firstRow + rowCount > variable.shape[0]) {
+            throw new IllegalArgumentException("Rows out of range.");
+        }
+        final int elementSize = getElementSize(type);
+        final int columnCount = variable.getColumnCount();
+        final byte[] bytes = new byte[rowCount * columnCount * elementSize];
+        if (rowCount == 0) {
+            return bytes;
+        }
+        final int chunkRowCount = variable.chunkShape[0];
+        final int chunkColumnCount = variable.getChunkColumnCount();
+        final int firstChunkRow = firstRow / chunkRowCount;
+        final int lastChunkRow = (firstRow + rowCount - 1) / chunkRowCount;
+        for (int a = firstChunkRow; a <= lastChunkRow; a++) {
+            final int rowOffset = a * chunkRowCount;
+            final int rows = Math.min(chunkRowCount, variable.shape[0] - rowOffset);
+            for (int b = 0; b < variable.getChunkGridColumnCount(); b++) {
+                final int columnOffset = b * chunkColumnCount;
+                final int columns = Math.min(chunkColumnCount, columnCount - columnOffset);
+                final int elementCount = rows * columns;
+                final byte[] chunk = readChunk(variable, a * variable.getChunkGridColumnCount() + b,
+                                               elementCount * elementSize);
+                final int r1 = Math.max(firstRow, rowOffset);
+                final int r2 = Math.min(firstRow + rowCount, rowOffset + rows);
+                for (int r = r1; r < r2; r++) {
+                    for (int c = 0; c < columns; c++) {
+                        final int n = (r - rowOffset) * columns + c;
+                        final int target = ((r - firstRow) * columnCount + columnOffset + c) * elementSize;
+                        for (int p = 0; p < elementSize; p++) {
+                            bytes[target + p] = chunk[p * elementCount + n];
+                        }
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private byte[] readChunk(Variable variable, int chunkIndex, int size) throws IOException {
+        final byte[] compressed = new byte[variable.chunkLengths[chunkIndex]];
+        synchronized (raf) {
+            raf.seek(variable.chunkOffsets[chunkIndex]);
+            raf.readFully(compressed);
+        }
+        final byte[] chunk = new byte[size];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < size) {
+                final int count = inflater.inflate(chunk, length, size - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != size) {
+                throw new IOException("Corrupt chunk " + chunkIndex + " of variable '" + variable.name + "'.");
+            }
+        } catch (DataFormatException e) {
+            final IOException ioe = new IOException("Corrupt chunk " + chunkIndex + " of variable '" + variable.name + "'.");
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+        return chunk;
+    }
+
+    static int getElementSize(byte type) {
+        switch (type) {
+            case TYPE_BYTE:
+                return 1;
+            case TYPE_SHORT:
+                return 2;
+            case TYPE_DOUBLE:
+                return 8;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    /**
+     * A one- or two-dimensional chunked variable.
+     */
+    static class Variable {
+
+        final String name;
+        final byte type;
+        final int[] shape;
+        final int[] chunkShape;
+        final long[] chunkOffsets;
+        final int[] chunkLengths;
+
+        Variable(String name, byte type, int[] shape, int[] chunkShape) {
+            if (shape.length < 1 || shape.length > 2 || chunkShape.length != shape.length) {
+                throw new IllegalArgumentException("Only one- and two-dimensional variables are supported.");
+            }
+            this.name = name;
+            this.type = type;
+            this.shape = shape;
+            this.chunkShape = chunkShape;
+            final int chunkCount = getChunkGridRowCount() * getChunkGridColumnCount();
+            chunkOffsets = new long[chunkCount];
+            chunkLengths = new int[chunkCount];
+        }
+
+        int getColumnCount() {
+            return shape.length == 2 ? shape[1] : 1;
+        }
+
+        int getChunkColumnCount() {
+            return chunkShape.length == 2 ? chunkShape[1] : 1;
+        }
+
+        int getChunkGridRowCount() {
+            return (shape[0] + chunkShape[0] - 1) / chunkShape[0];
+        }
+
+        int getChunkGridColumnCount() {
+            return (getColumnCount() + getChunkColumnCount() - 1) / getChunkColumnCount();
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import com.bc.ceres.core.ProgressMonitor;
+
+import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.MdrWorkerPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Exports the spectra, the geolocation, the angles and the quality flags of
+ * an IASI L1C product to a chunked, compressed, columnar archive which can
+ * be read with {@link IasiSpectraArchive}.
+ * <p/>
+ * The spectra are stored as raw samples in channel-major chunks of
+ * {@link #CHUNK_CHANNEL_COUNT} channels, so that a subset of the channels can
+ * be read without decompressing the others. The product is streamed in
+ * blocks of {@link #BLOCK_MDR_COUNT} MDRs, which bounds the memory needed
+ * independently of the product size. MDRs are decoded and chunks compressed
+ * concurrently by the {@link MdrWorkerPool} if the product is memory-mapped.
+ */
+public class IasiSpectraExporter {
+
+    public static final String FILE_EXTENSION = ".isx";
+
+    static final String SPECTRA = "GS1cSpect";
+    static final String SCALE_FACTORS = "GS1cSpect.scaleFactor";
+    static final String WAVENUMBERS = "wavenumber";
+    static final String LOCATIONS = "GGeoSondLoc";
+    static final String METOP_ANGLES = "GGeoSondAnglesMETOP";
+    static final String SUN_ANGLES = "GGeoSondAnglesSUN";
+    static final String FLAGS = "GQisFlagQual";
+
+    static final int BLOCK_MDR_COUNT = 16;
+    static final int CHUNK_CHANNEL_COUNT = 64;
+
+    private static final int IFOVS_PER_MDR = IasiFile.SNOT * IasiFile.PN;
+
+    private final IasiFile iasiFile;
+
+    public IasiSpectraExporter(IasiFile iasiFile) {
+        this.iasiFile = iasiFile;
+    }
+
+    /**
+     * Exports the product to an archive.
+     *
+     * @param file the archive file
+     * @param pm   the progress monitor
+     *
+     * @throws IOException if an I/O error occurs, or if the spectral sampling
+     *                     differs between MDRs
+     */
+    public void export(File file, ProgressMonitor pm) throws IOException {
+        final int mdrCount = iasiFile.getMdrCount();
+        if (mdrCount == 0) {
+            throw new IOException("The product does not contain any MDRs.");
+        }
+        final int spectrumSize = iasiFile.readSpectrumSize(0);
+        final int iDefNsFirst1b = (int) iasiFile.readIDefNsfirst1b(0);
+        final double iDefSpectDWn1b = iasiFile.readIDefSpectDWn1b(0);
+        for (int mdrIndex = 1; mdrIndex < mdrCount; mdrIndex++) {
+            if (iasiFile.readSpectrumSize(mdrIndex) != spectrumSize
+                || iasiFile.readIDefNsfirst1b(mdrIndex) != iDefNsFirst1b
+                || iasiFile.readIDefSpectDWn1b(mdrIndex) != iDefSpectDWn1b) {
+                throw new IOException("The spectral sampling of MDR " + mdrIndex + " differs from the first MDR.");
+            }
+        }
+
+        final int ifovCount = mdrCount * IFOVS_PER_MDR;
+        final int blockIfovCount = BLOCK_MDR_COUNT * IFOVS_PER_MDR;
+        final IasiSpectraArchive.Variable spectra = createVariable(SPECTRA, IasiSpectraArchive.TYPE_SHORT,
+                                                                   spectrumSize, ifovCount,
+                                                                   CHUNK_CHANNEL_COUNT, blockIfovCount);
+        final IasiSpectraArchive.Variable scaleFactors = createVariable(SCALE_FACTORS, IasiSpectraArchive.TYPE_DOUBLE,
+                                                                        spectrumSize, spectrumSize);
+        final IasiSpectraArchive.Variable wavenumbers = createVariable(WAVENUMBERS, IasiSpectraArchive.TYPE_DOUBLE,
+                                                                       spectrumSize, spectrumSize);
+        final IasiSpectraArchive.Variable locations = createVariable(LOCATIONS, IasiSpectraArchive.TYPE_DOUBLE,
+                                                                     ifovCount, 2, blockIfovCount, 2);
+        final IasiSpectraArchive.Variable metopAngles = createVariable(METOP_ANGLES, IasiSpectraArchive.TYPE_DOUBLE,
+                                                                       ifovCount, 2, blockIfovCount, 2);
+        final IasiSpectraArchive.Variable sunAngles = createVariable(SUN_ANGLES, IasiSpectraArchive.TYPE_DOUBLE,
+                                                                     ifovCount, 2, blockIfovCount, 2);
+        final IasiSpectraArchive.Variable flags = createVariable(FLAGS, IasiSpectraArchive.TYPE_BYTE,
+                                                                 ifovCount, blockIfovCount);
+
+        final Map<String, String> attributes = new LinkedHashMap<String, String>();
+        attributes.put("product", iasiFile.getProductName());
+        attributes.put("mdrCount", String.valueOf(mdrCount));
+        attributes.put("IDefNsfirst1b", String.valueOf(iDefNsFirst1b));
+        attributes.put("IDefSpectDWn1b", String.valueOf(iDefSpectDWn1b));
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        boolean success = false;
+        pm.beginTask("Exporting IASI spectra...", mdrCount);
+        try {
+            raf.setLength(0);
+            final ArchiveWriter writer = new ArchiveWriter(raf.getChannel());
+
+            final double[] scaleFactorValues = Arrays.copyOf(iasiFile.getScaleFactors(iDefNsFirst1b), spectrumSize);
+            final double[] wavenumberValues = new double[spectrumSize];
+            for (int i = 0; i < spectrumSize; i++) {
+                wavenumberValues[i] = iDefSpectDWn1b * (iDefNsFirst1b + i - 1);
+            }
+            writer.writeChunk(scaleFactors, 0, deflate(shuffle(scaleFactorValues, spectrumSize)));
+            writer.writeChunk(wavenumbers, 0, deflate(shuffle(wavenumberValues, spectrumSize)));
+
+            final Block block = new Block(blockIfovCount);
+            final int channelChunkCount = spectra.getChunkGridRowCount();
+            final int ifovChunkCount = spectra.getChunkGridColumnCount();
+            for (int blockIndex = 0; blockIndex < ifovChunkCount; blockIndex++) {
+                if (pm.isCanceled()) {
+                    throw new IOException("The export has been cancelled.");
+                }
+                final int firstMdr = blockIndex * BLOCK_MDR_COUNT;
+                final int blockMdrCount = Math.min(BLOCK_MDR_COUNT, mdrCount - firstMdr);
+                readBlock(block, firstMdr, blockMdrCount);
+
+                final int count = blockMdrCount * IFOVS_PER_MDR;
+                final List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(channelChunkCount + 4);
+                try {
+                    for (int a = 0; a < channelChunkCount; a++) {
+                        final int firstChannel = a * CHUNK_CHANNEL_COUNT;
+                        final int channelCount = Math.min(CHUNK_CHANNEL_COUNT, spectrumSize - firstChannel);
+                        futures.add(submitCompression(block.spectra, count, firstChannel, channelCount));
+                    }
+                    futures.add(submitCompression(block.locations, 2 * count));
+                    futures.add(submitCompression(block.metopAngles, 2 * count));
+                    futures.add(submitCompression(block.sunAngles, 2 * count));
+                    futures.add(submitCompression(block.flags, count));
+
+                    for (int a = 0; a < channelChunkCount; a++) {
+                        writer.writeChunk(spectra, a * ifovChunkCount + blockIndex, getResult(futures.get(a)));
+                    }
+                    writer.writeChunk(locations, blockIndex, getResult(futures.get(channelChunkCount)));
+                    writer.writeChunk(metopAngles, blockIndex, getResult(futures.get(channelChunkCount + 1)));
+                    writer.writeChunk(sunAngles, blockIndex, getResult(futures.get(channelChunkCount + 2)));
+                    writer.writeChunk(flags, blockIndex, getResult(futures.get(channelChunkCount + 3)));
+                } finally {
+                    for (final Future<byte[]> future : futures) {
+                        future.cancel(false);
+                    }
+                }
+                pm.worked(blockMdrCount);
+            }
+            writer.writeIndex(attributes, spectra, scaleFactors, wavenumbers, locations, metopAngles, sunAngles, flags);
+            success = true;
+        } finally {
+            pm.done();
+            raf.close();
+            if (!success) {
+                file.delete();
+            }
+        }
+    }
+
+    private void readBlock(final Block block, int firstMdr, int blockMdrCount) throws IOException {
+        if (!iasiFile.canReadConcurrently() || MdrWorkerPool.getThreadCount() == 1) {
+            for (int i = 0; i < blockMdrCount; i++) {
+                readMdr(block, firstMdr + i, i * IFOVS_PER_MDR);
+            }
+            return;
+        }
+        final ExecutorService executor = MdrWorkerPool.getExecutor();
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(blockMdrCount);
+        try {
+            for (int i = 0; i < blockMdrCount; i++) {
+                final int mdrIndex = firstMdr + i;
+                final int targetIndex = i * IFOVS_PER_MDR;
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        readMdr(block, mdrIndex, targetIndex);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Object> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            for (final Future<Object> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void readMdr(Block block, int mdrIndex, int targetIndex) throws IOException {
+        iasiFile.readSpectra(mdrIndex, block.spectra, targetIndex);
+        iasiFile.readGeolocation(mdrIndex, block.locations, block.metopAngles, block.sunAngles, block.flags,
+                                 targetIndex);
+    }
+
+    private static Future<byte[]> submitCompression(final short[][] spectra, final int ifovCount,
+                                                    final int firstChannel, final int channelCount) {
+        return MdrWorkerPool.getExecutor().submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return deflate(shuffle(spectra, ifovCount, firstChannel, channelCount));
+            }
+        });
+    }
+
+    private static Future<byte[]> submitCompression(final double[] values, final int count) {
+        return MdrWorkerPool.getExecutor().submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return deflate(shuffle(values, count));
+            }
+        });
+    }
+
+    private static Future<byte[]> submitCompression(final byte[] values, final int count) {
+        return MdrWorkerPool.getExecutor().submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return deflate(Arrays.copyOf(values, count));
+            }
+        });
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The export has been interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            final IOException ioe = new IOException(e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+
+    private static IasiSpectraArchive.Variable createVariable(String name, byte type, int size, int chunkSize) {
+        return new IasiSpectraArchive.Variable(name, type, new int[]{size}, new int[]{chunkSize});
+    }
+
+    private static IasiSpectraArchive.Variable createVariable(String name, byte type, int rows, int columns,
+                                                              int chunkRows, int chunkColumns) {
+        return new IasiSpectraArchive.Variable(name, type, new int[]{rows, columns},
+                                               new int[]{chunkRows, chunkColumns});
+    }
+
+    // transposes the samples of a channel range into channel-major order and shuffles their bytes
+    static byte[] shuffle(short[][] spectra, int ifovCount, int firstChannel, int channelCount) {
+        final int n = channelCount * ifovCount;
+        final byte[] bytes = new byte[2 * n];
+        for (int k = 0; k < ifovCount; k++) {
+            final short[] spectrum = spectra[k];
+            for (int c = 0; c < channelCount; c++) {
+                final short sample = spectrum[firstChannel + c];
+                final int i = c * ifovCount + k;
+                bytes[i] = (byte) (sample >> 8);
+                bytes[n + i] = (byte) sample;
+            }
+        }
+        return bytes;
+    }
+
+    static byte[] shuffle(double[] values, int count) {
+        final byte[] bytes = new byte[8 * count];
+        for (int i = 0; i < count; i++) {
+            final long bits = Double.doubleToLongBits(values[i]);
+            for (int p = 0; p < 8; p++) {
+                bytes[p * count + i] = (byte) (bits >>> (56 - 8 * p));
+            }
+        }
+        return bytes;
+    }
+
+    static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            final byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The decoded data of a block of MDRs.
+     */
+    private static class Block {
+
+        final short[][] spectra;
+        final double[] locations;
+        final double[] metopAngles;
+        final double[] sunAngles;
+        final byte[] flags;
+
+        Block(int ifovCount) {
+            spectra = new short[ifovCount][];
+            locations = new double[2 * ifovCount];
+            metopAngles = new double[2 * ifovCount];
+            sunAngles = new double[2 * ifovCount];
+            flags = new byte[ifovCount];
+        }
+    }
+
+    private static class ArchiveWriter {
+
+        private final FileChannel channel;
+        private long position;
+
+        ArchiveWriter(FileChannel channel) throws IOException {
+            this.channel = channel;
+            final ByteBuffer magic = ByteBuffer.allocate(4);
+            magic.putInt(IasiSpectraArchive.MAGIC);
+            magic.flip();
+            write(magic);
+        }
+
+        void writeChunk(IasiSpectraArchive.Variable variable, int chunkIndex, byte[] chunk) throws IOException {
+            variable.chunkOffsets[chunkIndex] = position;
+            variable.chunkLengths[chunkIndex] = chunk.length;
+            write(ByteBuffer.wrap(chunk));
+        }
+
+        void writeIndex(Map<String, String> attributes, IasiSpectraArchive.Variable... variables) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(attributes.size());
+            for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(variables.length);
+            for (final IasiSpectraArchive.Variable variable : variables) {
+                out.writeUTF(variable.name);
+                out.writeByte(variable.type);
+                out.writeInt(variable.shape.length);
+                for (final int size : variable.shape) {
+                    out.writeInt(size);
+                }
+                for (final int size : variable.chunkShape) {
+                    out.writeInt(size);
+                }
+                out.writeInt(variable.chunkOffsets.length);
+                for (int i = 0; i < variable.chunkOffsets.length; i++) {
+                    out.writeLong(variable.chunkOffsets[i]);
+                    out.writeInt(variable.chunkLengths[i]);
+                }
+            }
+            out.writeLong(position);
+            out.writeInt(IasiSpectraArchive.MAGIC);
+            out.close();
+            write(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /**
+     * Exports an IASI L1C product.
+     * <p/>
+     * Usage: {@code IasiSpectraExporter <IASI L1C product> [<archive>]}
+     *
+     * @param args the command line arguments
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: IasiSpectraExporter <IASI L1C product> [<archive>]");
+            System.exit(1);
+        }
+        final File productFile = new File(args[0]);
+        final File archiveFile;
+        if (args.length > 1) {
+            archiveFile = new File(args[1]);
+        } else {
+            final String name = productFile.getName();
+            final int dotIndex = name.lastIndexOf('.');
+            archiveFile = new File(productFile.getParentFile(),
+                                   (dotIndex > 0 ? name.substring(0, dotIndex) : name) + FILE_EXTENSION);
+        }
+        final EpsFile epsFile = EpsFormats.getInstance().openFile(productFile);
+        try {
+            if (!(epsFile instanceof IasiFile)) {
+                System.out.println("Not an IASI L1C product: " + productFile);
+                System.exit(1);
+            }
+            final long t0 = System.currentTimeMillis();
+            new IasiSpectraExporter((IasiFile) epsFile).export(archiveFile, ProgressMonitor.NULL);
+            final long t1 = System.currentTimeMillis();
+            System.out.println("Wrote " + archiveFile + " (" + archiveFile.length() + " bytes) in " + (t1 - t0) + " ms");
+        } finally {
+            epsFile.close();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import org.esa.beam.util.Debug;
+import org.eumetsat.metop.eps.EpsFormatCache;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk sidecar holding the IASI spectra of a product in channel-major
+ * order, i.e. as {@code short[channel][mdr * SNOT * PN]}.
+ * <p/>
+ * Reading the samples of a single channel for all IFOVs then is a single
+ * sequential read of the channel slice instead of a scan of the whole product.
+ * The sidecar also holds the per-MDR {@code IDefSpectDWn1b} and
+ * {@code IDefNsfirst1b}, so the product itself is not touched at all.
+ * <p/>
+ * Sidecars are stored in the directory given by {@link #DIR_PROPERTY}, by
+ * default {@code spectrum-cache} in the {@link EpsFormatCache#getCacheRootDir() cache root},
+ * and are named by the product name and a checksum over the file size, the
+ * modification time and the first {@link #CHECKSUM_HEAD_SIZE} bytes of the product.
+ * <p/>
+ * Sidecars are built in the background, one at a time. After a sidecar has been
+ * built, the least recently used sidecars are deleted until all sidecars fit
+ * into the size given by {@link #MAX_SIZE_PROPERTY}.
+ */
+class IasiSpectrumCache {
+
+    /**
+     * The name of the system property which enables the spectrum cache.
+     */
+    static final String ENABLED_PROPERTY = "metop.iasi.spectrumCache";
+    /**
+     * The name of the system property which sets the cache directory.
+     */
+    static final String DIR_PROPERTY = "metop.iasi.spectrumCache.dir";
+    /**
+     * The name of the system property which sets the maximum size of all sidecars (MB).
+     */
+    static final String MAX_SIZE_PROPERTY = "metop.iasi.spectrumCache.maxSize";
+
+    private static final String FILE_EXTENSION = ".isc";
+    private static final int DEFAULT_MAX_SIZE = 8 * 1024;
+
+    private static final int MAGIC = 0x49534331; // "ISC1"
+    private static final int CHECKSUM_HEAD_SIZE = 64 * 1024;
+    private static final int BLOCK_MDR_COUNT = 16;
+
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "spectrum-cache-builder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final RandomAccessFile raf;
+    private final int mdrCount;
+    private final int channelCount;
+    private final int sliceLength;
+    private final double[] dwn;
+    private final int[] nsfirst;
+    private final ByteBuffer[] windows;
+    private final int channelsPerWindow;
+
+    private IasiSpectrumCache(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final int headerFixedSize = 4 * 4;
+            final ByteBuffer fixed = ByteBuffer.allocate(headerFixedSize);
+            readFully(channel, fixed, 0);
+            fixed.flip();
+            if (fixed.getInt() != MAGIC) {
+                throw new IOException("Not a spectrum cache: " + file);
+            }
+            mdrCount = fixed.getInt();
+            channelCount = fixed.getInt();
+            sliceLength = fixed.getInt();
+
+            final ByteBuffer header = ByteBuffer.allocate(mdrCount * 12);
+            readFully(channel, header, headerFixedSize);
+            header.flip();
+            dwn = new double[mdrCount];
+            nsfirst = new int[mdrCount];
+            for (int i = 0; i < mdrCount; i++) {
+                dwn[i] = header.getDouble();
+                nsfirst[i] = header.getInt();
+            }
+
+            final long dataOffset = headerFixedSize + mdrCount * 12L;
+            final long sliceSize = sliceLength * 2L;
+            channelsPerWindow = (int) Math.max(1, Integer.MAX_VALUE / sliceSize);
+            final int windowCount = (channelCount + channelsPerWindow - 1) / channelsPerWindow;
+            windows = new ByteBuffer[windowCount];
+            for (int i = 0; i < windowCount; i++) {
+                final int firstChannel = i * channelsPerWindow;
+                final int channels = Math.min(channelsPerWindow, channelCount - firstChannel);
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         dataOffset + firstChannel * sliceSize, channels * sliceSize);
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Opens the spectrum cache of an IASI file.
+     *
+     * @param iasiFile    the IASI file
+     * @param productFile the file of the IASI product
+     *
+     * @return the spectrum cache, or {@code null} if it has not been built yet
+     * @throws IOException if the cache could not be opened
+     */
+    static IasiSpectrumCache open(IasiFile iasiFile, File productFile) throws IOException {
+        final File cacheFile = getCacheFile(iasiFile.getProductName(), productFile);
+        if (!cacheFile.exists()) {
+            return null;
+        }
+        // the modification time records the last use
+        cacheFile.setLastModified(System.currentTimeMillis());
+        return new IasiSpectrumCache(cacheFile);
+    }
+
+    /**
+     * Builds the spectrum cache of an IASI file in the background. The IASI
+     * file must allow reading MDRs concurrently.
+     *
+     * @param iasiFile    the IASI file
+     * @param productFile the file of the IASI product
+     *
+     * @return the future result of the build
+     */
+    static Future<?> buildLater(final IasiFile iasiFile, final File productFile) {
+        return BUILDER.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                final File cacheFile = getCacheFile(iasiFile.getProductName(), productFile);
+                if (!cacheFile.exists()) {
+                    build(iasiFile, cacheFile);
+                    deleteLeastRecentlyUsed(cacheFile.getParentFile(), getMaxSize(), cacheFile);
+                }
+                return null;
+            }
+        });
+    }
+
+    int getMdrCount() {
+        return mdrCount;
+    }
+
+    double getIDefSpectDWn1b(int mdrIndex) {
+        return dwn[mdrIndex];
+    }
+
+    int getIDefNsfirst1b(int mdrIndex) {
+        return nsfirst[mdrIndex];
+    }
+
+    /**
+     * Reads the samples of a channel for all IFOVs, ordered by IFOV ID.
+     *
+     * @param channelId the channel
+     * @param samples   the target array of length {@code mdrCount * SNOT * PN}
+     */
+    void readChannel(int channelId, short[] samples) {
+        final ByteBuffer window = windows[channelId / channelsPerWindow].duplicate();
+        window.position((channelId % channelsPerWindow) * sliceLength * 2);
+        window.asShortBuffer().get(samples, 0, sliceLength);
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+
+    private static File getCacheFile(String productName, File productFile) throws IOException {
+        final String dirPath = System.getProperty(DIR_PROPERTY);
+        final File dir;
+        if (dirPath != null) {
+            dir = new File(dirPath);
+        } else {
+            dir = new File(EpsFormatCache.getCacheRootDir(), "spectrum-cache");
+        }
+        return new File(dir, productName + "_" + Long.toHexString(computeChecksum(productFile)) + FILE_EXTENSION);
+    }
+
+    private static long getMaxSize() {
+        return Math.max(0, Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)) * 1024L * 1024L;
+    }
+
+    /**
+     * Deletes the least recently used sidecars in a directory until the size of
+     * all sidecars does not exceed a maximum size.
+     *
+     * @param dir     the directory
+     * @param maxSize the maximum size (bytes)
+     * @param keep    a sidecar which is never deleted
+     */
+    static void deleteLeastRecentlyUsed(File dir, long maxSize, File keep) {
+        final File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(FILE_EXTENSION);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (final File file : files) {
+            size += file.length();
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                final long t1 = file1.lastModified();
+                final long t2 = file2.lastModified();
+                return t1 < t2 ? -1 : t1 > t2 ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            if (!files[i].equals(keep)) {
+                final long length = files[i].length();
+                // a sidecar still in use cannot be deleted on some platforms
+                if (files[i].delete()) {
+                    size -= length;
+                } else {
+                    Debug.trace("Cannot delete spectrum cache: " + files[i]);
+                }
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("Spectrum cache truncated.");
+            }
+        }
+    }
+
+    private static long computeChecksum(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer meta = ByteBuffer.allocate(16);
+        meta.putLong(file.length());
+        meta.putLong(file.lastModified());
+        crc.update(meta.array());
+
+        final byte[] head = new byte[(int) Math.min(CHECKSUM_HEAD_SIZE, file.length())];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(head);
+        } finally {
+            in.close();
+        }
+        crc.update(head);
+        return crc.getValue();
+    }
+
+    private static void build(IasiFile iasiFile, File cacheFile) throws IOException {
+        final File dir = cacheFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory: " + dir);
+        }
+        final int mdrCount = iasiFile.getMdrCount();
+        final int ifovCount = IasiFile.SNOT * IasiFile.PN;
+        final int channelCount = IasiFile.SS;
+        final int sliceLength = mdrCount * ifovCount;
+
+        final File tmpFile = new File(dir, cacheFile.getName() + ".tmp");
+        final RandomAccessFile out = new RandomAccessFile(tmpFile, "rw");
+        boolean success = false;
+        try {
+            final FileChannel channel = out.getChannel();
+            final int headerFixedSize = 4 * 4;
+            final ByteBuffer header = ByteBuffer.allocate(headerFixedSize + mdrCount * 12);
+            header.putInt(MAGIC);
+            header.putInt(mdrCount);
+            header.putInt(channelCount);
+            header.putInt(sliceLength);
+            for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+                header.putDouble(iasiFile.readIDefSpectDWn1b(mdrIndex));
+                header.putInt((int) iasiFile.readIDefNsfirst1b(mdrIndex));
+            }
+            header.flip();
+            channel.write(header, 0);
+            final long dataOffset = headerFixedSize + mdrCount * 12L;
+
+            // transpose blocks of MDRs, so that each channel slice is written in few large pieces
+            final short[][] block = new short[BLOCK_MDR_COUNT * ifovCount][];
+            final ByteBuffer piece = ByteBuffer.allocate(BLOCK_MDR_COUNT * ifovCount * 2);
+            final ShortBuffer pieceShorts = piece.asShortBuffer();
+            for (int firstMdr = 0; firstMdr < mdrCount; firstMdr += BLOCK_MDR_COUNT) {
+                final int blockMdrCount = Math.min(BLOCK_MDR_COUNT, mdrCount - firstMdr);
+                final int blockIfovCount = blockMdrCount * ifovCount;
+                for (int i = 0; i < blockMdrCount; i++) {
+                    iasiFile.readSpectra(firstMdr + i, block, i * ifovCount);
+                }
+                for (int channelId = 0; channelId < channelCount; channelId++) {
+                    pieceShorts.clear();
+                    for (int i = 0; i < blockIfovCount; i++) {
+                        pieceShorts.put(block[i][channelId]);
+                    }
+                    piece.clear();
+                    piece.limit(blockIfovCount * 2);
+                    final long position = dataOffset + (channelId * (long) sliceLength + firstMdr * ifovCount) * 2L;
+                    while (piece.hasRemaining()) {
+                        channel.write(piece, position + piece.position());
+                    }
+                }
+            }
+            success = true;
+        } finally {
+            out.close();
+            if (!success) {
+                tmpFile.delete();
+            }
+        }
+        if (!tmpFile.renameTo(cacheFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot create spectrum cache: " + cacheFile);
+        }
+    }
+}
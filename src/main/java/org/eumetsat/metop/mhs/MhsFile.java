@@ -22,6 +22,7 @@ import com.bc.ceres.glayer.Layer;
 import org.esa.beam.framework.dataio.ProductReader;
 import org.esa.beam.framework.datamodel.Product;
 import org.eumetsat.metop.sounder.AvhrrOverlay;
+import org.eumetsat.metop.sounder.BandInfo;
 import org.eumetsat.metop.sounder.SounderFile;
 
 import java.io.File;
@@ -34,7 +35,11 @@ public class MhsFile extends SounderFile {
     public static final int PRODUCT_WIDTH = 90;
 
     public MhsFile(File file, DataFormat format) throws IOException {
-        super(file, format);
+        this(file, format, false);
+    }
+
+    public MhsFile(File file, DataFormat format, boolean concurrentAccess) throws IOException {
+        super(file, format, concurrentAccess);
     }
     
     @Override
@@ -47,6 +52,16 @@ public class MhsFile extends SounderFile {
         return product;
     }
 
+    @Override
+    public BandInfo[] getBandInfos() {
+        return MhsBandInfo.values();
+    }
+
+    @Override
+    public int getProductWidth() {
+        return PRODUCT_WIDTH;
+    }
+
     @Override
     public boolean hasOverlayFor(Product avhrrProduct) {
         // TODO check for date
@@ -16,96 +16,46 @@
  */
 package org.eumetsat.metop.mhs;
 
-import org.esa.beam.framework.datamodel.GeoCoding;
-import org.esa.beam.framework.datamodel.GeoPos;
-import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
-import org.esa.beam.framework.datamodel.ProductData;
-import org.eumetsat.metop.eps.EpsFile;
 import org.eumetsat.metop.sounder.AbstractSounderOverlay;
 import org.eumetsat.metop.sounder.SounderShapeScaleComputer;
-import org.eumetsat.metop.sounder.Ifov;
+import org.eumetsat.metop.sounder.FootprintStore;
 
-import java.awt.Shape;
-import java.awt.geom.Ellipse2D;
 import java.io.IOException;
 
 
 public class MhsSounderOverlay extends AbstractSounderOverlay {
 
     private static final float ifovSize = 15.88f;
+
+    private double[] shapeScale;
     
     public MhsSounderOverlay(MhsFile mhsFile, Product avhrrProduct) {
-        super(mhsFile, avhrrProduct);
+        super(mhsFile, avhrrProduct, MhsFile.PRODUCT_WIDTH, MhsBandInfo.LAT, MhsBandInfo.LON);
     }
 
     @Override
-    protected Ifov[] readIfovs() throws IOException {
-        EpsFile mhsFile = getEpsFile();
-        final int height = mhsFile.getMdrCount();
+    protected void readFootprints(int firstMdr, int mdrCount, FootprintStore footprints) throws IOException {
         final int width = MhsFile.PRODUCT_WIDTH;
-        final double scalingFactor = MhsBandInfo.LAT.getScaleFactor();
-        ProductData latitudes = mhsFile.readData(MhsBandInfo.LAT, height, width);
-        ProductData longitudes = mhsFile.readData(MhsBandInfo.LON, height, width);
-        GeoCoding geoCoding = getAvhrrProduct().getGeoCoding();
-        Ifov[] allIfovs = new Ifov[width * height];
-
-        SounderShapeScaleComputer scaleComputer = new SounderShapeScaleComputer(mhsFile,
-                                                                                width,
-                                                                                MhsBandInfo.LAT, 
-                                                                                MhsBandInfo.LON,
-                                                                                MhsBandInfo.VZA
-        );
-        double[] shapeScale = scaleComputer.getIfovShapeScale();
-        
+        if (shapeScale == null) {
+            SounderShapeScaleComputer scaleComputer = new SounderShapeScaleComputer(getEpsFile(),
+                                                                                    width,
+                                                                                    MhsBandInfo.LAT,
+                                                                                    MhsBandInfo.LON,
+                                                                                    MhsBandInfo.VZA
+            );
+            shapeScale = scaleComputer.getIfovShapeScale();
+        }
+        final float[] xs = new float[width * mdrCount];
+        final float[] ys = new float[width * mdrCount];
+        readLocations(firstMdr, mdrCount, xs, ys);
         int index = 0;
-        GeoPos geoPos = new GeoPos();
-        PixelPos avhrrPixelPos = new PixelPos();
-        for (int y = 0; y < height; y++) {
+        for (int y = 0; y < mdrCount; y++) {
             for (int x = 0; x < width; x++) {
-                geoPos.lat = (float) (latitudes.getElemIntAt(index) * scalingFactor);
-                geoPos.lon = (float) (longitudes.getElemIntAt(index) * scalingFactor);
-                geoCoding.getPixelPos(geoPos, avhrrPixelPos);
                 final float yScale = (float) shapeScale[x];
-                Shape shape = new Ellipse2D.Float(avhrrPixelPos.x - 0.5f * ifovSize,
-                                                  avhrrPixelPos.y - 0.5f * ifovSize * yScale,
-                                                      ifovSize, ifovSize * yScale);
-                allIfovs[index] = new MhsIfov(x, y, shape);
+                footprints.set(firstMdr * width + index, xs[index], ys[index], ifovSize, ifovSize * yScale, false);
                 index++;
             }
         }
-        return allIfovs;
-    }
-
-    private static class MhsIfov implements Ifov {
-        private final int y;
-        private final int x;
-        private final Shape shape;
-
-        private MhsIfov(int x, int y, Shape shape) {
-            this.y = y;
-            this.x = x;
-            this.shape = shape;
-        }
-
-        @Override
-        public final int getMdrIndex() {
-            return y;
-        }
-
-        @Override
-        public final int getIfovIndex() {
-            return y * MhsFile.PRODUCT_WIDTH + x;
-        }
-
-        @Override
-        public final int getIfovInMdrIndex() {
-            return x;
-        }
-
-        @Override
-        public final Shape getShape() {
-            return shape;
-        }
     }
 }
@@ -17,29 +17,90 @@
 package org.eumetsat.metop.sounder;
 
 import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.util.Debug;
 import org.eumetsat.metop.eps.EpsFile;
+import org.eumetsat.metop.eps.GenericRecordHeader;
 
 import javax.swing.SwingWorker;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.core.ProgressMonitor;
 
+
+/**
+ * The overlay of the IFOVs of an AMSU or MHS product on an AVHRR product.
+ * <p/>
+ * The footprints of the IFOVs are loaded in the background, in chunks of
+ * {@link #CHUNK_MDR_COUNT} MDRs. The AVHRR rows covered by a chunk are
+ * estimated by mapping the record times of its MDRs onto the time axis of
+ * the AVHRR product. Chunks which cover the region set by
+ * {@link #setVisibleRegion(Rectangle2D)} are loaded first. Listeners are
+ * notified of the bounds of each chunk loaded or discarded.
+ * <p/>
+ * If the system property {@link #ON_DEMAND_PROPERTY} is set to {@code true},
+ * only the chunks covering the visible region and their neighbouring chunks
+ * are loaded. At most {@link #LOADED_CHUNKS_PROPERTY} chunks are kept, the
+ * chunks which have not been visible for the longest time are discarded.
+ */
 public abstract class AbstractSounderOverlay implements SounderOverlay {
 
-    private static final Ifov[] NO_DATA = new Ifov[0];
+    private static final FootprintStore NO_DATA = new FootprintStore(0);
+    private static final int CHUNK_MDR_COUNT = 100;
+    private static final int PREFETCH_CHUNK_COUNT = 1;
+
+    /**
+     * The name of the system property which enables loading the footprints
+     * of the visible region only.
+     */
+    public static final String ON_DEMAND_PROPERTY = "metop.sounder.onDemand";
+    /**
+     * The name of the system property which sets the number of chunks kept
+     * when loading on demand. Chunks which are visible are never discarded.
+     */
+    public static final String LOADED_CHUNKS_PROPERTY = "metop.sounder.loadedChunks";
 
     private final EpsFile epsfile;
     private final Product avhrrProduct;
+    private final int ifovInMdrCount;
+    private final BandInfo latInfo;
+    private final BandInfo lonInfo;
     private final Map<SounderOverlayListener, Object> listenerMap;
 
-    private Ifov[] ifovs;
-    private boolean loadingIfovs;
+    private FootprintStore footprints;
+    private ShapeIndex footprintIndex;
     private Ifov selectedIfov;
+    private volatile Rectangle2D visibleRegion;
+
+    private final boolean onDemand;
+    private final int maxLoadedChunkCount;
+    // the loaded chunks, least recently visible first
+    private final LinkedHashMap<Integer, Object> loadedChunks;
+    private int mdrCount;
+    private int chunkCount;
+    private boolean chunkRowsEstimated;
+    // null if the AVHRR rows of the chunks are unknown
+    private double[] chunkMinY;
+    private double[] chunkMaxY;
+    private boolean loading;
+    private boolean loadingFailed;
+    private FootprintLoader footprintLoader;
 
-    protected AbstractSounderOverlay(EpsFile epsfile, Product avhrrProduct) {
+    protected AbstractSounderOverlay(EpsFile epsfile, Product avhrrProduct, int ifovInMdrCount,
+                                     BandInfo latInfo, BandInfo lonInfo) {
         this.epsfile = epsfile;
         this.avhrrProduct = avhrrProduct;
+        this.ifovInMdrCount = ifovInMdrCount;
+        this.latInfo = latInfo;
+        this.lonInfo = lonInfo;
+        onDemand = Boolean.getBoolean(ON_DEMAND_PROPERTY);
+        maxLoadedChunkCount = Math.max(1 + 2 * PREFETCH_CHUNK_COUNT, Integer.getInteger(LOADED_CHUNKS_PROPERTY, 8));
+        loadedChunks = new LinkedHashMap<Integer, Object>(16, 0.75f, true);
         // avoid memory leaks (Bloch 2008, Effective Java, Item 6)
         listenerMap = Collections.synchronizedMap(new WeakHashMap<SounderOverlayListener, Object>());
     }
@@ -61,7 +122,7 @@ public abstract class AbstractSounderOverlay implements SounderOverlay {
 
     @Override
     public void setSelectedIfov(Ifov ifov) {
-        if (ifov != this.selectedIfov) {
+        if (ifov == null ? selectedIfov != null : !ifov.equals(selectedIfov)) {
             this.selectedIfov = ifov;
             fireSelectionChanged();
         }
@@ -77,40 +138,338 @@ public abstract class AbstractSounderOverlay implements SounderOverlay {
         listenerMap.remove(listener);
     }
 
-    Ifov[] getAllIfovs() {
-        synchronized (this) {
-            if (ifovs != null) {
-                return ifovs;
+    /**
+     * Sets the region of the AVHRR product which is currently visible, so the
+     * footprints in this region can be loaded first. When loading on demand,
+     * the footprints of the region are loaded if they are missing.
+     *
+     * @param region the visible region in AVHRR pixel coordinates, may be {@code null}
+     */
+    public void setVisibleRegion(Rectangle2D region) {
+        visibleRegion = region;
+        if (onDemand) {
+            synchronized (this) {
+                if (footprints == null || !chunkRowsEstimated) {
+                    return;
+                }
+                for (int chunk = 0; chunk < chunkCount; chunk++) {
+                    if (isWanted(chunk, region, 0)) {
+                        // marks the chunk as recently visible
+                        loadedChunks.get(chunk);
+                    }
+                }
+                if (!loading && !loadingFailed && nextChunk(region) != -1) {
+                    startLoading();
+                }
             }
-            if (loadingIfovs) {
+        }
+    }
+
+    /**
+     * Returns the footprints of all IFOVs, where the footprint index is the IFOV
+     * index. The footprints are loaded asynchronously on first access, chunk by
+     * chunk. The footprints of chunks which have not been loaded yet, or which
+     * have been discarded, are not valid. If there are no MDRs, an empty
+     * footprint store is returned.
+     *
+     * @return the footprints
+     */
+    synchronized FootprintStore getFootprints() {
+        if (footprints == null) {
+            try {
+                mdrCount = epsfile.getMdrCount();
+            } catch (IOException e) {
+                Debug.trace(e);
                 return NO_DATA;
             }
-            loadingIfovs = true;
-        }
-        SwingWorker<Ifov[], Object> worker = new SwingWorker<Ifov[], Object>() {
-            @Override
-            protected Ifov[] doInBackground() throws Exception {
-                return readIfovs();
+            chunkCount = (mdrCount + CHUNK_MDR_COUNT - 1) / CHUNK_MDR_COUNT;
+            footprints = new FootprintStore(mdrCount * ifovInMdrCount);
+            if (mdrCount > 0) {
+                startLoading();
             }
+        }
+        return footprints;
+    }
 
-            @Override
-            protected void done() {
+    /**
+     * Returns the footprints of all IFOVs like {@link #getFootprints()}, but
+     * waits until no more chunks are being loaded. Unless loading on demand,
+     * the footprints of all MDRs are valid then. Must not be called on the
+     * event dispatch thread.
+     *
+     * @return the footprints
+     * @throws IOException if loading has failed or waiting has been interrupted
+     */
+    FootprintStore waitForFootprints() throws IOException {
+        while (true) {
+            final FootprintStore store;
+            final FootprintLoader loader;
+            final boolean loaded;
+            synchronized (this) {
+                store = getFootprints();
+                loader = footprintLoader;
+                loaded = !loading;
+            }
+            if (loader != null) {
                 try {
+                    loader.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Loading the footprints has been interrupted.");
+                } catch (ExecutionException e) {
+                    final IOException ioe = new IOException(e.getCause().getMessage());
+                    ioe.initCause(e.getCause());
+                    throw ioe;
+                }
+            }
+            // loading may have been restarted for a new visible region meanwhile
+            if (loaded) {
+                return store;
+            }
+        }
+    }
+
+    /**
+     * Returns the spatial index over the footprints returned by {@link #getFootprints()}.
+     *
+     * @return the spatial index, or {@code null} if no footprints have been loaded yet
+     */
+    synchronized ShapeIndex getFootprintIndex() {
+        return footprintIndex;
+    }
+
+    /**
+     * Creates the IFOV for a footprint returned by {@link #getFootprints()}.
+     *
+     * @param ifovIndex the IFOV index
+     *
+     * @return the IFOV
+     */
+    Ifov getIfov(int ifovIndex) {
+        return new SounderIfov(ifovIndex);
+    }
+
+    /**
+     * Reads the footprints of a range of MDRs, where the footprint index is
+     * {@code mdrIndex * ifovInMdrCount + ifovInMdrIndex}. The method is
+     * called by a single background thread.
+     *
+     * @param firstMdr   the index of the first MDR
+     * @param mdrCount   the number of MDRs
+     * @param footprints the footprints of all IFOVs
+     * @throws IOException if the footprints could not be read
+     */
+    protected abstract void readFootprints(int firstMdr, int mdrCount, FootprintStore footprints) throws IOException;
+
+    /**
+     * Reads the locations of the IFOVs of a range of MDRs and projects them into
+     * the pixel coordinates of the AVHRR product.
+     *
+     * @param firstMdr the index of the first MDR
+     * @param mdrCount the number of MDRs
+     * @param xs       the x-positions found
+     * @param ys       the y-positions found
+     * @throws IOException if an I/O error occurs
+     * @see AvhrrPixelProjector
+     */
+    protected void readLocations(int firstMdr, int mdrCount, float[] xs, float[] ys) throws IOException {
+        final int count = mdrCount * ifovInMdrCount;
+        final ProductData latitudes = ProductData.createInstance(latInfo.getType(), count);
+        final ProductData longitudes = ProductData.createInstance(lonInfo.getType(), count);
+        epsfile.readData(new MdrReader[]{latInfo.getReader(), lonInfo.getReader()}, 0, firstMdr, ifovInMdrCount,
+                         mdrCount, new ProductData[]{latitudes, longitudes}, ProgressMonitor.NULL);
+        final float[] lats = new float[count];
+        final float[] lons = new float[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = (float) (latitudes.getElemIntAt(i) * latInfo.getScaleFactor());
+            lons[i] = (float) (longitudes.getElemIntAt(i) * lonInfo.getScaleFactor());
+        }
+        final AvhrrPixelProjector projector = new AvhrrPixelProjector(avhrrProduct.getGeoCoding(),
+                                                                      avhrrProduct.getSceneRasterWidth(),
+                                                                      avhrrProduct.getSceneRasterHeight());
+        projector.project(lats, lons, ifovInMdrCount, mdrCount, xs, ys);
+    }
+
+    // must be called while holding the lock of this overlay
+    private void startLoading() {
+        loading = true;
+        footprintLoader = new FootprintLoader(footprints);
+        footprintLoader.execute();
+    }
+
+    // the next chunk to load, or -1; must be called while holding the lock of this overlay
+    private int nextChunk(Rectangle2D region) {
+        int next = -1;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            if (!loadedChunks.containsKey(chunk)) {
+                if (isWanted(chunk, region, 0)) {
+                    return chunk;
+                }
+                if (next == -1 && (!onDemand || isWanted(chunk, region, PREFETCH_CHUNK_COUNT))) {
+                    next = chunk;
+                }
+            }
+        }
+        return next;
+    }
+
+    // tests if a chunk or one of its neighbours within the margin covers the region
+    private boolean isWanted(int chunk, Rectangle2D region, int margin) {
+        if (chunkMinY == null) {
+            return true;
+        }
+        if (region == null) {
+            return false;
+        }
+        final int last = Math.min(chunk + margin, chunkCount - 1);
+        for (int c = Math.max(chunk - margin, 0); c <= last; c++) {
+            if (chunkMaxY[c] >= region.getMinY() && chunkMinY[c] <= region.getMaxY()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class FootprintLoader extends SwingWorker<Object, Rectangle2D> {
+
+        private final FootprintStore footprints;
+
+        private FootprintLoader(FootprintStore footprints) {
+            this.footprints = footprints;
+        }
+
+        @Override
+        protected Object doInBackground() throws Exception {
+            try {
+                final boolean estimated;
+                synchronized (AbstractSounderOverlay.this) {
+                    estimated = chunkRowsEstimated;
+                }
+                if (!estimated) {
+                    final double[][] rows = estimateChunkRows();
+                    synchronized (AbstractSounderOverlay.this) {
+                        if (rows != null) {
+                            chunkMinY = rows[0];
+                            chunkMaxY = rows[1];
+                        }
+                        chunkRowsEstimated = true;
+                    }
+                }
+                while (true) {
+                    final int chunk;
+                    synchronized (AbstractSounderOverlay.this) {
+                        chunk = nextChunk(visibleRegion);
+                        if (chunk == -1) {
+                            loading = false;
+                            return null;
+                        }
+                    }
+                    final int firstMdr = chunk * CHUNK_MDR_COUNT;
+                    final int chunkMdrCount = Math.min(CHUNK_MDR_COUNT, mdrCount - firstMdr);
+                    readFootprints(firstMdr, chunkMdrCount, footprints);
+
+                    final List<Rectangle2D> changedBounds = new ArrayList<Rectangle2D>();
+                    addBounds(chunk, changedBounds);
                     synchronized (AbstractSounderOverlay.this) {
-                        loadingIfovs = false;
-                        ifovs = get();
+                        loadedChunks.put(chunk, null);
+                        if (onDemand) {
+                            discardChunks(changedBounds);
+                        }
                     }
-                    fireDataChanged();
-                } catch (Exception e) {
-                    Debug.trace(e);
+                    final ShapeIndex shapeIndex = new ShapeIndex(footprints);
+                    synchronized (AbstractSounderOverlay.this) {
+                        footprintIndex = shapeIndex;
+                    }
+                    publish(changedBounds.toArray(new Rectangle2D[changedBounds.size()]));
+                }
+            } catch (Exception e) {
+                synchronized (AbstractSounderOverlay.this) {
+                    loading = false;
+                    loadingFailed = true;
                 }
+                throw e;
             }
-        };
-        worker.execute();
-        return NO_DATA;
-    }
+        }
+
+        @Override
+        protected void process(List<Rectangle2D> chunks) {
+            for (final Rectangle2D bounds : chunks) {
+                fireRegionChanged(bounds);
+            }
+        }
+
+        @Override
+        protected void done() {
+            try {
+                get();
+            } catch (Exception e) {
+                Debug.trace(e);
+            }
+        }
+
+        // discards the least recently visible chunks which are not wanted, while too many chunks are loaded
+        private void discardChunks(List<Rectangle2D> discardedBounds) {
+            final Rectangle2D region = visibleRegion;
+            final Iterator<Integer> iterator = loadedChunks.keySet().iterator();
+            while (loadedChunks.size() > maxLoadedChunkCount && iterator.hasNext()) {
+                final int chunk = iterator.next();
+                if (!isWanted(chunk, region, PREFETCH_CHUNK_COUNT)) {
+                    iterator.remove();
+                    addBounds(chunk, discardedBounds);
+                    final int firstMdr = chunk * CHUNK_MDR_COUNT;
+                    final int chunkMdrCount = Math.min(CHUNK_MDR_COUNT, mdrCount - firstMdr);
+                    footprints.clear(firstMdr * ifovInMdrCount, chunkMdrCount * ifovInMdrCount);
+                }
+            }
+        }
+
+        private void addBounds(int chunk, List<Rectangle2D> boundsList) {
+            final int firstMdr = chunk * CHUNK_MDR_COUNT;
+            final int chunkMdrCount = Math.min(CHUNK_MDR_COUNT, mdrCount - firstMdr);
+            final Rectangle2D bounds = footprints.getBounds(firstMdr * ifovInMdrCount, chunkMdrCount * ifovInMdrCount);
+            if (bounds != null) {
+                boundsList.add(bounds);
+            }
+        }
+
+        // the AVHRR rows of a chunk are estimated by mapping the record times of its first
+        // and last MDR onto the time axis of the AVHRR product, so gaps in the data do not
+        // matter; one scan line is added as margin
+        private double[][] estimateChunkRows() throws IOException {
+            final ProductData.UTC avhrrStartTime = avhrrProduct.getStartTime();
+            final ProductData.UTC avhrrEndTime = avhrrProduct.getEndTime();
+            if (avhrrStartTime == null || avhrrEndTime == null) {
+                return null;
+            }
+            final long avhrrStartMillis = avhrrStartTime.getAsCalendar().getTimeInMillis();
+            final long avhrrEndMillis = avhrrEndTime.getAsCalendar().getTimeInMillis();
+            if (avhrrEndMillis <= avhrrStartMillis) {
+                return null;
+            }
+            final SequenceData mdrData = epsfile.getMdrData();
+            final double rowsPerMilli = avhrrProduct.getSceneRasterHeight() / (double) (avhrrEndMillis - avhrrStartMillis);
 
-    protected abstract Ifov[] readIfovs() throws IOException;
+            final double[] minY = new double[chunkCount];
+            final double[] maxY = new double[chunkCount];
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                final int firstMdr = chunk * CHUNK_MDR_COUNT;
+                final int lastMdr = Math.min(firstMdr + CHUNK_MDR_COUNT, mdrCount) - 1;
+                final GenericRecordHeader firstHeader = readRecordHeader(mdrData, firstMdr);
+                final GenericRecordHeader lastHeader = lastMdr != firstMdr ? readRecordHeader(mdrData, lastMdr) : firstHeader;
+                final long startMillis = firstHeader.recordStartTime.getAsCalendar().getTimeInMillis();
+                final long endMillis = lastHeader.recordEndTime.getAsCalendar().getTimeInMillis();
+                final long mdrMillis = firstHeader.recordEndTime.getAsCalendar().getTimeInMillis() - startMillis;
+                final double margin = Math.max(mdrMillis, 0L) * rowsPerMilli;
+                minY[chunk] = (startMillis - avhrrStartMillis) * rowsPerMilli - margin;
+                maxY[chunk] = (endMillis - avhrrStartMillis) * rowsPerMilli + margin;
+            }
+            return new double[][]{minY, maxY};
+        }
+
+        private GenericRecordHeader readRecordHeader(SequenceData mdrData, int mdrIndex) throws IOException {
+            return new GenericRecordHeader(mdrData.getCompound(mdrIndex).getCompound(0));
+        }
+    }
 
     private void fireSelectionChanged() {
         final Set<SounderOverlayListener> listenerSet;
@@ -122,13 +481,62 @@ public abstract class AbstractSounderOverlay implements SounderOverlay {
         }
     }
 
-    private void fireDataChanged() {
+    private void fireRegionChanged(Rectangle2D bounds) {
         final Set<SounderOverlayListener> listenerSet;
         synchronized (listenerMap) {
             listenerSet = new HashSet<SounderOverlayListener>(listenerMap.keySet());
         }
         for (final SounderOverlayListener listener : listenerSet) {
-            listener.dataChanged(this);
+            listener.regionChanged(this, bounds);
+        }
+    }
+
+    private class SounderIfov implements Ifov {
+        private final int index;
+
+        private SounderIfov(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public final int getMdrIndex() {
+            return index / ifovInMdrCount;
+        }
+
+        @Override
+        public final int getIfovIndex() {
+            return index;
+        }
+
+        @Override
+        public final int getIfovInMdrIndex() {
+            return index % ifovInMdrCount;
+        }
+
+        @Override
+        public final Shape getShape() {
+            return getFootprints().getShape(index);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof SounderIfov)) {
+                return false;
+            }
+            final SounderIfov other = (SounderIfov) obj;
+            return index == other.index && getOverlay() == other.getOverlay();
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        private AbstractSounderOverlay getOverlay() {
+            return AbstractSounderOverlay.this;
         }
     }
 }
@@ -0,0 +1,255 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import org.esa.beam.framework.datamodel.GeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.eumetsat.metop.eps.MdrWorkerPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Projects the locations of whole sounder products into the pixel
+ * coordinates of an AVHRR product.
+ * <p/>
+ * The inverse lookups of the AVHRR tie-point geo-coding are slow, but the
+ * locations of neighbouring IFOVs are close to each other. Each location is
+ * therefore found by Newton's method on the forward lookups of the
+ * geo-coding, starting from the pixel position extrapolated from the
+ * preceding IFOVs of the scan line. Only the first IFOV of a block of scan
+ * lines, and IFOVs for which Newton's method does not converge within the
+ * AVHRR scene, are looked up by the geo-coding itself.
+ * <p/>
+ * Blocks of scan lines are projected concurrently by an executor, by default
+ * the {@link MdrWorkerPool}, so the geo-coding must support concurrent
+ * lookups, which is the case for tie-point geo-codings.
+ */
+public class AvhrrPixelProjector {
+
+    private static final int MAX_ITERATIONS = 6;
+    private static final double MAX_STEP = 1.0e-2;
+    private static final double DELTA = 1.0;
+
+    private final GeoCoding geoCoding;
+    private final int rasterWidth;
+    private final int rasterHeight;
+    private final ExecutorService executor;
+    private final int threadCount;
+
+    /**
+     * Creates a projector using the {@link MdrWorkerPool}.
+     *
+     * @param geoCoding    the geo-coding of the AVHRR product
+     * @param rasterWidth  the width of the AVHRR product
+     * @param rasterHeight the height of the AVHRR product
+     */
+    public AvhrrPixelProjector(GeoCoding geoCoding, int rasterWidth, int rasterHeight) {
+        this(geoCoding, rasterWidth, rasterHeight, MdrWorkerPool.getExecutor(), MdrWorkerPool.getThreadCount());
+    }
+
+    /**
+     * @param geoCoding    the geo-coding of the AVHRR product
+     * @param rasterWidth  the width of the AVHRR product
+     * @param rasterHeight the height of the AVHRR product
+     * @param executor     the executor projecting blocks of scan lines
+     * @param threadCount  the number of threads of the executor; if 1, all
+     *                     locations are projected by the calling thread
+     */
+    public AvhrrPixelProjector(GeoCoding geoCoding, int rasterWidth, int rasterHeight,
+                               ExecutorService executor, int threadCount) {
+        this.geoCoding = geoCoding;
+        this.rasterWidth = rasterWidth;
+        this.rasterHeight = rasterHeight;
+        this.executor = executor;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Projects locations into pixel positions. Locations which are not
+     * inside the AVHRR product get the position returned by the geo-coding,
+     * which may be {@code NaN}.
+     *
+     * @param lats   the latitudes, scan line by scan line
+     * @param lons   the longitudes, scan line by scan line
+     * @param width  the number of IFOVs in a scan line
+     * @param height the number of scan lines
+     * @param xs     the x-positions found
+     * @param ys     the y-positions found
+     * @throws IOException if the projection has been interrupted
+     */
+    public void project(final float[] lats, final float[] lons, final int width, int height,
+                        final float[] xs, final float[] ys) throws IOException {
+        if (threadCount == 1 || height < 2) {
+            projectLines(lats, lons, width, 0, height, xs, ys);
+            return;
+        }
+        final int chunkHeight = Math.max(1, height / (4 * threadCount));
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            for (int chunkY = 0; chunkY < height; chunkY += chunkHeight) {
+                final int y = chunkY;
+                final int lineCount = Math.min(chunkHeight, height - chunkY);
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        projectLines(lats, lons, width, y, lineCount, xs, ys);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Projecting has been interrupted.");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException(e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        } finally {
+            for (final Future<Object> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void projectLines(float[] lats, float[] lons, int width, int y, int lineCount, float[] xs, float[] ys) {
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        final double[] position = new double[2];
+        for (int yi = y; yi < y + lineCount; yi++) {
+            final int lineIndex = yi * width;
+            for (int xi = 0; xi < width; xi++) {
+                final int index = lineIndex + xi;
+                boolean found = false;
+                if (seed(xi, yi, y, width, xs, ys, position)) {
+                    found = refine(lats[index], lons[index], position, pixelPos, geoPos);
+                }
+                if (found) {
+                    xs[index] = (float) position[0];
+                    ys[index] = (float) position[1];
+                } else {
+                    geoPos.setLocation(lats[index], lons[index]);
+                    geoCoding.getPixelPos(geoPos, pixelPos);
+                    xs[index] = pixelPos.x;
+                    ys[index] = pixelPos.y;
+                }
+            }
+        }
+    }
+
+    // extrapolates from the preceding IFOVs of the scan line, or from the first IFOV of the preceding line
+    private boolean seed(int xi, int yi, int firstLine, int width, float[] xs, float[] ys, double[] position) {
+        final int index = yi * width + xi;
+        final int previous;
+        final int beforePrevious;
+        if (xi > 0) {
+            previous = index - 1;
+            beforePrevious = xi > 1 ? index - 2 : -1;
+        } else if (yi > firstLine) {
+            previous = index - width;
+            beforePrevious = yi > firstLine + 1 ? index - 2 * width : -1;
+        } else {
+            return false;
+        }
+        if (!isInside(xs[previous], ys[previous])) {
+            return false;
+        }
+        position[0] = xs[previous];
+        position[1] = ys[previous];
+        if (beforePrevious != -1 && isInside(xs[beforePrevious], ys[beforePrevious])) {
+            position[0] += xs[previous] - xs[beforePrevious];
+            position[1] += ys[previous] - ys[beforePrevious];
+        }
+        return true;
+    }
+
+    private boolean refine(float lat, float lon, double[] position, PixelPos pixelPos, GeoPos geoPos) {
+        double x = position[0];
+        double y = position[1];
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            if (!isInside(x, y)) {
+                return false;
+            }
+            final double dx = x + DELTA <= rasterWidth ? DELTA : -DELTA;
+            final double dy = y + DELTA <= rasterHeight ? DELTA : -DELTA;
+            if (!getGeoPos(x, y, pixelPos, geoPos)) {
+                return false;
+            }
+            final double lat0 = geoPos.lat;
+            final double lon0 = geoPos.lon;
+            if (!getGeoPos(x + dx, y, pixelPos, geoPos)) {
+                return false;
+            }
+            final double dLatDx = (geoPos.lat - lat0) / dx;
+            final double dLonDx = normalize(geoPos.lon - lon0) / dx;
+            if (!getGeoPos(x, y + dy, pixelPos, geoPos)) {
+                return false;
+            }
+            final double dLatDy = (geoPos.lat - lat0) / dy;
+            final double dLonDy = normalize(geoPos.lon - lon0) / dy;
+
+            final double det = dLonDx * dLatDy - dLonDy * dLatDx;
+            if (det == 0.0) {
+                return false;
+            }
+            final double deltaLon = normalize(lon - lon0);
+            final double deltaLat = lat - lat0;
+            final double stepX = (deltaLon * dLatDy - deltaLat * dLonDy) / det;
+            final double stepY = (deltaLat * dLonDx - deltaLon * dLatDx) / det;
+            x += stepX;
+            y += stepY;
+            if (Math.abs(stepX) < MAX_STEP && Math.abs(stepY) < MAX_STEP) {
+                if (!isInside(x, y)) {
+                    return false;
+                }
+                position[0] = x;
+                position[1] = y;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean getGeoPos(double x, double y, PixelPos pixelPos, GeoPos geoPos) {
+        pixelPos.setLocation((float) x, (float) y);
+        geoCoding.getGeoPos(pixelPos, geoPos);
+        return geoPos.isValid();
+    }
+
+    private boolean isInside(double x, double y) {
+        return x >= 0 && x <= rasterWidth && y >= 0 && y <= rasterHeight;
+    }
+
+    private static double normalize(double deltaLon) {
+        if (deltaLon > 180.0) {
+            return deltaLon - 360.0;
+        }
+        if (deltaLon < -180.0) {
+            return deltaLon + 360.0;
+        }
+        return deltaLon;
+    }
+}
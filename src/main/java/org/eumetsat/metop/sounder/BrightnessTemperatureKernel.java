@@ -0,0 +1,189 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+/**
+ * Converts arrays of spectral radiances into black-body temperatures.
+ * <p/>
+ * The Planck constants {@code a = c2 * v} and {@code b = c1 * v^3} (resp.
+ * {@code f^5} for frequencies) are computed once for every channel, so that
+ * the conversion loops only consist of a division and a logarithm per sample.
+ * The results are the same as those of {@link org.eumetsat.metop.visat.BlackBody}.
+ */
+public class BrightnessTemperatureKernel {
+
+    private static final double WAVENUMBER_C1 = 1.1910427584934558E-16;
+    private static final double WAVENUMBER_C2 = 1.4387751601679205E-02;
+    private static final double FREQUENCY_C1 = 4.9183999150233067E-14;
+    private static final double FREQUENCY_C2 = 4.7992373449498874E-02;
+
+    private final double[] a;
+    private final double[] b;
+
+    private BrightnessTemperatureKernel(double[] a, double[] b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * Creates a kernel for channels given by their wavenumbers.
+     *
+     * @param k the wavenumbers (m-1)
+     *
+     * @return the kernel
+     */
+    public static BrightnessTemperatureKernel forWavenumbers(double[] k) {
+        final double[] a = new double[k.length];
+        final double[] b = new double[k.length];
+        for (int i = 0; i < k.length; i++) {
+            a[i] = WAVENUMBER_C2 * k[i];
+            b[i] = WAVENUMBER_C1 * k[i] * k[i] * k[i];
+        }
+        return new BrightnessTemperatureKernel(a, b);
+    }
+
+    /**
+     * Creates a kernel for channels on an equidistant wavenumber grid,
+     * where channel {@code i} has the wavenumber {@code step * (first + i)}.
+     *
+     * @param step  the grid step (m-1)
+     * @param first the index of the first channel on the grid
+     * @param count the number of channels
+     *
+     * @return the kernel
+     */
+    public static BrightnessTemperatureKernel forWavenumbers(double step, int first, int count) {
+        final double[] k = new double[count];
+        for (int i = 0; i < count; i++) {
+            k[i] = step * (first + i);
+        }
+        return forWavenumbers(k);
+    }
+
+    /**
+     * Creates a kernel for channels given by their frequencies.
+     *
+     * @param f the frequencies (GHz)
+     *
+     * @return the kernel
+     */
+    public static BrightnessTemperatureKernel forFrequencies(double[] f) {
+        final double[] a = new double[f.length];
+        final double[] b = new double[f.length];
+        for (int i = 0; i < f.length; i++) {
+            a[i] = FREQUENCY_C2 * f[i];
+            b[i] = FREQUENCY_C1 * f[i] * f[i] * f[i] * f[i] * f[i];
+        }
+        return new BrightnessTemperatureKernel(a, b);
+    }
+
+    public int getChannelCount() {
+        return a.length;
+    }
+
+    /**
+     * Calculates the black-body temperature for a single radiance.
+     *
+     * @param channel  the channel
+     * @param radiance the radiance (W/m2/sr/m-1)
+     *
+     * @return the black-body temperature (K)
+     */
+    public double temperature(int channel, double radiance) {
+        return a[channel] / Math.log(1.0 + b[channel] / radiance);
+    }
+
+    /**
+     * Converts scaled radiance counts of a single channel into temperatures.
+     *
+     * @param channel      the channel
+     * @param counts       the radiance counts
+     * @param offset       the index of the first count
+     * @param length       the number of counts
+     * @param scale        the factor converting counts into radiances (W/m2/sr/m-1)
+     * @param target       the target temperatures (K)
+     * @param targetOffset the index of the first temperature
+     */
+    public void convert(int channel, short[] counts, int offset, int length, double scale,
+                        double[] target, int targetOffset) {
+        final double ac = a[channel];
+        final double bc = b[channel] / scale;
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = ac / Math.log(1.0 + bc / counts[offset + i]);
+        }
+    }
+
+    /**
+     * Converts scaled radiance counts of a single channel into temperatures.
+     *
+     * @param channel      the channel
+     * @param counts       the radiance counts
+     * @param offset       the index of the first count
+     * @param length       the number of counts
+     * @param scale        the factor converting counts into radiances (W/m2/sr/m-1)
+     * @param target       the target temperatures (K)
+     * @param targetOffset the index of the first temperature
+     */
+    public void convert(int channel, short[] counts, int offset, int length, double scale,
+                        float[] target, int targetOffset) {
+        final double ac = a[channel];
+        final double bc = b[channel] / scale;
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = (float) (ac / Math.log(1.0 + bc / counts[offset + i]));
+        }
+    }
+
+    /**
+     * Converts scaled radiance counts of a single channel into temperatures.
+     *
+     * @param channel      the channel
+     * @param counts       the radiance counts
+     * @param offset       the index of the first count
+     * @param length       the number of counts
+     * @param scale        the factor converting counts into radiances (W/m2/sr/m-1)
+     * @param target       the target temperatures (K)
+     * @param targetOffset the index of the first temperature
+     */
+    public void convert(int channel, int[] counts, int offset, int length, double scale,
+                        double[] target, int targetOffset) {
+        final double ac = a[channel];
+        final double bc = b[channel] / scale;
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = ac / Math.log(1.0 + bc / counts[offset + i]);
+        }
+    }
+
+    /**
+     * Converts scaled radiance counts of a single channel into temperatures.
+     *
+     * @param channel      the channel
+     * @param counts       the radiance counts
+     * @param offset       the index of the first count
+     * @param length       the number of counts
+     * @param scale        the factor converting counts into radiances (W/m2/sr/m-1)
+     * @param target       the target temperatures (K)
+     * @param targetOffset the index of the first temperature
+     */
+    public void convert(int channel, int[] counts, int offset, int length, double scale,
+                        float[] target, int targetOffset) {
+        final double ac = a[channel];
+        final double bc = b[channel] / scale;
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = (float) (ac / Math.log(1.0 + bc / counts[offset + i]));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of decoded channel grids, shared by all sounder layers.
+ * <p/>
+ * Grids are keyed by the product, the band name and the name of the
+ * conversion applied to the raw samples. Products are identified by the
+ * {@link #createProductKey(File) path and modification time} of their file,
+ * since different files may carry the same product name. The total size of the cached grids
+ * is limited by the memory budget given by the system property
+ * {@link #BUDGET_PROPERTY} (in MB), the least recently used grids are evicted
+ * first. Cached grids are shared and must not be modified.
+ */
+public final class ChannelGridCache {
+
+    /**
+     * The name of the system property which sets the memory budget in MB.
+     */
+    public static final String BUDGET_PROPERTY = "metop.sounder.gridCacheSize";
+
+    private static ChannelGridCache instance;
+
+    private final long budget;
+    private final Map<GridKey, double[]> grids;
+    private long memoryUsage;
+    private long hitCount;
+    private long missCount;
+
+    ChannelGridCache(long budget) {
+        this.budget = budget;
+        grids = new LinkedHashMap<GridKey, double[]>(16, 0.75f, true);
+    }
+
+    /**
+     * Creates the key identifying the grids of a product file.
+     *
+     * @param file the product file
+     *
+     * @return the key, made of the absolute path and the modification time of the file
+     */
+    public static String createProductKey(File file) {
+        return file.getAbsolutePath() + "@" + file.lastModified();
+    }
+
+    public static synchronized ChannelGridCache getInstance() {
+        if (instance == null) {
+            final long budgetMB = Math.max(0, Integer.getInteger(BUDGET_PROPERTY, 64));
+            instance = new ChannelGridCache(budgetMB * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a cached grid.
+     *
+     * @param productKey the product key
+     * @param bandName   the band name
+     * @param conversion the name of the conversion applied to the raw samples
+     *
+     * @return the grid, or {@code null} if the grid is not cached
+     */
+    public synchronized double[] get(String productKey, String bandName, String conversion) {
+        final double[] grid = grids.get(new GridKey(productKey, bandName, conversion));
+        if (grid != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return grid;
+    }
+
+    /**
+     * Puts a grid into the cache, evicting the least recently used grids if
+     * the memory budget is exceeded. Grids larger than the budget are not cached.
+     *
+     * @param productKey the product key
+     * @param bandName   the band name
+     * @param conversion the name of the conversion applied to the raw samples
+     * @param grid        the grid
+     */
+    public synchronized void put(String productKey, String bandName, String conversion, double[] grid) {
+        final long size = sizeOf(grid);
+        if (size > budget) {
+            return;
+        }
+        final double[] oldGrid = grids.put(new GridKey(productKey, bandName, conversion), grid);
+        if (oldGrid != null) {
+            memoryUsage -= sizeOf(oldGrid);
+        }
+        memoryUsage += size;
+
+        final Iterator<double[]> iterator = grids.values().iterator();
+        while (memoryUsage > budget && iterator.hasNext()) {
+            memoryUsage -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all grids of a product.
+     *
+     * @param productKey the product key
+     */
+    public synchronized void remove(String productKey) {
+        final Iterator<Map.Entry<GridKey, double[]>> iterator = grids.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<GridKey, double[]> entry = iterator.next();
+            if (entry.getKey().productKey.equals(productKey)) {
+                memoryUsage -= sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        grids.clear();
+        memoryUsage = 0;
+    }
+
+    /**
+     * @return the memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the size of all cached grids in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public synchronized int getGridCount() {
+        return grids.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static long sizeOf(double[] grid) {
+        return 8L * grid.length;
+    }
+
+    private static final class GridKey {
+        private final String productKey;
+        private final String bandName;
+        private final String conversion;
+
+        private GridKey(String productKey, String bandName, String conversion) {
+            this.productKey = productKey;
+            this.bandName = bandName;
+            this.conversion = conversion;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GridKey)) {
+                return false;
+            }
+            final GridKey other = (GridKey) obj;
+            return productKey.equals(other.productKey)
+                   && bandName.equals(other.bandName)
+                   && conversion.equals(other.conversion);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = productKey.hashCode();
+            result = 31 * result + bandName.hashCode();
+            result = 31 * result + conversion.hashCode();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.eps.RecordLayout;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * An {@link MdrReader} which can also read directly from the bytes of
+ * a memory-mapped MDR, using precomputed field offsets.
+ */
+public interface DirectMdrReader extends MdrReader {
+    int read(int x, int width, ProductData buffer, int bufferIndex, ByteBuffer mdr, int bodyPosition, RecordLayout layout);
+}
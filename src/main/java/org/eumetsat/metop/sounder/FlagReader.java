@@ -20,11 +20,13 @@ import com.bc.ceres.binio.CompoundData;
 import com.bc.ceres.binio.SequenceData;
 
 import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.eps.RecordLayout;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
-public class FlagReader implements MdrReader {
+public class FlagReader implements DirectMdrReader {
 
     private final String memberName;
     
@@ -42,4 +44,14 @@ public class FlagReader implements MdrReader {
         }
         return bufferIndex;
     }
+
+    @Override
+    public int read(int x, int width, ProductData buffer, int bufferIndex, ByteBuffer mdr, int bodyPosition, RecordLayout layout) {
+        final RecordLayout.Field field = layout.getField(memberName);
+        for (int xi = x; xi < x + width; xi++) {
+            buffer.setElemIntAt(bufferIndex, field.getInt(mdr, bodyPosition + field.getOffset(xi)));
+            bufferIndex++;
+        }
+        return bufferIndex;
+    }
 }
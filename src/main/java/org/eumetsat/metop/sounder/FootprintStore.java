@@ -0,0 +1,185 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Stores the elliptic footprints of sounder IFOVs in AVHRR pixel coordinates.
+ * <p/>
+ * The footprints are held in primitive arrays (centre, semi-axes and flags)
+ * instead of one shape object per IFOV. Shapes are only created on request,
+ * either as new objects or by filling a reusable ellipse while rendering.
+ * Footprints which have never been set are not valid.
+ */
+public final class FootprintStore {
+
+    private static final byte VALID = 1;
+    private static final byte ANOMALOUS = 2;
+
+    private final float[] centerX;
+    private final float[] centerY;
+    private final float[] semiAxisX;
+    private final float[] semiAxisY;
+    private final byte[] flags;
+
+    /**
+     * Creates a store for the given number of footprints.
+     *
+     * @param size the number of footprints
+     */
+    public FootprintStore(int size) {
+        centerX = new float[size];
+        centerY = new float[size];
+        semiAxisX = new float[size];
+        semiAxisY = new float[size];
+        flags = new byte[size];
+    }
+
+    public int size() {
+        return flags.length;
+    }
+
+    /**
+     * Sets a footprint.
+     *
+     * @param i         the footprint index
+     * @param x         the x coordinate of the centre
+     * @param y         the y coordinate of the centre
+     * @param width     the width of the footprint
+     * @param height    the height of the footprint
+     * @param anomalous {@code true} if the footprint is flagged as anomalous
+     */
+    public void set(int i, float x, float y, float width, float height, boolean anomalous) {
+        centerX[i] = x;
+        centerY[i] = y;
+        semiAxisX[i] = 0.5f * width;
+        semiAxisY[i] = 0.5f * height;
+        flags[i] = anomalous ? (byte) (VALID | ANOMALOUS) : VALID;
+    }
+
+    /**
+     * Clears a range of footprints, which are not valid afterwards.
+     *
+     * @param firstIndex the index of the first footprint
+     * @param count      the number of footprints
+     */
+    public void clear(int firstIndex, int count) {
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            flags[i] = 0;
+        }
+    }
+
+    public boolean isValid(int i) {
+        return (flags[i] & VALID) != 0;
+    }
+
+    public boolean isAnomalous(int i) {
+        return (flags[i] & ANOMALOUS) != 0;
+    }
+
+    public float getCenterX(int i) {
+        return centerX[i];
+    }
+
+    public float getCenterY(int i) {
+        return centerY[i];
+    }
+
+    public float getSemiAxisX(int i) {
+        return semiAxisX[i];
+    }
+
+    public float getSemiAxisY(int i) {
+        return semiAxisY[i];
+    }
+
+    /**
+     * Returns the bounds of a range of footprints. Footprints which are not
+     * valid or have no valid centre are ignored.
+     *
+     * @param firstIndex the index of the first footprint
+     * @param count      the number of footprints
+     *
+     * @return the bounds, or {@code null} if none of the footprints is valid
+     */
+    public Rectangle2D getBounds(int firstIndex, int count) {
+        Rectangle2D bounds = null;
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            if (isValid(i) && !Float.isNaN(centerX[i]) && !Float.isNaN(centerY[i])) {
+                final float a = Math.abs(semiAxisX[i]);
+                final float b = Math.abs(semiAxisY[i]);
+                final Rectangle2D footprintBounds = new Rectangle2D.Float(centerX[i] - a, centerY[i] - b, 2 * a, 2 * b);
+                if (bounds == null) {
+                    bounds = footprintBounds;
+                } else {
+                    bounds.add(footprintBounds);
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Tests if a point is inside of a footprint.
+     *
+     * @param i the footprint index
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     *
+     * @return {@code true} if the footprint is valid and contains the point
+     */
+    public boolean contains(int i, double x, double y) {
+        if (!isValid(i) || semiAxisX[i] <= 0.0f || semiAxisY[i] <= 0.0f) {
+            return false;
+        }
+        final double dx = (x - centerX[i]) / semiAxisX[i];
+        final double dy = (y - centerY[i]) / semiAxisY[i];
+        return dx * dx + dy * dy < 1.0;
+    }
+
+    /**
+     * Creates the shape of a footprint.
+     *
+     * @param i the footprint index
+     *
+     * @return a new shape, or {@code null} if the footprint is not valid
+     */
+    public Shape getShape(int i) {
+        if (!isValid(i)) {
+            return null;
+        }
+        return getShape(i, new Ellipse2D.Float());
+    }
+
+    /**
+     * Sets the frame of an ellipse to the frame of a footprint. Renderers use
+     * this method for reusing a single ellipse for all footprints.
+     *
+     * @param i       the footprint index
+     * @param ellipse the ellipse
+     *
+     * @return the ellipse
+     */
+    public Ellipse2D.Float getShape(int i, Ellipse2D.Float ellipse) {
+        ellipse.setFrame(centerX[i] - semiAxisX[i], centerY[i] - semiAxisY[i],
+                         2.0f * semiAxisX[i], 2.0f * semiAxisY[i]);
+        return ellipse;
+    }
+}
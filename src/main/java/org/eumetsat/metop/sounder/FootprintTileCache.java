@@ -0,0 +1,217 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import com.bc.ceres.grender.Viewport;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches rasterized footprints of a sounder layer as image tiles.
+ * <p/>
+ * Tiles have a fixed size in view pixels and are keyed by the zoom level,
+ * so they are reused while the view is panned. The tiles are painted by a
+ * {@link TilePainter} and kept until {@link #invalidate()} is called or the
+ * least recently used tiles are evicted. The maximum number of tiles is
+ * given by the system property {@link #SIZE_PROPERTY}, a size of zero
+ * disables the cache.
+ */
+public class FootprintTileCache {
+
+    /**
+     * The name of the system property which sets the maximum number of cached tiles.
+     */
+    public static final String SIZE_PROPERTY = "metop.sounder.tileCacheSize";
+
+    public static final int TILE_SIZE = 256;
+
+    private static final BufferedImage EMPTY_TILE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    /**
+     * Paints footprints onto a tile or directly onto a view.
+     */
+    public interface TilePainter {
+
+        /**
+         * Paints all footprints intersecting the given model area. The
+         * transformation of the graphics is already set to model coordinates.
+         *
+         * @param g2d         the graphics
+         * @param modelBounds the model area
+         * @param scale       the determinant of the model to view transformation
+         *
+         * @return {@code true} if anything was painted
+         */
+        boolean paint(Graphics2D g2d, Rectangle2D modelBounds, double scale);
+    }
+
+    private final TilePainter painter;
+    private final int maxTileCount;
+    private final Map<TileKey, BufferedImage> tiles;
+
+    public FootprintTileCache(TilePainter painter) {
+        this.painter = painter;
+        maxTileCount = Math.max(0, Integer.getInteger(SIZE_PROPERTY, 128));
+        tiles = new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+                return size() > maxTileCount;
+            }
+        };
+    }
+
+    /**
+     * Draws the footprints visible in a viewport from cached tiles, painting
+     * missing tiles on demand.
+     *
+     * @param g2d       the graphics of the view
+     * @param vp        the viewport
+     * @param antialias {@code true} if the footprints shall be painted antialiased
+     *
+     * @return {@code false} if the cache is disabled or the viewport is rotated,
+     *         in which case nothing has been drawn
+     */
+    public boolean render(Graphics2D g2d, Viewport vp, boolean antialias) {
+        final AffineTransform m2v = vp.getModelToViewTransform();
+        final double scale = m2v.getScaleX();
+        if (maxTileCount == 0 || m2v.getShearX() != 0.0 || m2v.getShearY() != 0.0
+            || scale <= 0.0 || scale != m2v.getScaleY()) {
+            return false;
+        }
+        Rectangle viewBounds = g2d.getClipBounds();
+        if (viewBounds == null) {
+            viewBounds = vp.getViewBounds();
+        }
+        // tile pixels are view pixels without the translation of the viewport
+        final double tx = m2v.getTranslateX();
+        final double ty = m2v.getTranslateY();
+        final int i1 = (int) Math.floor((viewBounds.getMinX() - tx) / TILE_SIZE);
+        final int i2 = (int) Math.floor((viewBounds.getMaxX() - tx) / TILE_SIZE);
+        final int j1 = (int) Math.floor((viewBounds.getMinY() - ty) / TILE_SIZE);
+        final int j2 = (int) Math.floor((viewBounds.getMaxY() - ty) / TILE_SIZE);
+
+        final AffineTransform transformSave = g2d.getTransform();
+        try {
+            g2d.translate(tx, ty);
+            for (int j = j1; j <= j2; j++) {
+                for (int i = i1; i <= i2; i++) {
+                    final BufferedImage tile = getTile(scale, antialias, i, j);
+                    if (tile != EMPTY_TILE) {
+                        g2d.drawImage(tile, i * TILE_SIZE, j * TILE_SIZE, null);
+                    }
+                }
+            }
+        } finally {
+            g2d.setTransform(transformSave);
+        }
+        return true;
+    }
+
+    /**
+     * Discards all cached tiles.
+     */
+    public synchronized void invalidate() {
+        tiles.clear();
+    }
+
+    /**
+     * Discards the cached tiles which intersect a model area.
+     *
+     * @param modelBounds the model area
+     */
+    public synchronized void invalidate(Rectangle2D modelBounds) {
+        final Iterator<TileKey> iterator = tiles.keySet().iterator();
+        while (iterator.hasNext()) {
+            final TileKey key = iterator.next();
+            final double modelTileSize = TILE_SIZE / key.scale;
+            if (modelBounds.intersects(key.i * modelTileSize, key.j * modelTileSize, modelTileSize, modelTileSize)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized BufferedImage getTile(double scale, boolean antialias, int i, int j) {
+        final TileKey key = new TileKey(scale, antialias, i, j);
+        BufferedImage tile = tiles.get(key);
+        if (tile == null) {
+            tile = createTile(scale, antialias, i, j);
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private BufferedImage createTile(double scale, boolean antialias, int i, int j) {
+        final BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        final double modelTileSize = TILE_SIZE / scale;
+        final Rectangle2D modelBounds = new Rectangle2D.Double(i * modelTileSize, j * modelTileSize,
+                                                               modelTileSize, modelTileSize);
+        final Graphics2D g2d = tile.createGraphics();
+        final boolean painted;
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                 antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2d.translate(-i * TILE_SIZE, -j * TILE_SIZE);
+            g2d.scale(scale, scale);
+            painted = painter.paint(g2d, modelBounds, scale * scale);
+        } finally {
+            g2d.dispose();
+        }
+        return painted ? tile : EMPTY_TILE;
+    }
+
+    private static final class TileKey {
+        private final double scale;
+        private final boolean antialias;
+        private final int i;
+        private final int j;
+
+        private TileKey(double scale, boolean antialias, int i, int j) {
+            this.scale = scale;
+            this.antialias = antialias;
+            this.i = i;
+            this.j = j;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) obj;
+            return scale == other.scale && antialias == other.antialias && i == other.i && j == other.j;
+        }
+
+        @Override
+        public int hashCode() {
+            final long bits = Double.doubleToLongBits(scale);
+            int result = (int) (bits ^ (bits >>> 32));
+            result = 31 * result + (antialias ? 1 : 0);
+            result = 31 * result + i;
+            result = 31 * result + j;
+            return result;
+        }
+    }
+}
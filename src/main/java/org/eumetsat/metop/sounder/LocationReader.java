@@ -20,11 +20,13 @@ import com.bc.ceres.binio.CompoundData;
 import com.bc.ceres.binio.SequenceData;
 
 import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.eps.RecordLayout;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
-public class LocationReader implements MdrReader {
+public class LocationReader implements DirectMdrReader {
 
     private final int index;
     
@@ -42,4 +44,13 @@ public class LocationReader implements MdrReader {
         return bufferIndex;
     }
 
+    @Override
+    public int read(int x, int width, ProductData buffer, int bufferIndex, ByteBuffer mdr, int bodyPosition, RecordLayout layout) {
+        final RecordLayout.Field field = layout.getField("EARTH_LOCATION");
+        for (int xi = x; xi < x + width; xi++) {
+            buffer.setElemIntAt(bufferIndex, field.getInt(mdr, bodyPosition + field.getOffset(xi, index)));
+            bufferIndex++;
+        }
+        return bufferIndex;
+    }
 }
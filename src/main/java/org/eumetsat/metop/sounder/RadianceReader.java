@@ -20,11 +20,13 @@ import com.bc.ceres.binio.CompoundData;
 import com.bc.ceres.binio.SequenceData;
 
 import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.eps.RecordLayout;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
-public class RadianceReader implements MdrReader {
+public class RadianceReader implements DirectMdrReader {
     
     private final String name;
     private final int index;
@@ -44,4 +46,13 @@ public class RadianceReader implements MdrReader {
         return bufferIndex;
     }
 
+    @Override
+    public int read(int x, int width, ProductData buffer, int bufferIndex, ByteBuffer mdr, int bodyPosition, RecordLayout layout) {
+        final RecordLayout.Field field = layout.getField(name);
+        for (int xi = x; xi < x + width; xi++) {
+            buffer.setElemIntAt(bufferIndex, field.getInt(mdr, bodyPosition + field.getOffset(xi, index)));
+            bufferIndex++;
+        }
+        return bufferIndex;
+    }
 }
@@ -0,0 +1,320 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
+
+/**
+ * A uniform grid index over the bounding boxes of an array of shapes.
+ * <p/>
+ * Every shape is registered in all grid cells its bounding box overlaps, so
+ * point and rectangle queries only need to look at the shapes of the cells
+ * they touch. The cells are stored in a single packed array and list their
+ * shapes in ascending order, so queries return the shapes in the order of
+ * the array the index was created for. Shapes which are {@code null} (resp.
+ * footprints which are not valid or bounds which are {@code NaN}) are not
+ * indexed.
+ * <p/>
+ * The index is immutable and may be queried concurrently.
+ */
+public final class ShapeIndex {
+
+    private static final int MAX_CELLS_PER_SHAPE = 4;
+
+    private final int size;
+    private final Shape[] shapes;
+    private final FootprintStore footprints;
+    private final float[] minX;
+    private final float[] minY;
+    private final float[] maxX;
+    private final float[] maxY;
+
+    private double gridX;
+    private double gridY;
+    private double cellSize;
+    private int cols;
+    private int rows;
+    private int[] cellStart;
+    private int[] cellItems;
+
+    /**
+     * Creates the index for the given shapes.
+     *
+     * @param shapes the shapes, may contain {@code null} elements
+     */
+    public ShapeIndex(Shape[] shapes) {
+        this(shapes.length, shapes.clone(), null);
+        for (int i = 0; i < size; i++) {
+            if (shapes[i] == null) {
+                minX[i] = Float.NaN;
+            } else {
+                final Rectangle2D bounds = shapes[i].getBounds2D();
+                minX[i] = (float) bounds.getMinX();
+                minY[i] = (float) bounds.getMinY();
+                maxX[i] = (float) bounds.getMaxX();
+                maxY[i] = (float) bounds.getMaxY();
+            }
+        }
+        createGrid();
+    }
+
+    /**
+     * Creates the index for the valid footprints of a footprint store.
+     * Point queries test the elliptic footprints themselves.
+     *
+     * @param footprints the footprint store
+     */
+    public ShapeIndex(FootprintStore footprints) {
+        this(footprints.size(), null, footprints);
+        for (int i = 0; i < size; i++) {
+            if (!footprints.isValid(i)) {
+                minX[i] = Float.NaN;
+            } else {
+                minX[i] = footprints.getCenterX(i) - footprints.getSemiAxisX(i);
+                minY[i] = footprints.getCenterY(i) - footprints.getSemiAxisY(i);
+                maxX[i] = footprints.getCenterX(i) + footprints.getSemiAxisX(i);
+                maxY[i] = footprints.getCenterY(i) + footprints.getSemiAxisY(i);
+            }
+        }
+        createGrid();
+    }
+
+    /**
+     * Creates the index for the given rectangular bounds.
+     * Point queries test the bounds only.
+     *
+     * @param minX the minimum x coordinates, {@code NaN} for bounds which shall not be indexed
+     * @param minY the minimum y coordinates
+     * @param maxX the maximum x coordinates
+     * @param maxY the maximum y coordinates
+     */
+    public ShapeIndex(float[] minX, float[] minY, float[] maxX, float[] maxY) {
+        this(minX.length, null, null);
+        System.arraycopy(minX, 0, this.minX, 0, size);
+        System.arraycopy(minY, 0, this.minY, 0, size);
+        System.arraycopy(maxX, 0, this.maxX, 0, size);
+        System.arraycopy(maxY, 0, this.maxY, 0, size);
+        createGrid();
+    }
+
+    private ShapeIndex(int size, Shape[] shapes, FootprintStore footprints) {
+        this.size = size;
+        this.shapes = shapes;
+        this.footprints = footprints;
+        minX = new float[size];
+        minY = new float[size];
+        maxX = new float[size];
+        maxY = new float[size];
+    }
+
+    private void createGrid() {
+        double x1 = Double.POSITIVE_INFINITY;
+        double y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY;
+        double y2 = Double.NEGATIVE_INFINITY;
+        double sizeSum = 0.0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (isIndexed(i)) {
+                x1 = Math.min(x1, minX[i]);
+                y1 = Math.min(y1, minY[i]);
+                x2 = Math.max(x2, maxX[i]);
+                y2 = Math.max(y2, maxY[i]);
+                sizeSum += Math.max(maxX[i] - minX[i], maxY[i] - minY[i]);
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            gridX = 0.0;
+            gridY = 0.0;
+            cellSize = 1.0;
+            cols = 1;
+            rows = 1;
+            cellStart = new int[2];
+            cellItems = new int[0];
+            return;
+        }
+
+        // cells of the mean shape size, but not many more cells than shapes for sparse layouts,
+        // and not many more columns or rows than shapes if the shapes lie on a line
+        final double area = (x2 - x1) * (y2 - y1);
+        final double minCellSize = Math.max(Math.sqrt(area / (MAX_CELLS_PER_SHAPE * (double) count)),
+                                            Math.max(x2 - x1, y2 - y1) / (MAX_CELLS_PER_SHAPE * (double) count));
+        gridX = x1;
+        gridY = y1;
+        cellSize = Math.max(Math.max(sizeSum / count, minCellSize), 1.0E-6);
+        cols = (int) ((x2 - x1) / cellSize) + 1;
+        rows = (int) ((y2 - y1) / cellSize) + 1;
+
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < size; i++) {
+            if (isIndexed(i)) {
+                final int c1 = col(minX[i]);
+                final int c2 = col(maxX[i]);
+                final int r1 = row(minY[i]);
+                final int r2 = row(maxY[i]);
+                for (int r = r1; r <= r2; r++) {
+                    for (int c = c1; c <= c2; c++) {
+                        cellStart[r * cols + c + 1]++;
+                    }
+                }
+            }
+        }
+        for (int cell = 0; cell < cols * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellItems = new int[cellStart[cols * rows]];
+        final int[] fill = new int[cols * rows];
+        for (int i = 0; i < size; i++) {
+            if (isIndexed(i)) {
+                final int c1 = col(minX[i]);
+                final int c2 = col(maxX[i]);
+                final int r1 = row(minY[i]);
+                final int r2 = row(maxY[i]);
+                for (int r = r1; r <= r2; r++) {
+                    for (int c = c1; c <= c2; c++) {
+                        final int cell = r * cols + c;
+                        cellItems[cellStart[cell] + fill[cell]++] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the length of the array this index was created for
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first shape containing a point.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     *
+     * @return the array index of the first shape containing the point, or {@code -1}
+     */
+    public int findContaining(double x, double y) {
+        return findContaining(x, y, 0);
+    }
+
+    /**
+     * Finds the first shape containing a point, starting at a given array index.
+     * Successive calls with {@code fromIndex} set to the last result plus one
+     * iterate over all shapes containing the point.
+     *
+     * @param x         the x coordinate of the point
+     * @param y         the y coordinate of the point
+     * @param fromIndex the array index to start at
+     *
+     * @return the array index of the first shape at or after {@code fromIndex}
+     *         containing the point, or {@code -1}
+     */
+    public int findContaining(double x, double y, int fromIndex) {
+        if (x < gridX || y < gridY) {
+            return -1;
+        }
+        final int c = (int) ((x - gridX) / cellSize);
+        final int r = (int) ((y - gridY) / cellSize);
+        if (c >= cols || r >= rows) {
+            return -1;
+        }
+        final int cell = r * cols + c;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+            final int i = cellItems[k];
+            if (i >= fromIndex
+                && x >= minX[i] && x <= maxX[i] && y >= minY[i] && y <= maxY[i]
+                && contains(i, x, y)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds all shapes whose bounding box intersects a rectangle.
+     *
+     * @param rect the rectangle, if {@code null} all indexed shapes are returned
+     *
+     * @return the set of the array indexes of the shapes found
+     */
+    public BitSet findIntersecting(Rectangle2D rect) {
+        final BitSet result = new BitSet(size);
+        if (rect == null) {
+            for (int i = 0; i < size; i++) {
+                if (isIndexed(i)) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+        if (cellItems.length == 0) {
+            return result;
+        }
+        final double x1 = rect.getMinX();
+        final double y1 = rect.getMinY();
+        final double x2 = rect.getMaxX();
+        final double y2 = rect.getMaxY();
+        final int c1 = col(x1);
+        final int c2 = col(x2);
+        final int r1 = row(y1);
+        final int r2 = row(y2);
+        for (int r = r1; r <= r2; r++) {
+            for (int c = c1; c <= c2; c++) {
+                final int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    final int i = cellItems[k];
+                    if (maxX[i] >= x1 && minX[i] <= x2 && maxY[i] >= y1 && minY[i] <= y2) {
+                        result.set(i);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean isIndexed(int i) {
+        return !Float.isNaN(minX[i]);
+    }
+
+    private boolean contains(int i, double x, double y) {
+        if (shapes != null) {
+            return shapes[i].contains(x, y);
+        }
+        if (footprints != null) {
+            return footprints.contains(i, x, y);
+        }
+        return true;
+    }
+
+    private int col(double x) {
+        return clamp((int) Math.floor((x - gridX) / cellSize), cols);
+    }
+
+    private int row(double y) {
+        return clamp((int) Math.floor((y - gridY) / cellSize), rows);
+    }
+
+    private static int clamp(int i, int n) {
+        return i < 0 ? 0 : i >= n ? n - 1 : i;
+    }
+}
@@ -24,6 +24,7 @@ import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.eumetsat.metop.eps.EpsFile;
 
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
@@ -37,11 +38,33 @@ import com.bc.ceres.core.ProgressMonitor;
 
 public abstract class SounderFile extends EpsFile {
 
+    /**
+     * The number of MDRs between the tie-points of the geo-coding.
+     */
+    protected static final int TIE_POINT_STEP_Y = 4;
+    private static final int TIE_POINTS_PER_LINE = 30;
+
     private Map<Band, MdrReader> mdrReaders;
+    private BrightnessTemperatureKernel btKernel;
+    private final String gridCacheKey;
 
-    protected SounderFile(File file, DataFormat format) throws IOException {
-        super(file, format);
+    protected SounderFile(File file, DataFormat format, boolean concurrentAccess) throws IOException {
+        super(file, format, concurrentAccess);
         mdrReaders = new HashMap<Band, MdrReader>(64);
+        gridCacheKey = ChannelGridCache.createProductKey(file);
+    }
+
+    /**
+     * @return the key of the grids of this file in the {@link ChannelGridCache}
+     */
+    public String getGridCacheKey() {
+        return gridCacheKey;
+    }
+
+    @Override
+    public void close() {
+        ChannelGridCache.getInstance().remove(gridCacheKey);
+        super.close();
     }
     
     protected Product createProduct(String productType, int productWidth, ProductReader productReader) throws IOException {
@@ -58,15 +81,135 @@ public abstract class SounderFile extends EpsFile {
         mdrReaders.put(band, bandInfo.getReader());
     }
     
+    /**
+     * Adds a {@link SounderGeoCoding} to a product. Only the locations of the
+     * tie-points are read, which are taken from every {@link #TIE_POINT_STEP_Y}-th
+     * MDR. Products with a single MDR get a pixel geo-coding.
+     *
+     * @param product the product
+     * @param latBand the name of the latitude band
+     * @param lonBand the name of the longitude band
+     * @throws IOException if an I/O error occurs
+     */
     protected void addGeocoding(Product product, String latBand, String lonBand) throws IOException {
-        GeoCoding geoCoding = new PixelGeoCoding(product.getBand(latBand), product.getBand(lonBand), null, 5, ProgressMonitor.NULL);
-        product.setGeoCoding(geoCoding);
+        final int width = product.getSceneRasterWidth();
+        final int height = product.getSceneRasterHeight();
+        if (width < 2 || height < 2) {
+            GeoCoding geoCoding = new PixelGeoCoding(product.getBand(latBand), product.getBand(lonBand), null, 5, ProgressMonitor.NULL);
+            product.setGeoCoding(geoCoding);
+            return;
+        }
+        final BandInfo[] bandInfos = {getBandInfo(latBand), getBandInfo(lonBand)};
+        // the scan geometry is the same for all lines, so one tie-point column per 30 IFOVs is sufficient
+        final int stepX = Math.max(1, width / TIE_POINTS_PER_LINE);
+        final int[] columns = SounderGeoCoding.getTiePointPositions(width, stepX);
+        final int[] rows = SounderGeoCoding.getTiePointPositions(height, TIE_POINT_STEP_Y);
+        final float[] lats = new float[columns.length * rows.length];
+        final float[] lons = new float[lats.length];
+        final ProductData[] data = new ProductData[2];
+        int k = 0;
+        for (final int row : rows) {
+            readBands(bandInfos, new Rectangle(0, row, width, 1), data);
+            for (final int column : columns) {
+                lats[k] = (float) (data[0].getElemDoubleAt(column) * bandInfos[0].getScaleFactor());
+                lons[k] = (float) (data[1].getElemDoubleAt(column) * bandInfos[1].getScaleFactor());
+                k++;
+            }
+        }
+        product.setGeoCoding(new SounderGeoCoding(width, height, stepX, TIE_POINT_STEP_Y, lats, lons));
+    }
+
+    private BandInfo getBandInfo(String name) {
+        for (final BandInfo bandInfo : getBandInfos()) {
+            if (bandInfo.getName().equals(name)) {
+                return bandInfo;
+            }
+        }
+        throw new IllegalArgumentException("No such band: " + name);
     }
     
+    /**
+     * @return the band infos of the product, starting with the radiance bands in channel order
+     */
+    public abstract BandInfo[] getBandInfos();
+
+    /**
+     * @return the number of IFOVs in an MDR
+     */
+    public abstract int getProductWidth();
+
+    /**
+     * Reads the brightness temperatures of a channel for all IFOVs.
+     *
+     * @param channel the channel
+     *
+     * @return the brightness temperatures (K), ordered by MDR and IFOV
+     * @throws IOException if an I/O error occurs
+     */
+    public double[] readBrightnessTemperatures(int channel) throws IOException {
+        final BandInfo bandInfo = getBandInfos()[channel];
+        final int width = getProductWidth();
+        final int height = getMdrCount();
+        final ProductData radianceData = ProductData.createInstance(bandInfo.getType(), width * height);
+        readData(bandInfo.getReader(), 0, 0, width, height, radianceData);
+
+        final BrightnessTemperatureKernel kernel = getBtKernel();
+        final double scale = bandInfo.getScaleFactor() * 0.1;
+        final Object radiances = radianceData.getElems();
+        final double[] temperatures = new double[width * height];
+        if (radiances instanceof int[]) {
+            kernel.convert(channel, (int[]) radiances, 0, temperatures.length, scale, temperatures, 0);
+        } else if (radiances instanceof short[]) {
+            kernel.convert(channel, (short[]) radiances, 0, temperatures.length, scale, temperatures, 0);
+        } else {
+            for (int i = 0; i < temperatures.length; ++i) {
+                temperatures[i] = kernel.temperature(channel, radianceData.getElemDoubleAt(i) * scale);
+            }
+        }
+        return temperatures;
+    }
+
+    private synchronized BrightnessTemperatureKernel getBtKernel() {
+        if (btKernel == null) {
+            final BandInfo[] bandInfos = getBandInfos();
+            final double[] frequencies = new double[bandInfos.length];
+            for (int i = 0; i < bandInfos.length; i++) {
+                frequencies[i] = bandInfos[i].getFrequency();
+            }
+            btKernel = BrightnessTemperatureKernel.forFrequencies(frequencies);
+        }
+        return btKernel;
+    }
+
     @Override
     public void readBandData(int x, int y, int width, int height, Band band, ProductData buffer, ProgressMonitor pm) throws IOException {
         MdrReader reader = mdrReaders.get(band);
         readData(reader, x, y, width, height, buffer, pm);
     }
 
+    public void readBands(BandInfo[] bands, Rectangle region, ProductData[] targets) throws IOException {
+        readBands(bands, region, targets, ProgressMonitor.NULL);
+    }
+
+    /**
+     * Reads the data of several bands in a single pass over the MDRs.
+     *
+     * @param bands   the bands to read
+     * @param region  the region to read, with MDRs as rows
+     * @param targets the target buffers, one for each band. Missing buffers
+     *                are created with the type of the band.
+     * @param pm      the progress monitor
+     * @throws IOException if an I/O error occurs
+     */
+    public void readBands(BandInfo[] bands, Rectangle region, ProductData[] targets, ProgressMonitor pm) throws IOException {
+        final MdrReader[] readers = new MdrReader[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            readers[i] = bands[i].getReader();
+            if (targets[i] == null) {
+                targets[i] = ProductData.createInstance(bands[i].getType(), region.width * region.height);
+            }
+        }
+        readData(readers, region.x, region.y, region.width, region.height, targets, pm);
+    }
+
 }
@@ -0,0 +1,435 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import org.esa.beam.framework.dataio.ProductSubsetDef;
+import org.esa.beam.framework.datamodel.AbstractGeoCoding;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.framework.datamodel.Scene;
+import org.esa.beam.framework.dataop.maptransf.Datum;
+
+import java.awt.Rectangle;
+
+/**
+ * A geo-coding for AMSU and MHS products, which makes use of the fixed scan
+ * geometry of the sounders.
+ * <p/>
+ * The geo-coding is defined by the locations of a subset of the IFOVs, the
+ * tie-points, which are taken from every {@code stepX}-th column and every
+ * {@code stepY}-th row, and from the last column and row. Geo-positions are
+ * interpolated bilinearly between the tie-points in Cartesian coordinates on
+ * the unit sphere, which is also valid for swaths crossing a pole, where the
+ * longitudes cannot be interpolated. For finding pixel positions,
+ * the cells between the tie-points are registered in a coarse grid of one by
+ * one degree, so only the few cells of a single grid cell have to be tested.
+ * Consecutive lookups test the cell found by the previous lookup first.
+ * <p/>
+ * The geo-coding is immutable and may be used concurrently.
+ */
+public class SounderGeoCoding extends AbstractGeoCoding {
+
+    private static final int GRID_ROWS = 180;
+    private static final int GRID_COLS = 360;
+    private static final double EPS = 1.0e-4;
+    private static final int MAX_ITERATIONS = 8;
+    // the latitude by which the edges of a cell may bulge beyond its corners
+    private static final double LAT_MARGIN = 0.5;
+
+    private final int width;
+    private final int height;
+    private final int stepX;
+    private final int stepY;
+    private final int[] tieColumns;
+    private final int[] tieRows;
+    private final float[] tieLats;
+    private final float[] tieLons;
+    private final double[] tieX;
+    private final double[] tieY;
+    private final double[] tieZ;
+    private final boolean crossingMeridianAt180;
+
+    private final int[] cellStart;
+    private final int[] cellItems;
+    // the cell found by the latest pixel position lookup, only a hint
+    private volatile int lastCell;
+
+    /**
+     * Creates a new geo-coding.
+     *
+     * @param width   the width of the product
+     * @param height  the height of the product
+     * @param stepX   the column step between the tie-points
+     * @param stepY   the row step between the tie-points
+     * @param tieLats the latitudes of the tie-points, row by row
+     * @param tieLons the longitudes of the tie-points, row by row
+     * @see #getTiePointPositions(int, int)
+     */
+    public SounderGeoCoding(int width, int height, int stepX, int stepY, float[] tieLats, float[] tieLons) {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("width < 2 || height < 2");
+        }
+        this.width = width;
+        this.height = height;
+        this.stepX = stepX;
+        this.stepY = stepY;
+        tieColumns = getTiePointPositions(width, stepX);
+        tieRows = getTiePointPositions(height, stepY);
+        if (tieLats.length != tieColumns.length * tieRows.length || tieLons.length != tieLats.length) {
+            throw new IllegalArgumentException("Illegal number of tie-points.");
+        }
+        this.tieLats = tieLats;
+        this.tieLons = tieLons;
+        tieX = new double[tieLats.length];
+        tieY = new double[tieLats.length];
+        tieZ = new double[tieLats.length];
+        for (int k = 0; k < tieLats.length; k++) {
+            final double lat = Math.toRadians(tieLats[k]);
+            final double lon = Math.toRadians(tieLons[k]);
+            tieX[k] = Math.cos(lat) * Math.cos(lon);
+            tieY[k] = Math.cos(lat) * Math.sin(lon);
+            tieZ[k] = Math.sin(lat);
+        }
+
+        final int cellCount = (tieColumns.length - 1) * (tieRows.length - 1);
+        final int[] bounds = new int[4 * cellCount];
+        final int[] counts = new int[GRID_ROWS * GRID_COLS];
+        boolean crossing = false;
+        for (int cell = 0; cell < cellCount; cell++) {
+            crossing |= computeGridBounds(cell, bounds);
+            final int k = 4 * cell;
+            for (int row = bounds[k]; row <= bounds[k + 1]; row++) {
+                for (int col = bounds[k + 2]; col <= bounds[k + 3]; col++) {
+                    counts[row * GRID_COLS + wrap(col)]++;
+                }
+            }
+        }
+        crossingMeridianAt180 = crossing;
+
+        cellStart = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            cellStart[i + 1] = cellStart[i] + counts[i];
+        }
+        cellItems = new int[cellStart[counts.length]];
+        for (int cell = 0; cell < cellCount; cell++) {
+            final int k = 4 * cell;
+            for (int row = bounds[k]; row <= bounds[k + 1]; row++) {
+                for (int col = bounds[k + 2]; col <= bounds[k + 3]; col++) {
+                    final int gridCell = row * GRID_COLS + wrap(col);
+                    cellItems[cellStart[gridCell + 1] - counts[gridCell]] = cell;
+                    counts[gridCell]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the positions of the tie-points along a dimension of a product,
+     * which are the multiples of the step and the last position.
+     *
+     * @param size the size of the dimension
+     * @param step the step between the tie-points
+     *
+     * @return the positions
+     */
+    public static int[] getTiePointPositions(int size, int step) {
+        final int n = (size - 1 + step - 1) / step + 1;
+        final int[] positions = new int[n];
+        for (int i = 0; i < n - 1; i++) {
+            positions[i] = i * step;
+        }
+        positions[n - 1] = size - 1;
+        return positions;
+    }
+
+    @Override
+    public boolean isCrossingMeridianAt180() {
+        return crossingMeridianAt180;
+    }
+
+    @Override
+    public boolean canGetPixelPos() {
+        return true;
+    }
+
+    @Override
+    public boolean canGetGeoPos() {
+        return true;
+    }
+
+    @Override
+    public GeoPos getGeoPos(PixelPos pixelPos, GeoPos geoPos) {
+        if (geoPos == null) {
+            geoPos = new GeoPos();
+        }
+        final float x = pixelPos.x;
+        final float y = pixelPos.y;
+        if (!(x >= 0 && x <= width && y >= 0 && y <= height)) {
+            geoPos.setInvalid();
+            return geoPos;
+        }
+        // the locations refer to the pixel centers
+        final double fx = x - 0.5;
+        final double fy = y - 0.5;
+        final int i = Math.max(0, Math.min((int) Math.floor(fx / stepX), tieColumns.length - 2));
+        final int j = Math.max(0, Math.min((int) Math.floor(fy / stepY), tieRows.length - 2));
+        final double u = (fx - tieColumns[i]) / (tieColumns[i + 1] - tieColumns[i]);
+        final double v = (fy - tieRows[j]) / (tieRows[j + 1] - tieRows[j]);
+
+        final int k00 = j * tieColumns.length + i;
+        final int k10 = k00 + 1;
+        final int k01 = k00 + tieColumns.length;
+        final int k11 = k01 + 1;
+        final double px = interpolate(tieX[k00], tieX[k10], tieX[k01], tieX[k11], u, v);
+        final double py = interpolate(tieY[k00], tieY[k10], tieY[k01], tieY[k11], u, v);
+        final double pz = interpolate(tieZ[k00], tieZ[k10], tieZ[k01], tieZ[k11], u, v);
+        final double lat = Math.toDegrees(Math.atan2(pz, Math.sqrt(px * px + py * py)));
+        final double lon = Math.toDegrees(Math.atan2(py, px));
+        geoPos.setLocation((float) lat, (float) lon);
+        return geoPos;
+    }
+
+    @Override
+    public PixelPos getPixelPos(GeoPos geoPos, PixelPos pixelPos) {
+        if (pixelPos == null) {
+            pixelPos = new PixelPos();
+        }
+        final double lat = geoPos.lat;
+        final double lon = geoPos.lon;
+        if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+            pixelPos.setInvalid();
+            return pixelPos;
+        }
+        // the position and the east and north directions of the tangent plane
+        final double sinLat = Math.sin(Math.toRadians(lat));
+        final double cosLat = Math.cos(Math.toRadians(lat));
+        final double sinLon = Math.sin(Math.toRadians(lon));
+        final double cosLon = Math.cos(Math.toRadians(lon));
+        final double[] frame = {
+                cosLat * cosLon, cosLat * sinLon, sinLat,
+                -sinLon, cosLon, 0.0,
+                -sinLat * cosLon, -sinLat * sinLon, cosLat
+        };
+        final int hint = lastCell;
+        if (findPixelPos(hint, frame, pixelPos)) {
+            return pixelPos;
+        }
+        final int gridCell = gridRow(lat) * GRID_COLS + wrap(gridCol(lon));
+        for (int n = cellStart[gridCell]; n < cellStart[gridCell + 1]; n++) {
+            final int cell = cellItems[n];
+            if (cell != hint && findPixelPos(cell, frame, pixelPos)) {
+                lastCell = cell;
+                return pixelPos;
+            }
+        }
+        pixelPos.setInvalid();
+        return pixelPos;
+    }
+
+    @Override
+    public Datum getDatum() {
+        return Datum.WGS_84;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    public boolean transferGeoCoding(Scene srcScene, Scene destScene, ProductSubsetDef subsetDef) {
+        final Rectangle region;
+        final int subSamplingX;
+        final int subSamplingY;
+        if (subsetDef != null) {
+            region = subsetDef.getRegion() != null ? subsetDef.getRegion() : new Rectangle(width, height);
+            subSamplingX = subsetDef.getSubSamplingX();
+            subSamplingY = subsetDef.getSubSamplingY();
+        } else {
+            region = new Rectangle(width, height);
+            subSamplingX = 1;
+            subSamplingY = 1;
+        }
+        final int destWidth = destScene.getRasterWidth();
+        final int destHeight = destScene.getRasterHeight();
+        if (destWidth < 2 || destHeight < 2) {
+            return false;
+        }
+        final int destStepX = Math.max(1, stepX / subSamplingX);
+        final int destStepY = Math.max(1, stepY / subSamplingY);
+        final int[] columns = getTiePointPositions(destWidth, destStepX);
+        final int[] rows = getTiePointPositions(destHeight, destStepY);
+        final float[] lats = new float[columns.length * rows.length];
+        final float[] lons = new float[lats.length];
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        int k = 0;
+        for (final int row : rows) {
+            for (final int column : columns) {
+                pixelPos.setLocation(region.x + column * subSamplingX + 0.5f, region.y + row * subSamplingY + 0.5f);
+                getGeoPos(pixelPos, geoPos);
+                lats[k] = geoPos.lat;
+                lons[k] = geoPos.lon;
+                k++;
+            }
+        }
+        destScene.setGeoCoding(new SounderGeoCoding(destWidth, destHeight, destStepX, destStepY, lats, lons));
+        return true;
+    }
+
+    /**
+     * Finds the pixel position of a geo-position within a cell. The corners of
+     * the cell are projected onto the plane tangent to the sphere at the
+     * geo-position, where the geo-position itself is the origin.
+     *
+     * @param frame the geo-position and the east and north directions of the tangent plane
+     */
+    private boolean findPixelPos(int cell, double[] frame, PixelPos pixelPos) {
+        final int cellCols = tieColumns.length - 1;
+        final int i = cell % cellCols;
+        final int j = cell / cellCols;
+        final int k00 = j * tieColumns.length + i;
+        final int k10 = k00 + 1;
+        final int k01 = k00 + tieColumns.length;
+        final int k11 = k01 + 1;
+
+        // the cell must not be on the opposite hemisphere
+        if (dot(frame, 0, k00) <= 0.0 && dot(frame, 0, k10) <= 0.0
+            && dot(frame, 0, k01) <= 0.0 && dot(frame, 0, k11) <= 0.0) {
+            return false;
+        }
+        final double x00 = dot(frame, 3, k00);
+        final double x10 = dot(frame, 3, k10);
+        final double x01 = dot(frame, 3, k01);
+        final double x11 = dot(frame, 3, k11);
+        final double y00 = dot(frame, 6, k00);
+        final double y10 = dot(frame, 6, k10);
+        final double y01 = dot(frame, 6, k01);
+        final double y11 = dot(frame, 6, k11);
+        final double x = 0.0;
+        final double y = 0.0;
+
+        // inverts the bilinear interpolation by Newton's method
+        double u = 0.5;
+        double v = 0.5;
+        for (int n = 0; n < MAX_ITERATIONS; n++) {
+            final double fx = interpolate(x00, x10, x01, x11, u, v) - x;
+            final double fy = interpolate(y00, y10, y01, y11, u, v) - y;
+            final double dxdu = (1.0 - v) * (x10 - x00) + v * (x11 - x01);
+            final double dydu = (1.0 - v) * (y10 - y00) + v * (y11 - y01);
+            final double dxdv = (1.0 - u) * (x01 - x00) + u * (x11 - x10);
+            final double dydv = (1.0 - u) * (y01 - y00) + u * (y11 - y10);
+            final double det = dxdu * dydv - dxdv * dydu;
+            if (det == 0.0) {
+                return false;
+            }
+            final double du = (fx * dydv - fy * dxdv) / det;
+            final double dv = (fy * dxdu - fx * dydu) / det;
+            u -= du;
+            v -= dv;
+            if (Math.abs(du) < EPS && Math.abs(dv) < EPS) {
+                break;
+            }
+        }
+        if (!(u >= -EPS && u <= 1.0 + EPS && v >= -EPS && v <= 1.0 + EPS)) {
+            return false;
+        }
+        pixelPos.setLocation((float) (tieColumns[i] + u * (tieColumns[i + 1] - tieColumns[i]) + 0.5),
+                             (float) (tieRows[j] + v * (tieRows[j + 1] - tieRows[j]) + 0.5));
+        return true;
+    }
+
+    private double dot(double[] frame, int offset, int k) {
+        return frame[offset] * tieX[k] + frame[offset + 1] * tieY[k] + frame[offset + 2] * tieZ[k];
+    }
+
+    /**
+     * Computes the grid rows and columns overlapped by a cell.
+     *
+     * @return {@code true} if the cell crosses the 180 degree meridian
+     */
+    private boolean computeGridBounds(int cell, int[] bounds) {
+        final int cellCols = tieColumns.length - 1;
+        final int k00 = (cell / cellCols) * tieColumns.length + cell % cellCols;
+        // the corners in order around the cell
+        final int[] corners = {k00, k00 + 1, k00 + tieColumns.length + 1, k00 + tieColumns.length};
+
+        final double lon00 = tieLons[k00];
+        double minLat = 90.0;
+        double maxLat = -90.0;
+        double minLon = lon00;
+        double maxLon = lon00;
+        double winding = 0.0;
+        for (int n = 0; n < corners.length; n++) {
+            final int k = corners[n];
+            final double lon = unwrap(tieLons[k], lon00);
+            minLat = Math.min(minLat, tieLats[k]);
+            maxLat = Math.max(maxLat, tieLats[k]);
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+            final double nextLon = tieLons[corners[(n + 1) % corners.length]];
+            winding += unwrap(nextLon, tieLons[k]) - tieLons[k];
+        }
+        final boolean polar = Math.abs(winding) > 180.0 || maxLon - minLon > 90.0;
+        if (polar) {
+            // a cell around or next to a pole, which its edges may reach
+            if (maxLat > 0.0) {
+                maxLat = 90.0;
+            } else {
+                minLat = -90.0;
+            }
+        }
+        final int k = 4 * cell;
+        bounds[k] = gridRow(minLat - LAT_MARGIN);
+        bounds[k + 1] = gridRow(maxLat + LAT_MARGIN);
+        if (polar) {
+            bounds[k + 2] = 0;
+            bounds[k + 3] = GRID_COLS - 1;
+        } else {
+            bounds[k + 2] = gridCol(minLon);
+            bounds[k + 3] = gridCol(maxLon);
+        }
+        return minLon < -180.0 || maxLon > 180.0;
+    }
+
+    private static double interpolate(double f00, double f10, double f01, double f11, double u, double v) {
+        return (1.0 - v) * ((1.0 - u) * f00 + u * f10) + v * ((1.0 - u) * f01 + u * f11);
+    }
+
+    private static double unwrap(double lon, double referenceLon) {
+        final double delta = lon - referenceLon;
+        if (delta > 180.0) {
+            return lon - 360.0;
+        }
+        if (delta < -180.0) {
+            return lon + 360.0;
+        }
+        return lon;
+    }
+
+    private static int gridRow(double lat) {
+        return Math.max(0, Math.min((int) Math.floor(lat + 90.0), GRID_ROWS - 1));
+    }
+
+    // not wrapped, for cells crossing the 180 degree meridian
+    private static int gridCol(double lon) {
+        return (int) Math.floor(lon + 180.0);
+    }
+
+    private static int wrap(int col) {
+        return ((col % GRID_COLS) + GRID_COLS) % GRID_COLS;
+    }
+}
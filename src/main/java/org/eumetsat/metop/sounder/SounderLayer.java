@@ -24,12 +24,14 @@ import org.esa.beam.framework.datamodel.*;
 import org.esa.beam.framework.ui.AbstractLayerUI;
 import org.esa.beam.framework.ui.product.ProductSceneView;
 import org.esa.beam.util.math.MathUtils;
-import org.eumetsat.metop.visat.BlackBody;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -38,16 +40,18 @@ public class SounderLayer extends Layer implements SounderInfo {
 
     private static final Stroke BORDER_STROKE = new BasicStroke(0.4f);
     private static final Color IFOV_SELECTED_COLOR = Color.GREEN;
+    private static final String BT_CONVERSION = "brightnessTemperature";
 
     private final AbstractSounderOverlay overlay;
     private final BandInfo[] bandInfos;
 
     private final int mdrCount;
     private final int ifovInMdrCount;
-    private final ProductData layerData;
+    private ProductData layerData;
 
     private final Map<Integer,LayerInfo> layerInfoMap;
     private final SounderOverlayListener listener;
+    private final FootprintTileCache tileCache;
 
     private int selectedChannel;
 
@@ -57,14 +61,26 @@ public class SounderLayer extends Layer implements SounderInfo {
 
         this.ifovInMdrCount = ifovInMdrCount;
         mdrCount = overlay.getEpsFile().getMdrCount();
-        layerData = ProductData.createInstance(ProductData.TYPE_FLOAT64, ifovInMdrCount * mdrCount);
 
+        tileCache = new FootprintTileCache(new FootprintTileCache.TilePainter() {
+            @Override
+            public boolean paint(Graphics2D g2d, Rectangle2D modelBounds, double scale) {
+                return paintFootprints(g2d, modelBounds);
+            }
+        });
         listener = new SounderOverlayListener() {
             @Override
             public void dataChanged(SounderOverlay overlay) {
+                tileCache.invalidate();
                 fireLayerDataChanged(null);
             }
 
+            @Override
+            public void regionChanged(SounderOverlay overlay, Rectangle2D bounds) {
+                tileCache.invalidate(bounds);
+                fireLayerDataChanged(bounds);
+            }
+
             @Override
             public void selectionChanged(SounderOverlay overlay) {
                 fireLayerDataChanged(null);
@@ -81,30 +97,27 @@ public class SounderLayer extends Layer implements SounderInfo {
     protected void disposeLayer() {
         synchronized (this) {
             overlay.removeListener(listener);
-            layerData.dispose();
+            tileCache.invalidate();
+            // the layer data is shared through the channel grid cache
+            layerData = null;
         }
         super.disposeLayer();
     }
 
     @Override
     protected void renderLayer(Rendering rendering) {
-        if (overlay.getAllIfovs().length == 0) {
+        final Viewport vp = rendering.getViewport();
+        // lets the overlay load the visible footprints first
+        overlay.setVisibleRegion(vp.getViewToModelTransform().createTransformedShape(vp.getViewBounds()).getBounds2D());
+        final FootprintStore footprints = overlay.getFootprints();
+        if (footprints.size() == 0) {
             return;
         }
-        final ProductData layerData;
-        final LayerInfo layerInfo;
-
-        synchronized (this) {
-            layerData = getLayerData();
-            layerInfo = getLayerInfo();
-        }
-
-        final Scaling scaling = layerInfo.getScaling();
-        final ImageInfo imageInfo = layerInfo.getImageInfo();
-        final Color[] colorPalette = imageInfo.getColorPaletteDef().createColorPalette(scaling);
 
         final Graphics2D g2d = rendering.getGraphics();
-        final Viewport vp = rendering.getViewport();
+        final Boolean antialias = (Boolean) getStyle().getProperty(ProductSceneView.PROPERTY_KEY_GRAPHICS_ANTIALIASING);
+        final boolean tiled = tileCache.render(g2d, vp, antialias.booleanValue());
+
         final AffineTransform transformSave = g2d.getTransform();
         try {
             final AffineTransform transform = new AffineTransform();
@@ -117,30 +130,20 @@ public class SounderLayer extends Layer implements SounderInfo {
             final Stroke oldStroke = g2d.getStroke();
             final Object oldAntialias = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
             final Object oldRendering = g2d.getRenderingHint(RenderingHints.KEY_RENDERING);
-            g2d.setStroke(BORDER_STROKE);
             g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
-            Boolean antialias = (Boolean) getStyle().getProperty(ProductSceneView.PROPERTY_KEY_GRAPHICS_ANTIALIASING);
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
                                  antialias.booleanValue() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
-            final Rectangle clip = g2d.getClipBounds();
+            if (!tiled) {
+                final Rectangle clip = g2d.getClipBounds();
+                paintFootprints(g2d, clip);
+            }
 
-            final Ifov[] ifovs = overlay.getAllIfovs();
+            // the selection is not part of the tiles
             final Ifov selectedIfov = overlay.getSelectedIfov();
-
-            for (final Ifov ifov : ifovs) {
-                final Shape ifovShape = ifov.getShape();
-                final boolean visible = clip == null || ifovShape.intersects(clip);
-
-                if (visible) {
-                    final Color fillColor = getIfovColor(layerData, layerInfo, ifov, colorPalette);
-                    g2d.setPaint(fillColor);
-                    g2d.fill(ifovShape);
-
-                    if (selectedIfov != null && selectedIfov == ifov) {
-                        g2d.setColor(IFOV_SELECTED_COLOR);
-                        g2d.draw(ifovShape);
-                    }
-                }
+            if (selectedIfov != null && footprints.isValid(selectedIfov.getIfovIndex())) {
+                g2d.setStroke(BORDER_STROKE);
+                g2d.setColor(IFOV_SELECTED_COLOR);
+                g2d.draw(footprints.getShape(selectedIfov.getIfovIndex(), new Ellipse2D.Float()));
             }
 
             g2d.setColor(oldColor);
@@ -153,6 +156,41 @@ public class SounderLayer extends Layer implements SounderInfo {
         }
     }
 
+    private boolean paintFootprints(Graphics2D g2d, Rectangle2D clip) {
+        final FootprintStore footprints = overlay.getFootprints();
+        final ShapeIndex shapeIndex = overlay.getFootprintIndex();
+        if (shapeIndex == null) {
+            return false;
+        }
+        final ProductData layerData;
+        final LayerInfo layerInfo;
+
+        synchronized (this) {
+            layerData = getLayerData();
+            layerInfo = getLayerInfo();
+        }
+
+        final Scaling scaling = layerInfo.getScaling();
+        final ImageInfo imageInfo = layerInfo.getImageInfo();
+        final Color[] colorPalette = imageInfo.getColorPaletteDef().createColorPalette(scaling);
+        final Ellipse2D.Float ifovShape = new Ellipse2D.Float();
+
+        boolean painted = false;
+        final BitSet visibleIfovs = shapeIndex.findIntersecting(clip);
+        for (int i = visibleIfovs.nextSetBit(0); i >= 0; i = visibleIfovs.nextSetBit(i + 1)) {
+            footprints.getShape(i, ifovShape);
+            final boolean visible = clip == null || ifovShape.intersects(clip);
+
+            if (visible) {
+                final Color fillColor = getIfovColor(layerData, layerInfo, i, colorPalette);
+                g2d.setPaint(fillColor);
+                g2d.fill(ifovShape);
+                painted = true;
+            }
+        }
+        return painted;
+    }
+
     private synchronized ProductData getLayerData() {
         return layerData;
     }
@@ -167,6 +205,7 @@ public class SounderLayer extends Layer implements SounderInfo {
 
     @Override
     public void regenerate() {
+        tileCache.invalidate();
         fireLayerDataChanged(getModelBounds());
     }
 
@@ -199,18 +238,14 @@ public class SounderLayer extends Layer implements SounderInfo {
     public synchronized void setSelectedChannel(final int channel) throws IOException {
         if (selectedChannel != channel) {
             final BandInfo bandInfo = bandInfos[channel];
-            final int dataType = bandInfo.getType();
-            final ProductData radianceData = ProductData.createInstance(dataType, ifovInMdrCount * mdrCount);
-
-            final MdrReader reader = bandInfo.getReader();
-            overlay.getEpsFile().readData(reader, 0, 0, ifovInMdrCount, mdrCount, radianceData);
-
-            for (int i = 0; i < radianceData.getNumElems(); ++i) {
-                final double f = bandInfo.getFrequency();
-                final double r = radianceData.getElemDoubleAt(i) * bandInfo.getScaleFactor() * 0.1;
-                final double t = BlackBody.temperatureAtFrequency(f, r);
-                layerData.setElemDoubleAt(i, t);
+            final String productKey = ((SounderFile) overlay.getEpsFile()).getGridCacheKey();
+            final ChannelGridCache gridCache = ChannelGridCache.getInstance();
+            double[] temperatures = gridCache.get(productKey, bandInfo.getName(), BT_CONVERSION);
+            if (temperatures == null) {
+                temperatures = readTemperatures(channel);
+                gridCache.put(productKey, bandInfo.getName(), BT_CONVERSION, temperatures);
             }
+            layerData = ProductData.createInstance(temperatures);
 
             if (getLayerInfo(channel) == null) {
                 final Band band = new Band("name", ProductData.TYPE_FLOAT64, ifovInMdrCount, mdrCount);
@@ -220,25 +255,26 @@ public class SounderLayer extends Layer implements SounderInfo {
                 layerInfoMap.put(channel, LayerInfo.createInstance(band));
             }
             selectedChannel = channel;
+            tileCache.invalidate();
         }
     }
 
+    private double[] readTemperatures(int channel) throws IOException {
+        return ((SounderFile) overlay.getEpsFile()).readBrightnessTemperatures(channel);
+    }
+
     private Ifov getIfovForLocation(int pixelX, int pixelY) {
-        final Ifov[] ifovs = overlay.getAllIfovs();
-        for (final Ifov ifov : ifovs) {
-            if (ifov.getShape().contains(pixelX + 0.5f, pixelY + 0.5f)) {
-                return ifov;
-            }
+        final ShapeIndex shapeIndex = overlay.getFootprintIndex();
+        if (shapeIndex == null) {
+            return null;
         }
-        return null;
+        final int i = shapeIndex.findContaining(pixelX + 0.5f, pixelY + 0.5f);
+        return i >= 0 ? overlay.getIfov(i) : null;
     }
 
-    private Color getIfovColor(ProductData layerData, LayerInfo layerInfo, Ifov ifov, Color[] colors) {
-        final int x = ifov.getIfovInMdrIndex();
-        final int y = ifov.getMdrIndex();
-
+    private Color getIfovColor(ProductData layerData, LayerInfo layerInfo, int ifovIndex, Color[] colors) {
         final Scaling scaling = layerInfo.getScaling();
-        final double sample = scaling.scale(layerData.getElemDoubleAt(x + y * ifovInMdrCount));
+        final double sample = scaling.scale(layerData.getElemDoubleAt(ifovIndex));
         final int colorCount = colors.length;
 
         final ImageInfo imageInfo = layerInfo.getImageInfo();
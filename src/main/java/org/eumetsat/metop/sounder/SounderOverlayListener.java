@@ -14,6 +14,8 @@
  */
 package org.eumetsat.metop.sounder;
 
+import java.awt.geom.Rectangle2D;
+
 /**
  * Listens on selection changes.
  *
@@ -23,4 +25,12 @@ package org.eumetsat.metop.sounder;
 public interface SounderOverlayListener {
     void selectionChanged(SounderOverlay overlay);
     void dataChanged(SounderOverlay overlay);
+
+    /**
+     * Called when footprints have been added while an overlay is loading.
+     *
+     * @param overlay the overlay
+     * @param bounds  the bounds of the added footprints in AVHRR pixel coordinates
+     */
+    void regionChanged(SounderOverlay overlay, Rectangle2D bounds);
 }
@@ -61,6 +61,7 @@ import javax.swing.event.InternalFrameListener;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellRenderer;
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
@@ -539,6 +540,11 @@ public class IasiInfoView extends AbstractToolView {
         public void dataChanged(SounderOverlay overlay) {
             updateUI(overlay.getSelectedIfov());
         }
+
+        @Override
+        public void regionChanged(SounderOverlay overlay, Rectangle2D bounds) {
+            // the selected IFOV has already been loaded
+        }
     }
 
     private double[][] readBrightnessTemperatureSpectrum(int ifovId) throws IOException {
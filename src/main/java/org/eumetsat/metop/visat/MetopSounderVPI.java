@@ -14,6 +14,7 @@ import org.esa.beam.framework.datamodel.TiePointGrid;
 import org.esa.beam.framework.ui.command.Command;
 import org.esa.beam.framework.ui.product.ProductSceneView;
 import org.esa.beam.framework.ui.product.ProductTreeListener;
+import org.esa.beam.util.Debug;
 import org.esa.beam.util.io.BeamFileChooser;
 import org.esa.beam.visat.VisatApp;
 import org.esa.beam.visat.VisatPlugIn;
@@ -21,6 +22,7 @@ import org.eumetsat.metop.amsu.AmsuFile;
 import org.eumetsat.metop.amsu.AmsuSounderLayer;
 import org.eumetsat.metop.eps.EpsFile;
 import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.ProductCatalogue;
 import org.eumetsat.metop.iasi.IasiFile;
 import org.eumetsat.metop.iasi.IasiLayer;
 import org.eumetsat.metop.mhs.MhsFile;
@@ -229,17 +231,22 @@ public class MetopSounderVPI implements VisatPlugIn {
             // wrong filename, do not try to add overlay
             return;
         }
-        AvhrrProductInfo avhrrInfo = new AvhrrProductInfo(avhrrProduct, avhrrFilename, avhrrDir, avhrrStartTime);
+        long avhrrEndTime = avhrrStartTime;
+        if (avhrrProduct.getEndTime() != null) {
+            avhrrEndTime = avhrrProduct.getEndTime().getAsCalendar().getTimeInMillis();
+        }
+        AvhrrProductInfo avhrrInfo = new AvhrrProductInfo(avhrrProduct, avhrrFilename, avhrrDir, avhrrStartTime,
+                                                          avhrrEndTime);
 
         FilenameFilter iasiTimeFilter = new IasiFile.NameFilter(avhrrInfo.avhrrFilename);
         FilenameFilter amsuTimeFilter = new AmsuFile.NameFilter(avhrrInfo.avhrrFilename);
         FilenameFilter mhsTimeFilter = new MhsFile.NameFilter(avhrrInfo.avhrrFilename);
 
-        addOverlayLayer(rootLayer, avhrrInfo, amsuTimeFilter, AMSU_NAME_FILTER, AmsuSounderLayer.class,
+        addOverlayLayer(rootLayer, avhrrInfo, "AMSA", amsuTimeFilter, AMSU_NAME_FILTER, AmsuSounderLayer.class,
                         amsuFootprintLayerModelMap, "AMSU");
-        addOverlayLayer(rootLayer, avhrrInfo, mhsTimeFilter, MHS_NAME_FILTER, MhsSounderLayer.class,
+        addOverlayLayer(rootLayer, avhrrInfo, "MHSx", mhsTimeFilter, MHS_NAME_FILTER, MhsSounderLayer.class,
                         mhsFootprintLayerModelMap, "MHS");
-        addOverlayLayer(rootLayer, avhrrInfo, iasiTimeFilter, IASI_NAME_FILTER, IasiLayer.class,
+        addOverlayLayer(rootLayer, avhrrInfo, "IASI", iasiTimeFilter, IASI_NAME_FILTER, IasiLayer.class,
                         iasiFootprintLayerModelMap, "IASI");
     }
 
@@ -278,11 +285,11 @@ public class MetopSounderVPI implements VisatPlugIn {
         }
     }
 
-    private void addOverlayLayer(final Layer rootLayer, AvhrrProductInfo avhrrInfo, FilenameFilter timeFilter, FileFilter nameFilter, Class<? extends Layer> layerType, Map<Product, AvhrrOverlay> overlayMap, String type) {
+    private void addOverlayLayer(final Layer rootLayer, AvhrrProductInfo avhrrInfo, String instrumentId, FilenameFilter timeFilter, FileFilter nameFilter, Class<? extends Layer> layerType, Map<Product, AvhrrOverlay> overlayMap, String type) {
         if (!hasLayer(rootLayer, layerType)) {
             AvhrrOverlay overlay = overlayMap.get(avhrrInfo.avhrrProduct);
             if (overlay == null) {
-                EpsFile epsFile = openEpsFile(avhrrInfo, timeFilter, nameFilter, type);
+                EpsFile epsFile = openEpsFile(avhrrInfo, instrumentId, timeFilter, nameFilter, type);
                 if (epsFile != null) {
                     overlay = epsFile.createOverlay(avhrrInfo.avhrrProduct);
                     overlayMap.put(avhrrInfo.avhrrProduct, overlay);
@@ -323,8 +330,8 @@ public class MetopSounderVPI implements VisatPlugIn {
         }
     }
 
-    private EpsFile openEpsFile(AvhrrProductInfo avhrrInfo, FilenameFilter timeFilter, FileFilter nameFilter, String type) {
-        File file = EpsFile.findFile(avhrrInfo.avhrrStartTime, avhrrInfo.avhrrDir.listFiles(timeFilter));
+    private EpsFile openEpsFile(AvhrrProductInfo avhrrInfo, String instrumentId, FilenameFilter timeFilter, FileFilter nameFilter, String type) {
+        File file = findEpsFile(avhrrInfo, instrumentId, timeFilter);
         if (file == null) {
             if (visatApp.showQuestionDialog(type + " Footprint Layer",
                                             "No matching " + type + " file was found for this AVHRR scene.\n" +
@@ -337,7 +344,8 @@ public class MetopSounderVPI implements VisatPlugIn {
             return null;
         }
         try {
-            return EpsFormats.getInstance().openFile(file);
+            // overlays and info views read from the same file in several swing workers
+            return EpsFormats.getInstance().openFile(file, true);
         } catch (IOException e) {
             visatApp.showErrorDialog(type + " Footprint Layer",
                                      "Not able to create " + type + " Footprint layer.");
@@ -345,6 +353,19 @@ public class MetopSounderVPI implements VisatPlugIn {
         }
     }
 
+    private static File findEpsFile(AvhrrProductInfo avhrrInfo, String instrumentId, FilenameFilter timeFilter) {
+        try {
+            ProductCatalogue catalogue = ProductCatalogue.getCatalogue(avhrrInfo.avhrrDir);
+            ProductCatalogue.Granule granule = catalogue.findBestGranule(instrumentId, avhrrInfo.getSpacecraftId(),
+                                                                         avhrrInfo.avhrrStartTime,
+                                                                         avhrrInfo.avhrrEndTime);
+            return granule != null ? granule.getFile() : null;
+        } catch (IOException e) {
+            Debug.trace(e);
+            return EpsFile.findFile(avhrrInfo.avhrrStartTime, avhrrInfo.avhrrDir.listFiles(timeFilter));
+        }
+    }
+
     private File showOpenFileDialog(String title, FileFilter fileFilter, File currentDir) {
         BeamFileChooser fileChooser = new BeamFileChooser();
         fileChooser.setCurrentDirectory(currentDir);
@@ -387,12 +408,22 @@ public class MetopSounderVPI implements VisatPlugIn {
         private final String avhrrFilename;
         private final File avhrrDir;
         private final long avhrrStartTime;
+        private final long avhrrEndTime;
 
-        private AvhrrProductInfo(Product avhrrProduct, String avhrrFilename, File avhrrDir, long avhrrStartTime) {
+        private AvhrrProductInfo(Product avhrrProduct, String avhrrFilename, File avhrrDir, long avhrrStartTime,
+                                 long avhrrEndTime) {
             this.avhrrProduct = avhrrProduct;
             this.avhrrFilename = avhrrFilename;
             this.avhrrDir = avhrrDir;
             this.avhrrStartTime = avhrrStartTime;
+            this.avhrrEndTime = avhrrEndTime;
+        }
+
+        /**
+         * @return the spacecraft ID from the EPS product name, e.g. {@code M02}
+         */
+        private String getSpacecraftId() {
+            return avhrrFilename.substring(12, 15);
         }
     }
 
@@ -55,6 +55,7 @@ import javax.swing.*;
 import javax.swing.event.*;
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 
@@ -88,6 +89,11 @@ abstract class SounderInfoView extends AbstractToolView {
             public void dataChanged(SounderOverlay overlay) {
                 updateUI(overlay);
             }
+
+            @Override
+            public void regionChanged(SounderOverlay overlay, Rectangle2D bounds) {
+                // the selected IFOV has already been loaded
+            }
         };
         internalFrameListener = new InternalFrameAdapter() {
             @Override
@@ -0,0 +1,80 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.batch;
+
+import junit.framework.TestCase;
+import org.eumetsat.metop.eps.TempDirSupport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class SounderBatchProcessorTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("batch-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testToPattern() {
+        assertTrue(SounderBatchProcessor.toPattern("IASI_*.nat").matcher("IASI_xxx_1C.nat").matches());
+        assertFalse(SounderBatchProcessor.toPattern("IASI_*.nat").matcher("IASI_xxx_1C.natx").matches());
+        assertFalse(SounderBatchProcessor.toPattern("IASI_*.nat").matcher("IASI_xxx_1Cxnat").matches());
+        assertTrue(SounderBatchProcessor.toPattern("MHS?.nat").matcher("MHS1.nat").matches());
+        assertFalse(SounderBatchProcessor.toPattern("MHS?.nat").matcher("MHS12.nat").matches());
+    }
+
+    public void testCollectFiles() throws IOException {
+        final File subDir = new File(dir, "sub");
+        assertTrue(subDir.mkdir());
+        final File iasi = createFile(dir, "IASI_1.nat");
+        final File amsu = createFile(dir, "AMSA_1.nat");
+        final File mhs = createFile(subDir, "MHSx_1.nat");
+        createFile(dir, "README.txt");
+
+        List<File> files = SounderBatchProcessor.collectFiles(new String[]{dir.getPath()});
+        assertEquals(3, files.size());
+        assertTrue(files.contains(iasi));
+        assertTrue(files.contains(amsu));
+        assertTrue(files.contains(mhs));
+
+        files = SounderBatchProcessor.collectFiles(new String[]{new File(dir, "IASI_*").getPath(), iasi.getPath()});
+        assertEquals(1, files.size());
+        assertEquals(iasi, files.get(0));
+
+        files = SounderBatchProcessor.collectFiles(new String[]{new File(dir, "missing.nat").getPath()});
+        assertEquals(0, files.size());
+    }
+
+    public void testGetBaseName() {
+        assertEquals("IASI_xxx_1C", SounderBatchProcessor.getBaseName(new File("data", "IASI_xxx_1C.nat")));
+        assertEquals("IASI", SounderBatchProcessor.getBaseName(new File("IASI")));
+    }
+
+    private static File createFile(File dir, String name) throws IOException {
+        final File file = new File(dir, name);
+        assertTrue(file.createNewFile());
+        return file;
+    }
+}
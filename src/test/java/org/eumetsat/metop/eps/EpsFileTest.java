@@ -0,0 +1,235 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.core.NullProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.sounder.DirectMdrReader;
+import org.eumetsat.metop.sounder.GeometryReader;
+import org.eumetsat.metop.sounder.LocationReader;
+import org.eumetsat.metop.sounder.MdrReader;
+import org.eumetsat.metop.sounder.RadianceReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EpsFileTest extends TestCase {
+
+    private static final int MDR_COUNT = 21;
+    private static final int WIDTH = 90;
+
+    private File dir;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("eps-file-test");
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        generator.setMdrCount(MDR_COUNT);
+        file = generator.write(dir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testConcurrentReadEqualsSequentialRead() throws IOException {
+        final MdrReader[] readers = {
+                new RadianceReader("SCENE_RADIANCES", 0), new RadianceReader("SCENE_RADIANCES", 4),
+                new GeometryReader(1), new LocationReader(0)
+        };
+        final AtomicInteger taskCount = new AtomicInteger();
+        final ExecutorService executor = new ThreadPoolExecutor(3, 3, 0L, TimeUnit.MILLISECONDS,
+                                                                new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable runnable) {
+                taskCount.incrementAndGet();
+            }
+        };
+        final EpsFile mappedFile = MappedIOHandlerTest.openMappedFile(file);
+        final EpsFile binioFile = EpsFormats.getInstance().openFile(file);
+        try {
+            final ProductData[] expected = createBuffers(readers.length, MDR_COUNT - 1);
+            final ProductData[] sequential = createBuffers(readers.length, MDR_COUNT - 1);
+            final ProductData[] concurrent = createBuffers(readers.length, MDR_COUNT - 1);
+            binioFile.readData(readers, 0, 1, WIDTH, MDR_COUNT - 1, expected, ProgressMonitor.NULL);
+            mappedFile.readData(readers, 0, 1, WIDTH, MDR_COUNT - 1, sequential, ProgressMonitor.NULL, executor, 1);
+            assertEquals(0, taskCount.get());
+            mappedFile.readData(readers, 0, 1, WIDTH, MDR_COUNT - 1, concurrent, ProgressMonitor.NULL, executor, 3);
+            assertTrue(taskCount.get() > 1);
+
+            for (int i = 0; i < readers.length; i++) {
+                for (int j = 0; j < WIDTH * (MDR_COUNT - 1); j++) {
+                    assertEquals(expected[i].getElemIntAt(j), sequential[i].getElemIntAt(j));
+                    assertEquals(expected[i].getElemIntAt(j), concurrent[i].getElemIntAt(j));
+                }
+            }
+        } finally {
+            binioFile.close();
+            mappedFile.close();
+            executor.shutdownNow();
+        }
+    }
+
+    public void testCancelledReadWaitsForRunningChunks() throws Exception {
+        final SlowReader reader = new SlowReader(new RadianceReader("SCENE_RADIANCES", 0));
+        final ProgressMonitor pm = new NullProgressMonitor() {
+            private volatile boolean canceled;
+
+            @Override
+            public void worked(int work) {
+                canceled = true;
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return canceled;
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final EpsFile mappedFile = MappedIOHandlerTest.openMappedFile(file);
+        try {
+            try {
+                mappedFile.readData(new MdrReader[]{reader}, 0, 0, WIDTH, MDR_COUNT,
+                                    createBuffers(1, MDR_COUNT), pm, executor, 2);
+                fail();
+            } catch (IOException expected) {
+            }
+            // no chunk is running and none is started after reading has returned
+            assertEquals(0, reader.runningCount.get());
+            final int rowCount = reader.rowCount.get();
+            assertTrue(rowCount < MDR_COUNT);
+            Thread.sleep(200);
+            assertEquals(rowCount, reader.rowCount.get());
+        } finally {
+            mappedFile.close();
+            executor.shutdownNow();
+        }
+    }
+
+    // the MDRs are read through the data contexts of several threads sharing a single channel
+    public void testConcurrentAccess() throws Exception {
+        final MdrReader reader = new RadianceReader("SCENE_RADIANCES", 2);
+        final EpsFile binioFile = EpsFormats.getInstance().openFile(file);
+        final EpsFile concurrentFile = EpsFormats.getInstance().openFile(file, true);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertFalse(binioFile.isConcurrentAccess());
+            assertTrue(concurrentFile.isConcurrentAccess());
+            assertNull(concurrentFile.getMdrMapping());
+            assertSame(concurrentFile.getMetopData(), concurrentFile.getMetopData());
+
+            final ProductData expected = ProductData.createInstance(ProductData.TYPE_INT32, WIDTH * MDR_COUNT);
+            binioFile.readData(reader, 0, 0, WIDTH, MDR_COUNT, expected);
+
+            final List<Future<ProductData>> futures = new ArrayList<Future<ProductData>>();
+            for (int y = 0; y < MDR_COUNT; y++) {
+                final int mdrIndex = y;
+                futures.add(executor.submit(new Callable<ProductData>() {
+                    @Override
+                    public ProductData call() throws IOException {
+                        final CompoundData metopData = concurrentFile.getMetopData();
+                        assertSame(metopData, concurrentFile.getMetopData());
+                        final ProductData data = ProductData.createInstance(ProductData.TYPE_INT32, WIDTH);
+                        concurrentFile.readData(reader, 0, mdrIndex, WIDTH, 1, data);
+                        return data;
+                    }
+                }));
+            }
+            for (int y = 0; y < MDR_COUNT; y++) {
+                final ProductData data = futures.get(y).get();
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(expected.getElemIntAt(y * WIDTH + x), data.getElemIntAt(x));
+                }
+            }
+
+            final Future<CompoundData> otherData = executor.submit(new Callable<CompoundData>() {
+                @Override
+                public CompoundData call() {
+                    return concurrentFile.getMetopData();
+                }
+            });
+            assertNotSame(concurrentFile.getMetopData(), otherData.get());
+        } finally {
+            executor.shutdownNow();
+            concurrentFile.close();
+            binioFile.close();
+        }
+        try {
+            concurrentFile.getMetopData();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static ProductData[] createBuffers(int count, int height) {
+        final ProductData[] buffers = new ProductData[count];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = ProductData.createInstance(ProductData.TYPE_INT32, WIDTH * height);
+        }
+        return buffers;
+    }
+
+    // counts the rows read and the readers running at the same time
+    private static class SlowReader implements DirectMdrReader {
+
+        private final DirectMdrReader reader;
+        private final AtomicInteger runningCount = new AtomicInteger();
+        private final AtomicInteger rowCount = new AtomicInteger();
+
+        private SlowReader(DirectMdrReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read(int x, int width, ProductData buffer, int bufferIndex, ByteBuffer mdr, int bodyPosition,
+                        RecordLayout layout) {
+            runningCount.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                rowCount.incrementAndGet();
+                return reader.read(x, width, buffer, bufferIndex, mdr, bodyPosition, layout);
+            } finally {
+                runningCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int read(int x, int width, ProductData buffer, int bufferIndex, CompoundData mdr) throws IOException {
+            return reader.read(x, width, buffer, bufferIndex, mdr);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.CompoundMember;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.Type;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class EpsFormatCacheTest extends TestCase {
+
+    private File dir;
+    private File cacheDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("format-cache-test");
+        // the cache creates its directory
+        cacheDir = new File(dir, "formats");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testWriteAndRead() throws Exception {
+        for (String epsXmlName : new String[]{"eps_iasil1c_6.6.xml", "eps_avhrrl1b_6.5.xml",
+                "eps_amsual1b_6.4.xml", "eps_mhsl1b_6.5.xml", "mphr.xml"}) {
+            final EpsXml expected = new EpsXml(EpsFormatCacheTest.class.getResource(epsXmlName).toURI());
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            EpsFormatCache.write(expected, new DataOutputStream(bytes));
+            final EpsXml actual = EpsFormatCache.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+            assertEquals(expected.getFormatDescription(), actual.getFormatDescription());
+            assertEquals(expected.getParameters(), actual.getParameters());
+            assertEquals(expected.getRecordTypeNames(), actual.getRecordTypeNames());
+            for (String recordTypeName : expected.getRecordTypeNames()) {
+                assertType(expected.getFormat().getTypeDef(recordTypeName),
+                           actual.getFormat().getTypeDef(recordTypeName));
+            }
+        }
+    }
+
+    public void testGetEpsXml() throws Exception {
+        final EpsFormatCache cache = new EpsFormatCache(cacheDir);
+        final EpsXml compiled = cache.getEpsXml("eps_iasil1c_6.6.xml");
+        assertEquals("8700", compiled.getParameter("SS"));
+
+        final File[] files = cacheDir.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith("eps_iasil1c_6.6-"));
+        assertTrue(files[0].getName().endsWith(".bin"));
+        final long lastModified = files[0].lastModified();
+
+        final EpsXml cached = cache.getEpsXml("eps_iasil1c_6.6.xml");
+        assertEquals(lastModified, files[0].lastModified());
+        assertType(compiled.getFormat().getTypeDef("mdr:iasi:2"), cached.getFormat().getTypeDef("mdr:iasi:2"));
+    }
+
+    public void testDamagedCacheFileIsReplaced() throws Exception {
+        final EpsFormatCache cache = new EpsFormatCache(cacheDir);
+        cache.getEpsXml("eps_mhsl1b_6.5.xml");
+        final File cacheFile = cacheDir.listFiles()[0];
+        final FileOutputStream out = new FileOutputStream(cacheFile);
+        try {
+            out.write(new byte[]{1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        final EpsXml epsXml = cache.getEpsXml("eps_mhsl1b_6.5.xml");
+        assertNotNull(epsXml.getFormat().getTypeDef("mphr"));
+        assertTrue(cacheFile.length() > 3);
+        final DataInputStream in = new DataInputStream(new FileInputStream(cacheFile));
+        try {
+            assertNotNull(EpsFormatCache.read(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testReadInvalidInput() {
+        try {
+            EpsFormatCache.read(new DataInputStream(new ByteArrayInputStream(new byte[]{0, 0, 0, 0, 0, 0, 0, 1})));
+            fail();
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+
+    private static void assertType(Type expected, Type actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.isSimpleType(), actual.isSimpleType());
+        if (expected.isSimpleType()) {
+            assertSame(expected, actual);
+        } else if (expected.isSequenceType()) {
+            assertEquals(((SequenceType) expected).getElementCount(), ((SequenceType) actual).getElementCount());
+            assertType(((SequenceType) expected).getElementType(), ((SequenceType) actual).getElementType());
+        } else if (expected.isCompoundType()) {
+            final CompoundType expectedCompound = (CompoundType) expected;
+            final CompoundType actualCompound = (CompoundType) actual;
+            assertEquals(expectedCompound.getMemberCount(), actualCompound.getMemberCount());
+            for (int i = 0; i < expectedCompound.getMemberCount(); i++) {
+                final CompoundMember expectedMember = expectedCompound.getMember(i);
+                final CompoundMember actualMember = actualCompound.getMember(i);
+                assertEquals(expectedMember.getName(), actualMember.getName());
+                assertType(expectedMember.getType(), actualMember.getType());
+                assertMetaData(expectedMember.getMetadata(), actualMember.getMetadata());
+            }
+        }
+    }
+
+    private static void assertMetaData(Object expected, Object actual) {
+        if (!(expected instanceof EpsMetaData)) {
+            assertNull(actual);
+            return;
+        }
+        final EpsMetaData expectedMetaData = (EpsMetaData) expected;
+        final EpsMetaData actualMetaData = (EpsMetaData) actual;
+        assertEquals(expectedMetaData.getType(), actualMetaData.getType());
+        assertEquals(expectedMetaData.getDescription(), actualMetaData.getDescription());
+        assertEquals(expectedMetaData.getUnits(), actualMetaData.getUnits());
+        assertEquals(expectedMetaData.getScalingFactor(), actualMetaData.getScalingFactor());
+        assertEquals(expectedMetaData.getItems(), actualMetaData.getItems());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.eumetsat.metop.amsu.AmsuFile;
+import org.eumetsat.metop.iasi.IasiFile;
+import org.eumetsat.metop.mhs.MhsFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class EpsProductGeneratorTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("eps-generator-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testIasi() throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+        generator.setMdrCount(3);
+        final File file = generator.write(dir);
+        assertEquals(generator.getFileSize(), file.length());
+
+        final EpsFile epsFile = EpsFormats.getInstance().openFile(file);
+        try {
+            assertTrue(epsFile instanceof IasiFile);
+            final IasiFile iasiFile = (IasiFile) epsFile;
+            assertEquals(3, iasiFile.getMdrCount());
+            assertEquals(generator.getProductName(), iasiFile.getProductName());
+
+            final double[][] spectrum = iasiFile.readSpectrum(IasiFile.computeIfovId(1, 17, 2));
+            assertEquals(8461, spectrum.length);
+            assertTrue(spectrum[0][1] > 1.0E-4);
+            assertTrue(spectrum[0][1] < 2.0E-3);
+
+            final GeoPos geoPos = iasiFile.readGeoPos(0);
+            assertTrue(geoPos.lat < 75.0f && geoPos.lat > 50.0f);
+            assertTrue(geoPos.lon >= -25.0f && geoPos.lon < -20.0f);
+        } finally {
+            epsFile.close();
+        }
+    }
+
+    public void testAmsuAndMhs() throws IOException {
+        final EpsProductGenerator amsuGenerator = new EpsProductGenerator(EpsProductGenerator.ProductType.AMSUA_L1B);
+        amsuGenerator.setOrbitLength(1.0);
+        assertEquals(8, amsuGenerator.getMdrCount());
+        final EpsFile amsuFile = EpsFormats.getInstance().openFile(amsuGenerator.write(dir));
+        try {
+            assertTrue(amsuFile instanceof AmsuFile);
+            assertEquals(8, amsuFile.getMdrCount());
+        } finally {
+            amsuFile.close();
+        }
+
+        final EpsProductGenerator mhsGenerator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        mhsGenerator.setMdrCount(5);
+        final EpsFile mhsFile = EpsFormats.getInstance().openFile(mhsGenerator.write(dir));
+        try {
+            assertTrue(mhsFile instanceof MhsFile);
+            assertEquals(5, mhsFile.getMdrCount());
+        } finally {
+            mhsFile.close();
+        }
+    }
+
+    public void testOutputIsDeterministic() throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        generator.setMdrCount(4);
+        generator.setSeed(42);
+        final File file1 = new File(dir, "1.nat");
+        final File file2 = new File(dir, "2.nat");
+        final File file3 = new File(dir, "3.nat");
+        generator.writeFile(file1);
+        generator.writeFile(file2);
+        generator.setSeed(43);
+        generator.writeFile(file3);
+
+        assertTrue(Arrays.equals(readBytes(file1), readBytes(file2)));
+        assertFalse(Arrays.equals(readBytes(file1), readBytes(file3)));
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < bytes.length) {
+                final int count = in.read(bytes, n, bytes.length - n);
+                if (count == -1) {
+                    break;
+                }
+                n += count;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+public class MappedIOHandlerTest extends TestCase {
+
+    private static final long WINDOW_SIZE = 1000;
+
+    private File dir;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("mapped-io-test");
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        generator.setMdrCount(7);
+        file = generator.write(dir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testReadEqualsRandomAccessFile() throws IOException {
+        final long fileSize = file.length();
+        final long lastWindowStart = (fileSize - 1) / WINDOW_SIZE * WINDOW_SIZE;
+        assertTrue(lastWindowStart > 2 * WINDOW_SIZE);
+
+        final MappedIOHandler handler = new MappedIOHandler(file, WINDOW_SIZE);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            assertEquals(fileSize, handler.getMaxPosition());
+            assertRead(handler, raf, 0, 100);
+            // the end of a window
+            assertRead(handler, raf, WINDOW_SIZE - 100, 100);
+            // across one and across several windows
+            assertRead(handler, raf, WINDOW_SIZE - 1, 2);
+            assertRead(handler, raf, 500, (int) (2 * WINDOW_SIZE));
+            // into the last window and at the end of the file
+            assertRead(handler, raf, lastWindowStart - 1, 2);
+            assertRead(handler, raf, fileSize - 10, 10);
+            // the whole file
+            assertRead(handler, raf, 0, (int) fileSize);
+        } finally {
+            raf.close();
+            handler.close();
+        }
+    }
+
+    public void testReadBeyondEndOfFile() throws IOException {
+        final MappedIOHandler handler = new MappedIOHandler(file, WINDOW_SIZE);
+        try {
+            final byte[] data = new byte[20];
+            handler.read(null, data, file.length() - 10);
+            final byte[] expected = readBytes(file, file.length() - 10, 10);
+            assertTrue(Arrays.equals(expected, Arrays.copyOf(data, 10)));
+            for (int i = 10; i < data.length; i++) {
+                assertEquals(0, data[i]);
+            }
+        } finally {
+            handler.close();
+        }
+    }
+
+    public void testWriteIsRejected() throws IOException {
+        final MappedIOHandler handler = new MappedIOHandler(file);
+        try {
+            handler.write(null, new byte[1], 0);
+            fail();
+        } catch (IOException expected) {
+            // ok
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Opens an EPS file with the memory-mapped I/O backend.
+     *
+     * @param file the file
+     *
+     * @return the EPS file
+     * @throws IOException if the file cannot be opened
+     */
+    public static EpsFile openMappedFile(File file) throws IOException {
+        final String mappedIO = System.getProperty(EpsFile.MAPPED_IO_PROPERTY);
+        System.setProperty(EpsFile.MAPPED_IO_PROPERTY, "true");
+        try {
+            return EpsFormats.getInstance().openFile(file);
+        } finally {
+            if (mappedIO == null) {
+                System.clearProperty(EpsFile.MAPPED_IO_PROPERTY);
+            } else {
+                System.setProperty(EpsFile.MAPPED_IO_PROPERTY, mappedIO);
+            }
+        }
+    }
+
+    static byte[] readBytes(File file, long position, int length) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return readBytes(raf, position, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] readBytes(RandomAccessFile raf, long position, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        raf.seek(position);
+        raf.readFully(bytes);
+        return bytes;
+    }
+
+    private static void assertRead(MappedIOHandler handler, RandomAccessFile raf, long position, int length)
+            throws IOException {
+        final byte[] actual = new byte[length];
+        handler.read(null, actual, position);
+        assertTrue(Arrays.equals(readBytes(raf, position, length), actual));
+    }
+}
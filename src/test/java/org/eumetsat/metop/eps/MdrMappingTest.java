@@ -0,0 +1,117 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class MdrMappingTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("mdr-mapping-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testAmsu() throws IOException {
+        assertMapping(EpsProductGenerator.ProductType.AMSUA_L1B);
+    }
+
+    public void testMhs() throws IOException {
+        assertMapping(EpsProductGenerator.ProductType.MHS_L1B);
+    }
+
+    public void testIasi() throws IOException {
+        assertMapping(EpsProductGenerator.ProductType.IASI_L1C);
+    }
+
+    public void testNoMappingWithoutMappedIO() throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        generator.setMdrCount(2);
+        final EpsFile epsFile = EpsFormats.getInstance().openFile(generator.write(dir));
+        try {
+            assertNull(epsFile.getMdrMapping());
+        } finally {
+            epsFile.close();
+        }
+    }
+
+    // the MDR bodies are compared with the bytes read from the file, for the mapping of the
+    // file and for a mapping in windows of three MDRs
+    private void assertMapping(EpsProductGenerator.ProductType productType) throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(productType);
+        generator.setMdrCount(7);
+        final File file = generator.write(dir);
+
+        final EpsFile epsFile = MappedIOHandlerTest.openMappedFile(file);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final MdrMapping mapping = epsFile.getMdrMapping();
+            assertNotNull(mapping);
+            assertEquals(7, mapping.getRecordCount());
+            assertEquals(epsFile.getMdrData().getSequenceType().getElementType().getSize(), mapping.getRecordSize());
+
+            final int recordSize = mapping.getRecordSize();
+            final int bodySize = recordSize - mapping.getHeaderSize();
+            final MdrMapping windowMapping = new MdrMapping(raf.getChannel(), mapping.getFirstRecordOffset(),
+                                                            recordSize, mapping.getHeaderSize(),
+                                                            mapping.getRecordCount(), 3L * recordSize + 1);
+            assertEquals(3, windowMapping.getRecordsPerWindow());
+
+            for (int mdrIndex = 0; mdrIndex < mapping.getRecordCount(); mdrIndex++) {
+                final byte[] expected = MappedIOHandlerTest.readBytes(
+                        file, mapping.getFirstRecordOffset() + (long) mdrIndex * recordSize + mapping.getHeaderSize(),
+                        bodySize);
+                assertTrue(Arrays.equals(expected, getBody(mapping, mdrIndex, bodySize)));
+                assertTrue(Arrays.equals(expected, getBody(windowMapping, mdrIndex, bodySize)));
+
+                // the record class in the generic record header
+                final ByteBuffer buffer = windowMapping.getBuffer(mdrIndex);
+                final int recordPosition = windowMapping.getBodyPosition(mdrIndex) - mapping.getHeaderSize();
+                assertEquals(RecordClass.MDR.getValue(), buffer.get(recordPosition));
+                if (mdrIndex % 3 == 2 || mdrIndex == mapping.getRecordCount() - 1) {
+                    // the last MDR of a window ends with the window
+                    assertEquals(buffer.capacity(), windowMapping.getBodyPosition(mdrIndex) + bodySize);
+                }
+            }
+        } finally {
+            raf.close();
+            epsFile.close();
+        }
+    }
+
+    private static byte[] getBody(MdrMapping mapping, int mdrIndex, int bodySize) {
+        final ByteBuffer buffer = mapping.getBuffer(mdrIndex);
+        final int bodyPosition = mapping.getBodyPosition(mdrIndex);
+        final byte[] body = new byte[bodySize];
+        for (int i = 0; i < bodySize; i++) {
+            body[i] = buffer.get(bodyPosition + i);
+        }
+        return body;
+    }
+}
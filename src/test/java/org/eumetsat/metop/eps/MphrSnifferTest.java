@@ -0,0 +1,167 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+public class MphrSnifferTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("mphr-sniffer-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testSniffGeneratedProduct() throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.MHS_L1B);
+        generator.setMdrCount(10);
+        final File file = generator.write(dir);
+
+        final MphrSniffer.Header header = new MphrSniffer(16).sniff(file);
+        assertNotNull(header);
+        assertEquals("MHSx", header.getInstrumentId());
+        assertEquals("1B", header.getProcessingLevel());
+        assertEquals(10, header.getFormatMajorVersion());
+        assertEquals(0, header.getFormatMinorVersion());
+        assertEquals(generator.getDuration() / 1000,
+                     (header.getSensingEnd().getTime() - header.getSensingStart().getTime()) / 1000);
+        assertTrue(EpsFormats.getInstance().canOpenFile(file));
+    }
+
+    public void testSniff() throws IOException {
+        final File file = writeMphr(dir, "IASI", "1C", "20090101000000Z", "20090101003000Z");
+        final MphrSniffer.Header header = new MphrSniffer(16).sniff(file);
+        assertNotNull(header);
+        assertEquals("IASI", header.getInstrumentId());
+        assertEquals("1C", header.getProcessingLevel());
+        assertEquals("M02", header.getSpacecraftId());
+        assertEquals(10, header.getFormatMajorVersion());
+        assertEquals(0, header.getFormatMinorVersion());
+        assertEquals(12345, header.getOrbit());
+        assertEquals(new Date(1230768000000L), header.getSensingStart());
+        assertEquals(new Date(1230769800000L), header.getSensingEnd());
+    }
+
+    public void testSniffInvalidFiles() throws IOException {
+        final MphrSniffer sniffer = new MphrSniffer(16);
+        final File empty = new File(dir, "empty.nat");
+        assertTrue(empty.createNewFile());
+        assertNull(sniffer.sniff(empty));
+
+        final File text = new File(dir, "text.nat");
+        write(text, "INSTRUMENT_ID = IASI\n".getBytes());
+        assertNull(sniffer.sniff(text));
+
+        final File incomplete = writeMphr(dir, "IASI", "1C", "20090101000000Z", "20090101003000Z");
+        final byte[] bytes = new byte[300];
+        System.arraycopy(readMphr(incomplete), 0, bytes, 0, bytes.length);
+        write(incomplete, bytes);
+        assertNull(sniffer.sniff(incomplete));
+    }
+
+    public void testCache() throws IOException {
+        final MphrSniffer sniffer = new MphrSniffer(2);
+        final File file1 = writeMphr(dir, "IASI", "1C", "20090101000000Z", "20090101003000Z");
+        final File file2 = writeMphr(dir, "AMSA", "1B", "20090101000000Z", "20090101003000Z");
+        final File file3 = writeMphr(dir, "MHSx", "1B", "20090101000000Z", "20090101003000Z");
+
+        final MphrSniffer.Header header1 = sniffer.sniff(file1);
+        assertSame(header1, sniffer.sniff(file1));
+        assertEquals(1, sniffer.getMissCount());
+        assertEquals(1, sniffer.getHitCount());
+
+        sniffer.sniff(file2);
+        sniffer.sniff(file3);
+        assertEquals(2, sniffer.getCachedHeaderCount());
+        // the least recently used header has been evicted
+        sniffer.sniff(file1);
+        assertEquals(4, sniffer.getMissCount());
+
+        // a modified file is read again
+        write(file1, readMphr(writeMphr(dir, "IASI", "1C", "20090101010000Z", "20090101013000Z")));
+        assertTrue(file1.setLastModified(file1.lastModified() + 2000));
+        final MphrSniffer.Header header2 = sniffer.sniff(file1);
+        assertEquals(5, sniffer.getMissCount());
+        assertEquals(new Date(1230771600000L), header2.getSensingStart());
+    }
+
+    static File writeMphr(File dir, String instrumentId, String processingLevel, String sensingStart,
+                          String sensingEnd) throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        appendLine(lines, "PRODUCT_NAME", instrumentId + "_xxx_" + processingLevel);
+        appendLine(lines, "INSTRUMENT_ID", instrumentId);
+        appendLine(lines, "PROCESSING_LEVEL", processingLevel);
+        appendLine(lines, "SPACECRAFT_ID", "M02");
+        appendLine(lines, "SENSING_START", sensingStart);
+        appendLine(lines, "SENSING_END", sensingEnd);
+        appendLine(lines, "FORMAT_MAJOR_VERSION", "10");
+        appendLine(lines, "FORMAT_MINOR_VERSION", "0");
+        appendLine(lines, "ORBIT_START", "12345");
+        appendLine(lines, "PROCESSING_MODE", "N");
+
+        final byte[] bytes = new byte[MphrSniffer.MPHR_SIZE];
+        bytes[0] = (byte) RecordClass.MPHR.getValue();
+        final byte[] ascii = lines.toString().getBytes("US-ASCII");
+        System.arraycopy(ascii, 0, bytes, 20, ascii.length);
+        final File file = File.createTempFile(instrumentId, ".nat", dir);
+        write(file, bytes);
+        return file;
+    }
+
+    private static void appendLine(StringBuilder lines, String name, String value) {
+        lines.append(name);
+        for (int i = name.length(); i < 30; i++) {
+            lines.append(' ');
+        }
+        lines.append("= ").append(value).append('\n');
+    }
+
+    private static byte[] readMphr(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += stream.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            stream.close();
+        }
+        return bytes;
+    }
+
+    static void write(File file, byte[] bytes) throws IOException {
+        final FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(bytes);
+        } finally {
+            stream.close();
+        }
+    }
+}
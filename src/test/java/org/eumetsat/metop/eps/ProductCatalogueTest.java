@@ -0,0 +1,128 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class ProductCatalogueTest extends TestCase {
+
+    private static final long T0 = 1230768000000L; // 2009-01-01 00:00:00
+    private static final long MINUTE = 60000L;
+
+    private File dir;
+    private File iasi1;
+    private File iasi2;
+    private File iasi3;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("catalogue-test");
+        iasi1 = MphrSnifferTest.writeMphr(dir, "IASI", "1C", "20090101000000Z", "20090101000300Z");
+        iasi2 = MphrSnifferTest.writeMphr(dir, "IASI", "1C", "20090101000300Z", "20090101000600Z");
+        iasi3 = MphrSnifferTest.writeMphr(dir, "IASI", "1C", "20090101000600Z", "20090101000900Z");
+        MphrSnifferTest.writeMphr(dir, "AMSA", "1B", "20090101000000Z", "20090101001000Z");
+        MphrSnifferTest.write(new File(dir, "invalid.nat"), "no product".getBytes());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testFindGranules() throws IOException {
+        final ProductCatalogue catalogue = new ProductCatalogue(dir);
+
+        List<ProductCatalogue.Granule> granules = catalogue.findGranules("IASI", null, T0 + 4 * MINUTE, T0 + 5 * MINUTE);
+        assertEquals(1, granules.size());
+        assertEquals(iasi2, granules.get(0).getFile());
+        assertEquals(T0 + 3 * MINUTE, granules.get(0).getSensingStart());
+        assertEquals(T0 + 6 * MINUTE, granules.get(0).getSensingEnd());
+        assertEquals(12345, granules.get(0).getOrbit());
+
+        granules = catalogue.findGranules("IASI", "M02", T0 + 2 * MINUTE, T0 + 7 * MINUTE);
+        assertEquals(3, granules.size());
+        assertEquals(iasi1, granules.get(0).getFile());
+        assertEquals(iasi2, granules.get(1).getFile());
+        assertEquals(iasi3, granules.get(2).getFile());
+
+        assertEquals(0, catalogue.findGranules("IASI", "M01", T0, T0 + 10 * MINUTE).size());
+        assertEquals(0, catalogue.findGranules("IASI", null, T0 + 10 * MINUTE, T0 + 20 * MINUTE).size());
+        assertEquals(0, catalogue.findGranules("MHSx", null, T0, T0 + 10 * MINUTE).size());
+        assertEquals(1, catalogue.findGranules("AMSA", null, T0 + 5 * MINUTE, T0 + 6 * MINUTE).size());
+        assertEquals(4, catalogue.getGranuleCount());
+    }
+
+    public void testFindBestGranule() throws IOException {
+        final ProductCatalogue catalogue = new ProductCatalogue(dir);
+
+        final ProductCatalogue.Granule granule =
+                catalogue.findBestGranule("IASI", "M02", T0 + 150 * 1000L, T0 + 5 * MINUTE);
+        assertEquals(iasi2, granule.getFile());
+        assertNull(catalogue.findBestGranule("IASI", "M02", T0 + 20 * MINUTE, T0 + 23 * MINUTE));
+    }
+
+    public void testIncrementalUpdate() throws IOException {
+        new ProductCatalogue(dir).update();
+        assertTrue(new File(dir, ProductCatalogue.INDEX_FILE_NAME).isFile());
+
+        // a new catalogue is read from the index file, without reading the products again
+        final long missCount = MphrSniffer.getInstance().getMissCount();
+        final ProductCatalogue catalogue = new ProductCatalogue(dir);
+        assertEquals(3, catalogue.findGranules("IASI", null, T0, T0 + 10 * MINUTE).size());
+        assertEquals(missCount, MphrSniffer.getInstance().getMissCount());
+
+        assertTrue(iasi1.delete());
+        final File iasi4 = MphrSnifferTest.writeMphr(dir, "IASI", "1C", "20090101000900Z", "20090101001200Z");
+        assertTrue(dir.setLastModified(dir.lastModified() + 2000));
+
+        final List<ProductCatalogue.Granule> granules = catalogue.findGranules("IASI", null, T0, T0 + 20 * MINUTE);
+        assertEquals(3, granules.size());
+        assertEquals(iasi2, granules.get(0).getFile());
+        assertEquals(iasi4, granules.get(2).getFile());
+        assertEquals(missCount + 1, MphrSniffer.getInstance().getMissCount());
+    }
+
+    public void testRejectedFilesAreNotReadAgain() throws IOException {
+        final File indexFile = new File(dir, ProductCatalogue.INDEX_FILE_NAME);
+        final ProductCatalogue catalogue = new ProductCatalogue(dir);
+        catalogue.update();
+        assertTrue(indexFile.setLastModified(T0));
+
+        // writing the index has not been taken for a change of the directory
+        catalogue.update();
+        assertEquals(T0, indexFile.lastModified());
+
+        // the invalid product is recorded, so the index is not written again
+        assertTrue(dir.setLastModified(dir.lastModified() + 2000));
+        catalogue.update();
+        assertEquals(T0, indexFile.lastModified());
+        new ProductCatalogue(dir).update();
+        assertEquals(T0, indexFile.lastModified());
+        assertEquals(4, catalogue.getGranuleCount());
+
+        // unless it has changed
+        MphrSnifferTest.write(new File(dir, "invalid.nat"), "still no product".getBytes());
+        assertTrue(dir.setLastModified(dir.lastModified() + 2000));
+        catalogue.update();
+        assertTrue(indexFile.lastModified() != T0);
+        assertEquals(4, catalogue.getGranuleCount());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.eumetsat.metop.sounder.DirectMdrReader;
+import org.eumetsat.metop.sounder.FlagReader;
+import org.eumetsat.metop.sounder.GeometryReader;
+import org.eumetsat.metop.sounder.LocationReader;
+import org.eumetsat.metop.sounder.RadianceReader;
+import org.eumetsat.metop.sounder.SounderFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the direct reads of memory-mapped MDRs with the reads of the binio
+ * data of the same products. The MDRs are mapped in windows of three records,
+ * so the last MDR of a window is read as well.
+ */
+public class RecordLayoutTest extends TestCase {
+
+    private static final int MDR_COUNT = 7;
+    private static final int RECORDS_PER_WINDOW = 3;
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("record-layout-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testAmsuReaders() throws IOException {
+        assertSounderReaders(EpsProductGenerator.ProductType.AMSUA_L1B, "SCENE_RADIANCE", 15);
+    }
+
+    public void testMhsReaders() throws IOException {
+        assertSounderReaders(EpsProductGenerator.ProductType.MHS_L1B, "SCENE_RADIANCES", 5);
+    }
+
+    public void testIasiLayout() throws IOException {
+        final File file = writeProduct(EpsProductGenerator.ProductType.IASI_L1C);
+        final EpsFile binioFile = EpsFormats.getInstance().openFile(file);
+        final EpsFile mappedFile = MappedIOHandlerTest.openMappedFile(file);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final RecordLayout layout = mappedFile.getMdrLayout();
+            assertNotNull(layout);
+            assertTrue(layout.isFixedSize());
+            assertEquals(binioFile.getMdrData().getCompound(0).getCompound(1).getCompoundType().getSize(),
+                         layout.getSize());
+            assertNull(layout.getField("NoSuchMember"));
+
+            final RecordLayout.Field spectField = layout.getField("GS1cSpect");
+            assertEquals(3, spectField.getDimensionCount());
+            assertEquals(30, spectField.getDimension(0));
+            assertEquals(4, spectField.getDimension(1));
+            assertEquals(8700, spectField.getDimension(2));
+            assertEquals(2, spectField.getStride(2));
+            assertEquals(8700 * 2, spectField.getStride(1));
+            assertEquals(4 * 8700 * 2, spectField.getStride(0));
+
+            final MdrMapping mapping = createWindowMapping(mappedFile, raf);
+            final RecordLayout.Field firstField = layout.getField("IDefNsfirst1b");
+            final RecordLayout.Field locField = layout.getField("GGeoSondLoc");
+            final RecordLayout.Field flagField = layout.getField("GQisFlagQual");
+            final int[] channels = {0, 1, 4321, 8699};
+            for (int mdrIndex = 0; mdrIndex < MDR_COUNT; mdrIndex++) {
+                final CompoundData mdr = binioFile.getMdrData().getCompound(mdrIndex).getCompound(1);
+                final int bodyPosition = mapping.getBodyPosition(mdrIndex);
+
+                assertEquals(mdr.getInt("IDefNsfirst1b"),
+                             firstField.getInt(mapping.getBuffer(mdrIndex), bodyPosition + firstField.getOffset()));
+                assertEquals(EpsFile.readVInt4(mdr.getCompound("IDefSpectDWn1b")),
+                             EpsFile.readVInt4(mapping.getBuffer(mdrIndex),
+                                               bodyPosition + layout.getField("IDefSpectDWn1b").getOffset()));
+                final SequenceData spectData = mdr.getSequence("GS1cSpect");
+                final SequenceData locData = mdr.getSequence("GGeoSondLoc");
+                final SequenceData flagData = mdr.getSequence("GQisFlagQual");
+                for (int efov = 0; efov < 30; efov += 29) {
+                    for (int ifov = 0; ifov < 4; ifov++) {
+                        for (final int channel : channels) {
+                            assertEquals(spectData.getSequence(efov).getSequence(ifov).getShort(channel),
+                                         mapping.getBuffer(mdrIndex).getShort(
+                                                 bodyPosition + spectField.getOffset(efov, ifov, channel)));
+                        }
+                        for (int l = 0; l < 2; l++) {
+                            assertEquals(locData.getSequence(efov).getSequence(ifov).getInt(l),
+                                         locField.getInt(mapping.getBuffer(mdrIndex),
+                                                         bodyPosition + locField.getOffset(efov, ifov, l)));
+                        }
+                        assertEquals(flagData.getSequence(efov).getByte(ifov),
+                                     (byte) flagField.getInt(mapping.getBuffer(mdrIndex),
+                                                             bodyPosition + flagField.getOffset(efov, ifov)));
+                    }
+                }
+            }
+        } finally {
+            raf.close();
+            mappedFile.close();
+            binioFile.close();
+        }
+    }
+
+    private void assertSounderReaders(EpsProductGenerator.ProductType productType, String radianceName,
+                                      int channelCount) throws IOException {
+        final File file = writeProduct(productType);
+        final SounderFile binioFile = (SounderFile) EpsFormats.getInstance().openFile(file);
+        final SounderFile mappedFile = (SounderFile) MappedIOHandlerTest.openMappedFile(file);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final RecordLayout layout = mappedFile.getMdrLayout();
+            assertNotNull(layout);
+            final MdrMapping mapping = createWindowMapping(mappedFile, raf);
+            final int width = binioFile.getProductWidth();
+
+            for (final DirectMdrReader reader : createReaders(radianceName, channelCount)) {
+                for (int mdrIndex = 0; mdrIndex < MDR_COUNT; mdrIndex++) {
+                    final ProductData expected = ProductData.createInstance(ProductData.TYPE_INT32, width);
+                    final ProductData actual = ProductData.createInstance(ProductData.TYPE_INT32, width);
+                    final CompoundData mdr = binioFile.getMdrData().getCompound(mdrIndex).getCompound(1);
+                    assertEquals(width, reader.read(0, width, expected, 0, mdr));
+                    assertEquals(width, reader.read(0, width, actual, 0, mapping.getBuffer(mdrIndex),
+                                                    mapping.getBodyPosition(mdrIndex), layout));
+                    assertEquals(expected, actual, width);
+                }
+
+                // a region of the whole product, read through EpsFile.readData
+                final ProductData expected = ProductData.createInstance(ProductData.TYPE_INT32, 5 * MDR_COUNT);
+                final ProductData actual = ProductData.createInstance(ProductData.TYPE_INT32, 5 * MDR_COUNT);
+                binioFile.readData(reader, width - 5, 0, 5, MDR_COUNT, expected);
+                mappedFile.readData(reader, width - 5, 0, 5, MDR_COUNT, actual);
+                assertEquals(expected, actual, 5 * MDR_COUNT);
+            }
+        } finally {
+            raf.close();
+            mappedFile.close();
+            binioFile.close();
+        }
+    }
+
+    private File writeProduct(EpsProductGenerator.ProductType productType) throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(productType);
+        generator.setMdrCount(MDR_COUNT);
+        return generator.write(dir);
+    }
+
+    private static MdrMapping createWindowMapping(EpsFile mappedFile, RandomAccessFile raf) throws IOException {
+        final MdrMapping mapping = mappedFile.getMdrMapping();
+        assertNotNull(mapping);
+        final MdrMapping windowMapping = new MdrMapping(raf.getChannel(), mapping.getFirstRecordOffset(),
+                                                        mapping.getRecordSize(), mapping.getHeaderSize(),
+                                                        mapping.getRecordCount(),
+                                                        (long) RECORDS_PER_WINDOW * mapping.getRecordSize());
+        assertEquals(RECORDS_PER_WINDOW, windowMapping.getRecordsPerWindow());
+        return windowMapping;
+    }
+
+    private static List<DirectMdrReader> createReaders(String radianceName, int channelCount) {
+        final List<DirectMdrReader> readers = new ArrayList<DirectMdrReader>();
+        for (int i = 0; i < channelCount; i++) {
+            readers.add(new RadianceReader(radianceName, i));
+        }
+        for (int i = 0; i < 4; i++) {
+            readers.add(new GeometryReader(i));
+        }
+        readers.add(new LocationReader(0));
+        readers.add(new LocationReader(1));
+        readers.add(new FlagReader("SURFACE_PROPERTIES"));
+        readers.add(new FlagReader("TERRAIN_ELEVATION"));
+        return readers;
+    }
+
+    private static void assertEquals(ProductData expected, ProductData actual, int count) {
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected.getElemIntAt(i), actual.getElemIntAt(i));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.eps;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Manages the temporary directories holding the files written by the tests.
+ */
+public class TempDirSupport {
+
+    private TempDirSupport() {
+    }
+
+    /**
+     * Creates an empty temporary directory.
+     *
+     * @param prefix the prefix of the directory name
+     *
+     * @return the directory
+     * @throws IOException if the directory could not be created
+     */
+    public static File createTempDir(String prefix) throws IOException {
+        final File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create directory: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes a directory created by {@link #createTempDir(String)} together
+     * with all files and directories in it.
+     *
+     * @param dir the directory
+     */
+    public static void deleteTempDir(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteTempDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
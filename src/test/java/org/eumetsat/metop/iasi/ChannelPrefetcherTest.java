@@ -0,0 +1,129 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChannelPrefetcherTest extends TestCase {
+
+    public void testGetPrefetchedChannel() throws IOException {
+        final CountingPrefetcher prefetcher = new CountingPrefetcher(20, -1);
+        try {
+            prefetcher.prefetch(10);
+            assertEquals("channel 11", prefetcher.get(11));
+            assertEquals("channel 10", prefetcher.get(10));
+            assertEquals("channel 10", prefetcher.get(10));
+            assertEquals(1, prefetcher.getComputeCount(10));
+            assertEquals(1, prefetcher.getComputeCount(11));
+        } finally {
+            prefetcher.dispose();
+        }
+    }
+
+    public void testGetQueuedChannel() throws Exception {
+        // the prefetch thread is kept busy with channel 11, so all other channels stay queued
+        final CountingPrefetcher prefetcher = new CountingPrefetcher(20, 11);
+        try {
+            prefetcher.prefetch(10);
+            prefetcher.awaitBlocking();
+
+            final String[] result = new String[1];
+            final Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result[0] = prefetcher.get(12);
+                    } catch (IOException e) {
+                        result[0] = e.getMessage();
+                    }
+                }
+            });
+            caller.start();
+            // wait until the caller either waits for the prefetch thread or computes the channel itself
+            while (caller.getState() == Thread.State.NEW || caller.getState() == Thread.State.RUNNABLE) {
+                Thread.sleep(1);
+            }
+            prefetcher.unblock();
+            caller.join();
+
+            assertEquals("channel 12", result[0]);
+            assertEquals(1, prefetcher.getComputeCount(12));
+            assertSame(caller, prefetcher.getComputeThread(12));
+        } finally {
+            prefetcher.unblock();
+            prefetcher.dispose();
+        }
+    }
+
+    private static class CountingPrefetcher extends ChannelPrefetcher<String> {
+
+        private final int blockingChannel;
+        private final CountDownLatch blocking;
+        private final CountDownLatch unblocked;
+        private final Map<Integer, AtomicInteger> computeCounts;
+        private final Map<Integer, Thread> computeThreads;
+
+        private CountingPrefetcher(int channelCount, int blockingChannel) {
+            super(channelCount);
+            this.blockingChannel = blockingChannel;
+            blocking = new CountDownLatch(1);
+            unblocked = new CountDownLatch(1);
+            computeCounts = new ConcurrentHashMap<Integer, AtomicInteger>();
+            computeThreads = new ConcurrentHashMap<Integer, Thread>();
+            for (int channel = 0; channel < channelCount; channel++) {
+                computeCounts.put(channel, new AtomicInteger());
+            }
+        }
+
+        @Override
+        protected String compute(int channel) throws IOException {
+            computeCounts.get(channel).incrementAndGet();
+            computeThreads.put(channel, Thread.currentThread());
+            if (channel == blockingChannel) {
+                blocking.countDown();
+                try {
+                    unblocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted.");
+                }
+            }
+            return "channel " + channel;
+        }
+
+        void awaitBlocking() throws InterruptedException {
+            blocking.await();
+        }
+
+        void unblock() {
+            unblocked.countDown();
+        }
+
+        int getComputeCount(int channel) {
+            return computeCounts.get(channel).get();
+        }
+
+        Thread getComputeThread(int channel) {
+            return computeThreads.get(channel);
+        }
+    }
+}
@@ -18,11 +18,15 @@ import junit.framework.TestCase;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.eumetsat.metop.eps.EpsFile;
 import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.eps.MappedIOHandlerTest;
+import org.eumetsat.metop.eps.TempDirSupport;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.TimeZone;
 
@@ -65,6 +69,125 @@ public class IasiFileTest extends TestCase {
         iasiFile.close();
     }
 
+    public void testReadSpectrumIntoArrays() throws IOException {
+        final IasiFile iasiFile = createIasiFile();
+        final int ifovId = IasiFile.computeIfovId(7, 17, 0);
+        final float[] wavenumbers = new float[8700];
+        final float[] radiances = new float[8700];
+
+        final double[][] spectrum = iasiFile.readSpectrum(ifovId);
+        assertEquals(8461, iasiFile.readSpectrum(ifovId, wavenumbers, radiances));
+        for (int i = 0; i < spectrum.length; i++) {
+            assertEquals(spectrum[i][0], wavenumbers[i], 1.0E-6 * spectrum[i][0]);
+            assertEquals(spectrum[i][1], radiances[i], 1.0E-6 * Math.abs(spectrum[i][1]));
+        }
+
+        // the range spans two MDRs
+        final int firstIfovId = IasiFile.computeIfovId(6, SNOT - 1, 2);
+        final int ifovCount = 2 * PN;
+        final float[] buffer = new float[ifovCount * 8461];
+        iasiFile.readSpectra(firstIfovId, ifovCount, buffer, 8461);
+        for (int n = 0; n < ifovCount; n++) {
+            iasiFile.readSpectrum(firstIfovId + n, null, radiances);
+            for (int i = 0; i < 8461; i++) {
+                assertEquals(radiances[i], buffer[n * 8461 + i], 0.0f);
+            }
+        }
+
+        try {
+            iasiFile.readSpectrum(ifovId, null, new float[8460]);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        final float[] shortBuffer = new float[ifovCount * 8461 - 1];
+        try {
+            iasiFile.readSpectra(firstIfovId, ifovCount, shortBuffer, 8461);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        // nothing has been written
+        for (final float radiance : shortBuffer) {
+            assertEquals(0.0f, radiance);
+        }
+
+        iasiFile.close();
+    }
+
+    // the reads of the memory-mapped MDRs are compared with the binio reads, for all MDRs of a
+    // generated product
+    public void testMappedReadsEqualBinioReads() throws IOException {
+        final File dir = TempDirSupport.createTempDir("iasi-file-test");
+        try {
+            final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+            generator.setMdrCount(3);
+            final File file = generator.write(dir);
+
+            final IasiFile binioFile = (IasiFile) EpsFormats.getInstance().openFile(file);
+            final IasiFile mappedFile = (IasiFile) MappedIOHandlerTest.openMappedFile(file);
+            try {
+                assertNull(binioFile.getMdrMapping());
+                assertNotNull(mappedFile.getMdrMapping());
+                final int mdrCount = binioFile.getMdrCount();
+                assertEquals(3, mdrCount);
+
+                for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+                    assertEquals(binioFile.readSpectrumSize(mdrIndex), mappedFile.readSpectrumSize(mdrIndex));
+
+                    final short[][] expectedSpectra = new short[SNOT * PN][];
+                    final short[][] actualSpectra = new short[SNOT * PN][];
+                    binioFile.readSpectra(mdrIndex, expectedSpectra, 0);
+                    mappedFile.readSpectra(mdrIndex, actualSpectra, 0);
+                    for (int n = 0; n < SNOT * PN; n++) {
+                        assertTrue(Arrays.equals(expectedSpectra[n], actualSpectra[n]));
+                    }
+
+                    final int n = SNOT * PN;
+                    final double[] expectedLocations = new double[2 * n];
+                    final double[] expectedMetopAngles = new double[2 * n];
+                    final double[] expectedSunAngles = new double[2 * n];
+                    final byte[] expectedFlags = new byte[n];
+                    binioFile.readGeolocation(mdrIndex, expectedLocations, expectedMetopAngles, expectedSunAngles,
+                                              expectedFlags, 0);
+                    final double[] actualLocations = new double[2 * n];
+                    final double[] actualMetopAngles = new double[2 * n];
+                    final double[] actualSunAngles = new double[2 * n];
+                    final byte[] actualFlags = new byte[n];
+                    mappedFile.readGeolocation(mdrIndex, actualLocations, actualMetopAngles, actualSunAngles,
+                                               actualFlags, 0);
+                    assertTrue(Arrays.equals(expectedLocations, actualLocations));
+                    assertTrue(Arrays.equals(expectedMetopAngles, actualMetopAngles));
+                    assertTrue(Arrays.equals(expectedSunAngles, actualSunAngles));
+                    assertTrue(Arrays.equals(expectedFlags, actualFlags));
+                }
+
+                // the range spans all MDRs
+                final int stride = binioFile.readSpectrumSize(0);
+                final int ifovCount = mdrCount * SNOT * PN - 2;
+                final float[] expectedRadiances = new float[ifovCount * stride];
+                final float[] actualRadiances = new float[ifovCount * stride];
+                binioFile.readSpectra(1, ifovCount, expectedRadiances, stride);
+                mappedFile.readSpectra(1, ifovCount, actualRadiances, stride);
+                assertTrue(Arrays.equals(expectedRadiances, actualRadiances));
+
+                for (final int channelId : new int[]{0, 1, stride - 1}) {
+                    final double[][][] expectedBts = binioFile.readAllBts(channelId);
+                    final double[][][] actualBts = mappedFile.readAllBts(channelId);
+                    assertEquals(mdrCount, actualBts.length);
+                    for (int mdrIndex = 0; mdrIndex < mdrCount; mdrIndex++) {
+                        for (int efovIndex = 0; efovIndex < SNOT; efovIndex++) {
+                            assertTrue(Arrays.equals(expectedBts[mdrIndex][efovIndex], actualBts[mdrIndex][efovIndex]));
+                        }
+                    }
+                }
+            } finally {
+                mappedFile.close();
+                binioFile.close();
+            }
+        } finally {
+            TempDirSupport.deleteTempDir(dir);
+        }
+    }
+
     public void testReadGEPSIasiMode() throws IOException {
         final IasiFile iasiFile = createIasiFile();
         final byte[] modes = iasiFile.readGEPSIasiMode();
@@ -0,0 +1,91 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import com.bc.ceres.core.ProgressMonitor;
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.eps.TempDirSupport;
+
+import java.io.File;
+import java.io.IOException;
+
+public class IasiSpectraExporterTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("iasi-export-test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testExport() throws IOException {
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+        // more than one block of MDRs
+        generator.setMdrCount(IasiSpectraExporter.BLOCK_MDR_COUNT + 3);
+        final IasiFile iasiFile = (IasiFile) EpsFormats.getInstance().openFile(generator.write(dir));
+        final File archiveFile = new File(dir, "test" + IasiSpectraExporter.FILE_EXTENSION);
+        try {
+            new IasiSpectraExporter(iasiFile).export(archiveFile, ProgressMonitor.NULL);
+
+            final IasiSpectraArchive archive = new IasiSpectraArchive(archiveFile);
+            try {
+                final int ifovCount = archive.getIfovCount();
+                assertEquals(iasiFile.getMdrCount() * IasiFile.SNOT * IasiFile.PN, ifovCount);
+                assertEquals(8461, archive.getChannelCount());
+                assertEquals(iasiFile.getProductName(), archive.getAttribute("product"));
+
+                // the channel range spans two chunks
+                final int firstChannel = IasiSpectraExporter.CHUNK_CHANNEL_COUNT - 2;
+                final short[] samples = archive.readChannels(firstChannel, 4);
+                final double[] scaleFactors = archive.readDoubles(IasiSpectraExporter.SCALE_FACTORS);
+                final double[] wavenumbers = archive.readDoubles(IasiSpectraExporter.WAVENUMBERS);
+                final double[] locations = archive.readDoubles(IasiSpectraExporter.LOCATIONS);
+                final byte[] flags = archive.readBytes(IasiSpectraExporter.FLAGS);
+                assertEquals(2 * ifovCount, locations.length);
+                assertEquals(ifovCount, flags.length);
+
+                final float[] spectrumWavenumbers = new float[8461];
+                final float[] radiances = new float[8461];
+                for (int ifovId = 0; ifovId < ifovCount; ifovId += 37) {
+                    iasiFile.readSpectrum(ifovId, spectrumWavenumbers, radiances);
+                    for (int c = 0; c < 4; c++) {
+                        final int channel = firstChannel + c;
+                        final double radiance = scaleFactors[channel] * samples[c * ifovCount + ifovId];
+                        assertEquals(radiances[channel], radiance, 1.0E-6 * Math.abs(radiance));
+                        assertEquals(spectrumWavenumbers[channel], wavenumbers[channel], 1.0E-3);
+                    }
+                    final GeoPos geoPos = iasiFile.readGeoPos(ifovId);
+                    assertEquals(geoPos.lon, locations[2 * ifovId], 1.0E-5);
+                    assertEquals(geoPos.lat, locations[2 * ifovId + 1], 1.0E-5);
+                    assertEquals(iasiFile.readGQisFlagQual(ifovId), flags[ifovId] != 0);
+                }
+            } finally {
+                archive.close();
+            }
+        } finally {
+            iasiFile.close();
+        }
+    }
+}
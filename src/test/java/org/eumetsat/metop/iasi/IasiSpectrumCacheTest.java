@@ -0,0 +1,183 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.iasi;
+
+import junit.framework.TestCase;
+import org.eumetsat.metop.eps.EpsFormats;
+import org.eumetsat.metop.eps.EpsProductGenerator;
+import org.eumetsat.metop.eps.TempDirSupport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class IasiSpectrumCacheTest extends TestCase {
+
+    private static final int IFOV_COUNT = IasiFile.SNOT * IasiFile.PN;
+
+    private File dir;
+    private File cacheDir;
+    private String oldEnabled;
+    private String oldDir;
+    private String oldMaxSize;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirSupport.createTempDir("iasi-spectrum-cache-test");
+        cacheDir = new File(dir, "spectrum-cache");
+        oldEnabled = System.getProperty(IasiSpectrumCache.ENABLED_PROPERTY);
+        oldDir = System.getProperty(IasiSpectrumCache.DIR_PROPERTY);
+        oldMaxSize = System.getProperty(IasiSpectrumCache.MAX_SIZE_PROPERTY);
+        System.clearProperty(IasiSpectrumCache.ENABLED_PROPERTY);
+        System.setProperty(IasiSpectrumCache.DIR_PROPERTY, cacheDir.getPath());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        restoreProperty(IasiSpectrumCache.ENABLED_PROPERTY, oldEnabled);
+        restoreProperty(IasiSpectrumCache.DIR_PROPERTY, oldDir);
+        restoreProperty(IasiSpectrumCache.MAX_SIZE_PROPERTY, oldMaxSize);
+        TempDirSupport.deleteTempDir(dir);
+    }
+
+    public void testCacheReadEqualsBinioRead() throws Exception {
+        final File file = writeProduct(new File(dir, "product"), 2);
+        final IasiFile iasiFile = openFile(file);
+        try {
+            IasiSpectrumCache.buildLater(iasiFile, file).get();
+            final IasiSpectrumCache cache = IasiSpectrumCache.open(iasiFile, file);
+            assertNotNull(cache);
+            try {
+                assertEquals(2, cache.getMdrCount());
+                final short[][] spectra = new short[2 * IFOV_COUNT][];
+                for (int mdrIndex = 0; mdrIndex < 2; mdrIndex++) {
+                    assertEquals(iasiFile.readIDefSpectDWn1b(mdrIndex), cache.getIDefSpectDWn1b(mdrIndex));
+                    assertEquals((int) iasiFile.readIDefNsfirst1b(mdrIndex), cache.getIDefNsfirst1b(mdrIndex));
+                    iasiFile.readSpectra(mdrIndex, spectra, mdrIndex * IFOV_COUNT);
+                }
+                final short[] samples = new short[2 * IFOV_COUNT];
+                for (final int channelId : new int[]{0, 1, 4321, IasiFile.SS - 1}) {
+                    cache.readChannel(channelId, samples);
+                    for (int n = 0; n < samples.length; n++) {
+                        assertEquals(spectra[n][channelId], samples[n]);
+                    }
+                }
+            } finally {
+                cache.close();
+            }
+
+            // the brightness temperatures read through the cache
+            final IasiFile cachedFile = openFile(file);
+            try {
+                for (final int channelId : new int[]{0, 4321}) {
+                    System.clearProperty(IasiSpectrumCache.ENABLED_PROPERTY);
+                    final double[][][] expected = iasiFile.readAllBts(channelId);
+                    System.setProperty(IasiSpectrumCache.ENABLED_PROPERTY, "true");
+                    final double[][][] actual = cachedFile.readAllBts(channelId);
+                    assertEquals(expected.length, actual.length);
+                    for (int mdrIndex = 0; mdrIndex < expected.length; mdrIndex++) {
+                        for (int efovIndex = 0; efovIndex < IasiFile.SNOT; efovIndex++) {
+                            assertTrue(Arrays.equals(expected[mdrIndex][efovIndex], actual[mdrIndex][efovIndex]));
+                        }
+                    }
+                }
+            } finally {
+                cachedFile.close();
+            }
+        } finally {
+            iasiFile.close();
+        }
+    }
+
+    public void testChangedProductInvalidatesCache() throws Exception {
+        final File file = writeProduct(new File(dir, "product"), 1);
+        final IasiFile iasiFile = openFile(file);
+        try {
+            IasiSpectrumCache.buildLater(iasiFile, file).get();
+            assertOpen(iasiFile, file);
+
+            final long lastModified = file.lastModified();
+            assertTrue(file.setLastModified(lastModified + 60000));
+            assertNull(IasiSpectrumCache.open(iasiFile, file));
+            assertTrue(file.setLastModified(lastModified));
+            assertOpen(iasiFile, file);
+
+            final FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(0);
+            } finally {
+                out.close();
+            }
+            assertTrue(file.setLastModified(lastModified));
+            assertNull(IasiSpectrumCache.open(iasiFile, file));
+        } finally {
+            iasiFile.close();
+        }
+    }
+
+    public void testLeastRecentlyUsedIsDeleted() throws Exception {
+        // a sidecar holds about 2 MB per MDR
+        System.setProperty(IasiSpectrumCache.MAX_SIZE_PROPERTY, "5");
+
+        final File oldFile = writeProduct(new File(dir, "old"), 2);
+        final IasiFile oldIasiFile = openFile(oldFile);
+        final File newFile = writeProduct(new File(dir, "new"), 1);
+        final IasiFile newIasiFile = openFile(newFile);
+        try {
+            IasiSpectrumCache.buildLater(oldIasiFile, oldFile).get();
+            final File[] oldSidecars = cacheDir.listFiles();
+            assertEquals(1, oldSidecars.length);
+            assertTrue(oldSidecars[0].setLastModified(System.currentTimeMillis() - 60000));
+
+            IasiSpectrumCache.buildLater(newIasiFile, newFile).get();
+            final File[] sidecars = cacheDir.listFiles();
+            assertEquals(1, sidecars.length);
+            assertFalse(oldSidecars[0].exists());
+            assertNull(IasiSpectrumCache.open(oldIasiFile, oldFile));
+            assertOpen(newIasiFile, newFile);
+        } finally {
+            newIasiFile.close();
+            oldIasiFile.close();
+        }
+    }
+
+    private static File writeProduct(File productDir, int mdrCount) throws IOException {
+        assertTrue(productDir.mkdir());
+        final EpsProductGenerator generator = new EpsProductGenerator(EpsProductGenerator.ProductType.IASI_L1C);
+        generator.setMdrCount(mdrCount);
+        return generator.write(productDir);
+    }
+
+    private static IasiFile openFile(File file) throws IOException {
+        return (IasiFile) EpsFormats.getInstance().openFile(file, true);
+    }
+
+    private static void assertOpen(IasiFile iasiFile, File file) throws IOException {
+        final IasiSpectrumCache cache = IasiSpectrumCache.open(iasiFile, file);
+        assertNotNull(cache);
+        cache.close();
+    }
+
+    private static void restoreProperty(String name, String value) {
+        if (value != null) {
+            System.setProperty(name, value);
+        } else {
+            System.clearProperty(name);
+        }
+    }
+}
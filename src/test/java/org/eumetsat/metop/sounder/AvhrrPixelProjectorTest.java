@@ -0,0 +1,128 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import junit.framework.TestCase;
+
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AvhrrPixelProjectorTest extends TestCase {
+
+    private static final int AVHRR_WIDTH = 205;
+    private static final int AVHRR_HEIGHT = 161;
+    private static final int WIDTH = 12;
+    private static final int HEIGHT = 9;
+
+    public void testProject() throws IOException {
+        final SounderGeoCoding geoCoding = createAvhrrGeoCoding(0.0);
+        assertProjection(geoCoding, createProjector(geoCoding, null, 1));
+    }
+
+    public void testProjectConcurrently() throws IOException {
+        final AtomicInteger taskCount = new AtomicInteger();
+        final ExecutorService executor = new ThreadPoolExecutor(3, 3, 0L, TimeUnit.MILLISECONDS,
+                                                                new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable runnable) {
+                taskCount.incrementAndGet();
+            }
+        };
+        try {
+            final SounderGeoCoding geoCoding = createAvhrrGeoCoding(0.0);
+            assertProjection(geoCoding, createProjector(geoCoding, executor, 3));
+            assertTrue(taskCount.get() > 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testProjectAcrossMeridianAt180() throws IOException {
+        final SounderGeoCoding geoCoding = createAvhrrGeoCoding(178.0);
+        assertProjection(geoCoding, createProjector(geoCoding, null, 1));
+    }
+
+    public void testProjectOutside() throws IOException {
+        final SounderGeoCoding geoCoding = createAvhrrGeoCoding(0.0);
+        final float[] lats = {10.0f, 10.0f, 80.0f};
+        final float[] lons = {-20.0f, -20.0f, 100.0f};
+        final float[] xs = new float[3];
+        final float[] ys = new float[3];
+        createProjector(geoCoding, null, 1).project(lats, lons, 3, 1, xs, ys);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Float.isNaN(xs[i]));
+            assertTrue(Float.isNaN(ys[i]));
+        }
+    }
+
+    private static AvhrrPixelProjector createProjector(SounderGeoCoding geoCoding, ExecutorService executor,
+                                                      int threadCount) {
+        return new AvhrrPixelProjector(geoCoding, AVHRR_WIDTH, AVHRR_HEIGHT, executor, threadCount);
+    }
+
+    private static void assertProjection(SounderGeoCoding geoCoding, AvhrrPixelProjector projector) throws IOException {
+        final float[] lats = new float[WIDTH * HEIGHT];
+        final float[] lons = new float[WIDTH * HEIGHT];
+        final float[] expectedXs = new float[WIDTH * HEIGHT];
+        final float[] expectedYs = new float[WIDTH * HEIGHT];
+        final GeoPos geoPos = new GeoPos();
+        int index = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                expectedXs[index] = 10.3f + 15.7f * x + 0.4f * y;
+                expectedYs[index] = 5.1f + 17.2f * y + 0.2f * x;
+                geoCoding.getGeoPos(new PixelPos(expectedXs[index], expectedYs[index]), geoPos);
+                lats[index] = geoPos.lat;
+                lons[index] = geoPos.lon;
+                index++;
+            }
+        }
+        final float[] xs = new float[WIDTH * HEIGHT];
+        final float[] ys = new float[WIDTH * HEIGHT];
+        projector.project(lats, lons, WIDTH, HEIGHT, xs, ys);
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(expectedXs[i], xs[i], 0.05f);
+            assertEquals(expectedYs[i], ys[i], 0.05f);
+        }
+    }
+
+    // a slightly curved swath
+    private static SounderGeoCoding createAvhrrGeoCoding(double lon0) {
+        final int step = 20;
+        final int[] columns = SounderGeoCoding.getTiePointPositions(AVHRR_WIDTH, step);
+        final int[] rows = SounderGeoCoding.getTiePointPositions(AVHRR_HEIGHT, step);
+        final float[] lats = new float[columns.length * rows.length];
+        final float[] lons = new float[lats.length];
+        int k = 0;
+        for (final int row : rows) {
+            for (final int column : columns) {
+                lats[k] = (float) (10.0 + 0.01 * row - 0.002 * column + 1.0e-5 * column * column);
+                final double lon = lon0 + 0.012 * column + 0.003 * row;
+                lons[k] = (float) (lon > 180.0 ? lon - 360.0 : lon);
+                k++;
+            }
+        }
+        return new SounderGeoCoding(AVHRR_WIDTH, AVHRR_HEIGHT, step, step, lats, lons);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import junit.framework.TestCase;
+
+import org.eumetsat.metop.visat.BlackBody;
+
+public class BrightnessTemperatureKernelTest extends TestCase {
+
+    public void testWavenumberGrid() {
+        final BrightnessTemperatureKernel kernel = BrightnessTemperatureKernel.forWavenumbers(25.0, 2580, 3);
+        assertEquals(3, kernel.getChannelCount());
+
+        final double i = 4.0E-04;
+        assertEquals(BlackBody.temperatureAtWavenumber(64500.0, i), kernel.temperature(0, i), 1.0E-10);
+        assertEquals(BlackBody.temperatureAtWavenumber(64525.0, i), kernel.temperature(1, i), 1.0E-10);
+        assertEquals(BlackBody.temperatureAtWavenumber(64550.0, i), kernel.temperature(2, i), 1.0E-10);
+    }
+
+    public void testConvertShortCounts() {
+        final BrightnessTemperatureKernel kernel = BrightnessTemperatureKernel.forWavenumbers(new double[]{64500.0});
+        final short[] counts = {0, 4000, 4100, 4200};
+        final double[] target = new double[4];
+
+        kernel.convert(0, counts, 1, 3, 1.0E-07, target, 1);
+        assertEquals(0.0, target[0], 0.0);
+        assertEquals(BlackBody.temperatureAtWavenumber(64500.0, 4.0E-04), target[1], 1.0E-10);
+        assertEquals(BlackBody.temperatureAtWavenumber(64500.0, 4.1E-04), target[2], 1.0E-10);
+        assertEquals(BlackBody.temperatureAtWavenumber(64500.0, 4.2E-04), target[3], 1.0E-10);
+    }
+
+    public void testConvertIntCounts() {
+        final BrightnessTemperatureKernel kernel = BrightnessTemperatureKernel.forFrequencies(new double[]{23.8, 31.4});
+        final int[] counts = {1000, 2000};
+        final float[] target = new float[2];
+
+        kernel.convert(1, counts, 0, 2, 1.0E-07, target, 0);
+        assertEquals(BlackBody.temperatureAtFrequency(31.4, 1.0E-04), target[0], 1.0E-04);
+        assertEquals(BlackBody.temperatureAtFrequency(31.4, 2.0E-04), target[1], 1.0E-04);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import junit.framework.TestCase;
+import org.eumetsat.metop.eps.TempDirSupport;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ChannelGridCacheTest extends TestCase {
+
+    public void testHitsAndMisses() {
+        final ChannelGridCache cache = new ChannelGridCache(1024);
+        final double[] grid = new double[10];
+
+        assertNull(cache.get("P1", "B1", "bt"));
+        cache.put("P1", "B1", "bt", grid);
+        assertSame(grid, cache.get("P1", "B1", "bt"));
+        assertNull(cache.get("P1", "B1", "radiance"));
+        assertNull(cache.get("P2", "B1", "bt"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(80, cache.getMemoryUsage());
+    }
+
+    public void testLeastRecentlyUsedGridsAreEvicted() {
+        final ChannelGridCache cache = new ChannelGridCache(3 * 800);
+        cache.put("P", "B1", "bt", new double[100]);
+        cache.put("P", "B2", "bt", new double[100]);
+        cache.put("P", "B3", "bt", new double[100]);
+        assertNotNull(cache.get("P", "B1", "bt"));
+
+        cache.put("P", "B4", "bt", new double[100]);
+        assertEquals(3, cache.getGridCount());
+        assertEquals(2400, cache.getMemoryUsage());
+        assertNotNull(cache.get("P", "B1", "bt"));
+        assertNull(cache.get("P", "B2", "bt"));
+        assertNotNull(cache.get("P", "B3", "bt"));
+        assertNotNull(cache.get("P", "B4", "bt"));
+
+        // larger than the budget
+        cache.put("P", "B5", "bt", new double[1000]);
+        assertNull(cache.get("P", "B5", "bt"));
+        assertEquals(3, cache.getGridCount());
+    }
+
+    public void testRemoveProduct() {
+        final ChannelGridCache cache = new ChannelGridCache(1024);
+        cache.put("P1", "B1", "bt", new double[10]);
+        cache.put("P2", "B1", "bt", new double[10]);
+        cache.remove("P1");
+        assertNull(cache.get("P1", "B1", "bt"));
+        assertNotNull(cache.get("P2", "B1", "bt"));
+        assertEquals(80, cache.getMemoryUsage());
+
+        cache.clear();
+        assertEquals(0, cache.getGridCount());
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    public void testProductKey() throws IOException {
+        final File dir1 = TempDirSupport.createTempDir("grid-cache");
+        final File dir2 = TempDirSupport.createTempDir("grid-cache");
+        try {
+            // the same product name in different files
+            final File file1 = new File(dir1, "P.nat");
+            final File file2 = new File(dir2, "P.nat");
+            assertTrue(file1.createNewFile());
+            assertTrue(file2.createNewFile());
+            final String key1 = ChannelGridCache.createProductKey(file1);
+            assertFalse(key1.equals(ChannelGridCache.createProductKey(file2)));
+            assertEquals(key1, ChannelGridCache.createProductKey(file1));
+
+            // a rewritten file
+            assertTrue(file1.setLastModified(file1.lastModified() - 60000));
+            assertFalse(key1.equals(ChannelGridCache.createProductKey(file1)));
+        } finally {
+            TempDirSupport.deleteTempDir(dir1);
+            TempDirSupport.deleteTempDir(dir2);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import junit.framework.TestCase;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.util.BitSet;
+import java.util.Random;
+
+public class ShapeIndexTest extends TestCase {
+
+    public void testFindContaining() {
+        final Shape[] shapes = {
+                new Ellipse2D.Float(0, 0, 10, 10),
+                null,
+                new Ellipse2D.Float(5, 5, 10, 10),
+                new Ellipse2D.Float(100, 200, 10, 10),
+        };
+        final ShapeIndex index = new ShapeIndex(shapes);
+        assertEquals(4, index.size());
+
+        assertEquals(0, index.findContaining(5, 5));
+        assertEquals(0, index.findContaining(8, 8));
+        assertEquals(2, index.findContaining(8, 8, 1));
+        assertEquals(-1, index.findContaining(8, 8, 3));
+        assertEquals(2, index.findContaining(13, 13));
+        assertEquals(3, index.findContaining(105, 205));
+        // inside the bounding box, but outside the ellipse
+        assertEquals(-1, index.findContaining(0.5, 0.5));
+        assertEquals(-1, index.findContaining(-5, 5));
+        assertEquals(-1, index.findContaining(500, 500));
+    }
+
+    public void testFindIntersecting() {
+        final Shape[] shapes = {
+                new Ellipse2D.Float(0, 0, 10, 10),
+                null,
+                new Ellipse2D.Float(5, 5, 10, 10),
+                new Ellipse2D.Float(100, 200, 10, 10),
+        };
+        final ShapeIndex index = new ShapeIndex(shapes);
+
+        assertEquals(bits(0, 2, 3), index.findIntersecting(null));
+        assertEquals(bits(0, 2), index.findIntersecting(new Rectangle(-10, -10, 30, 30)));
+        assertEquals(bits(3), index.findIntersecting(new Rectangle(90, 190, 20, 20)));
+        assertEquals(bits(), index.findIntersecting(new Rectangle(500, 500, 20, 20)));
+    }
+
+    public void testAgreesWithLinearSearch() {
+        final Random random = new Random(5);
+        final Shape[] shapes = new Shape[500];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Ellipse2D.Double(random.nextDouble() * 2000, random.nextDouble() * 5000,
+                                             5 + random.nextDouble() * 20, 5 + random.nextDouble() * 20);
+        }
+        final ShapeIndex index = new ShapeIndex(shapes);
+
+        for (int k = 0; k < 1000; k++) {
+            final double x = random.nextDouble() * 2000;
+            final double y = random.nextDouble() * 5000;
+            int expected = -1;
+            for (int i = 0; i < shapes.length; i++) {
+                if (shapes[i].contains(x, y)) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, index.findContaining(x, y));
+
+            final Rectangle rect = new Rectangle((int) x, (int) y, 50, 80);
+            final BitSet expectedSet = new BitSet();
+            for (int i = 0; i < shapes.length; i++) {
+                if (shapes[i].intersects(rect)) {
+                    expectedSet.set(i);
+                }
+            }
+            final BitSet actualSet = index.findIntersecting(rect);
+            // bounding box candidates must include all shapes actually intersecting
+            actualSet.and(expectedSet);
+            assertEquals(expectedSet, actualSet);
+        }
+    }
+
+    public void testFootprints() {
+        final Random random = new Random(7);
+        final FootprintStore footprints = new FootprintStore(300);
+        for (int i = 0; i < footprints.size(); i += 2) {
+            footprints.set(i, random.nextFloat() * 500, random.nextFloat() * 500,
+                           10 + random.nextFloat() * 10, 10 + random.nextFloat() * 10, i % 3 == 0);
+        }
+        assertTrue(footprints.isValid(0));
+        assertTrue(footprints.isAnomalous(0));
+        assertFalse(footprints.isValid(1));
+        assertNull(footprints.getShape(1));
+        assertTrue(footprints.isValid(2));
+        assertFalse(footprints.isAnomalous(2));
+
+        final ShapeIndex index = new ShapeIndex(footprints);
+        final Ellipse2D.Float ellipse = new Ellipse2D.Float();
+        for (int k = 0; k < 1000; k++) {
+            final double x = random.nextDouble() * 500;
+            final double y = random.nextDouble() * 500;
+            int expected = -1;
+            for (int i = 0; i < footprints.size(); i += 2) {
+                assertEquals(footprints.getShape(i, ellipse).contains(x, y), footprints.contains(i, x, y));
+                if (expected == -1 && footprints.getShape(i).contains(x, y)) {
+                    expected = i;
+                }
+            }
+            assertEquals(expected, index.findContaining(x, y));
+        }
+    }
+
+    public void testCollinearPoints() {
+        final int n = 1000;
+        final float[] xs = new float[n];
+        final float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 10.0f * i;
+            ys[i] = 50.0f;
+        }
+        final ShapeIndex index = new ShapeIndex(xs, ys, xs, ys);
+
+        assertEquals(123, index.findContaining(1230.0, 50.0));
+        assertEquals(-1, index.findContaining(1235.0, 50.0));
+        assertEquals(-1, index.findContaining(1230.0, 51.0));
+        assertEquals(bits(12, 13, 14), index.findIntersecting(new Rectangle(115, 0, 30, 100)));
+        assertEquals(n, index.findIntersecting(null).cardinality());
+    }
+
+    public void testCoincidentPoints() {
+        final float[] xs = {7.0f, 7.0f, 7.0f};
+        final float[] ys = {3.0f, 3.0f, 3.0f};
+        final ShapeIndex index = new ShapeIndex(xs, ys, xs, ys);
+
+        assertEquals(0, index.findContaining(7.0, 3.0));
+        assertEquals(2, index.findContaining(7.0, 3.0, 2));
+        assertEquals(-1, index.findContaining(7.5, 3.0));
+        assertEquals(bits(0, 1, 2), index.findIntersecting(new Rectangle(0, 0, 10, 10)));
+    }
+
+    private static BitSet bits(int... indexes) {
+        final BitSet bits = new BitSet();
+        for (int i : indexes) {
+            bits.set(i);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * $Id: $
+ *
+ * Copyright (C) 2009 by Brockmann Consult (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation. This program is distributed in the hope it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.eumetsat.metop.sounder;
+
+import junit.framework.TestCase;
+
+import org.esa.beam.framework.datamodel.GeoPos;
+import org.esa.beam.framework.datamodel.PixelPos;
+
+import java.util.Arrays;
+
+public class SounderGeoCodingTest extends TestCase {
+
+    private static final int WIDTH = 30;
+    private static final int HEIGHT = 21;
+    // a swath which is linear in degrees is not quite linear on the sphere
+    private static final double GEO_EPS = 5.0e-3;
+
+    // the scan geometry of MHS
+    private static final int MHS_WIDTH = 90;
+    private static final int MHS_HEIGHT = 160;
+    private static final int MHS_STEP_X = 3;
+    private static final double MHS_SCAN_STEP = 10.0 / 9.0;
+    private static final double MHS_LINE_STEP = 0.1578;
+    private static final double EARTH_RADIUS = 6371.0;
+    private static final double ORBIT_HEIGHT = 817.0;
+    private static final double INCLINATION = 98.7;
+
+    public void testGetTiePointPositions() {
+        assertEquals("[0, 1, 2]", Arrays.toString(SounderGeoCoding.getTiePointPositions(3, 1)));
+        assertEquals("[0, 4, 8, 9]", Arrays.toString(SounderGeoCoding.getTiePointPositions(10, 4)));
+        assertEquals("[0, 4, 8]", Arrays.toString(SounderGeoCoding.getTiePointPositions(9, 4)));
+        assertEquals(31, SounderGeoCoding.getTiePointPositions(90, 3).length);
+    }
+
+    public void testGetGeoPos() {
+        final SounderGeoCoding geoCoding = createGeoCoding(0.0, 4);
+        assertFalse(geoCoding.isCrossingMeridianAt180());
+
+        for (int y = 0; y < HEIGHT; y += 5) {
+            for (int x = 0; x < WIDTH; x += 7) {
+                final GeoPos geoPos = geoCoding.getGeoPos(new PixelPos(x + 0.5f, y + 0.5f), null);
+                assertEquals(lat(x, y), geoPos.lat, GEO_EPS);
+                assertEquals(lon(0.0, x, y), geoPos.lon, GEO_EPS);
+            }
+        }
+        assertFalse(geoCoding.getGeoPos(new PixelPos(-1.0f, 3.0f), null).isValid());
+        assertFalse(geoCoding.getGeoPos(new PixelPos(3.0f, HEIGHT + 1.0f), null).isValid());
+    }
+
+    public void testGetPixelPos() {
+        final SounderGeoCoding geoCoding = createGeoCoding(0.0, 4);
+
+        for (int y = 0; y < HEIGHT; y += 3) {
+            for (int x = 0; x < WIDTH; x += 4) {
+                final GeoPos geoPos = new GeoPos((float) lat(x, y), (float) lon(0.0, x, y));
+                final PixelPos pixelPos = geoCoding.getPixelPos(geoPos, null);
+                assertTrue(pixelPos.isValid());
+                assertEquals(x + 0.5, pixelPos.x, 1.0e-2);
+                assertEquals(y + 0.5, pixelPos.y, 1.0e-2);
+            }
+        }
+        assertFalse(geoCoding.getPixelPos(new GeoPos(50.0f, 10.0f), null).isValid());
+        assertFalse(geoCoding.getPixelPos(new GeoPos((float) lat(0, 0), (float) lon(0.0, 0, 0) - 1.0f), null).isValid());
+    }
+
+    public void testCrossingMeridianAt180() {
+        final SounderGeoCoding geoCoding = createGeoCoding(175.0, 2);
+        assertTrue(geoCoding.isCrossingMeridianAt180());
+
+        final GeoPos geoPos = geoCoding.getGeoPos(new PixelPos(20.5f, 4.5f), null);
+        assertEquals(lat(20, 4), geoPos.lat, GEO_EPS);
+        assertEquals(lon(175.0, 20, 4), geoPos.lon, GEO_EPS);
+        assertTrue(geoPos.lon < 0.0f);
+
+        final PixelPos pixelPos = geoCoding.getPixelPos(geoPos, null);
+        assertEquals(20.5, pixelPos.x, 1.0e-2);
+        assertEquals(4.5, pixelPos.y, 1.0e-2);
+    }
+
+    public void testPolarSwath() {
+        final double[] lats = new double[MHS_WIDTH * MHS_HEIGHT];
+        final double[] lons = new double[lats.length];
+        createPolarSwath(lats, lons);
+
+        // the tie-points of an MHS product
+        final int[] columns = SounderGeoCoding.getTiePointPositions(MHS_WIDTH, MHS_STEP_X);
+        final int[] rows = SounderGeoCoding.getTiePointPositions(MHS_HEIGHT, SounderFile.TIE_POINT_STEP_Y);
+        final float[] tieLats = new float[columns.length * rows.length];
+        final float[] tieLons = new float[tieLats.length];
+        int k = 0;
+        for (final int row : rows) {
+            for (final int column : columns) {
+                tieLats[k] = (float) lats[row * MHS_WIDTH + column];
+                tieLons[k] = (float) lons[row * MHS_WIDTH + column];
+                k++;
+            }
+        }
+        final SounderGeoCoding geoCoding = new SounderGeoCoding(MHS_WIDTH, MHS_HEIGHT, MHS_STEP_X,
+                                                                SounderFile.TIE_POINT_STEP_Y, tieLats, tieLons);
+        assertTrue(geoCoding.isCrossingMeridianAt180());
+
+        // compares with the locations of all IFOVs, which a pixel geo-coding would use
+        double maxLat = -90.0;
+        double maxDistance = 0.0;
+        double maxPixelError = 0.0;
+        for (int y = 0; y < MHS_HEIGHT; y++) {
+            for (int x = 0; x < MHS_WIDTH; x++) {
+                final double lat = lats[y * MHS_WIDTH + x];
+                final double lon = lons[y * MHS_WIDTH + x];
+                maxLat = Math.max(maxLat, lat);
+
+                final GeoPos geoPos = geoCoding.getGeoPos(new PixelPos(x + 0.5f, y + 0.5f), null);
+                assertTrue(geoPos.isValid());
+                maxDistance = Math.max(maxDistance, distance(lat, lon, geoPos.lat, geoPos.lon));
+
+                final PixelPos pixelPos = geoCoding.getPixelPos(new GeoPos((float) lat, (float) lon), null);
+                assertTrue(pixelPos.isValid());
+                maxPixelError = Math.max(maxPixelError, Math.abs(pixelPos.x - (x + 0.5)));
+                maxPixelError = Math.max(maxPixelError, Math.abs(pixelPos.y - (y + 0.5)));
+            }
+        }
+        assertTrue(maxLat > 89.9);
+        // the IFOVs of MHS are 16 km wide at nadir
+        assertTrue("max. distance = " + maxDistance + " km", maxDistance < 4.0);
+        assertTrue("max. pixel error = " + maxPixelError, maxPixelError < 0.1);
+    }
+
+    private static SounderGeoCoding createGeoCoding(double lon0, int stepY) {
+        final int[] columns = SounderGeoCoding.getTiePointPositions(WIDTH, 1);
+        final int[] rows = SounderGeoCoding.getTiePointPositions(HEIGHT, stepY);
+        final float[] lats = new float[columns.length * rows.length];
+        final float[] lons = new float[lats.length];
+        int k = 0;
+        for (final int row : rows) {
+            for (final int column : columns) {
+                lats[k] = (float) lat(column, row);
+                lons[k] = (float) lon(lon0, column, row);
+                k++;
+            }
+        }
+        return new SounderGeoCoding(WIDTH, HEIGHT, 1, stepY, lats, lons);
+    }
+
+    // a swath, which is linear along-track
+    private static double lat(int x, int y) {
+        return 40.0 + 0.5 * y - 0.05 * x;
+    }
+
+    private static double lon(double lon0, int x, int y) {
+        final double lon = lon0 + 0.5 * x + 0.1 * y;
+        return lon > 180.0 ? lon - 360.0 : lon;
+    }
+
+    /**
+     * Creates the IFOV locations of a swath around the northernmost point of
+     * the orbit. The swath is curved and its outer IFOVs cross the pole. The
+     * earth is a sphere and does not rotate.
+     */
+    private static void createPolarSwath(double[] lats, double[] lons) {
+        final double inclination = Math.toRadians(INCLINATION);
+        // the ascending node, the direction of flight there, and the orbit normal
+        final double[] node = {1.0, 0.0, 0.0};
+        final double[] flight = {0.0, Math.cos(inclination), Math.sin(inclination)};
+        final double[] normal = {0.0, -Math.sin(inclination), Math.cos(inclination)};
+        final double[] p = new double[3];
+        for (int y = 0; y < MHS_HEIGHT; y++) {
+            final double s = Math.toRadians(90.0 + (y - MHS_HEIGHT / 2) * MHS_LINE_STEP);
+            for (int x = 0; x < MHS_WIDTH; x++) {
+                final double scanAngle = Math.toRadians((x - 0.5 * (MHS_WIDTH - 1)) * MHS_SCAN_STEP);
+                final double earthAngle = Math.asin((EARTH_RADIUS + ORBIT_HEIGHT) / EARTH_RADIUS * Math.sin(scanAngle)) - scanAngle;
+                for (int c = 0; c < 3; c++) {
+                    final double nadir = Math.cos(s) * node[c] + Math.sin(s) * flight[c];
+                    p[c] = Math.cos(earthAngle) * nadir + Math.sin(earthAngle) * normal[c];
+                }
+                lats[y * MHS_WIDTH + x] = Math.toDegrees(Math.asin(p[2]));
+                lons[y * MHS_WIDTH + x] = Math.toDegrees(Math.atan2(p[1], p[0]));
+            }
+        }
+    }
+
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        final double phi1 = Math.toRadians(lat1);
+        final double phi2 = Math.toRadians(lat2);
+        final double cos = Math.sin(phi1) * Math.sin(phi2)
+                           + Math.cos(phi1) * Math.cos(phi2) * Math.cos(Math.toRadians(lon2 - lon1));
+        return EARTH_RADIUS * Math.acos(Math.min(1.0, cos));
+    }
+}